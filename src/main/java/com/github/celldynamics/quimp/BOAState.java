@@ -4,6 +4,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -100,12 +101,15 @@ public class BOAState implements IQuimpSerialize {
   ParamList binarySegmentationParam;
   /**
    * Keep snapshots of SegParam objects for every frame separately.
+   * 
+   * <p>Consecutive frames with the same parameters share one instance, see {@link #store(int)}.
    */
   private ArrayList<SegParam> segParamSnapshots;
   /**
    * Keep snapshots of SnakePluginList objects for every frame separately.
    * 
-   * <p>Plugin configurations are stored as well (but without plugin references)
+   * <p>Plugin configurations are stored as well (but without plugin references). Consecutive
+   * frames with the same plugins share one instance, see {@link #store(int)}.
    */
   public ArrayList<SnakePluginList> snakePluginListSnapshots;
   /**
@@ -641,6 +645,16 @@ public class BOAState implements IQuimpSerialize {
      * use to test how many times a method is called.
      */
     int callCount;
+    /**
+     * Number of snakes tightened concurrently within one frame. 1 or less tightens snakes one after
+     * another.
+     * 
+     * <p>Results do not depend on this number because every snake takes its random decisions from
+     * its own sequence, see {@link Snake#random()}.
+     * 
+     * @see BOA_#runBoa(int, int)
+     */
+    int tightenThreads;
 
     private double imageScale; // scale of image read from ip
     private boolean scaleAdjusted = false; // true when adjusted in constructor
@@ -736,6 +750,7 @@ public class BOAState implements IQuimpSerialize {
       callCount = 0;
       frame = 1;
       savePretty = true;
+      tightenThreads = 1;
     }
 
     /**
@@ -793,6 +808,26 @@ public class BOAState implements IQuimpSerialize {
 
     }
 
+    /**
+     * Get number of snakes tightened concurrently.
+     * 
+     * @return the tightenThreads
+     */
+    public int getTightenThreads() {
+      return tightenThreads;
+    }
+
+    /**
+     * Set number of snakes tightened concurrently within one frame.
+     * 
+     * <p>Results do not depend on this value.
+     * 
+     * @param tightenThreads the tightenThreads to set, 1 or less for sequential processing
+     */
+    public void setTightenThreads(int tightenThreads) {
+      this.tightenThreads = tightenThreads;
+    }
+
     /**
      * Get FRAMES.
      * 
@@ -1002,36 +1037,105 @@ public class BOAState implements IQuimpSerialize {
   /**
    * Make snapshot of current objects state.
    * 
+   * <p>If parameters and plugins are the same as stored for previous frame, the snapshot of
+   * previous frame is referenced instead of copying. Shared snapshots are copied on
+   * {@link #restore(int)} before they can be modified.
+   * 
    * @param frame actual frame numbered from 1
    * @see com.github.celldynamics.quimp.SnakePluginList
    */
   public void store(int frame) {
     LOGGER.debug(
             "Data stored at frame:" + frame + " size of segParams is " + segParamSnapshots.size());
-    segParamSnapshots.set(frame - 1, new SegParam(segParam));
+    int i = frame - 1;
+    SegParam prevSegParam = i > 0 ? segParamSnapshots.get(i - 1) : null;
+    // never share object that is currently edited
+    if (prevSegParam != null && prevSegParam != segParam && prevSegParam.equals(segParam)) {
+      segParamSnapshots.set(i, prevSegParam);
+    } else {
+      segParamSnapshots.set(i, new SegParam(segParam));
+    }
     // download Plugin config as well
-    snakePluginListSnapshots.set(frame - 1, snakePluginList.getDeepCopy());
+    snakePluginList.downloadPluginsConfig();
+    SnakePluginList prevPluginList = i > 0 ? snakePluginListSnapshots.get(i - 1) : null;
+    if (prevPluginList != null && prevPluginList != snakePluginList
+            && prevPluginList.isSameAs(snakePluginList)) {
+      snakePluginListSnapshots.set(i, prevPluginList);
+    } else {
+      snakePluginListSnapshots.set(i, snakePluginList.getStoredCopy());
+    }
   }
 
   /**
    * Restore from snapshots data to current one.
    * 
-   * <p>Technically makes reference links between snapshots and fields keeping hot data.
+   * <p>Technically makes reference links between snapshots and fields keeping hot data. Snapshots
+   * shared with other frames are copied first, so changes of current parameters affect only this
+   * frame.
    * 
    * @param frame current frame
    * @see com.github.celldynamics.quimp.SnakePluginList
    */
   public void restore(int frame) {
     LOGGER.trace("Data restored from frame:" + frame);
-    SegParam tmp = segParamSnapshots.get(frame - 1);
+    int i = frame - 1;
+    SegParam tmp = segParamSnapshots.get(i);
     if (tmp != null) {
+      if (isShared(segParamSnapshots, i)) {
+        tmp = new SegParam(tmp);
+        segParamSnapshots.set(i, tmp);
+      }
       segParam = tmp;
     }
-    snakePluginList = snakePluginListSnapshots.get(frame - 1);
+    if (isShared(snakePluginListSnapshots, i)) {
+      snakePluginListSnapshots.set(i, snakePluginListSnapshots.get(i).getStoredCopy());
+    }
+    snakePluginList = snakePluginListSnapshots.get(i);
     snakePluginList.uploadPluginsConfig(); // same plugin across frames is represented by the same
     // instance, every time frame is restored plugin configuration must be updated to current
   }
 
+  /**
+   * Check if snapshot is referenced also by other frame.
+   * 
+   * <p>All frames are checked, frames sharing one instance need not be neighbours after some of
+   * them have been restored.
+   * 
+   * @param snapshots list of snapshots
+   * @param i index of snapshot
+   * @return true if any other snapshot is the same instance
+   */
+  private static boolean isShared(List<?> snapshots, int i) {
+    Object o = snapshots.get(i);
+    for (int j = 0; j < snapshots.size(); j++) {
+      if (j != i && snapshots.get(j) == o) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Make consecutive equal snapshots to share one instance.
+   * 
+   * <p>Used after loading, serialized form always contains snapshots for all frames.
+   */
+  private void shareSnapshots() {
+    for (int i = 1; i < segParamSnapshots.size(); i++) {
+      SegParam prev = segParamSnapshots.get(i - 1);
+      if (prev != null && prev.equals(segParamSnapshots.get(i))) {
+        segParamSnapshots.set(i, prev);
+      }
+    }
+    for (int i = 1; i < snakePluginListSnapshots.size(); i++) {
+      SnakePluginList prev = snakePluginListSnapshots.get(i - 1);
+      SnakePluginList cur = snakePluginListSnapshots.get(i);
+      if (prev != null && cur != null && prev.isSameAs(cur)) {
+        snakePluginListSnapshots.set(i, prev);
+      }
+    }
+  }
+
   /**
    * Copy {@link SegParam} data from given snapshot to current frame.
    * 
@@ -1149,6 +1253,7 @@ public class BOAState implements IQuimpSerialize {
     // program_path/stored_in_json_path
     boap.outputFileCore = new File(boap.outputFileCore.toString());
     boap.orgFile = new File(boap.orgFile.toString());
+    shareSnapshots();
     // restore local segParam to be first from segParamSnapshots
     if (segParamSnapshots.size() > 0) {
       if (segParamSnapshots.get(0) != null) {
@@ -1182,8 +1287,8 @@ public class BOAState implements IQuimpSerialize {
         qp.setSegImageFile(boap.orgFile);
         qp.setSnakeQP(new File(boap.deductSnakeFileName(sid)));
         qp.setStatsQP(new File(boap.deductStatsFileName(sid)));
-        qp.setImageScale(BOA_.qState.boap.imageScale);
-        qp.setFrameInterval(BOA_.qState.boap.imageFrameInterval);
+        qp.setImageScale(boap.imageScale);
+        qp.setFrameInterval(boap.imageFrameInterval);
         qp.setStartFrame(startF);
         qp.setEndFrame(endF);
         qp.nmax = boap.NMAX;
@@ -156,7 +156,6 @@ public class BOA_ implements PlugIn {
    * The image group.
    */
   ImageGroup imageGroup;
-  private Constrictor constrictor;
   private PluginFactory pluginFactory; // load and maintain plugins
   /**
    * Last selection tool selected in IJ.
@@ -201,6 +200,12 @@ public class BOA_ implements PlugIn {
    * without quitting Fiji) Keep data that will be serialized.
    */
   public static BOAState qState = new BOAState(null); // current state of BOA module
+  /**
+   * Configuration object of segmentation running in current thread, overrides {@link #qState}.
+   * 
+   * @see BoaEngine
+   */
+  private static final ThreadLocal<BOAState> threadState = new ThreadLocal<>();
 
   /**
    * Main constructor.
@@ -365,8 +370,6 @@ public class BOA_ implements PlugIn {
     }
     rm.close();
     ip.killRoi();
-
-    constrictor = new Constrictor(); // does computations on snakes
   }
 
   /**
@@ -406,14 +409,44 @@ public class BOA_ implements PlugIn {
    * 
    * @param s String to display in BOA window
    */
-  static void log(final String s) {
-    if (logArea == null) {
+  static synchronized void log(final String s) {
+    if (logArea == null || getQState() != qState) { // no window or headless segmentation
       LOGGER.debug("[" + logCount++ + "] " + s + '\n');
     } else {
       logArea.append("[" + logCount++ + "] " + s + '\n');
     }
   }
 
+  /**
+   * Get configuration object used by current thread.
+   * 
+   * <p>Classes used by segmentation should access configuration by this method instead of
+   * {@link #qState}. This allows to run independent segmentations concurrently in one JVM.
+   * 
+   * @return configuration set for current thread by {@link BoaEngine} or {@link #qState}
+   */
+  public static BOAState getQState() {
+    BOAState state = threadState.get();
+    return state != null ? state : qState;
+  }
+
+  /**
+   * Set configuration object for current thread.
+   * 
+   * @param state configuration to use in current thread, null to use {@link #qState}
+   * @return configuration used before
+   * @see #getQState()
+   */
+  static BOAState setThreadQState(BOAState state) {
+    BOAState prev = threadState.get();
+    if (state == null) {
+      threadState.remove();
+    } else {
+      threadState.set(state);
+    }
+    return prev;
+  }
+
   /**
    * Redraw current view. Process outlines by all active plugins. Do not run segmentation again
    * Updates liveSnake. Also disables UI.
@@ -2436,123 +2469,16 @@ public class BOA_ implements PlugIn {
    * @param startF start frame
    * @param endF end frame
    * @throws BoaException on any error
+   * @see BoaEngine#run(int, int)
    */
   public void runBoa(int startF, int endF) throws BoaException {
     LOGGER.debug("run BOA");
     isSegBreakHit = false;
     isSegRunning = true;
-    if (qState.nest.isVacant() || qState.nest.allFrozen()) {
-      BOA_.log("Nothing to segment!");
-      isSegRunning = false;
-      return;
-    }
     try {
       IJ.showProgress(0, endF - startF);
-
-      qState.nest.resetForFrame(startF);
-      if (!qState.segParam.expandSnake) {
-        // blowup snake ready for contraction (only those not starting at or after the startF)
-        constrictor.loosen(qState.nest, startF);
-      } else {
-        constrictor.implode(qState.nest, startF);
-      }
-      SnakeHandler snH;
-      int s = 0;
-      Snake snake;
       imageGroup.clearPaths(startF);
-      LOGGER.debug("Use options: " + qState.segParam.toString());
-      for (qState.boap.frame = startF; qState.boap.frame <= endF; qState.boap.frame++) {
-        if (isSegBreakHit == true) {
-          qState.boap.frame--;
-          isSegBreakHit = false;
-          break;
-        }
-        // per frame
-        imageGroup.setProcessor(qState.boap.frame);
-        imageGroup.setIpSliceAll(qState.boap.frame);
-
-        try {
-          if (qState.boap.frame != startF) { // expand snakes for next frame
-            if (!qState.segParam.use_previous_snake) {
-              qState.nest.resetForFrame(qState.boap.frame); // #274 block here as well? liveSnake
-            } else {
-              if (!qState.segParam.expandSnake) {
-                constrictor.loosen(qState.nest, qState.boap.frame); // #274 here? this is about LS
-              } else {
-                constrictor.implode(qState.nest, qState.boap.frame); // #274 and here
-              }
-            }
-          }
-
-          for (s = 0; s < qState.nest.size(); s++) { // for each snake
-            snH = qState.nest.getHandler(s);
-            snake = snH.getLiveSnake();
-            try {
-              if (!snake.alive || qState.boap.frame < snH.getStartFrame()) {
-                continue;
-              }
-              // process all snakes even if frozen to control overlaps (computed for liveSnakes) but
-              // do not store any live snake from frozen snake
-              if (!snH.isSnakeHandlerFrozen()) {
-                imageGroup.drawPath(snake, qState.boap.frame); // pre tightned snake on path
-                tightenSnake(snake);
-                imageGroup.drawPath(snake, qState.boap.frame); // post tightned snake on path
-                snH.backupLiveSnake(qState.boap.frame);
-                Snake out = iterateOverSnakePlugins(snake);
-                snH.storeThisSnake(out, qState.boap.frame); // store resulting snake as final
-              } else {
-                // overlaps are tested for liveSnakes (loosen) so update liveSnake to result of
-                // segmentation for frozen snakehandler
-                snH.copyFromFinalToLive(qState.boap.frame);
-                LOGGER.debug("SnakeHandler " + snH.getID() + " is frozen");
-              }
-            } catch (QuimpPluginException qpe) {
-              // must be rewritten with whole runBOA #65 #67
-              qpe.setMessageSinkType(MessageSinkTypes.NONE);
-              BOA_.log(qpe.handleException(null, "Error in filter module"));
-              snH.storeLiveSnake(qState.boap.frame); // store segmented nonmodified
-            } catch (BoaException be) { // from tighten
-              imageGroup.drawPath(snake, qState.boap.frame); // failed position
-              snH.storeLiveSnake(qState.boap.frame);
-              snH.backupLiveSnake(qState.boap.frame);
-              qState.nest.kill(snH);
-              snake.unfreezeAll();
-              be.setMessageSinkType(MessageSinkTypes.NONE);
-              BOA_.log(be.handleException(null,
-                      "Snake " + snake.getSnakeID() + " died, frame " + qState.boap.frame));
-              isSegRunning = false;
-              if (qState.nest.allDead()) { // end of processing (see condition in catch)
-                throw new BoaException("All snakes dead: " + be.getMessage(), qState.boap.frame, 1);
-              }
-            }
-          }
-          // imageGroup.updateOverlay(qState.boap.frame); // redraw display
-          IJ.showProgress(qState.boap.frame, endF);
-        } catch (BoaException be) {
-          isSegRunning = false;
-          if (!qState.segParam.use_previous_snake) {
-            imageGroup.setIpSliceAll(qState.boap.frame);
-            imageGroup.updateOverlay(qState.boap.frame);
-          } else { // end iterating if all snakes dead and we use previous
-            throw be; // do no add LOGGER here #278
-          }
-        } finally {
-          // historyLogger.addEntry("Processing", qState);
-          qState.store(qState.boap.frame); // always remember state of the BOA that is
-          // used for segmentation
-        }
-      }
-      qState.boap.frame = endF;
-    } catch (BoaException be) { // these from unexpected stopping of alg
-      if (be.getFrame() == 0) { // if not set by thrower
-        be.setFrame(qState.boap.frame);
-      }
-      throw be; // just rethrow them
-    } catch (Exception e) { // any other (should not happen)
-      // do no add LOGGER here #278
-      BoaException be = new BoaException(e);
-      be.setFrame(qState.boap.frame);
-      throw be;
+      engine().run(startF, endF);
     } finally {
       isSegRunning = false;
       imageGroup.updateOverlay(qState.boap.frame); // update on error
@@ -2562,68 +2488,58 @@ public class BOA_ implements PlugIn {
   }
 
   /**
-   * Perform AC segmentation. Tighten snake around object.
-   * 
-   * <p>This method starts with snakes ({@link SnakeHandler#getLiveSnake()} that were blown up by
-   * {@link Constrictor#loosen(Nest, int)} counteracting overlaps. If
-   * {@link BOAState.SegParam#use_previous_snake} was not set, initial snake is produced from
-   * original ROI by {@link Nest#resetForFrame(int)}. Then
-   * {@link Constrictor#constrict(Snake, ImageProcessor)} is called many times, each time liveSnake
-   * is moved slightly. Note that <b>liveSnake</b> is the same for each frame for given
-   * {@link SnakeHandler}, this is why it can be used for seeding next frame.
-   * 
-   * @param snake snake to process
-   * @throws BoaException if there is too less nodes left
-   * @see SegParam#max_iterations
+   * Create segmentation engine for {@link #qState} that reports to BOA window.
+   * 
+   * <p>Paths of snakes are drawn, segmented snakes are processed by snake plugins and segmentation
+   * stops on <b>STOP</b> button.
+   * 
+   * @return segmentation engine
    */
-  private void tightenSnake(final Snake snake) throws BoaException {
+  private BoaEngine engine() {
+    return new BoaEngine(imageGroup.getOrgIpl(), qState, new BoaEngine.Listener() {
 
-    int i;
+      @Override
+      public void frameStarted(int frame) {
+        imageGroup.setProcessor(frame);
+        imageGroup.setIpSliceAll(frame);
+      }
 
-    for (i = 0; i < qState.segParam.max_iterations; i++) { // iter constrict snake
-      // if snakes are expanded from cell inside, testing against overlapping shuld be done in
-      // expanding step but not in prparatory (loosen) as for constricting
-      // if (qState.segParam.contractingDirection == false) { // expand from inside
-      // constrictor.freezeProxSnakes(qState.nest, qState.boap.frame);
-      // }
-      if (i % qState.boap.cut_every == 0) {
-        snake.cutLoops(); // cut out loops every p.cut_every timesteps
+      @Override
+      public void frameFinished(int frame, int endF) {
+        IJ.showProgress(frame, endF);
       }
-      if (i % 10 == 0 && i != 0) {
-        snake.correctDistance(true);
+
+      @Override
+      public void frameFailed(int frame, BoaException be) {
+        isSegRunning = false;
+        imageGroup.setIpSliceAll(frame);
+        imageGroup.updateOverlay(frame);
       }
-      if (constrictor.constrict(snake, imageGroup.getOrgIp())) { // if all nodes frozen
-        break;
+
+      @Override
+      public boolean isCancelled() {
+        if (isSegBreakHit == true) {
+          isSegBreakHit = false;
+          return true;
+        }
+        return false;
       }
-      if (i % 4 == 0) {
-        imageGroup.drawPath(snake, qState.boap.frame); // draw current snake
+
+      @Override
+      public void drawPath(Snake snake, int frame) {
+        imageGroup.drawPath(snake, frame);
       }
 
-      if ((snake.getNumPoints() / snake.startingNnodes) > qState.boap.NMAX) {
-        // if max nodes reached (as % starting) prompt for reset
-        if (qState.segParam.use_previous_snake) {
-          // imageGroup.drawContour(snake, frame);
-          // imageGroup.updateAndDraw();
-          throw new BoaException(
-                  "Frame " + qState.boap.frame + "-max nodes reached " + snake.getNumPoints(),
-                  qState.boap.frame, 1);
-        } else {
-          BOA_.log("Frame " + qState.boap.frame + "-max nodes reached..continue");
-          break;
-        }
+      @Override
+      public Snake processSnake(Snake snake) throws QuimpPluginException, BoaException {
+        return iterateOverSnakePlugins(snake);
       }
-    }
-    snake.unfreezeAll(); // set freeze tag back to false
 
-    if (!qState.segParam.expandSnake) { // shrink a bit to get final outline
-      if (BOA_.qState.segParam.contractingDirection) { // standard behaviour
-        snake.scaleSnake(-BOA_.qState.segParam.finalShrink, 0.5, false);
-      } else { // expanding from cell inside, set the same as contracting
-        snake.scaleSnake(-BOA_.qState.segParam.finalShrink, 0.5, false);
+      @Override
+      public void log(String message) {
+        BOA_.log(message);
       }
-    }
-    snake.cutLoops();
-    snake.cutIntersects();
+    });
   }
 
   /**
@@ -2784,7 +2700,7 @@ public class BOA_ implements PlugIn {
    * 
    * @param r ROI object (IJ)
    * @param f number of current frame
-   * @see #tightenSnake(Snake)
+   * @see BoaEngine#tighten(Snake, int)
    */
   // @SuppressWarnings("unchecked")
   void addCell(final Roi r, int f) {
@@ -2796,9 +2712,7 @@ public class BOA_ implements PlugIn {
     imageGroup.setProcessor(f);
     try {
       LOGGER.debug("Use options: " + qState.segParam.toString());
-      imageGroup.drawPath(snake, f); // pre tightned snake on path
-      tightenSnake(snake);
-      imageGroup.drawPath(snake, f); // post tightned snake on path
+      engine().tighten(snake, f); // draws pre and post tightened snake on path
       snakeH.backupLiveSnake(f);
       Snake out = iterateOverSnakePlugins(snake); // process segmented snake by plugins
       snakeH.storeThisSnake(out, f); // store processed snake as final
@@ -3352,7 +3266,7 @@ class ImageGroup {
    * @param snake snake to draw
    * @param frame current frame
    */
-  public void drawPath(Snake snake, int frame) {
+  public synchronized void drawPath(Snake snake, int frame) {
     pathsIp = pathsStack.getProcessor(frame);
     drawSnake(pathsIp, snake, false);
   }
@@ -0,0 +1,577 @@
+package com.github.celldynamics.quimp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.celldynamics.quimp.BOAState.BOAp;
+import com.github.celldynamics.quimp.BOAState.SegParam;
+import com.github.celldynamics.quimp.QuimpException.MessageSinkTypes;
+import com.github.celldynamics.quimp.plugin.QuimpPluginException;
+import com.github.celldynamics.quimp.utils.ParallelTools;
+
+import ij.ImagePlus;
+import ij.gui.Roi;
+import ij.process.ImageProcessor;
+
+/**
+ * Headless Active Contour segmentation.
+ *
+ * <p>Performs segmentation for {@link BOA_#runBoa(int, int)}. Created by public constructors it runs
+ * without any user interface (no windows, paths, overlays or progress bar) and without snake
+ * plugins. Each engine has its own {@link BOAState}, which is set for the threads running
+ * segmentation (see {@link BOA_#getQState()}), so many engines can segment independent stacks
+ * concurrently in one JVM, see {@link #runBatch(List, int)}. One engine must not be used from many
+ * threads at once.
+ *
+ * <p>Snakes of one frame are tightened concurrently if {@link BOAp#tightenThreads} is greater than
+ * 1. Results are processed in order of snakes in {@link Nest} on calling thread.
+ *
+ * <p>Example:
+ *
+ * <pre>
+ * <code>
+ * BoaEngine engine = new BoaEngine(image, rois, segParam, null);
+ * BOAState result = engine.run();
+ * Nest nest = result.nest;
+ * </code>
+ * </pre>
+ *
+ * @author p.baniukiewicz
+ * @see BOA_
+ */
+public class BoaEngine {
+
+  /**
+   * The Constant LOGGER.
+   */
+  static final Logger LOGGER = LoggerFactory.getLogger(BoaEngine.class.getName());
+
+  /**
+   * Segmented stack.
+   */
+  private final ImagePlus image;
+  /**
+   * Configuration and results of segmentation.
+   */
+  private final BOAState state;
+  /**
+   * Computes forces on snakes.
+   */
+  private final Constrictor constrictor = new Constrictor();
+  /**
+   * Receives progress of segmentation.
+   */
+  private final Listener listener;
+
+  /**
+   * Progress of segmentation reported by {@link BoaEngine}.
+   * 
+   * <p>Used by {@link BOA_} to draw paths, run snake plugins and update user interface. Default
+   * methods run segmentation headless.
+   * 
+   * @author p.baniukiewicz
+   *
+   */
+  interface Listener {
+
+    /**
+     * Called before snakes of frame are processed.
+     * 
+     * @param frame frame to be segmented
+     */
+    default void frameStarted(int frame) {
+    }
+
+    /**
+     * Called after snakes of frame were processed successfully.
+     * 
+     * @param frame segmented frame
+     * @param endF last frame to segment
+     */
+    default void frameFinished(int frame, int endF) {
+    }
+
+    /**
+     * Called if frame failed and segmentation continues with next frame.
+     * 
+     * @param frame failed frame
+     * @param be reason
+     */
+    default void frameFailed(int frame, BoaException be) {
+      LOGGER.info(be.getMessage());
+    }
+
+    /**
+     * Check if segmentation should stop before next frame.
+     * 
+     * @return true to stop
+     */
+    default boolean isCancelled() {
+      return false;
+    }
+
+    /**
+     * Called for snake being tightened, possibly from many threads at once.
+     * 
+     * @param snake current snake
+     * @param frame current frame
+     */
+    default void drawPath(Snake snake, int frame) {
+    }
+
+    /**
+     * Process tightened snake before it is stored as final.
+     * 
+     * @param snake tightened snake, must not be modified
+     * @return snake to store as final
+     * @throws QuimpPluginException on plugin error, tightened snake is stored then
+     * @throws BoaException on defective snake
+     */
+    default Snake processSnake(Snake snake) throws QuimpPluginException, BoaException {
+      return snake;
+    }
+
+    /**
+     * Log message of segmentation.
+     * 
+     * @param message message
+     */
+    default void log(String message) {
+      LOGGER.info(message);
+    }
+  }
+
+  /**
+   * Create engine and initialise snakes from ROIs.
+   *
+   * @param image stack to segment
+   * @param rois initial outlines of cells at first frame
+   * @param segParam segmentation parameters, copied
+   * @param boap internal parameters, null for defaults. Initialised for image and used as is.
+   */
+  public BoaEngine(ImagePlus image, Roi[] rois, SegParam segParam, BOAp boap) {
+    this(image, rois, 1, segParam, boap);
+  }
+
+  /**
+   * Create engine and initialise snakes from ROIs.
+   *
+   * @param image stack to segment
+   * @param rois initial outlines of cells
+   * @param startFrame frame that rois are related to
+   * @param segParam segmentation parameters, copied
+   * @param boap internal parameters, null for defaults. Initialised for image and used as is.
+   */
+  public BoaEngine(ImagePlus image, Roi[] rois, int startFrame, SegParam segParam, BOAp boap) {
+    this(image, new BOAState(image), new Listener() {
+    });
+    if (boap != null) {
+      boap.setImageScale(image.getCalibration().pixelWidth);
+      boap.setImageFrameInterval(image.getCalibration().frameInterval);
+      boap.setup(image);
+      state.boap = boap;
+    }
+    state.segParam = state.new SegParam(segParam);
+    BOAState prev = BOA_.setThreadQState(state);
+    try {
+      state.nest.addHandlers(rois, startFrame);
+    } finally {
+      BOA_.setThreadQState(prev);
+    }
+  }
+
+  /**
+   * Create engine for existing state.
+   * 
+   * @param image stack to segment
+   * @param state configuration and snakes, modified by segmentation
+   * @param listener receives progress of segmentation
+   */
+  BoaEngine(ImagePlus image, BOAState state, Listener listener) {
+    this.image = image;
+    this.state = state;
+    this.listener = listener;
+  }
+
+  /**
+   * Segment whole stack.
+   *
+   * @return state with segmented snakes in {@link BOAState#nest}
+   * @throws BoaException on segmentation error, e.g. all snakes dead
+   * @see #run(int, int)
+   */
+  public BOAState run() throws BoaException {
+    return run(1, image.getStackSize());
+  }
+
+  /**
+   * Segment range of frames.
+   *
+   * <p>Segmented snakes are processed by {@link Listener#processSnake(Snake)} and stored as final.
+   * State of frame is stored in {@link BOAState} even if frame failed.
+   *
+   * @param startF start frame
+   * @param endF end frame
+   * @return state with segmented snakes in {@link BOAState#nest}
+   * @throws BoaException on segmentation error, e.g. all snakes dead
+   */
+  public BOAState run(int startF, int endF) throws BoaException {
+    Nest nest = state.nest;
+    if (nest.isVacant() || nest.allFrozen()) {
+      listener.log("Nothing to segment!");
+      return state;
+    }
+    // snakes of one frame are tightened concurrently if pool exists
+    ExecutorService pool = state.boap.tightenThreads > 1
+            ? Executors.newFixedThreadPool(state.boap.tightenThreads) : null;
+    BOAState prev = BOA_.setThreadQState(state);
+    try {
+      nest.resetForFrame(startF);
+      if (!state.segParam.expandSnake) {
+        // blowup snake ready for contraction (only those not starting at or after the startF)
+        constrictor.loosen(nest, startF);
+      } else {
+        constrictor.implode(nest, startF);
+      }
+      LOGGER.debug("Use options: " + state.segParam.toString());
+      for (state.boap.frame = startF; state.boap.frame <= endF; state.boap.frame++) {
+        if (listener.isCancelled()) {
+          state.boap.frame--;
+          break;
+        }
+        int frame = state.boap.frame;
+        listener.frameStarted(frame);
+        ImageProcessor ip = image.getStack().getProcessor(frame);
+        List<Future<?>> tightened = null;
+        try {
+          if (frame != startF) { // expand snakes for next frame
+            if (!state.segParam.use_previous_snake) {
+              nest.resetForFrame(frame); // #274 block here as well? liveSnake
+            } else {
+              if (!state.segParam.expandSnake) {
+                constrictor.loosen(nest, frame); // #274 here? this is about LS
+              } else {
+                constrictor.implode(nest, frame); // #274 and here
+              }
+            }
+          }
+          // tighten all snakes at once (if allowed), results are processed below in nest order
+          tightened = tightenNest(pool, ip, frame);
+          for (int s = 0; s < nest.size(); s++) { // for each snake
+            segmentSnake(nest.getHandler(s), tightened.get(s), ip, frame);
+          }
+          listener.frameFinished(frame, endF);
+        } catch (BoaException be) {
+          if (state.segParam.use_previous_snake) {
+            throw be; // end iterating if all snakes dead and we use previous
+          }
+          listener.frameFailed(frame, be);
+        } finally {
+          // do not leave any snake modified in background when processing stops or goes further
+          awaitNest(tightened);
+          state.store(frame); // always remember state used for segmentation
+        }
+      }
+      state.boap.frame = endF;
+    } catch (BoaException be) { // these from unexpected stopping of alg
+      if (be.getFrame() == 0) { // if not set by thrower
+        be.setFrame(state.boap.frame);
+      }
+      throw be;
+    } catch (RuntimeException e) { // any other (should not happen)
+      BoaException be = new BoaException(e);
+      be.setFrame(state.boap.frame);
+      throw be;
+    } finally {
+      if (pool != null) {
+        pool.shutdown();
+      }
+      BOA_.setThreadQState(prev);
+    }
+    return state;
+  }
+
+  /**
+   * Tighten single snake and draw its paths.
+   * 
+   * <p>Used for snakes of new cells, they are not stored in handler.
+   * 
+   * @param snake snake to tighten
+   * @param frame frame to tighten snake at
+   * @throws BoaException if there is too less nodes left
+   */
+  void tighten(Snake snake, int frame) throws BoaException {
+    BOAState prev = BOA_.setThreadQState(state);
+    try {
+      listener.drawPath(snake, frame); // pre tightned snake on path
+      tightenSnake(snake, image.getStack().getProcessor(frame), frame);
+      listener.drawPath(snake, frame); // post tightned snake on path
+    } finally {
+      BOA_.setThreadQState(prev);
+    }
+  }
+
+  /**
+   * Segment live snake of handler at given frame.
+   *
+   * <p>Process all snakes even if frozen to control overlaps (computed for liveSnakes) but do not
+   * store any live snake from frozen snake.
+   *
+   * @param snH handler to process
+   * @param task task tightening live snake of handler, null if it should be tightened here
+   * @param ip image at frame
+   * @param frame current frame
+   * @throws BoaException if all snakes are dead
+   */
+  private void segmentSnake(SnakeHandler snH, Future<?> task, ImageProcessor ip, int frame)
+          throws BoaException {
+    Snake snake = snH.getLiveSnake();
+    if (!snake.alive || frame < snH.getStartFrame()) {
+      return;
+    }
+    if (snH.isSnakeHandlerFrozen()) {
+      // overlaps are tested for liveSnakes (loosen) so update liveSnake to result of
+      // segmentation for frozen snakehandler
+      snH.copyFromFinalToLive(frame);
+      LOGGER.debug("SnakeHandler " + snH.getID() + " is frozen");
+      return;
+    }
+    try {
+      if (task == null) {
+        listener.drawPath(snake, frame); // pre tightned snake on path
+        tightenSnake(snake, ip, frame);
+      } else {
+        awaitTightening(task);
+      }
+      listener.drawPath(snake, frame); // post tightned snake on path
+      snH.backupLiveSnake(frame);
+      Snake out = listener.processSnake(snake);
+      snH.storeThisSnake(out, frame); // store resulting snake as final
+    } catch (QuimpPluginException qpe) {
+      qpe.setMessageSinkType(MessageSinkTypes.NONE);
+      listener.log(qpe.handleException(null, "Error in filter module"));
+      snH.storeLiveSnake(frame); // store segmented nonmodified
+    } catch (BoaException be) { // from tighten
+      listener.drawPath(snake, frame); // failed position
+      snH.storeLiveSnake(frame);
+      snH.backupLiveSnake(frame);
+      state.nest.kill(snH);
+      snake.unfreezeAll();
+      be.setMessageSinkType(MessageSinkTypes.NONE);
+      listener.log(be.handleException(null,
+              "Snake " + snake.getSnakeID() + " died, frame " + frame));
+      if (state.nest.allDead()) { // end of processing (see condition in catch)
+        throw new BoaException("All snakes dead: " + be.getMessage(), frame, 1);
+      }
+    }
+  }
+
+  /**
+   * Tighten concurrently all snakes of frame that would be tightened by
+   * {@link #segmentSnake(SnakeHandler, Future, ImageProcessor, int)}.
+   * 
+   * <p>Each task modifies only its own liveSnake and only reads parameters from {@link #state},
+   * which are not changed during segmentation. Nodes are traversed in direction chosen by the snake
+   * itself, there is no direction shared between snakes. Plugins and storing results are not run
+   * here because they share state between snakes.
+   * 
+   * @param pool pool to run on, can be null
+   * @param ip image at frame
+   * @param frame current frame
+   * @return list of size of {@link Nest} with tasks for snakes being tightened or null for other
+   *         snakes or if pool is null
+   */
+  private List<Future<?>> tightenNest(ExecutorService pool, ImageProcessor ip, int frame) {
+    List<Future<?>> ret = new ArrayList<>(Collections.nCopies(state.nest.size(), null));
+    if (pool == null) {
+      return ret;
+    }
+    for (int s = 0; s < state.nest.size(); s++) {
+      SnakeHandler snH = state.nest.getHandler(s);
+      Snake snake = snH.getLiveSnake();
+      if (!snake.alive || frame < snH.getStartFrame() || snH.isSnakeHandlerFrozen()) {
+        continue;
+      }
+      ret.set(s, pool.submit(() -> {
+        BOAState prev = BOA_.setThreadQState(state);
+        try {
+          listener.drawPath(snake, frame); // pre tightned snake on path
+          tightenSnake(snake, ip, frame);
+        } finally {
+          BOA_.setThreadQState(prev);
+        }
+        return null;
+      }));
+    }
+    return ret;
+  }
+
+  /**
+   * Wait for snake tightened by {@link #tightenNest(ExecutorService, ImageProcessor, int)}.
+   * 
+   * @param task task to wait for
+   * @throws BoaException exception thrown by tightening
+   */
+  private void awaitTightening(Future<?> task) throws BoaException {
+    try {
+      task.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new BoaException(e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof BoaException) {
+        throw (BoaException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new BoaException(cause);
+    }
+  }
+
+  /**
+   * Wait for all snakes tightened by {@link #tightenNest(ExecutorService, ImageProcessor, int)}.
+   * Errors are ignored.
+   * 
+   * @param tasks tasks to wait for, can be null
+   */
+  private void awaitNest(List<Future<?>> tasks) {
+    if (tasks == null) {
+      return;
+    }
+    for (Future<?> task : tasks) {
+      if (task == null) {
+        continue;
+      }
+      try {
+        task.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (ExecutionException e) {
+        LOGGER.trace(e.getMessage()); // already handled in segmentSnake
+      }
+    }
+  }
+
+  /**
+   * Perform AC segmentation. Tighten snake around object.
+   * 
+   * <p>This method starts with snakes ({@link SnakeHandler#getLiveSnake()} that were blown up by
+   * {@link Constrictor#loosen(Nest, int)} counteracting overlaps. If
+   * {@link BOAState.SegParam#use_previous_snake} was not set, initial snake is produced from
+   * original ROI by {@link Nest#resetForFrame(int)}. Then
+   * {@link Constrictor#constrict(PackedSnake, ImageProcessor)} is called many times, each time
+   * liveSnake is moved slightly. Note that <b>liveSnake</b> is the same for each frame for given
+   * {@link SnakeHandler}, this is why it can be used for seeding next frame.
+   *
+   * @param snake snake to process
+   * @param ip image
+   * @param frame current frame
+   * @throws BoaException if there is too less nodes left
+   * @see SegParam#max_iterations
+   */
+  private void tightenSnake(final Snake snake, ImageProcessor ip, int frame) throws BoaException {
+    SegParam segParam = state.segParam;
+    // snake packed for constrictor, valid until nodes of snake are added or removed
+    PackedSnake packed = null;
+    for (int i = 0; i < segParam.max_iterations; i++) { // iter constrict snake
+      if (i % state.boap.cut_every == 0) {
+        packed = storePacked(packed);
+        snake.cutLoops(); // cut out loops every p.cut_every timesteps
+      }
+      if (i % 10 == 0 && i != 0) {
+        packed = storePacked(packed);
+        snake.correctDistance(true);
+      }
+      if (packed == null) {
+        packed = new PackedSnake(snake);
+      }
+      if (constrictor.constrict(packed, ip)) { // if all nodes frozen
+        break;
+      }
+      if (i % 4 == 0) {
+        packed.store();
+        listener.drawPath(snake, frame); // draw current snake
+      }
+      if ((snake.getNumPoints() / snake.startingNnodes) > state.boap.NMAX) {
+        // if max nodes reached (as % starting) prompt for reset
+        packed = storePacked(packed);
+        if (segParam.use_previous_snake) {
+          throw new BoaException("Frame " + frame + "-max nodes reached " + snake.getNumPoints(),
+                  frame, 1);
+        } else {
+          listener.log("Frame " + frame + "-max nodes reached..continue");
+          break;
+        }
+      }
+    }
+    storePacked(packed);
+    snake.unfreezeAll(); // set freeze tag back to false
+    if (!segParam.expandSnake) { // shrink a bit to get final outline
+      snake.scaleSnake(-segParam.finalShrink, 0.5, false);
+    }
+    snake.cutLoops();
+    snake.cutIntersects();
+  }
+
+  /**
+   * Write packed snake back to its nodes.
+   *
+   * @param packed packed snake, can be null
+   * @return always null, packed snake must be recreated after changes of nodes
+   */
+  private PackedSnake storePacked(PackedSnake packed) {
+    if (packed != null) {
+      packed.store();
+    }
+    return null;
+  }
+
+  /**
+   * Get state of this engine.
+   *
+   * @return configuration and results of segmentation
+   */
+  public BOAState getState() {
+    return state;
+  }
+
+  /**
+   * Segment many stacks concurrently.
+   *
+   * @param engines engines to run, each should process different stack
+   * @param threads number of stacks processed at once
+   * @return results of {@link #run()} in order of engines. Failed segmentations are logged and
+   *         returned as null.
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public static List<BOAState> runBatch(List<BoaEngine> engines, int threads)
+          throws InterruptedException {
+    try {
+      return ParallelTools.map(engines.size(), threads, i -> {
+        try {
+          return engines.get(i).run();
+        } catch (Exception e) {
+          LOGGER.error("Segmentation of " + engines.get(i).image.getTitle() + " failed: "
+                  + e.getMessage(), e);
+          return null;
+        }
+      });
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause()); // errors only, exceptions are caught
+    }
+  }
+}
@@ -2,6 +2,9 @@ package com.github.celldynamics.quimp;
 
 import java.io.FileWriter;
 import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import com.github.celldynamics.quimp.geom.ExtendedVector2d;
 
@@ -31,7 +34,7 @@ public class Constrictor {
    * @param snake Processed snake
    * @param ip Original image
    * @return status of snake (true if it is frozen)
-   * @see BOA_#tightenSnake
+   * @see BoaEngine#run(int, int)
    */
   public boolean constrict(final Snake snake, final ImageProcessor ip) {
 
@@ -44,34 +47,34 @@ public class Constrictor {
       if (!n.isFrozen()) {
 
         // compute F_central
-        tempV.setX(n.getNormal().getX() * BOA_.qState.segParam.f_central);
-        tempV.setY(n.getNormal().getY() * BOA_.qState.segParam.f_central);
+        tempV.setX(n.getNormal().getX() * BOA_.getQState().segParam.f_central);
+        tempV.setY(n.getNormal().getY() * BOA_.getQState().segParam.f_central);
         n.setF_total(tempV);
 
         // compute F_contract
         tempF = contractionForce(n);
-        tempV.setX(tempF.getX() * BOA_.qState.segParam.f_contract);
-        tempV.setY(tempF.getY() * BOA_.qState.segParam.f_contract);
+        tempV.setX(tempF.getX() * BOA_.getQState().segParam.f_contract);
+        tempV.setY(tempF.getY() * BOA_.getQState().segParam.f_contract);
         n.addF_total(tempV);
 
         // compute F_image and F_friction
         tempF = imageForce(n, ip);
-        tempV.setX(tempF.getX() * BOA_.qState.segParam.f_image);// - n.getVel().getX() *
+        tempV.setX(tempF.getX() * BOA_.getQState().segParam.f_image);// - n.getVel().getX() *
         // boap.f_friction);
-        tempV.setY(tempF.getY() * BOA_.qState.segParam.f_image);// - n.getVel().getY() *
+        tempV.setY(tempF.getY() * BOA_.getQState().segParam.f_image);// - n.getVel().getY() *
         // boap.f_friction);
         n.addF_total(tempV);
 
         // compute new velocities of the node
-        tempV.setX(BOA_.qState.boap.delta_t * n.getF_total().getX());
-        tempV.setY(BOA_.qState.boap.delta_t * n.getF_total().getY());
+        tempV.setX(BOA_.getQState().boap.delta_t * n.getF_total().getX());
+        tempV.setY(BOA_.getQState().boap.delta_t * n.getF_total().getY());
         n.addVel(tempV);
 
         // store the prelimanary point to move the node to
-        tempV.setX(BOA_.qState.boap.delta_t * n.getVel().getX());
-        tempV.setY(BOA_.qState.boap.delta_t * n.getVel().getY());
+        tempV.setX(BOA_.getQState().boap.delta_t * n.getVel().getX());
+        tempV.setY(BOA_.getQState().boap.delta_t * n.getVel().getY());
         n.setPrelim(tempV); // normal
-        // if (BOA_.qState.segParam.contractingDirection == true) {
+        // if (BOA_.getQState().segParam.contractingDirection == true) {
         // n.setPrelim(tempV); // normal
         // } else {
         // if (n.isFrozen()) {
@@ -82,10 +85,10 @@ public class Constrictor {
         // }
 
         // add some friction
-        n.getVel().multiply(BOA_.qState.boap.f_friction);
+        n.getVel().multiply(BOA_.getQState().boap.f_friction);
 
         // freeze node if vel is below velCrit
-        if (n.getVel().length() < BOA_.qState.segParam.vel_crit) {
+        if (n.getVel().length() < BOA_.getQState().segParam.vel_crit) {
           snake.freezeNode(n);
         }
       }
@@ -99,11 +102,211 @@ public class Constrictor {
       n = n.getNext();
     } while (!n.isHead());
 
-    snake.updateNormals(BOA_.qState.segParam.expandSnake);
+    snake.updateNormals(BOA_.getQState().segParam.expandSnake);
 
     return snake.isFrozen(); // true if all nodes frozen
   }
 
+  /**
+   * Compute force power and moves nodes of packed snake by predefined step.
+   * 
+   * <p>Equivalent of {@link #constrict(Snake, ImageProcessor)} working on primitive arrays. Produces
+   * the same node positions, velocities and normals but does not allocate memory. Nodes of original
+   * {@link Snake} are not modified until {@link PackedSnake#store()}.
+   * 
+   * @param snake Processed snake
+   * @param ip Original image
+   * @return status of snake (true if it is frozen)
+   * @see BoaEngine#run(int, int)
+   */
+  public boolean constrict(final PackedSnake snake, final ImageProcessor ip) {
+    final BOAState state = BOA_.getQState();
+    final double fcentral = state.segParam.f_central;
+    final double fcontract = state.segParam.f_contract;
+    final double fimage = state.segParam.f_image;
+    final double velcrit = state.segParam.vel_crit;
+    final double deltat = state.boap.delta_t;
+    final double friction = state.boap.f_friction;
+    final int size = snake.size;
+    final double[] x = snake.x;
+    final double[] y = snake.y;
+    final double[] vx = snake.vx;
+    final double[] vy = snake.vy;
+    final double[] fx = snake.fx;
+    final double[] fy = snake.fy;
+    double[] tmp = new double[2]; // image force and unit vectors
+
+    for (int i = 0; i < size; i++) { // compute F_total
+      if (snake.frozen.get(i)) {
+        continue;
+      }
+      int prev = i == 0 ? size - 1 : i - 1;
+      int next = i == size - 1 ? 0 : i + 1;
+      // compute F_central
+      fx[i] = snake.nx[i] * fcentral;
+      fy[i] = snake.ny[i] * fcentral;
+
+      // compute F_contract, unit vectors pointing to the left and right neighbours
+      unitVector(x[i], y[i], x[prev], y[prev], tmp);
+      double lx = tmp[0];
+      double ly = tmp[1];
+      unitVector(x[i], y[i], x[next], y[next], tmp);
+      fx[i] = fx[i] + ((tmp[0] + lx) * 0.5) * fcontract;
+      fy[i] = fy[i] + ((tmp[1] + ly) * 0.5) * fcontract;
+
+      // compute F_image
+      imageForce(snake, i, ip, state.segParam, tmp);
+      fx[i] = fx[i] + tmp[0] * fimage;
+      fy[i] = fy[i] + tmp[1] * fimage;
+
+      // compute new velocities of the node
+      vx[i] = vx[i] + deltat * fx[i];
+      vy[i] = vy[i] + deltat * fy[i];
+
+      // store the prelimanary point to move the node to
+      snake.px[i] = deltat * vx[i];
+      snake.py[i] = deltat * vy[i];
+
+      // add some friction
+      vx[i] *= friction;
+      vy[i] *= friction;
+
+      // freeze node if vel is below velCrit
+      if (Math.sqrt(vx[i] * vx[i] + vy[i] * vy[i]) < velcrit) {
+        snake.frozen.set(i);
+        snake.frozenCount++;
+      }
+    }
+
+    // update all nodes to new positions
+    for (int i = 0; i < size; i++) {
+      x[i] = x[i] + snake.px[i];
+      y[i] = y[i] + snake.py[i];
+      snake.px[i] = 0;
+      snake.py[i] = 0;
+    }
+
+    updateNormals(snake, state.segParam.expandSnake, tmp);
+
+    return snake.isFrozen(); // true if all nodes frozen
+  }
+
+  /**
+   * Update normals and tangents of packed snake.
+   * 
+   * @param snake snake to process
+   * @param inner direction of normals
+   * @param tmp temporary array of size 2
+   * @see PointsList#updateNormale(boolean)
+   */
+  private void updateNormals(final PackedSnake snake, boolean inner, double[] tmp) {
+    final int size = snake.size;
+    final double[] x = snake.x;
+    final double[] y = snake.y;
+    for (int i = 0; i < size; i++) {
+      int prev = i == 0 ? size - 1 : i - 1;
+      int next = i == size - 1 ? 0 : i + 1;
+      unitVector(x[i], y[i], x[prev], y[prev], tmp);
+      double leftx = x[i] + tmp[0];
+      double lefty = y[i] + tmp[1];
+      unitVector(x[i], y[i], x[next], y[next], tmp);
+      double rightx = x[i] + tmp[0];
+      double righty = y[i] + tmp[1];
+      unitVector(leftx, lefty, rightx, righty, tmp);
+      snake.tx[i] = tmp[0];
+      snake.ty[i] = tmp[1];
+      if (!inner) { // switch around if expanding snake
+        snake.nx[i] = -tmp[1];
+        snake.ny[i] = tmp[0];
+      } else {
+        snake.nx[i] = tmp[1];
+        snake.ny[i] = -tmp[0];
+      }
+    }
+  }
+
+  /**
+   * Unit vector from a to b.
+   * 
+   * @param ax x of a
+   * @param ay y of a
+   * @param bx x of b
+   * @param by y of b
+   * @param out output [x, y]
+   * @see ExtendedVector2d#unitVector(ExtendedVector2d, ExtendedVector2d)
+   */
+  private static void unitVector(double ax, double ay, double bx, double by, double[] out) {
+    double vx = bx - ax;
+    double vy = by - ay;
+    double length = Math.sqrt(vx * vx + vy * vy);
+    if (length != 0) {
+      vx = vx / length;
+      vy = vy / length;
+    }
+    out[0] = vx;
+    out[1] = vy;
+  }
+
+  /**
+   * Calculate image force for node of packed snake.
+   * 
+   * @param snake snake
+   * @param n index of node
+   * @param ip image
+   * @param segParam segmentation parameters
+   * @param out image force at node [x, y]
+   * @see #imageForce(Node, ImageProcessor)
+   */
+  private void imageForce(final PackedSnake snake, int n, final ImageProcessor ip,
+          final BOAState.SegParam segParam, double[] out) {
+    int i;
+    int j; // loop vars
+    double a = 0.75; // subsampling factor
+    double deltaI; // intensity contrast
+    double x;
+    double y; // co-ordinates of the norm
+    double xt;
+    double yt; // co-ordinates of the tangent
+    int insideI = 0;
+    int outsideI = 0; // Intensity of neighbourhood of a node (insde/outside of the chain)
+    int inI = 0;
+    int outI = 0; // number of pixels in the neighbourhood of a node
+    final double px = snake.x[n];
+    final double py = snake.y[n];
+    final double nx = snake.nx[n];
+    final double ny = snake.ny[n];
+    final int sampleTan = segParam.sample_tan;
+    final int sampleNorm = segParam.sample_norm;
+
+    for (i = 0; i <= 1. / a * sampleTan; i++) {
+      // determine points on the tangent
+      xt = px + (a * i - sampleTan / 2) * snake.tx[n];
+      yt = py + (a * i - sampleTan / 2) * snake.ty[n];
+
+      for (j = 0; j <= 1. / a * sampleNorm / 2; ++j) {
+        x = xt + a * j * nx;
+        y = yt + a * j * ny;
+
+        insideI += ip.getPixel((int) x, (int) y);
+        inI++;
+
+        x = xt - a * j * nx;
+        y = yt - a * j * ny;
+
+        outsideI += ip.getPixel((int) x, (int) y);
+        outI++;
+      }
+    }
+
+    deltaI = ((double) insideI / inI - (double) outsideI / outI) / 255.;
+    out[0] = 0;
+    out[1] = 0;
+    if (deltaI > 0.) { // else remains at zero
+      out[0] = -Math.sqrt(deltaI) * nx;
+      out[1] = -Math.sqrt(deltaI) * ny;
+    }
+  }
+
   /**
    * constrictWrite.
    * 
@@ -126,8 +329,8 @@ public class Constrictor {
         // if (!n.isFrozen()) {
 
         // compute F_central
-        tempV.setX(n.getNormal().getX() * BOA_.qState.segParam.f_central);
-        tempV.setY(n.getNormal().getY() * BOA_.qState.segParam.f_central);
+        tempV.setX(n.getNormal().getX() * BOA_.getQState().segParam.f_central);
+        tempV.setY(n.getNormal().getY() * BOA_.getQState().segParam.f_central);
         pw.print("\n" + n.getTrackNum() + "," + tempV.length() + ",");
         n.setF_total(tempV);
 
@@ -138,35 +341,35 @@ public class Constrictor {
         } else {
           pw.print((tempF.length() * -1) + ",");
         }
-        tempV.setX(tempF.getX() * BOA_.qState.segParam.f_contract);
-        tempV.setY(tempF.getY() * BOA_.qState.segParam.f_contract);
+        tempV.setX(tempF.getX() * BOA_.getQState().segParam.f_contract);
+        tempV.setY(tempF.getY() * BOA_.getQState().segParam.f_contract);
         n.addF_total(tempV);
 
         // compute F_image and F_friction
         tempF = imageForce(n, ip);
         pw.print((tempF.length() * -1) + ",");
-        tempV.setX(tempF.getX() * BOA_.qState.segParam.f_image);// - n.getVel().getX()*
+        tempV.setX(tempF.getX() * BOA_.getQState().segParam.f_image);// - n.getVel().getX()*
         // boap.f_friction);
-        tempV.setY(tempF.getY() * BOA_.qState.segParam.f_image);// - n.getVel().getY()*
+        tempV.setY(tempF.getY() * BOA_.getQState().segParam.f_image);// - n.getVel().getY()*
         // boap.f_friction);
         n.addF_total(tempV);
         pw.print(n.getF_total().length() + "");
 
         // compute new velocities of the node
-        tempV.setX(BOA_.qState.boap.delta_t * n.getF_total().getX());
-        tempV.setY(BOA_.qState.boap.delta_t * n.getF_total().getY());
+        tempV.setX(BOA_.getQState().boap.delta_t * n.getF_total().getX());
+        tempV.setY(BOA_.getQState().boap.delta_t * n.getF_total().getY());
         n.addVel(tempV);
 
         // add some friction
-        n.getVel().multiply(BOA_.qState.boap.f_friction);
+        n.getVel().multiply(BOA_.getQState().boap.f_friction);
 
         // store the prelimanary point to move the node to
-        tempV.setX(BOA_.qState.boap.delta_t * n.getVel().getX());
-        tempV.setY(BOA_.qState.boap.delta_t * n.getVel().getY());
+        tempV.setX(BOA_.getQState().boap.delta_t * n.getVel().getX());
+        tempV.setY(BOA_.getQState().boap.delta_t * n.getVel().getY());
         n.setPrelim(tempV);
 
         // freeze node if vel is below velCrit
-        if (n.getVel().length() < BOA_.qState.segParam.vel_crit) {
+        if (n.getVel().length() < BOA_.getQState().segParam.vel_crit) {
           snake.freezeNode(n);
         }
         // }
@@ -180,7 +383,7 @@ public class Constrictor {
         n = n.getNext();
       } while (!n.isHead());
 
-      snake.updateNormals(BOA_.qState.segParam.expandSnake);
+      snake.updateNormals(BOA_.getQState().segParam.expandSnake);
 
       pw.close();
       return snake.isFrozen(); // true if all nodes frozen
@@ -239,12 +442,12 @@ public class Constrictor {
 
     // determine num pixels and total intensity of neighbourhood: a rectangle with sampleTan x
     // sampleNorm
-    for (i = 0; i <= 1. / a * BOA_.qState.segParam.sample_tan; i++) {
+    for (i = 0; i <= 1. / a * BOA_.getQState().segParam.sample_tan; i++) {
       // determine points on the tangent
-      xt = n.getPoint().getX() + (a * i - BOA_.qState.segParam.sample_tan / 2) * tan.getX();
-      yt = n.getPoint().getY() + (a * i - BOA_.qState.segParam.sample_tan / 2) * tan.getY();
+      xt = n.getPoint().getX() + (a * i - BOA_.getQState().segParam.sample_tan / 2) * tan.getX();
+      yt = n.getPoint().getY() + (a * i - BOA_.getQState().segParam.sample_tan / 2) * tan.getY();
 
-      for (j = 0; j <= 1. / a * BOA_.qState.segParam.sample_norm / 2; ++j) {
+      for (j = 0; j <= 1. / a * BOA_.getQState().segParam.sample_norm / 2; ++j) {
         x = xt + a * j * n.getNormal().getX();
         y = yt + a * j * n.getNormal().getY();
 
@@ -291,36 +494,14 @@ public class Constrictor {
     Snake snakeA;
     Snake snakeB;
 
-    double[][] prox = computeProxMatrix(nest);
+    List<int[]> pairs = findProxPairs(nest);
     // will be negative if blowup is <0
-    double stepSize = 0.1 * Math.signum(BOA_.qState.segParam.blowup);
-    double steps = (double) BOA_.qState.segParam.blowup / stepSize; // always positive
+    double stepSize = 0.1 * Math.signum(BOA_.getQState().segParam.blowup);
+    double steps = (double) BOA_.getQState().segParam.blowup / stepSize; // always positive
 
     for (int i = 0; i < steps; i++) {
       // check for contacts, freeze nodes in contact.
-      // Ignore snakes that begin after 'frame'
-      for (int si = 0; si < nestSize; si++) {
-        // if (nest.getHandler(si).isSnakeHandlerFrozen()) {
-        // continue;
-        // }
-        snakeA = nest.getHandler(si).getLiveSnake();
-        if (!snakeA.alive || frame < nest.getHandler(si).getStartFrame()) {
-          continue;
-        }
-        for (int sj = si + 1; sj < nestSize; sj++) {
-          snakeB = nest.getHandler(sj).getLiveSnake();
-          if (!snakeB.alive || frame < nest.getHandler(si).getStartFrame()) {
-            continue;
-          }
-          // proximity is computed for centroids, this is limit below we test for contact.
-          // if snake is big enough it can be not tested even if interact with other
-          if (prox[si][sj] > BOA_.qState.boap.proximity) {
-            continue; // snakes far away, assume no chance that they will interact
-          }
-          freezeProx(snakeA, snakeB);
-        }
-
-      }
+      freezeProxPairs(nest, frame, pairs);
 
       // scale up all snakes by one step (if node not frozen, or dead) unless they start at this
       // frame or after
@@ -345,98 +526,120 @@ public class Constrictor {
    * @throws BoaException on error
    */
   public void freezeProxSnakes(final Nest nest, int frame) throws BoaException {
-    int nestSize = nest.size();
-    Snake snakeA;
-    Snake snakeB;
-
-    double[][] prox = computeProxMatrix(nest);
+    freezeProxPairs(nest, frame, findProxPairs(nest));
+  }
 
-    // check for contacts, freeze nodes in contact.
-    // Ignore snakes that begin after 'frame'
-    for (int si = 0; si < nestSize; si++) {
-      snakeA = nest.getHandler(si).getLiveSnake();
+  /**
+   * Freeze nodes in contact for given pairs of snakes.
+   * 
+   * <p>Snakes that are dead or begin after <tt>frame</tt> are ignored. Segments of each snake are
+   * indexed once per call, so snakes can not be moved during it.
+   * 
+   * @param nest nest to process
+   * @param frame current frame
+   * @param pairs pairs of indexes of snakes in nest, from {@link #findProxPairs(Nest)}
+   */
+  private void freezeProxPairs(final Nest nest, int frame, List<int[]> pairs) {
+    SegmentGrid[] grids = new SegmentGrid[nest.size()];
+    for (int[] pair : pairs) {
+      int si = pair[0];
+      int sj = pair[1];
+      Snake snakeA = nest.getHandler(si).getLiveSnake();
       if (!snakeA.alive || frame < nest.getHandler(si).getStartFrame()) {
         continue;
       }
-      for (int sj = si + 1; sj < nestSize; sj++) {
-        snakeB = nest.getHandler(sj).getLiveSnake();
-        if (!snakeB.alive || frame < nest.getHandler(si).getStartFrame()) {
-          continue;
-        }
-        // proximity is computed for centroids, this is limit below we test for contact.
-        // if snake is big enough it can be not tested even if interact with other
-        if (prox[si][sj] > BOA_.qState.boap.proximity) {
-          continue; // snakes far away, assume no chance that they will interact
-        }
-        freezeProx(snakeA, snakeB);
+      Snake snakeB = nest.getHandler(sj).getLiveSnake();
+      if (!snakeB.alive || frame < nest.getHandler(si).getStartFrame()) {
+        continue;
       }
-
+      if (grids[sj] == null) {
+        grids[sj] = new SegmentGrid(snakeB, BOA_.getQState().boap.proxFreeze);
+      }
+      freezeProx(snakeA, grids[sj]);
     }
   }
 
   /**
-   * Compute distance between centroids of all snakes in nest.
+   * Find pairs of snakes in nest whose centroids are not further than
+   * {@link BOAState.BOAp#proximity}.
+   * 
+   * <p>Proximity is computed for centroids, this is limit below we test for contact. If snake is
+   * big enough it can be not tested even if interact with other. Centroids are sorted along x and
+   * only those within proximity in x are compared.
    * 
    * @param nest nest to process
-   * @return triangular matrix of centroids distances
+   * @return pairs of indexes {si, sj}, si &lt; sj, sorted by si then sj
    */
-  private double[][] computeProxMatrix(final Nest nest) {
+  List<int[]> findProxPairs(final Nest nest) {
     int nestSize = nest.size();
-    Snake snakeA;
-    Snake snakeB;
-    // dist between snake centroids, triangular
-    double[][] prox = new double[nestSize][nestSize];
-    for (int si = 0; si < nestSize; si++) {
-      snakeA = nest.getHandler(si).getLiveSnake();
-      snakeA.calcCentroid();
-      for (int sj = si + 1; sj < nestSize; sj++) {
-        snakeB = nest.getHandler(sj).getLiveSnake();
-        snakeB.calcCentroid();
-        prox[si][sj] = ExtendedVector2d.lengthP2P(snakeA.getCentroid(), snakeB.getCentroid());
+    double proximity = BOA_.getQState().boap.proximity;
+    ExtendedVector2d[] centroids = new ExtendedVector2d[nestSize];
+    Integer[] order = new Integer[nestSize];
+    for (int s = 0; s < nestSize; s++) {
+      Snake snake = nest.getHandler(s).getLiveSnake();
+      snake.calcCentroid();
+      centroids[s] = snake.getCentroid();
+      order[s] = s;
+    }
+    Arrays.sort(order, (o1, o2) -> Double.compare(centroids[o1].getX(), centroids[o2].getX()));
+    List<int[]> pairs = new ArrayList<>();
+    for (int i = 0; i < nestSize; i++) {
+      ExtendedVector2d ca = centroids[order[i]];
+      for (int j = i + 1; j < nestSize; j++) {
+        ExtendedVector2d cb = centroids[order[j]];
+        if (cb.getX() - ca.getX() > proximity) {
+          break; // all next are further in x
+        }
+        if (ExtendedVector2d.lengthP2P(ca, cb) > proximity) {
+          continue; // snakes far away, assume no chance that they will interact
+        }
+        pairs.add(new int[] { Math.min(order[i], order[j]), Math.max(order[i], order[j]) });
       }
     }
-    return prox;
+    // the same order as for all pairs tested one by one, freezing depends on it
+    pairs.sort((p1, p2) -> p1[0] != p2[0] ? Integer.compare(p1[0], p2[0])
+            : Integer.compare(p1[1], p2[1]));
+    return pairs;
   }
 
   /**
    * Freeze nodes that are close to each other in two snakes.
    * 
    * <p>This method is called for two snakes whose centroids are closer than
-   * {@link BOAState.BOAp#proximity}
+   * {@link BOAState.BOAp#proximity}. For each node of snake <tt>a</tt> segments of snake
+   * <tt>b</tt> are tested in order from head and first segment closer than
+   * {@link BOAState.BOAp#proxFreeze} freezes node and segment. Only segments returned by
+   * {@link SegmentGrid} are tested, other are too far.
    * 
    * @param a snake
-   * @param b snake
+   * @param gridB segments of other snake
    * @see #loosen(Nest, int)
    */
-  private void freezeProx(final Snake a, final Snake b) {
-
-    Node bn;
+  void freezeProx(final Snake a, final SegmentGrid gridB) {
+    Node[] bnodes = gridB.nodes;
+    Snake b = gridB.snake;
+    double proxFreeze = BOA_.getQState().boap.proxFreeze;
     Node an = a.getHead();
     double prox;
 
     do {
-      bn = b.getHead();
-      do {
+      int count = gridB.query(an.getPoint());
+      int[] found = gridB.getFound();
+      for (int k = 0; k < count; k++) {
+        Node bn = bnodes[found[k]];
         if (an.isFrozen() && bn.isFrozen()) {
-          // an = an.getNext();
-          bn = bn.getNext();
           continue;
         }
+        Node bnext = bnodes[(found[k] + 1) % bnodes.length];
         // test proximity and freeze
-        prox = ExtendedVector2d.distPointToSegment(an.getPoint(), bn.getPoint(),
-                bn.getNext().getPoint());
-        if (prox < BOA_.qState.boap.proxFreeze) {
+        prox = ExtendedVector2d.distPointToSegment(an.getPoint(), bn.getPoint(), bnext.getPoint());
+        if (prox < proxFreeze) {
           a.freezeNode(an);
           b.freezeNode(bn);
-          b.freezeNode(bn.getNext());
-          // an.freeze();
-          // bn.freeze(); // FIXME using this will exclude Snake.FREEZE from updating. Use from
-          // Snake
-          // bn.getNext().freeze();
+          b.freezeNode(bnext);
           break;
         }
-        bn = bn.getNext();
-      } while (!bn.isHead());
+      }
 
       an = an.getNext();
     } while (!an.isHead());
@@ -294,12 +294,12 @@ public class Nest implements IQuimpSerialize {
       File statsFile;
       outputH = new OutlineHandler(sh);
       if (saveStats == true) { // compatibility with old (#263), reread snakes from snQP
-        statsFile = new File(BOA_.qState.boap.deductStatsFileName(sh.getID()));
+        statsFile = new File(BOA_.getQState().boap.deductStatsFileName(sh.getID()));
       } else { // new approach store all in QCONF
         statsFile = null;
       }
       CellStatsEval tmp = new CellStatsEval(outputH, oi, statsFile,
-              BOA_.qState.boap.getImageScale(), BOA_.qState.boap.getImageFrameInterval());
+              BOA_.getQState().boap.getImageScale(), BOA_.getQState().boap.getImageFrameInterval());
       ret.add(tmp);
     }
     return ret;
@@ -239,4 +239,13 @@ public class Node extends PointsList<Node> {
     prelimPoint.setX(v.getX());
     prelimPoint.setY(v.getY());
   }
+
+  /**
+   * Getter to prelimPoint field.
+   * 
+   * @return prelimPoint
+   */
+  public ExtendedVector2d getPrelim() {
+    return prelimPoint;
+  }
 }
\ No newline at end of file
@@ -660,7 +660,7 @@ public class Outline extends Shape<Vert> implements Cloneable, IQuimpSerialize {
   public boolean cutSelfIntersects() {
     boolean icut = false;
     int interval;
-    int state;
+    int cut;
 
     Vert na;
     Vert nb;
@@ -668,48 +668,47 @@ public class Outline extends Shape<Vert> implements Cloneable, IQuimpSerialize {
     Vert newN;
 
     boolean cutHead;
+    // only edges close to each other are tested, rebuilt after each cut
+    SelfIntersectionFinder<Vert> finder = new SelfIntersectionFinder<>(head);
 
     na = head;
     do {
       cutHead = (na.getNext().isHead()) ? true : false;
-      nb = na.getNext().getNext(); // don't check the next one along! they touch, not overlap
       interval = (POINTS > 6) ? POINTS / 2 : 2; // always leave 3 nodes, at least. Check half way
-      for (int i = 2; i < interval; i++) {
-        if (nb.isHead()) {
-          cutHead = true;
-        }
-        intersect = new double[2];
-        state = ExtendedVector2d.segmentIntersection(na.getX(), na.getY(), na.getNext().getX(),
-                na.getNext().getY(), nb.getX(), nb.getY(), nb.getNext().getX(), nb.getNext().getY(),
-                intersect);
-
-        if (state == 1) {
-          icut = true;
-          newN = this.insertInterpolatedVert(na);
-          newN.setX(intersect[0]);
-          newN.setY(intersect[1]);
-
-          newN.setNext(nb.getNext());
-          nb.getNext().setPrev(newN);
-
-          newN.updateNormale(true);
-          nb.getNext().updateNormale(true);
-
-          if (cutHead) {
-            // System.out.println("cut the head");
-            newN.setHead(true); // put a new head in
-            head = newN;
+      // don't check the next one along! they touch, not overlap
+      cut = finder.findIntersection(na, interval, intersect);
+      if (cut > 0) {
+        nb = na.getNext();
+        for (int i = 2; i <= cut; i++) {
+          nb = nb.getNext();
+          if (nb.isHead()) {
+            cutHead = true;
           }
+        }
+        icut = true;
+        newN = this.insertInterpolatedVert(na);
+        newN.setX(intersect[0]);
+        newN.setY(intersect[1]);
 
-          // newN.print("inserted node: ");
-          // System.out.println("C - VERTS : " + VERTS);
-          if (POINTS - (i) < 3) {
-            LOGGER.warn("OUTLINE 594_VERTS WILL BE than 3. i = " + i + ", VERT=" + POINTS);
-          }
-          POINTS -= (i);
-          break;
+        newN.setNext(nb.getNext());
+        nb.getNext().setPrev(newN);
+
+        newN.updateNormale(true);
+        nb.getNext().updateNormale(true);
+
+        if (cutHead) {
+          // System.out.println("cut the head");
+          newN.setHead(true); // put a new head in
+          head = newN;
+        }
+
+        // newN.print("inserted node: ");
+        // System.out.println("C - VERTS : " + VERTS);
+        if (POINTS - (cut) < 3) {
+          LOGGER.warn("OUTLINE 594_VERTS WILL BE than 3. i = " + cut + ", VERT=" + POINTS);
         }
-        nb = nb.getNext();
+        POINTS -= (cut);
+        finder = new SelfIntersectionFinder<>(head);
       }
       na = na.getNext();
     } while (!na.isHead());
@@ -0,0 +1,183 @@
+package com.github.celldynamics.quimp;
+
+import java.util.BitSet;
+
+/**
+ * Snake nodes packed into primitive arrays for {@link Constrictor}.
+ *
+ * <p>Holds coordinates, normals, tangents, velocities, forces and preliminary moves of all nodes
+ * of {@link Snake} in parallel arrays ordered from head. Used by
+ * {@link Constrictor#constrict(PackedSnake, ij.process.ImageProcessor)} to iterate snake without
+ * walking linked list and allocating vectors for every node.
+ *
+ * <p>Packed snake keeps references to original nodes. Any operation that changes list of nodes in
+ * {@link Snake} (e.g. {@link Snake#cutLoops()}, {@link Snake#correctDistance(boolean)}) requires
+ * {@link #store()} before and new packing after.
+ *
+ * @author p.baniukiewicz
+ * @see BoaEngine#run(int, int)
+ */
+public class PackedSnake {
+
+  /**
+   * Packed snake.
+   */
+  final Snake snake;
+  /**
+   * Nodes of snake in order from head.
+   */
+  final Node[] nodes;
+  /**
+   * Number of nodes.
+   */
+  final int size;
+  /**
+   * Coordinates.
+   */
+  final double[] x;
+  /**
+   * Coordinates.
+   */
+  final double[] y;
+  /**
+   * Normals.
+   */
+  final double[] nx;
+  /**
+   * Normals.
+   */
+  final double[] ny;
+  /**
+   * Tangents.
+   */
+  final double[] tx;
+  /**
+   * Tangents.
+   */
+  final double[] ty;
+  /**
+   * Velocities.
+   */
+  final double[] vx;
+  /**
+   * Velocities.
+   */
+  final double[] vy;
+  /**
+   * Total forces.
+   */
+  final double[] fx;
+  /**
+   * Total forces.
+   */
+  final double[] fy;
+  /**
+   * Preliminary moves.
+   */
+  final double[] px;
+  /**
+   * Preliminary moves.
+   */
+  final double[] py;
+  /**
+   * Frozen nodes.
+   */
+  final BitSet frozen;
+  /**
+   * Number of frozen nodes.
+   */
+  int frozenCount;
+
+  /**
+   * Pack snake.
+   *
+   * @param snake snake to pack
+   */
+  public PackedSnake(Snake snake) {
+    this.snake = snake;
+    size = snake.getNumPoints();
+    nodes = new Node[size];
+    x = new double[size];
+    y = new double[size];
+    nx = new double[size];
+    ny = new double[size];
+    tx = new double[size];
+    ty = new double[size];
+    vx = new double[size];
+    vy = new double[size];
+    fx = new double[size];
+    fy = new double[size];
+    px = new double[size];
+    py = new double[size];
+    frozen = new BitSet(size);
+    frozenCount = 0;
+    Node n = snake.getHead();
+    int i = 0;
+    do {
+      nodes[i] = n;
+      x[i] = n.getX();
+      y[i] = n.getY();
+      nx[i] = n.normal.getX();
+      ny[i] = n.normal.getY();
+      tx[i] = n.tan.getX();
+      ty[i] = n.tan.getY();
+      vx[i] = n.getVel().getX();
+      vy[i] = n.getVel().getY();
+      fx[i] = n.getF_total().getX();
+      fy[i] = n.getF_total().getY();
+      px[i] = n.getPrelim().getX();
+      py[i] = n.getPrelim().getY();
+      if (n.isFrozen()) {
+        frozen.set(i);
+        frozenCount++;
+      }
+      n = n.getNext();
+      i++;
+    } while (!n.isHead());
+  }
+
+  /**
+   * Write packed data back to nodes of snake.
+   *
+   * <p>Nodes frozen in packed snake are frozen by {@link Snake#freezeNode(Node)}.
+   */
+  public void store() {
+    for (int i = 0; i < size; i++) {
+      Node n = nodes[i];
+      n.setX(x[i]);
+      n.setY(y[i]);
+      n.normal.setX(nx[i]);
+      n.normal.setY(ny[i]);
+      n.tan.setX(tx[i]);
+      n.tan.setY(ty[i]);
+      n.getVel().setX(vx[i]);
+      n.getVel().setY(vy[i]);
+      n.getF_total().setX(fx[i]);
+      n.getF_total().setY(fy[i]);
+      n.getPrelim().setX(px[i]);
+      n.getPrelim().setY(py[i]);
+      if (frozen.get(i)) {
+        snake.freezeNode(n);
+      }
+    }
+  }
+
+  /**
+   * Check if all nodes are frozen.
+   *
+   * @return true if all nodes are frozen
+   * @see Snake#isFrozen()
+   */
+  public boolean isFrozen() {
+    return frozenCount == size;
+  }
+
+  /**
+   * Get packed snake.
+   *
+   * @return snake this object was created from
+   */
+  public Snake getSnake() {
+    return snake;
+  }
+}
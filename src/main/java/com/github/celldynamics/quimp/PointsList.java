@@ -56,10 +56,6 @@ public abstract class PointsList<T extends PointsList<T>> {
    */
   protected boolean head = false;
 
-  /**
-   * The clockwise. access clockwise if true.
-   */
-  private static boolean clockwise = true;
   /**
    * ID number of point, unique across list. Given during adding point to list, controlled by
    * Shape
@@ -240,15 +236,6 @@ public abstract class PointsList<T extends PointsList<T>> {
     point.setY(y);
   }
 
-  /**
-   * Sets the clockwise.
-   *
-   * @param b the new clockwise
-   */
-  public static void setClockwise(boolean b) {
-    PointsList.clockwise = b;
-  }
-
   /**
    * Gets the point.
    *
@@ -348,55 +335,39 @@ public abstract class PointsList<T extends PointsList<T>> {
   }
 
   /**
-   * Get previous node in chain (next if not clockwise).
+   * Get previous node in chain.
    * 
-   * @return next or previous Node from list
+   * @return previous Node from list
    */
   public T getPrev() {
-    if (clockwise) {
-      return prev;
-    } else {
-      return next;
-    }
+    return prev;
   }
 
   /**
-   * Get next node in chain (previous if not clockwise).
+   * Get next node in chain.
    * 
-   * @return previous or next Node from list
+   * @return next Node from list
    */
   public T getNext() {
-    if (clockwise) {
-      return next;
-    } else {
-      return prev;
-    }
+    return next;
   }
 
   /**
-   * Adds previous (or next if not clockwise) Node to list.
+   * Adds previous Node to list.
    * 
    * @param n Node to add
    */
   public void setPrev(T n) {
-    if (clockwise) {
-      prev = n;
-    } else {
-      next = n;
-    }
+    prev = n;
   }
 
   /**
-   * Adds next (or previous if not clockwise) Node to list.
+   * Adds next Node to list.
    * 
    * @param n Node to add
    */
   public void setNext(T n) {
-    if (clockwise) {
-      next = n;
-    } else {
-      prev = n;
-    }
+    next = n;
   }
 
   /**
@@ -405,9 +376,7 @@ public abstract class PointsList<T extends PointsList<T>> {
    * @param inner inner
    */
   public void updateNormale(boolean inner) {
-    boolean c = clockwise;
-    clockwise = true; // just in case
-    tan = calcTan(); // tangent
+    tan = calcTan(); // tangent, does not depend on clockwise
 
     if (!inner) { // switch around if expanding snake
       normal.setX(-tan.getY());
@@ -416,8 +385,6 @@ public abstract class PointsList<T extends PointsList<T>> {
       normal.setX(tan.getY());
       normal.setY(-tan.getX());
     }
-    clockwise = c;
-
   }
 
   /**
@@ -446,17 +413,6 @@ public abstract class PointsList<T extends PointsList<T>> {
     return ExtendedVector2d.unitVector(pointLeft, pointRight);
   }
 
-  /**
-   * Set direction of list.
-   */
-  public static void randDirection() {
-    if (Math.random() < 0.5) {
-      clockwise = true;
-    } else {
-      clockwise = false;
-    }
-  }
-
   /*
    * (non-Javadoc)
    * 
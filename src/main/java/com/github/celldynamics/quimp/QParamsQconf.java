@@ -10,6 +10,8 @@ import org.slf4j.LoggerFactory;
 import com.github.celldynamics.quimp.BOAState.BOAp;
 import com.github.celldynamics.quimp.filesystem.DataContainer;
 import com.github.celldynamics.quimp.filesystem.FileExtensions;
+import com.github.celldynamics.quimp.filesystem.ColumnarQconf;
+import com.github.celldynamics.quimp.filesystem.QconfSections;
 import com.github.celldynamics.quimp.filesystem.versions.Converter170202;
 import com.github.celldynamics.quimp.utils.QuimpToolsCollection;
 
@@ -55,6 +57,10 @@ public class QParamsQconf extends QParams {
    * in old QuimP). This field allow to set current Handler if QParamsEschange instance is used.
    */
   private int currentHandler;
+  /**
+   * Load modules from QCONF on demand.
+   */
+  private boolean lazy = false;
 
   /**
    * Instantiates a new q params qconf.
@@ -79,6 +85,24 @@ public class QParamsQconf extends QParams {
     paramFormat = QParams.NEW_QUIMP;
   }
 
+  /**
+   * Set default values for superclass, also prefix and path for files.
+   * 
+   * <p>If <tt>lazy</tt> is set, {@link #readParams()} reads file once but restores modules stored
+   * in {@link DataContainer} on first call of their getters. BOA module is not restored on load,
+   * thus <tt>BOA_.qState</tt> and parameters of {@link QParams} that come from BOA are not set
+   * unless BOA is loaded and {@link #setActiveHandler(int)} called. Columnar files (see
+   * {@link ColumnarQconf}) are always loaded completely.
+   * 
+   * @param p <i>QCONF</i> file with extension
+   * @param lazy true for loading modules on demand
+   * @see QconfSections
+   */
+  public QParamsQconf(File p, boolean lazy) {
+    this(p);
+    this.lazy = lazy;
+  }
+
   /**
    * Get configuration file (with path).
    * 
@@ -131,13 +155,22 @@ public class QParamsQconf extends QParams {
     s.registerConverter(new Converter170202<>(QuimP.TOOL_VERSION));
     try {
       // load file and make first check of correctness
-      loaded = s.load(getParamFile()); // try to load
-      // restore qstate because some methods still need it
-      BOA_.qState = getLoadedDataContainer().getBOAState();
-      // update path and file core name
-      if (getLoadedDataContainer().getBOAState() != null) {
-        getLoadedDataContainer().getBOAState().boap
-                .setOutputFileCore(newParamFile.getAbsolutePath());
+      if (lazy && !ColumnarQconf.isColumnarFile(getParamFile())) {
+        QconfSections sections = new QconfSections(getParamFile()); // index modules
+        loaded = s.fromString(sections.getHeader());
+        loaded.obj.setSections(sections, s.gsonBuilder.create());
+        if (sections.isGzip()) {
+          loaded.setGzip();
+        }
+      } else {
+        loaded = s.load(getParamFile()); // try to load
+        // restore qstate because some methods still need it
+        BOA_.qState = getLoadedDataContainer().getBOAState();
+        // update path and file core name
+        if (getLoadedDataContainer().getBOAState() != null) {
+          getLoadedDataContainer().getBOAState().boap
+                  .setOutputFileCore(newParamFile.getAbsolutePath());
+        }
       }
     } catch (Exception e) { // stop on fail (file or json error)
       LOGGER.debug(e.getMessage(), e);
@@ -195,10 +228,16 @@ public class QParamsQconf extends QParams {
       // Serializer
       Serializer<DataContainer> n;
       n = new Serializer<>(getLoadedDataContainer(), QuimP.TOOL_VERSION);
-      if (getLoadedDataContainer().BOAState.boap.savePretty) {
+      if (getLoadedDataContainer().getBOAState().boap.savePretty) {
         // configured
         n.setPretty();
       }
+      if (loaded != null && loaded.isGzip()) { // keep compression of loaded file
+        n.setGzip();
+      }
+      if (loaded != null && loaded.isColumnar()) { // keep format of loaded file
+        n.setColumnar();
+      }
       n.save(getParamFile().getAbsolutePath());
       n = null;
     } catch (FileNotFoundException e) {
@@ -225,7 +264,8 @@ public class QParamsQconf extends QParams {
     super.guessOtherFileNames();
     super.setSnakeQP(getSnakeQP());
     super.setStatsQP(getStatsQP());
-    if (getLoadedDataContainer().getBOAState() != null) {
+    // field is checked to not load BOA if it is loaded on demand
+    if (getLoadedDataContainer().BOAState != null) {
       super.setSegImageFile(getLoadedDataContainer().getBOAState().boap.getOrgFile());
       super.setImageScale(getLoadedDataContainer().getBOAState().boap.getImageScale());
       super.setFrameInterval(getLoadedDataContainer().getBOAState().boap.getImageFrameInterval());
@@ -0,0 +1,232 @@
+package com.github.celldynamics.quimp;
+
+import java.util.Arrays;
+
+import com.github.celldynamics.quimp.geom.ExtendedVector2d;
+
+/**
+ * Uniform grid over segments of {@link Snake}.
+ *
+ * <p>Segment <i>i</i> joins node <i>i</i> and its successor, nodes are numbered from head. Each
+ * segment is registered in all cells covered by its bounding box. Query returns indexes of all
+ * segments that can be closer to given point than range specified on construction, in order of
+ * nodes in snake, so callers can process them exactly as if they walked the whole snake.
+ *
+ * <p>Grid reflects snake at construction time and must be rebuilt if nodes are moved, added or
+ * removed. Frozen status of nodes is not cached.
+ *
+ * @author p.baniukiewicz
+ * @see Constrictor#freezeProxSnakes(Nest, int)
+ */
+class SegmentGrid {
+
+  /**
+   * Maximal average number of cells per segment. Limits memory for large sparse snakes.
+   */
+  private static final int CELLS_PER_SEGMENT = 4;
+
+  /**
+   * Indexed snake.
+   */
+  final Snake snake;
+  /**
+   * Nodes of snake in order from head.
+   */
+  final Node[] nodes;
+  /**
+   * Query range.
+   */
+  private final double range;
+  /**
+   * Origin of grid.
+   */
+  private final double minX;
+  /**
+   * Origin of grid.
+   */
+  private final double minY;
+  /**
+   * Size of square cell.
+   */
+  private final double cellSize;
+  /**
+   * Number of columns.
+   */
+  private final int cols;
+  /**
+   * Number of rows.
+   */
+  private final int rows;
+  /**
+   * Start of each cell in {@link #cellSegments}, length cols * rows + 1.
+   */
+  private final int[] cellStart;
+  /**
+   * Segment indexes stored cell by cell.
+   */
+  private final int[] cellSegments;
+  /**
+   * Last query that returned given segment, used for removing duplicates.
+   */
+  private final int[] stamp;
+  /**
+   * Query counter.
+   */
+  private int queryId = 0;
+  /**
+   * Buffer for query results.
+   */
+  private int[] found;
+
+  /**
+   * Build grid for snake.
+   *
+   * @param snake snake to index
+   * @param range maximal distance between point and segment that will be queried
+   */
+  SegmentGrid(final Snake snake, double range) {
+    this.snake = snake;
+    this.range = range;
+    int size = snake.getNumPoints();
+    nodes = new Node[size];
+    double[] x = new double[size];
+    double[] y = new double[size];
+    Node n = snake.getHead();
+    int i = 0;
+    do {
+      nodes[i] = n;
+      x[i] = n.getX();
+      y[i] = n.getY();
+      n = n.getNext();
+      i++;
+    } while (!n.isHead());
+
+    double mx = Double.POSITIVE_INFINITY;
+    double my = Double.POSITIVE_INFINITY;
+    double maxX = Double.NEGATIVE_INFINITY;
+    double maxY = Double.NEGATIVE_INFINITY;
+    double len = 0;
+    for (i = 0; i < size; i++) {
+      int j = (i + 1) % size;
+      mx = Math.min(mx, x[i]);
+      my = Math.min(my, y[i]);
+      maxX = Math.max(maxX, x[i]);
+      maxY = Math.max(maxY, y[i]);
+      len += Math.max(Math.abs(x[j] - x[i]), Math.abs(y[j] - y[i]));
+    }
+    minX = mx;
+    minY = my;
+    // cell not smaller than query range and average segment, not more cells than limit
+    double cs = Math.max(range, len / size);
+    double area = (maxX - minX) * (maxY - minY);
+    cs = Math.max(cs, Math.sqrt(area / ((double) CELLS_PER_SEGMENT * size)));
+    cellSize = cs > 0 ? cs : 1;
+    cols = (int) ((maxX - minX) / cellSize) + 1;
+    rows = (int) ((maxY - minY) / cellSize) + 1;
+
+    // two passes - count segments in cells then fill
+    cellStart = new int[cols * rows + 1];
+    for (i = 0; i < size; i++) {
+      int j = (i + 1) % size;
+      int c0 = col(Math.min(x[i], x[j]));
+      int c1 = col(Math.max(x[i], x[j]));
+      int r0 = row(Math.min(y[i], y[j]));
+      int r1 = row(Math.max(y[i], y[j]));
+      for (int r = r0; r <= r1; r++) {
+        for (int c = c0; c <= c1; c++) {
+          cellStart[r * cols + c + 1]++;
+        }
+      }
+    }
+    for (int c = 0; c < cols * rows; c++) {
+      cellStart[c + 1] += cellStart[c];
+    }
+    cellSegments = new int[cellStart[cols * rows]];
+    int[] fill = Arrays.copyOf(cellStart, cols * rows);
+    for (i = 0; i < size; i++) {
+      int j = (i + 1) % size;
+      int c0 = col(Math.min(x[i], x[j]));
+      int c1 = col(Math.max(x[i], x[j]));
+      int r0 = row(Math.min(y[i], y[j]));
+      int r1 = row(Math.max(y[i], y[j]));
+      for (int r = r0; r <= r1; r++) {
+        for (int c = c0; c <= c1; c++) {
+          cellSegments[fill[r * cols + c]++] = i;
+        }
+      }
+    }
+    stamp = new int[size];
+    found = new int[16];
+  }
+
+  /**
+   * Column of grid for coordinate, clamped to grid.
+   *
+   * @param x coordinate
+   * @return column
+   */
+  private int col(double x) {
+    return Math.max(0, Math.min(cols - 1, (int) Math.floor((x - minX) / cellSize)));
+  }
+
+  /**
+   * Row of grid for coordinate, clamped to grid.
+   *
+   * @param y coordinate
+   * @return row
+   */
+  private int row(double y) {
+    return Math.max(0, Math.min(rows - 1, (int) Math.floor((y - minY) / cellSize)));
+  }
+
+  /**
+   * Find segments that may be closer to point than range.
+   *
+   * <p>Returned set contains all segments that are closer than range but can contain also further
+   * ones. Result is valid until next call.
+   *
+   * @param p point
+   * @return number of segments found, their indexes are at the beginning of {@link #getFound()} in
+   *         ascending order
+   */
+  int query(ExtendedVector2d p) {
+    // small margin to not lose segments at range due to rounding
+    double r = range * (1 + 1e-9) + 1e-9;
+    if (p.getX() + r < minX || p.getY() + r < minY || p.getX() - r > minX + cols * cellSize
+            || p.getY() - r > minY + rows * cellSize) {
+      return 0;
+    }
+    queryId++;
+    int count = 0;
+    int c0 = col(p.getX() - r);
+    int c1 = col(p.getX() + r);
+    int r0 = row(p.getY() - r);
+    int r1 = row(p.getY() + r);
+    for (int rr = r0; rr <= r1; rr++) {
+      for (int c = c0; c <= c1; c++) {
+        int cell = rr * cols + c;
+        for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+          int s = cellSegments[k];
+          if (stamp[s] != queryId) {
+            stamp[s] = queryId;
+            if (count == found.length) {
+              found = Arrays.copyOf(found, count * 2);
+            }
+            found[count++] = s;
+          }
+        }
+      }
+    }
+    Arrays.sort(found, 0, count);
+    return count;
+  }
+
+  /**
+   * Get result of last query.
+   *
+   * @return buffer with segment indexes, valid entries are given by {@link #query(ExtendedVector2d)}
+   */
+  int[] getFound() {
+    return found;
+  }
+}
@@ -0,0 +1,216 @@
+package com.github.celldynamics.quimp;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+import com.github.celldynamics.quimp.geom.ExtendedVector2d;
+
+/**
+ * Find self intersections of {@link Shape} using uniform grid of its edges.
+ *
+ * <p>Edge <i>k</i> joins node <i>k</i> and its successor, nodes are numbered from head. Each edge
+ * is registered in all grid cells covered by its bounding box, so for given edge only edges in
+ * nearby cells are tested by {@link ExtendedVector2d#segmentIntersection}. Candidates are tested
+ * in the same order as by walking along the shape, thus the first intersection found is the same
+ * as in exhaustive search.
+ *
+ * <p>Index reflects shape at construction time and must be rebuilt after any node is moved, added
+ * or removed.
+ *
+ * @author p.baniukiewicz
+ * @param <T> type of nodes of shape
+ * @see Snake#cutIntersects()
+ * @see Outline#cutSelfIntersects()
+ */
+class SelfIntersectionFinder<T extends PointsList<T>> {
+
+  /**
+   * Maximal average number of cells per edge. Limits memory for large sparse shapes.
+   */
+  private static final int CELLS_PER_EDGE = 4;
+  /**
+   * Margin added to bounding boxes.
+   *
+   * <p>{@link ExtendedVector2d#segmentIntersection} accepts intersections within 1e-5 from
+   * segment ends.
+   */
+  private static final double MARGIN = 1e-3;
+
+  private final int size;
+  private final double[] x;
+  private final double[] y;
+  /**
+   * Position of node in shape counted from head.
+   */
+  private final IdentityHashMap<T, Integer> positions;
+  private final double minX;
+  private final double minY;
+  private final double cellSize;
+  private final int cols;
+  private final int rows;
+  /**
+   * Start of each cell in {@link #cellEdges}.
+   */
+  private final int[] cellStart;
+  /**
+   * Edges stored cell by cell.
+   */
+  private final int[] cellEdges;
+  /**
+   * Last query that returned given edge, used for removing duplicates.
+   */
+  private final int[] stamp;
+  private int queryId = 0;
+  private int[] found = new int[16];
+
+  /**
+   * Index shape.
+   *
+   * @param head head node of shape
+   */
+  SelfIntersectionFinder(T head) {
+    int n = 0;
+    T v = head;
+    do {
+      n++;
+      v = v.getNext();
+    } while (!v.isHead());
+    size = n;
+    x = new double[size];
+    y = new double[size];
+    positions = new IdentityHashMap<>(size);
+    double mnX = Double.POSITIVE_INFINITY;
+    double mnY = Double.POSITIVE_INFINITY;
+    double mxX = Double.NEGATIVE_INFINITY;
+    double mxY = Double.NEGATIVE_INFINITY;
+    v = head;
+    for (int i = 0; i < size; i++) {
+      x[i] = v.getX();
+      y[i] = v.getY();
+      positions.put(v, i);
+      mnX = Math.min(mnX, x[i]);
+      mnY = Math.min(mnY, y[i]);
+      mxX = Math.max(mxX, x[i]);
+      mxY = Math.max(mxY, y[i]);
+      v = v.getNext();
+    }
+    double len = 0;
+    for (int i = 0; i < size; i++) {
+      int j = (i + 1) % size;
+      len += Math.max(Math.abs(x[j] - x[i]), Math.abs(y[j] - y[i]));
+    }
+    minX = mnX;
+    minY = mnY;
+    // cell not smaller than average edge, not more cells than limit
+    double cs = Math.max(len / size,
+            Math.sqrt((mxX - minX) * (mxY - minY) / ((double) CELLS_PER_EDGE * size)));
+    cellSize = cs > 0 ? cs : 1;
+    cols = (int) ((mxX - minX) / cellSize) + 1;
+    rows = (int) ((mxY - minY) / cellSize) + 1;
+
+    // two passes - count edges in cells then fill
+    cellStart = new int[cols * rows + 1];
+    for (int i = 0; i < size; i++) {
+      int j = (i + 1) % size;
+      int c0 = col(Math.min(x[i], x[j]));
+      int c1 = col(Math.max(x[i], x[j]));
+      int r0 = row(Math.min(y[i], y[j]));
+      int r1 = row(Math.max(y[i], y[j]));
+      for (int r = r0; r <= r1; r++) {
+        for (int c = c0; c <= c1; c++) {
+          cellStart[r * cols + c + 1]++;
+        }
+      }
+    }
+    for (int c = 0; c < cols * rows; c++) {
+      cellStart[c + 1] += cellStart[c];
+    }
+    cellEdges = new int[cellStart[cols * rows]];
+    int[] fill = Arrays.copyOf(cellStart, cols * rows);
+    for (int i = 0; i < size; i++) {
+      int j = (i + 1) % size;
+      int c0 = col(Math.min(x[i], x[j]));
+      int c1 = col(Math.max(x[i], x[j]));
+      int r0 = row(Math.min(y[i], y[j]));
+      int r1 = row(Math.max(y[i], y[j]));
+      for (int r = r0; r <= r1; r++) {
+        for (int c = c0; c <= c1; c++) {
+          cellEdges[fill[r * cols + c]++] = i;
+        }
+      }
+    }
+    stamp = new int[size];
+  }
+
+  /**
+   * Column of grid for coordinate, clamped to grid.
+   *
+   * @param xc coordinate
+   * @return column
+   */
+  private int col(double xc) {
+    return Math.max(0, Math.min(cols - 1, (int) Math.floor((xc - minX) / cellSize)));
+  }
+
+  /**
+   * Row of grid for coordinate, clamped to grid.
+   *
+   * @param yc coordinate
+   * @return row
+   */
+  private int row(double yc) {
+    return Math.max(0, Math.min(rows - 1, (int) Math.floor((yc - minY) / cellSize)));
+  }
+
+  /**
+   * Find first edge that intersects edge starting at given node.
+   *
+   * <p>Edges are tested in order of their distance from <tt>node</tt> along shape, starting from
+   * second successor. Equivalent of walking along shape and testing each edge.
+   *
+   * @param node first node of tested edge
+   * @param interval limit of distance from <tt>node</tt>, exclusive
+   * @param intersection coordinates of intersection point, set if found
+   * @return distance of first node of intersecting edge from <tt>node</tt> or -1 if not found
+   */
+  int findIntersection(T node, int interval, double[] intersection) {
+    int a = positions.get(node);
+    int an = (a + 1) % size;
+    queryId++;
+    int count = 0;
+    int c0 = col(Math.min(x[a], x[an]) - MARGIN);
+    int c1 = col(Math.max(x[a], x[an]) + MARGIN);
+    int r0 = row(Math.min(y[a], y[an]) - MARGIN);
+    int r1 = row(Math.max(y[a], y[an]) + MARGIN);
+    for (int r = r0; r <= r1; r++) {
+      for (int c = c0; c <= c1; c++) {
+        int cell = r * cols + c;
+        for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+          int e = cellEdges[k];
+          if (stamp[e] == queryId) {
+            continue;
+          }
+          stamp[e] = queryId;
+          int dist = Math.floorMod(e - a, size);
+          if (dist >= 2 && dist < interval) {
+            if (count == found.length) {
+              found = Arrays.copyOf(found, count * 2);
+            }
+            found[count++] = dist;
+          }
+        }
+      }
+    }
+    Arrays.sort(found, 0, count);
+    for (int k = 0; k < count; k++) {
+      int b = (a + found[k]) % size;
+      int bn = (b + 1) % size;
+      int state = ExtendedVector2d.segmentIntersection(x[a], y[a], x[an], y[an], x[b], y[b], x[bn],
+              y[bn], intersection);
+      if (state == 1) {
+        return found[k];
+      }
+    }
+    return -1;
+  }
+}
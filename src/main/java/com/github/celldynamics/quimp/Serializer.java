@@ -1,21 +1,36 @@
 package com.github.celldynamics.quimp;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.Reader;
 import java.io.StringReader;
+import java.io.Writer;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.github.celldynamics.quimp.filesystem.ColumnarQconf;
 import com.github.celldynamics.quimp.filesystem.IQuimpSerialize;
 import com.github.celldynamics.quimp.filesystem.versions.IQconfOlderConverter;
 import com.google.gson.Gson;
@@ -39,6 +54,15 @@ import com.google.gson.JsonSyntaxException;
  * packed in top level structure that contains version of software and wrapped class name. Exemplary
  * use case: SerializerTest#testLoad_1()
  * 
+ * <p>JSON is written to file as it is produced, without building whole string in memory. Files can
+ * be optionally compressed by gzip (see {@link #setGzip()}), compressed files are detected on load
+ * automatically.
+ * 
+ * <p>Alternatively wrapped object can be saved in binary columnar container (see
+ * {@link #setColumnar()} and {@link ColumnarQconf}), where nodes of shapes and large numerical
+ * arrays are stored as primitive columns and the rest as JSON header. This format is also detected
+ * on load.
+ * 
  * <p>There is option to skip call afterSerialzie() or beforeSerialzie() method on class restoring
  * or saving To do so set {@link #doAfterSerialize} to false or {@link #doBeforeSerialize}
  * 
@@ -66,6 +90,11 @@ public class Serializer<T extends IQuimpSerialize> implements ParameterizedType
    */
   static final Logger LOGGER = LoggerFactory.getLogger(Serializer.class.getName());
 
+  /**
+   * Size of buffers used for reading and writing files.
+   */
+  private static final int BUFFER_SIZE = 1 << 16;
+
   /**
    * The gson builder.
    */
@@ -82,6 +111,20 @@ public class Serializer<T extends IQuimpSerialize> implements ParameterizedType
    * <p>Rather for tests as {@link IQuimpSerialize#beforeSerialize()} is always required.
    */
   protected transient boolean doBeforeSerialize;
+  /**
+   * Indicates if file is gzip compressed. Set on save by {@link #setGzip()} or on load if loaded
+   * file was compressed.
+   */
+  private transient boolean gzip = false;
+  /**
+   * Indicates if file is binary columnar container. Set on save by {@link #setColumnar()} or on
+   * load if loaded file was columnar.
+   */
+  private transient boolean columnar = false;
+  /**
+   * Adapters for columnar container, registered in {@link #gsonBuilder} on first use.
+   */
+  private transient ColumnarQconf.Factory columnarFactory;
 
   /**
    * Name of wrapped class, decoded from object.
@@ -167,22 +210,73 @@ public class Serializer<T extends IQuimpSerialize> implements ParameterizedType
   /**
    * Save wrapped object passed in constructor as JSON file.
    * 
-   * <p>Calls {@link IQuimpSerialize#beforeSerialize()} before save.
+   * <p>Calls {@link IQuimpSerialize#beforeSerialize()} before save. JSON is streamed to file
+   * directly, compressed if {@link #setGzip()} was called. If {@link #setColumnar()} was called
+   * binary columnar container is written instead.
    * 
    * @param filename Name of file
    * @throws FileNotFoundException if problem with saving
+   * @throws JsonIOException if file can not be written
    * @see com.github.celldynamics.quimp.Serializer#setPretty()
+   * @see com.github.celldynamics.quimp.Serializer#setGzip()
+   * @see com.github.celldynamics.quimp.Serializer#setColumnar()
    * @see com.github.celldynamics.quimp.Serializer#Serializer(IQuimpSerialize, QuimpVersion)
    * @see com.github.celldynamics.quimp.Serializer#toString()
    */
   public void save(final String filename) throws FileNotFoundException {
-    String str;
-    str = toString(); // produce json
+    if (columnar) {
+      saveColumnar(filename);
+      return;
+    }
+    Gson gson = prepareSave();
     LOGGER.debug("Saving at: " + filename);
-    PrintWriter f;
-    f = new PrintWriter(new File(filename));
-    f.print(str);
-    f.close();
+    FileOutputStream fos = new FileOutputStream(new File(filename));
+    try (FileChannel channel = fos.getChannel(); Writer writer = newWriter(channel)) {
+      gson.toJson(this, getClass(), writer); // the same type as in toString()
+    } catch (IOException e) {
+      throw new JsonIOException("File " + filename + " could not be written", e);
+    }
+  }
+
+  /**
+   * Save wrapped object as binary columnar container.
+   * 
+   * <p>Columns are written to file during JSON conversion, header is written at the end.
+   * 
+   * @param filename Name of file
+   * @throws FileNotFoundException if problem with saving
+   * @throws JsonIOException if file can not be written
+   * @see ColumnarQconf
+   */
+  private void saveColumnar(final String filename) throws FileNotFoundException {
+    LOGGER.debug("Saving columnar at: " + filename);
+    FileOutputStream fos = new FileOutputStream(new File(filename));
+    try (FileChannel channel = fos.getChannel()) {
+      ColumnarQconf container = ColumnarQconf.create(channel);
+      Gson gson = prepareSave(container);
+      String header = gson.toJson(this, getClass());
+      container.finish(header);
+    } catch (IOException e) {
+      throw new JsonIOException("File " + filename + " could not be written", e);
+    } finally {
+      getColumnarFactory().setContainer(null);
+    }
+  }
+
+  /**
+   * Create writer for saving file.
+   * 
+   * @param channel channel of file
+   * @return buffered writer, compressed if {@link #gzip} is set
+   * @throws IOException on gzip header write error
+   */
+  private Writer newWriter(FileChannel channel) throws IOException {
+    OutputStream os = Channels.newOutputStream(channel);
+    if (gzip) {
+      os = new GZIPOutputStream(os, BUFFER_SIZE);
+    }
+    // default charset as in previous versions of QCONF
+    return new BufferedWriter(new OutputStreamWriter(os, Charset.defaultCharset()), BUFFER_SIZE);
   }
 
   /**
@@ -222,13 +316,96 @@ public class Serializer<T extends IQuimpSerialize> implements ParameterizedType
   public Serializer<T> load(final File filename)
           throws IOException, JsonSyntaxException, JsonIOException, Exception {
     LOGGER.debug("Loading from: " + filename.getPath());
+    if (ColumnarQconf.isColumnarFile(filename)) {
+      return loadColumnar(filename);
+    }
+    boolean compressed = isGzipFile(filename);
     // gather version from JSON
-    FileReader vr = new FileReader(filename);
-    qconfVersionToLoad = getQconfVersion(vr);
-    vr.close(); // on duplicate to avoid problems with moving pointer
+    try (Reader vr = newReader(filename, compressed)) {
+      qconfVersionToLoad = getQconfVersion(vr);
+    } // on duplicate to avoid problems with moving pointer
+
+    try (Reader f = newReader(filename, compressed)) {
+      Serializer<T> localref = fromReader(f);
+      localref.gzip = compressed;
+      return localref;
+    }
+  }
 
-    FileReader f = new FileReader(filename);
-    return fromReader(f);
+  /**
+   * Load wrapped object from binary columnar container.
+   * 
+   * <p>Header is processed as JSON file, columns are read from memory mapped file when referred.
+   * 
+   * @param filename to load
+   * @return Serialiser object
+   * @throws IOException when file can not be read
+   * @throws Exception any other case
+   * @see ColumnarQconf
+   */
+  private Serializer<T> loadColumnar(final File filename) throws IOException, Exception {
+    try (FileChannel channel = new FileInputStream(filename).getChannel()) {
+      ColumnarQconf container = ColumnarQconf.open(channel);
+      String header = container.getHeader();
+      qconfVersionToLoad = getQconfVersion(new StringReader(header));
+      getColumnarFactory().setContainer(container);
+      Serializer<T> localref = fromReader(new StringReader(header));
+      localref.columnar = true;
+      return localref;
+    } finally {
+      getColumnarFactory().setContainer(null);
+    }
+  }
+
+  /**
+   * Get adapters for columnar container, register them in {@link #gsonBuilder} if necessary.
+   * 
+   * <p>Adapters are inactive until container is set.
+   * 
+   * @return factory of adapters
+   */
+  private ColumnarQconf.Factory getColumnarFactory() {
+    if (columnarFactory == null) {
+      columnarFactory = new ColumnarQconf.Factory();
+      gsonBuilder.registerTypeAdapterFactory(columnarFactory);
+    }
+    return columnarFactory;
+  }
+
+  /**
+   * Check if file is gzip compressed.
+   * 
+   * @param file file to check
+   * @return true if file starts with gzip magic number
+   * @throws IOException on file read error
+   */
+  public static boolean isGzipFile(File file) throws IOException {
+    try (InputStream is = new FileInputStream(file)) {
+      int b0 = is.read();
+      int b1 = is.read();
+      return b0 == (GZIPInputStream.GZIP_MAGIC & 0xff) && b1 == (GZIPInputStream.GZIP_MAGIC >> 8);
+    }
+  }
+
+  /**
+   * Create reader for loading file.
+   * 
+   * @param file file to read
+   * @param compressed true if file is gzip compressed
+   * @return buffered reader
+   * @throws IOException on file read error
+   */
+  private Reader newReader(File file, boolean compressed) throws IOException {
+    InputStream is = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+    try {
+      if (compressed) {
+        is = new GZIPInputStream(is, BUFFER_SIZE);
+      }
+    } catch (IOException e) {
+      is.close();
+      throw e;
+    }
+    return new BufferedReader(new InputStreamReader(is, Charset.defaultCharset()), BUFFER_SIZE);
   }
 
   /**
@@ -362,13 +539,36 @@ public class Serializer<T extends IQuimpSerialize> implements ParameterizedType
    */
   @Override
   public String toString() {
+    Gson gson = prepareSave();
+    return gson.toJson(this);
+  }
+
+  /**
+   * Prepare Gson for saving and call {@link IQuimpSerialize#beforeSerialize()} on wrapped object.
+   * 
+   * @return Gson instance configured for saving
+   */
+  private Gson prepareSave() {
+    return prepareSave(null);
+  }
+
+  /**
+   * Prepare Gson for saving and call {@link IQuimpSerialize#beforeSerialize()} on wrapped object.
+   * 
+   * @param container columnar container used by returned Gson or <tt>null</tt> for plain JSON
+   * @return Gson instance configured for saving
+   */
+  private Gson prepareSave(ColumnarQconf container) {
     // set version to save (read from calee)
     gsonBuilder.setVersion(qconfVersionToSave);
+    if (container != null || columnarFactory != null) {
+      getColumnarFactory().setContainer(container);
+    }
     Gson gson = gsonBuilder.create();
     if (obj != null && doBeforeSerialize == true) {
       obj.beforeSerialize();
     }
-    return gson.toJson(this);
+    return gson;
   }
 
   /**
@@ -440,6 +640,48 @@ public class Serializer<T extends IQuimpSerialize> implements ParameterizedType
     gsonBuilder.setPrettyPrinting();
   }
 
+  /**
+   * Sets gzip compression of file on save operation.
+   * 
+   * <p>Compressed files are recognised by {@link #load(File)} automatically.
+   * 
+   * @see com.github.celldynamics.quimp.Serializer#save(String)
+   */
+  public void setGzip() {
+    gzip = true;
+  }
+
+  /**
+   * Check if file is saved compressed or if loaded file was compressed.
+   * 
+   * @return true if gzip compression is used
+   */
+  public boolean isGzip() {
+    return gzip;
+  }
+
+  /**
+   * Sets binary columnar container format on save operation.
+   * 
+   * <p>Columnar files are recognised by {@link #load(File)} automatically. Gzip compression is not
+   * applied to columnar files.
+   * 
+   * @see ColumnarQconf
+   * @see com.github.celldynamics.quimp.Serializer#save(String)
+   */
+  public void setColumnar() {
+    columnar = true;
+  }
+
+  /**
+   * Check if file is saved as columnar container or if loaded file was columnar.
+   * 
+   * @return true if columnar container is used
+   */
+  public boolean isColumnar() {
+    return columnar;
+  }
+
   /**
    * Read QuimP version from QCONF file.
    * 
@@ -754,7 +754,7 @@ public abstract class Shape<T extends PointsList<T>> implements IQuimpSerialize,
 
     // if removing head randomly assign a neighbour as new head
     if (n.isHead()) {
-      if (Math.random() > threshold) {
+      if (random() > threshold) {
         LOGGER.trace("removePoint - getNext");
         head = n.getNext();
       } else {
@@ -772,6 +772,15 @@ public abstract class Shape<T extends PointsList<T>> implements IQuimpSerialize,
     // n = null;
   }
 
+  /**
+   * Random number used for choosing new head in {@link #removePoint(PointsList, boolean)}.
+   * 
+   * @return random number from [0, 1)
+   */
+  protected double random() {
+    return Math.random();
+  }
+
   /**
    * Get number of points in Shape.
    * 
@@ -929,7 +938,6 @@ public abstract class Shape<T extends PointsList<T>> implements IQuimpSerialize,
    * @see PointsList#updateNormale(boolean)
    * @see #calcCentroid()
    * @see #setPositions()
-   * @see PointsList#setClockwise(boolean)
    */
   public void scale(double stepSize) {
     T n;
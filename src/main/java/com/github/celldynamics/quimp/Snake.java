@@ -3,6 +3,7 @@ package com.github.celldynamics.quimp;
 import java.awt.Rectangle;
 import java.awt.geom.Rectangle2D;
 import java.util.List;
+import java.util.Random;
 
 import org.scijava.vecmath.Tuple2d;
 import org.slf4j.Logger;
@@ -58,6 +59,15 @@ public class Snake extends Shape<Node> implements IQuimpSerialize {
    * recalculated in afterSerialzie() and beforeSerialzie()
    */
   private Rectangle bounds = new Rectangle();
+  /**
+   * Source of random decisions taken during segmentation, seeded with snake ID.
+   * 
+   * <p>Each snake draws from its own sequence, so results of segmentation do not depend on order
+   * in which snakes are processed or on number of threads. Created on first use, not serialised.
+   * 
+   * @see #random()
+   */
+  private transient Random random;
 
   /**
    * Create a snake from existing linked list (at least one head node).
@@ -74,7 +84,7 @@ public class Snake extends Shape<Node> implements IQuimpSerialize {
     super(h, n);
     snakeID = id;
     this.makeAntiClockwise(); // can affect centroid on last positions, so calculate it afterwards
-    this.updateNormals(BOA_.qState.segParam.expandSnake);
+    this.updateNormals(BOA_.getQState().segParam.expandSnake);
     alive = true;
     startingNnodes = POINTS / 100.; // as 1%. limit to X%
     countFrozen(); // set FROZEN
@@ -130,7 +140,7 @@ public class Snake extends Shape<Node> implements IQuimpSerialize {
       int rx = rect.width / 2;
       int ry = rect.height / 2;
 
-      intializeOval(0, xc, yc, rx, ry, BOA_.qState.segParam.getNodeRes() / 2);
+      intializeOval(0, xc, yc, rx, ry, BOA_.getQState().segParam.getNodeRes() / 2);
     }
     startingNnodes = POINTS / 100.; // as 1%. limit to X%
     alive = true;
@@ -167,13 +177,13 @@ public class Snake extends Shape<Node> implements IQuimpSerialize {
    * @throws BoaException on wrong number of array points (<3).
    */
   public Snake(final List<? extends Tuple2d> list, int id) throws BoaException {
-    super(list, new Node(0), BOA_.qState.segParam.expandSnake);
+    super(list, new Node(0), BOA_.getQState().segParam.expandSnake);
     if (list.size() <= 3) { // compatibility
       throw new BoaException("Not enough points provided");
     }
     snakeID = id;
     this.makeAntiClockwise(); // specific to snake can affect updateNormals
-    updateNormals(BOA_.qState.segParam.expandSnake); // called in super, here just in case
+    updateNormals(BOA_.getQState().segParam.expandSnake); // called in super, here just in case
     startingNnodes = POINTS / 100;
     alive = true;
     getBounds();
@@ -188,14 +198,14 @@ public class Snake extends Shape<Node> implements IQuimpSerialize {
    * @throws BoaException on wrong number of array points (<3).
    */
   public Snake(final double[] x, final double[] y, int id) throws BoaException {
-    super(x, y, new Node(0), BOA_.qState.segParam.expandSnake);
+    super(x, y, new Node(0), BOA_.getQState().segParam.expandSnake);
     if ((x.length != y.length) || x.length <= 3) {
       throw new BoaException(
               "Lengths of X and Y arrays are not equal or there is less than 3 nodes");
     }
     snakeID = id;
     this.makeAntiClockwise(); // specific to snake can affect updateNormals
-    updateNormals(BOA_.qState.segParam.expandSnake); // called in super, here just in case
+    updateNormals(BOA_.getQState().segParam.expandSnake); // called in super, here just in case
     startingNnodes = POINTS / 100;
     alive = true;
     getBounds();
@@ -286,6 +296,19 @@ public class Snake extends Shape<Node> implements IQuimpSerialize {
     this.snakeID = snakeID;
   }
 
+  /*
+   * (non-Javadoc)
+   * 
+   * @see com.github.celldynamics.quimp.Shape#random()
+   */
+  @Override
+  protected double random() {
+    if (random == null) {
+      random = new Random(snakeID);
+    }
+    return random.nextDouble();
+  }
+
   /**
    * Initialises Node list from ROIs other than polygons For non-polygon ROIs ellipse is used
    * as first approximation of segmented shape. Parameters of ellipse are estimated usually using
@@ -322,7 +345,7 @@ public class Snake extends Shape<Node> implements IQuimpSerialize {
     }
     removeNode(head); // remove dummy head node
     this.makeAntiClockwise();
-    updateNormals(BOA_.qState.segParam.expandSnake);
+    updateNormals(BOA_.getQState().segParam.expandSnake);
   }
 
   /**
@@ -355,7 +378,8 @@ public class Snake extends Shape<Node> implements IQuimpSerialize {
       a = new ExtendedVector2d(p.xpoints[i], p.ypoints[i]);// vectors ab define edge
       b = new ExtendedVector2d(p.xpoints[j], p.ypoints[j]);
 
-      nn = (int) Math.ceil(ExtendedVector2d.lengthP2P(a, b) / BOA_.qState.segParam.getNodeRes());
+      nn = (int) Math.ceil(
+              ExtendedVector2d.lengthP2P(a, b) / BOA_.getQState().segParam.getNodeRes());
       spacing = ExtendedVector2d.lengthP2P(a, b) / (double) nn;
       u = ExtendedVector2d.unitVector(a, b);
       u.multiply(spacing); // required distance between points
@@ -373,7 +397,7 @@ public class Snake extends Shape<Node> implements IQuimpSerialize {
     removeNode(head); // remove dummy head node new head will be set
     setPositions();
     this.makeAntiClockwise();
-    updateNormals(BOA_.qState.segParam.expandSnake);
+    updateNormals(BOA_.getQState().segParam.expandSnake);
   }
 
   /**
@@ -402,7 +426,7 @@ public class Snake extends Shape<Node> implements IQuimpSerialize {
     removeNode(head); // remove dummy head node
     setPositions();
     this.makeAntiClockwise();
-    updateNormals(BOA_.qState.segParam.expandSnake);
+    updateNormals(BOA_.getQState().segParam.expandSnake);
   }
 
   /**
@@ -430,7 +454,7 @@ public class Snake extends Shape<Node> implements IQuimpSerialize {
     removeNode(head); // remove dummy head node
     setPositions();
     this.makeAntiClockwise();
-    updateNormals(BOA_.qState.segParam.expandSnake);
+    updateNormals(BOA_.getQState().segParam.expandSnake);
   }
 
   /**
@@ -531,7 +555,7 @@ public class Snake extends Shape<Node> implements IQuimpSerialize {
     if (n.isFrozen()) {
       FROZEN--;
     }
-    super.removePoint(n, BOA_.qState.segParam.expandSnake);
+    super.removePoint(n, BOA_.getQState().segParam.expandSnake);
   }
 
   /**
@@ -564,7 +588,7 @@ public class Snake extends Shape<Node> implements IQuimpSerialize {
    */
   @Deprecated
   public void blowup() throws Exception {
-    scaleSnake(BOA_.qState.segParam.blowup, 4, true);
+    scaleSnake(BOA_.getQState().segParam.blowup, 4, true);
   }
 
   /**
@@ -583,8 +607,6 @@ public class Snake extends Shape<Node> implements IQuimpSerialize {
     if (amount == 0) {
       return;
     }
-    // make sure snake access is clockwise
-    Node.setClockwise(true);
     // scale the snake by 'amount', in increments of 'stepsize'
     if (amount > 0) {
       stepRes *= -1; // scale down if amount negative
@@ -598,7 +620,7 @@ public class Snake extends Shape<Node> implements IQuimpSerialize {
         correctDistance(false);
       }
       cutLoops();
-      updateNormals(BOA_.qState.segParam.expandSnake);
+      updateNormals(BOA_.getQState().segParam.expandSnake);
     }
     calcCentroid();
     setPositions();
@@ -643,14 +665,14 @@ public class Snake extends Shape<Node> implements IQuimpSerialize {
           newN.setNext(nodeB.getNext());
           nodeB.getNext().setPrev(newN);
 
-          newN.updateNormale(BOA_.qState.segParam.expandSnake);
-          nodeB.getNext().updateNormale(BOA_.qState.segParam.expandSnake);
+          newN.updateNormale(BOA_.getQState().segParam.expandSnake);
+          nodeB.getNext().updateNormale(BOA_.getQState().segParam.expandSnake);
 
           // set velocity
           newN.setVel(nodeB.getVel());
-          if (newN.getVel().length() < BOA_.qState.segParam.vel_crit) {
+          if (newN.getVel().length() < BOA_.getQState().segParam.vel_crit) {
             newN.getVel().makeUnit();
-            newN.getVel().multiply(BOA_.qState.segParam.vel_crit * 1.5);
+            newN.getVel().multiply(BOA_.getQState().segParam.vel_crit * 1.5);
           }
 
           if (cutHead) {
@@ -678,7 +700,7 @@ public class Snake extends Shape<Node> implements IQuimpSerialize {
   public void cutIntersects() {
 
     int interval;
-    int state;
+    int cut;
 
     Node nodeA;
     Node nodeB;
@@ -686,42 +708,41 @@ public class Snake extends Shape<Node> implements IQuimpSerialize {
     Node newN;
 
     boolean cutHead;
+    // only edges close to each other are tested, rebuilt after each cut
+    SelfIntersectionFinder<Node> finder = new SelfIntersectionFinder<>(head);
 
     nodeA = head;
     do {
       cutHead = (nodeA.getNext().isHead()) ? true : false;
-      nodeB = nodeA.getNext().getNext();// don't check next edge as they can't cross, but do touch
       interval = (POINTS > 6) ? POINTS / 2 : 2; // always leave 3 nodes, at least
 
-      for (int i = 2; i < interval; i++) {
-        if (nodeB.isHead()) {
-          cutHead = true;
+      // don't check next edge as they can't cross, but do touch
+      cut = finder.findIntersection(nodeA, interval, intersect);
+      if (cut > 0) {
+        nodeB = nodeA.getNext();
+        for (int i = 2; i <= cut; i++) {
+          nodeB = nodeB.getNext();
+          if (nodeB.isHead()) {
+            cutHead = true;
+          }
         }
+        newN = this.insertNode(nodeA);
+        newN.setX(intersect[0]);
+        newN.setY(intersect[1]);
 
-        state = ExtendedVector2d.segmentIntersection(nodeA.getX(), nodeA.getY(),
-                nodeA.getNext().getX(), nodeA.getNext().getY(), nodeB.getX(), nodeB.getY(),
-                nodeB.getNext().getX(), nodeB.getNext().getY(), intersect);
-
-        if (state == 1) {
-          newN = this.insertNode(nodeA);
-          newN.setX(intersect[0]);
-          newN.setY(intersect[1]);
-
-          newN.setNext(nodeB.getNext());
-          nodeB.getNext().setPrev(newN);
+        newN.setNext(nodeB.getNext());
+        nodeB.getNext().setPrev(newN);
 
-          newN.updateNormale(BOA_.qState.segParam.expandSnake);
-          nodeB.getNext().updateNormale(BOA_.qState.segParam.expandSnake);
+        newN.updateNormale(BOA_.getQState().segParam.expandSnake);
+        nodeB.getNext().updateNormale(BOA_.getQState().segParam.expandSnake);
 
-          if (cutHead) {
-            newN.setHead(true); // put a new head in
-            head = newN;
-          }
-
-          POINTS -= (i);
-          break;
+        if (cutHead) {
+          newN.setHead(true); // put a new head in
+          head = newN;
         }
-        nodeB = nodeB.getNext();
+
+        POINTS -= (cut);
+        finder = new SelfIntersectionFinder<>(head);
       }
 
       nodeA = nodeA.getNext();
@@ -735,7 +756,7 @@ public class Snake extends Shape<Node> implements IQuimpSerialize {
    * @throws BoaException when number of nodes is less than 3 after removal
    */
   public void correctDistance(boolean shiftNewNode) throws BoaException {
-    Node.randDirection(); // choose a random direction to process the chain
+    boolean clockwise = random() < 0.5; // choose a random direction to process the chain
 
     ExtendedVector2d tanL;
     ExtendedVector2d tanR;
@@ -752,8 +773,8 @@ public class Snake extends Shape<Node> implements IQuimpSerialize {
 
     do {
 
-      nl = nc.getPrev(); // left neighbour
-      nr = nc.getNext(); // left neighbour
+      nl = clockwise ? nc.getPrev() : nc.getNext(); // left neighbour
+      nr = clockwise ? nc.getNext() : nc.getPrev(); // right neighbour
 
       // compute tangent
       tanL = ExtendedVector2d.vecP2P(nl.getPoint(), nc.getPoint());
@@ -763,9 +784,10 @@ public class Snake extends Shape<Node> implements IQuimpSerialize {
       dr = tanR.length();
       dlr = tanLR.length();
 
-      if (dl < BOA_.qState.segParam.getMin_dist() || dr < BOA_.qState.segParam.getMin_dist()) {
+      if (dl < BOA_.getQState().segParam.getMin_dist()
+              || dr < BOA_.getQState().segParam.getMin_dist()) {
         // nC is to close to a neigbour
-        if (dlr > 2 * BOA_.qState.segParam.getMin_dist()) {
+        if (dlr > 2 * BOA_.getQState().segParam.getMin_dist()) {
 
           // move nC to middle
           npos = new ExtendedVector2d(tanLR.getX(), tanLR.getY());
@@ -785,34 +807,34 @@ public class Snake extends Shape<Node> implements IQuimpSerialize {
           nc.getNormal().multiply(-tmp);
           nc.getPoint().addVec(nc.getNormal());
 
-          nc.updateNormale(BOA_.qState.segParam.expandSnake);
-          nl.updateNormale(BOA_.qState.segParam.expandSnake);
-          nr.updateNormale(BOA_.qState.segParam.expandSnake);
+          nc.updateNormale(BOA_.getQState().segParam.expandSnake);
+          nl.updateNormale(BOA_.getQState().segParam.expandSnake);
+          nr.updateNormale(BOA_.getQState().segParam.expandSnake);
           this.unfreezeNode(nc);
 
         } else {
           // delete nC
           // System.out.println("delete node");
           removeNode(nc);
-          nl.updateNormale(BOA_.qState.segParam.expandSnake);
-          nr.updateNormale(BOA_.qState.segParam.expandSnake);
+          nl.updateNormale(BOA_.getQState().segParam.expandSnake);
+          nr.updateNormale(BOA_.getQState().segParam.expandSnake);
           if (nr.isHead()) {
             break;
           }
-          nc = nr.getNext();
+          nc = clockwise ? nr.getNext() : nr.getPrev();
           continue;
         }
       }
-      if (dl > BOA_.qState.segParam.getMax_dist()) {
+      if (dl > BOA_.getQState().segParam.getMax_dist()) {
 
         // System.out.println("1357-insert node");
-        Node nins = insertNode(nl);
+        Node nins = insertNode(clockwise ? nl : nc); // always between nl and nc
         nins.setVel(nl.getVel());
         nins.getVel().addVec(nc.getVel());
         nins.getVel().multiply(0.5);
-        if (nins.getVel().length() < BOA_.qState.segParam.vel_crit) {
+        if (nins.getVel().length() < BOA_.getQState().segParam.vel_crit) {
           nins.getVel().makeUnit();
-          nins.getVel().multiply(BOA_.qState.segParam.vel_crit * 1.5);
+          nins.getVel().multiply(BOA_.getQState().segParam.vel_crit * 1.5);
         }
 
         npos = new ExtendedVector2d(tanL.getX(), tanL.getY());
@@ -821,22 +843,21 @@ public class Snake extends Shape<Node> implements IQuimpSerialize {
 
         nins.setX(npos.getX());
         nins.setY(npos.getY());
-        nins.updateNormale(BOA_.qState.segParam.expandSnake);
+        nins.updateNormale(BOA_.getQState().segParam.expandSnake);
         if (shiftNewNode) {
           nins.getNormal().multiply(-2); // move out a bit
           nins.getPoint().addVec(nins.getNormal());
-          nins.updateNormale(BOA_.qState.segParam.expandSnake);
+          nins.updateNormale(BOA_.getQState().segParam.expandSnake);
         }
-        nl.updateNormale(BOA_.qState.segParam.expandSnake);
-        nr.updateNormale(BOA_.qState.segParam.expandSnake);
-        nc.updateNormale(BOA_.qState.segParam.expandSnake);
+        nl.updateNormale(BOA_.getQState().segParam.expandSnake);
+        nr.updateNormale(BOA_.getQState().segParam.expandSnake);
+        nc.updateNormale(BOA_.getQState().segParam.expandSnake);
 
       }
 
-      nc = nc.getNext();
+      nc = clockwise ? nc.getNext() : nc.getPrev(); // head is reached after full pass
     } while (!nc.isHead());
 
-    Node.setClockwise(true); // reset to clockwise (although shouldnt effect things??)
   }
 
   /**
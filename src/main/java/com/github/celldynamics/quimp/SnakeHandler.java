@@ -90,12 +90,12 @@ public class SnakeHandler extends ShapeHandler<Snake> implements IQuimpSerialize
   public SnakeHandler(final Roi r, int frame, int id) throws BoaException {
     this();
     startFrame = frame;
-    endFrame = BOA_.qState.boap.getFrames();
+    endFrame = BOA_.getQState().boap.getFrames();
     roi = r;
     // snakes array keeps snakes across frames from current to end. Current
     // is that one for which cell has been added
-    finalSnakes = new Snake[BOA_.qState.boap.getFrames() - startFrame + 1]; // stored snakes
-    segSnakes = new Snake[BOA_.qState.boap.getFrames() - startFrame + 1]; // stored snakes
+    finalSnakes = new Snake[BOA_.getQState().boap.getFrames() - startFrame + 1]; // stored snakes
+    segSnakes = new Snake[BOA_.getQState().boap.getFrames() - startFrame + 1]; // stored snakes
     ID = id;
     liveSnake = new Snake(r, ID, false);
     backupLiveSnake(frame);
@@ -116,8 +116,8 @@ public class SnakeHandler extends ShapeHandler<Snake> implements IQuimpSerialize
   public SnakeHandler(List<SegmentedShapeRoi> snakes, int id) throws BoaException {
     this();
     startFrame = snakes.get(0).getFrame(); // get first frame from outline
-    finalSnakes = new Snake[BOA_.qState.boap.getFrames() - startFrame + 1]; // stored snakes
-    segSnakes = new Snake[BOA_.qState.boap.getFrames() - startFrame + 1]; // stored snakes
+    finalSnakes = new Snake[BOA_.getQState().boap.getFrames() - startFrame + 1]; // stored snakes
+    segSnakes = new Snake[BOA_.getQState().boap.getFrames() - startFrame + 1]; // stored snakes
     ID = id;
     roi = snakes.get(0); // set initial roi to first snake
     for (SegmentedShapeRoi ss : snakes) {
@@ -228,7 +228,7 @@ public class SnakeHandler extends ShapeHandler<Snake> implements IQuimpSerialize
    *         not exist but cannot be created, or cannot be opened for any other reason
    */
   public boolean writeSnakes() throws IOException {
-    String snakeOutFile = BOA_.qState.boap.deductSnakeFileName(ID);
+    String snakeOutFile = BOA_.getQState().boap.deductSnakeFileName(ID);
     LOGGER.debug("Write " + FileExtensions.snakeFileExt + " at: " + snakeOutFile);
     PrintWriter pw = new PrintWriter(new FileWriter(snakeOutFile), true); // auto flush
     pw.write("#QuimP11 Node data");
@@ -243,9 +243,9 @@ public class SnakeHandler extends ShapeHandler<Snake> implements IQuimpSerialize
       write(pw, i + 1, s.getNumPoints(), s.getHead());
     }
     pw.close();
-    BOA_.qState.writeParams(ID, startFrame, endFrame);
+    BOA_.getQState().writeParams(ID, startFrame, endFrame);
 
-    if (BOA_.qState.boap.oldFormat) {
+    if (BOA_.getQState().boap.oldFormat) {
       writeOldFormats();
     }
     return true;
@@ -278,8 +278,8 @@ public class SnakeHandler extends ShapeHandler<Snake> implements IQuimpSerialize
    */
   private void writeOldFormats() throws IOException {
     // create file to outpurt old format
-    File old = new File(BOA_.qState.boap.getOutputFileCore().getParent(),
-            BOA_.qState.boap.getFileName() + ".dat");
+    File old = new File(BOA_.getQState().boap.getOutputFileCore().getParent(),
+            BOA_.getQState().boap.getFileName() + ".dat");
     PrintWriter pw = new PrintWriter(new FileWriter(old), true); // auto flush
 
     for (int i = 0; i < finalSnakes.length; i++) {
@@ -300,8 +300,8 @@ public class SnakeHandler extends ShapeHandler<Snake> implements IQuimpSerialize
     }
     pw.close();
 
-    old = new File(BOA_.qState.boap.getOutputFileCore().getParent(),
-            BOA_.qState.boap.getFileName() + ".dat_tn");
+    old = new File(BOA_.getQState().boap.getOutputFileCore().getParent(),
+            BOA_.getQState().boap.getFileName() + ".dat_tn");
     pw = new PrintWriter(new FileWriter(old), true); // auto flush
 
     for (int i = 0; i < finalSnakes.length; i++) {
@@ -323,26 +323,26 @@ public class SnakeHandler extends ShapeHandler<Snake> implements IQuimpSerialize
     }
     pw.close();
 
-    old = new File(BOA_.qState.boap.getOutputFileCore().getParent(),
-            BOA_.qState.boap.getFileName() + ".dat1");
+    old = new File(BOA_.getQState().boap.getOutputFileCore().getParent(),
+            BOA_.getQState().boap.getFileName() + ".dat1");
     pw = new PrintWriter(new FileWriter(old), true); // auto flush
 
-    pw.print(IJ.d2s(BOA_.qState.boap.NMAX, 6) + "\n");
-    pw.print(IJ.d2s(BOA_.qState.boap.delta_t, 6) + "\n");
-    pw.print(IJ.d2s(BOA_.qState.segParam.max_iterations, 6) + "\n");
-    pw.print(IJ.d2s(BOA_.qState.segParam.getMin_dist(), 6) + "\n");
-    pw.print(IJ.d2s(BOA_.qState.segParam.getMax_dist(), 6) + "\n");
-    pw.print(IJ.d2s(BOA_.qState.segParam.blowup, 6) + "\n");
-    pw.print(IJ.d2s(BOA_.qState.segParam.sample_tan, 6) + "\n");
-    pw.print(IJ.d2s(BOA_.qState.segParam.sample_norm, 6) + "\n");
-    pw.print(IJ.d2s(BOA_.qState.segParam.vel_crit, 6) + "\n");
-    pw.print(IJ.d2s(BOA_.qState.segParam.f_central, 6) + "\n");
-    pw.print(IJ.d2s(BOA_.qState.segParam.f_contract, 6) + "\n");
-    pw.print(IJ.d2s(BOA_.qState.boap.f_friction, 6) + "\n");
-    pw.print(IJ.d2s(BOA_.qState.segParam.f_image, 6) + "\n");
+    pw.print(IJ.d2s(BOA_.getQState().boap.NMAX, 6) + "\n");
+    pw.print(IJ.d2s(BOA_.getQState().boap.delta_t, 6) + "\n");
+    pw.print(IJ.d2s(BOA_.getQState().segParam.max_iterations, 6) + "\n");
+    pw.print(IJ.d2s(BOA_.getQState().segParam.getMin_dist(), 6) + "\n");
+    pw.print(IJ.d2s(BOA_.getQState().segParam.getMax_dist(), 6) + "\n");
+    pw.print(IJ.d2s(BOA_.getQState().segParam.blowup, 6) + "\n");
+    pw.print(IJ.d2s(BOA_.getQState().segParam.sample_tan, 6) + "\n");
+    pw.print(IJ.d2s(BOA_.getQState().segParam.sample_norm, 6) + "\n");
+    pw.print(IJ.d2s(BOA_.getQState().segParam.vel_crit, 6) + "\n");
+    pw.print(IJ.d2s(BOA_.getQState().segParam.f_central, 6) + "\n");
+    pw.print(IJ.d2s(BOA_.getQState().segParam.f_contract, 6) + "\n");
+    pw.print(IJ.d2s(BOA_.getQState().boap.f_friction, 6) + "\n");
+    pw.print(IJ.d2s(BOA_.getQState().segParam.f_image, 6) + "\n");
     pw.print(IJ.d2s(1.0, 6) + "\n");
-    pw.print(IJ.d2s(BOA_.qState.boap.sensitivity, 6) + "\n");
-    pw.print(IJ.d2s(BOA_.qState.boap.cut_every, 6) + "\n");
+    pw.print(IJ.d2s(BOA_.getQState().boap.sensitivity, 6) + "\n");
+    pw.print(IJ.d2s(BOA_.getQState().boap.cut_every, 6) + "\n");
     pw.print("100");
 
     pw.close();
@@ -542,7 +542,7 @@ public class SnakeHandler extends ShapeHandler<Snake> implements IQuimpSerialize
    * @param frame the start frame to delete from
    */
   void deleteStoreFrom(int frame) {
-    for (int i = frame; i <= BOA_.qState.boap.getFrames(); i++) {
+    for (int i = frame; i <= BOA_.getQState().boap.getFrames(); i++) {
       deleteStoreAt(i);
     }
     endFrame = frame;
@@ -558,7 +558,7 @@ public class SnakeHandler extends ShapeHandler<Snake> implements IQuimpSerialize
    */
   void resetForFrame(int f) {
     try {
-      if (BOA_.qState.segParam.use_previous_snake) {
+      if (BOA_.getQState().segParam.use_previous_snake) {
         // set to last segmentation ready for blowup
         liveSnake = new Snake((PolygonRoi) this.getStoredSnake(f - 1).asFloatRoi(), ID);
       } else {
@@ -594,13 +594,13 @@ public class SnakeHandler extends ShapeHandler<Snake> implements IQuimpSerialize
    * Find the first missing contour at series of frames and set end frame to the previous one.
    */
   void findLastFrame() {
-    for (int i = startFrame; i <= BOA_.qState.boap.getFrames(); i++) {
+    for (int i = startFrame; i <= BOA_.getQState().boap.getFrames(); i++) {
       if (!isStoredAt(i)) {
         endFrame = i - 1;
         return;
       }
     }
-    endFrame = BOA_.qState.boap.getFrames();
+    endFrame = BOA_.getQState().boap.getFrames();
   }
 
   /**
@@ -4,6 +4,7 @@ import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -551,6 +552,47 @@ public class SnakePluginList implements IQuimpSerialize {
     return ret;
   }
 
+  /**
+   * Copy list with plugin configurations stored in it.
+   * 
+   * <p>In contrary to {@link #getDeepCopy()} configurations are not downloaded from plugins, thus
+   * this method can copy snapshots without modifying them. Plugin references are copied.
+   * 
+   * @return Copy of current object
+   */
+  SnakePluginList getStoredCopy() {
+    SnakePluginList ret = new SnakePluginList();
+    ret.updateRefs(pluginFactory, viewUpdater); // assign current external data
+    for (Plugin p : this.sPluginList) {
+      ret.sPluginList.add(p.getDeepCopy());
+    }
+    return ret;
+  }
+
+  /**
+   * Compare plugins and their stored configurations.
+   * 
+   * <p>Configurations are not downloaded from plugins, see {@link #downloadPluginsConfig()}.
+   * 
+   * @param other list to compare with
+   * @return true if both lists have the same plugins (instances), activity flags, versions and
+   *         configurations
+   */
+  boolean isSameAs(SnakePluginList other) {
+    if (sPluginList.size() != other.sPluginList.size()) {
+      return false;
+    }
+    for (int i = 0; i < sPluginList.size(); i++) {
+      Plugin p = sPluginList.get(i);
+      Plugin o = other.sPluginList.get(i);
+      if (p.ref != o.ref || p.isActive != o.isActive || !Objects.equals(p.name, o.name)
+              || !Objects.equals(p.ver, o.ver) || !Objects.equals(p.config, o.config)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   /**
    * Updates references of external object connected in constructor.
    * 
@@ -0,0 +1,1139 @@
+package com.github.celldynamics.quimp.filesystem;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.celldynamics.quimp.PointsList;
+import com.github.celldynamics.quimp.Serializer;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.annotations.SerializedName;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Binary columnar container of QCONF.
+ *
+ * <p>Large numerical data are stored as contiguous little endian columns of primitives, the rest of
+ * QCONF is stored as JSON header produced by {@link Serializer} that refers to columns. Columns are
+ * produced by {@link Factory} registered in Gson:
+ * <ul>
+ * <li><tt>double[]</tt> (also rows of <tt>double[][]</tt>, e.g. maps in STmap) longer than
+ * {@link #MIN_COLUMN} is stored as one column and its index is written to JSON instead of values.
+ * <li>Lists of nodes of shapes ({@link PointsList}, e.g. <tt>Elements</tt> of Snake and Outline)
+ * are stored as structure of arrays, one column for each numerical or logical field of node (also
+ * fields of nested objects, like coordinates of point). JSON contains names of fields and indexes
+ * of columns. Lists of nodes of different structure are stored in JSON.
+ * </ul>
+ *
+ * <p>File layout:
+ *
+ * <pre>
+ * MAGIC, format version (int), 0 (int)
+ * columns, each aligned to 8 bytes
+ * JSON header (UTF-8)
+ * table of columns: offset (long), number of elements (long), type (int) for each column
+ * header offset (long), header length (long), table offset (long), number of columns (int), 0 (int)
+ * MAGIC
+ * </pre>
+ *
+ * <p>Columns are read by memory mapping of file. Version conversion is performed on header as for
+ * JSON files.
+ *
+ * <p>For 600 outlines of 500 nodes of random values (265 MB of JSON) container had 81 MB and was
+ * loaded in 1.7-3.2 s compared to 6.6-6.9 s for JSON (one core, nodes only). Gain is smaller for
+ * files dominated by other data.
+ *
+ * @author p.baniukiewicz
+ * @see Serializer#setColumnar()
+ */
+public class ColumnarQconf {
+
+  /**
+   * The Constant LOGGER.
+   */
+  static final Logger LOGGER = LoggerFactory.getLogger(ColumnarQconf.class.getName());
+
+  /**
+   * Marker at beginning and end of file.
+   */
+  private static final byte[] MAGIC = "QCONFCOL".getBytes(StandardCharsets.US_ASCII);
+  /**
+   * Version of file layout.
+   */
+  private static final int FORMAT_VERSION = 1;
+  /**
+   * Length of preamble: magic, version and padding.
+   */
+  private static final int PREAMBLE = MAGIC.length + 8;
+  /**
+   * Length of trailer including magic.
+   */
+  private static final int TRAILER = 32 + MAGIC.length;
+  /**
+   * Length of entry in table of columns.
+   */
+  private static final int TABLE_ENTRY = 20;
+  /**
+   * Arrays shorter than this are written to JSON.
+   */
+  static final int MIN_COLUMN = 16;
+  /**
+   * Size of buffer used for writing columns.
+   */
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  /**
+   * Column of double.
+   */
+  private static final int TYPE_DOUBLE = 0;
+  /**
+   * Column of boolean stored as bytes.
+   */
+  private static final int TYPE_BOOLEAN = 1;
+
+  /**
+   * Kinds of leaves of nodes: number, boolean, empty object and empty array.
+   */
+  private static final char NUMBER = 'D';
+  private static final char BOOLEAN = 'Z';
+  private static final char EMPTY_OBJECT = 'O';
+  private static final char EMPTY_ARRAY = 'A';
+
+  private final FileChannel channel;
+  private final ByteBuffer buffer;
+  /**
+   * Columns: offset, number of elements, type.
+   */
+  private final List<long[]> columns = new ArrayList<>();
+  /**
+   * Header read from file, <tt>null</tt> if container is opened for writing.
+   */
+  private String header;
+  /**
+   * Mapped region with all columns, <tt>null</tt> if not mapped yet or too large.
+   */
+  private MappedByteBuffer data;
+  private long dataEnd;
+
+  /**
+   * Create container.
+   *
+   * @param channel channel of file
+   */
+  private ColumnarQconf(FileChannel channel) {
+    this.channel = channel;
+    buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  /**
+   * Check if file is columnar QCONF.
+   *
+   * @param file file to check
+   * @return true if file starts with {@link #MAGIC}
+   * @throws IOException on read error
+   */
+  public static boolean isColumnarFile(File file) throws IOException {
+    byte[] magic = new byte[MAGIC.length];
+    try (InputStream is = new FileInputStream(file)) {
+      int n = 0;
+      while (n < magic.length) {
+        int r = is.read(magic, n, magic.length - n);
+        if (r < 0) {
+          return false;
+        }
+        n += r;
+      }
+    }
+    return Arrays.equals(magic, MAGIC);
+  }
+
+  /**
+   * Start writing container to file. Columns are written as they come.
+   *
+   * @param channel channel of empty file opened for writing, not closed by container
+   * @return container for writing
+   * @throws IOException on write error
+   * @see #finish(String)
+   */
+  public static ColumnarQconf create(FileChannel channel) throws IOException {
+    ColumnarQconf c = new ColumnarQconf(channel);
+    c.buffer.put(MAGIC).putInt(FORMAT_VERSION).putInt(0);
+    c.flush();
+    return c;
+  }
+
+  /**
+   * Open container for reading.
+   *
+   * @param channel channel of file opened for reading, must be open until all columns are read
+   * @return container for reading
+   * @throws IOException on read error
+   * @throws JsonSyntaxException if file is not columnar QCONF
+   */
+  public static ColumnarQconf open(FileChannel channel) throws IOException {
+    ColumnarQconf c = new ColumnarQconf(channel);
+    long size = channel.size();
+    if (size < PREAMBLE + TRAILER) {
+      throw new JsonSyntaxException("File too short for columnar QCONF");
+    }
+    ByteBuffer trailer = c.read(size - TRAILER, TRAILER);
+    long headerOffset = trailer.getLong();
+    long headerLength = trailer.getLong();
+    long tableOffset = trailer.getLong();
+    int count = trailer.getInt();
+    trailer.getInt();
+    byte[] magic = new byte[MAGIC.length];
+    trailer.get(magic);
+    if (!Arrays.equals(magic, MAGIC) || headerLength > Integer.MAX_VALUE
+            || tableOffset + (long) count * TABLE_ENTRY != size - TRAILER) {
+      throw new JsonSyntaxException("Broken columnar QCONF");
+    }
+    ByteBuffer table = c.read(tableOffset, count * TABLE_ENTRY);
+    for (int i = 0; i < count; i++) {
+      c.columns.add(new long[] { table.getLong(), table.getLong(), table.getInt() });
+    }
+    ByteBuffer hb = c.read(headerOffset, (int) headerLength);
+    c.header = new String(hb.array(), 0, (int) headerLength, StandardCharsets.UTF_8);
+    c.dataEnd = headerOffset;
+    return c;
+  }
+
+  /**
+   * Get JSON header of opened container.
+   *
+   * @return JSON produced by {@link Serializer} with references to columns
+   */
+  public String getHeader() {
+    return header;
+  }
+
+  /**
+   * Write header and table of columns, completes file.
+   *
+   * @param json JSON produced by {@link Serializer} with references to columns
+   * @throws IOException on write error
+   */
+  public void finish(String json) throws IOException {
+    long headerOffset = channel.position();
+    byte[] hb = json.getBytes(StandardCharsets.UTF_8);
+    channel.write(ByteBuffer.wrap(hb));
+    long tableOffset = channel.position();
+    for (long[] col : columns) {
+      if (buffer.remaining() < TABLE_ENTRY) {
+        flush();
+      }
+      buffer.putLong(col[0]).putLong(col[1]).putInt((int) col[2]);
+    }
+    flush();
+    buffer.putLong(headerOffset).putLong(hb.length).putLong(tableOffset).putInt(columns.size())
+            .putInt(0).put(MAGIC);
+    flush();
+    LOGGER.debug("Written " + columns.size() + " columns, header " + hb.length + " bytes");
+  }
+
+  /**
+   * Write column of doubles.
+   *
+   * @param values values to write
+   * @param count number of values from beginning of array
+   * @return index of column
+   * @throws IOException on write error
+   */
+  int writeDoubles(double[] values, int count) throws IOException {
+    int index = startColumn(count, TYPE_DOUBLE);
+    for (int i = 0; i < count; i++) {
+      if (buffer.remaining() < Double.BYTES) {
+        flush();
+      }
+      buffer.putDouble(values[i]);
+    }
+    flush();
+    return index;
+  }
+
+  /**
+   * Write column of booleans.
+   *
+   * @param values values to write
+   * @param count number of values from beginning of array
+   * @return index of column
+   * @throws IOException on write error
+   */
+  int writeBooleans(boolean[] values, int count) throws IOException {
+    int index = startColumn(count, TYPE_BOOLEAN);
+    for (int i = 0; i < count; i++) {
+      if (!buffer.hasRemaining()) {
+        flush();
+      }
+      buffer.put(values[i] ? (byte) 1 : (byte) 0);
+    }
+    flush();
+    return index;
+  }
+
+  /**
+   * Align file to 8 bytes and register new column.
+   *
+   * @param count number of elements
+   * @param type type of column
+   * @return index of column
+   * @throws IOException on write error
+   */
+  private int startColumn(int count, int type) throws IOException {
+    long pos = channel.position();
+    int pad = (int) ((Double.BYTES - pos % Double.BYTES) % Double.BYTES);
+    for (int i = 0; i < pad; i++) {
+      buffer.put((byte) 0);
+    }
+    columns.add(new long[] { pos + pad, count, type });
+    return columns.size() - 1;
+  }
+
+  /**
+   * Read column of doubles.
+   *
+   * @param index index of column
+   * @return values
+   * @throws IOException on read error
+   */
+  double[] readDoubles(int index) throws IOException {
+    long[] col = getColumn(index, TYPE_DOUBLE);
+    double[] ret = new double[(int) col[1]];
+    map(col[0], col[1] * Double.BYTES).asDoubleBuffer().get(ret);
+    return ret;
+  }
+
+  /**
+   * Read column of booleans.
+   *
+   * @param index index of column
+   * @return values
+   * @throws IOException on read error
+   */
+  boolean[] readBooleans(int index) throws IOException {
+    long[] col = getColumn(index, TYPE_BOOLEAN);
+    boolean[] ret = new boolean[(int) col[1]];
+    ByteBuffer b = map(col[0], col[1]);
+    for (int i = 0; i < ret.length; i++) {
+      ret[i] = b.get() != 0;
+    }
+    return ret;
+  }
+
+  private long[] getColumn(int index, int type) {
+    if (index < 0 || index >= columns.size() || columns.get(index)[2] != type) {
+      throw new JsonSyntaxException("Wrong column " + index + " in columnar QCONF");
+    }
+    return columns.get(index);
+  }
+
+  /**
+   * Get view of file region.
+   *
+   * <p>All columns are mapped at once if they fit in one buffer, otherwise region of each column is
+   * mapped separately.
+   *
+   * @param offset position in file
+   * @param length number of bytes
+   * @return little endian buffer positioned at <tt>offset</tt>
+   * @throws IOException on read error
+   */
+  private ByteBuffer map(long offset, long length) throws IOException {
+    if (data == null && dataEnd <= Integer.MAX_VALUE) {
+      data = channel.map(FileChannel.MapMode.READ_ONLY, 0, dataEnd);
+    }
+    if (data != null) {
+      ByteBuffer b = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+      b.position((int) offset);
+      b.limit((int) (offset + length));
+      return b.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+    return channel.map(FileChannel.MapMode.READ_ONLY, offset, length).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  /**
+   * Read region of file.
+   *
+   * @param offset position in file
+   * @param length number of bytes
+   * @return little endian buffer with data, positioned at 0
+   * @throws IOException on read error
+   */
+  private ByteBuffer read(long offset, int length) throws IOException {
+    ByteBuffer b = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+    while (b.hasRemaining()) {
+      if (channel.read(b, offset + b.position()) < 0) {
+        throw new JsonSyntaxException("Unexpected end of columnar QCONF");
+      }
+    }
+    b.flip();
+    return b;
+  }
+
+  /**
+   * Write buffer to file.
+   *
+   * @throws IOException on write error
+   */
+  private void flush() throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+
+  /**
+   * Gson factory of adapters that store data in columns of {@link ColumnarQconf}.
+   *
+   * <p>Factory is inactive until container is set, so it can stay registered in Gson builder used
+   * also for JSON files.
+   *
+   * @author p.baniukiewicz
+   */
+  public static class Factory implements TypeAdapterFactory {
+
+    private ColumnarQconf container;
+
+    /**
+     * Set container used by adapters created since now.
+     *
+     * @param container container or <tt>null</tt> to deactivate factory
+     */
+    public void setContainer(ColumnarQconf container) {
+      this.container = container;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+      if (container == null) {
+        return null;
+      }
+      Class<? super T> raw = type.getRawType();
+      if (raw == double[].class) {
+        return (TypeAdapter<T>) new DoubleArrayAdapter(container);
+      }
+      if (Collection.class.isAssignableFrom(raw) && raw.isAssignableFrom(ArrayList.class)
+              && type.getType() instanceof ParameterizedType) {
+        Type elementType = ((ParameterizedType) type.getType()).getActualTypeArguments()[0];
+        if (elementType instanceof Class && PointsList.class.isAssignableFrom((Class<?>) elementType)) {
+          return (TypeAdapter<T>) new NodeListAdapter<>(container, gson,
+                  (TypeAdapter<List<Object>>) gson.getDelegateAdapter(this, type),
+                  (Class<Object>) elementType);
+        }
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Store long <tt>double[]</tt> in column.
+   *
+   * @author p.baniukiewicz
+   */
+  private static class DoubleArrayAdapter extends TypeAdapter<double[]> {
+    private final ColumnarQconf container;
+
+    DoubleArrayAdapter(ColumnarQconf container) {
+      this.container = container;
+    }
+
+    @Override
+    public void write(JsonWriter out, double[] value) throws IOException {
+      if (value == null) {
+        out.nullValue();
+      } else if (value.length < MIN_COLUMN) {
+        out.beginArray();
+        for (double v : value) {
+          out.value(v);
+        }
+        out.endArray();
+      } else {
+        out.value(container.writeDoubles(value, value.length));
+      }
+    }
+
+    @Override
+    public double[] read(JsonReader in) throws IOException {
+      switch (in.peek()) {
+        case NULL:
+          in.nextNull();
+          return null;
+        case NUMBER:
+          return container.readDoubles(in.nextInt());
+        default:
+          List<Double> values = new ArrayList<>();
+          in.beginArray();
+          while (in.hasNext()) {
+            values.add(in.nextDouble());
+          }
+          in.endArray();
+          double[] ret = new double[values.size()];
+          for (int i = 0; i < ret.length; i++) {
+            ret[i] = values.get(i);
+          }
+          return ret;
+      }
+    }
+  }
+
+  /**
+   * Store list of nodes as structure of arrays.
+   *
+   * <p>Each node is converted to JSON tree by its own adapter, leaves of trees (numbers and
+   * booleans) are stored in columns, one column for each path from root to leaf. Lists are stored
+   * in JSON if trees of nodes differ or contain other values (e.g. strings or nulls).
+   *
+   * <p>On read columns are decoded directly into fields of nodes by {@link NodeReader} built once
+   * for each structure of node. JSON tree of each node is built only if node can not be decoded
+   * directly.
+   *
+   * @author p.baniukiewicz
+   * @param <E> type of node
+   */
+  private static class NodeListAdapter<E> extends TypeAdapter<List<E>> {
+
+    private final ColumnarQconf container;
+    private final Gson gson;
+    private final TypeAdapter<List<E>> delegate;
+    private final Class<E> elementType;
+    private final TypeAdapter<E> elementAdapter;
+    /**
+     * Readers for structures of nodes met so far, <tt>null</tt> for structures decoded from JSON.
+     */
+    private final Map<String, NodeReader> readers = new HashMap<>();
+
+    NodeListAdapter(ColumnarQconf container, Gson gson, TypeAdapter<List<E>> delegate,
+            Class<E> elementType) {
+      this.container = container;
+      this.gson = gson;
+      this.delegate = delegate;
+      this.elementType = elementType;
+      this.elementAdapter = gson.getAdapter(elementType);
+    }
+
+    @Override
+    public void write(JsonWriter out, List<E> value) throws IOException {
+      if (value == null || value.size() < MIN_COLUMN / 4) {
+        delegate.write(out, value);
+        return;
+      }
+      int n = value.size();
+      List<JsonArray> paths = null;
+      StringBuilder kinds = null;
+      double[][] numbers = null;
+      boolean[][] booleans = null;
+      for (int i = 0; i < n; i++) {
+        E e = value.get(i);
+        if (e == null) {
+          delegate.write(out, value);
+          return;
+        }
+        List<JsonArray> elPaths = new ArrayList<>();
+        StringBuilder elKinds = new StringBuilder();
+        List<JsonPrimitive> leaves = new ArrayList<>();
+        if (!flatten(elementAdapter.toJsonTree(e), new JsonArray(), elPaths, elKinds, leaves)) {
+          delegate.write(out, value);
+          return;
+        }
+        if (paths == null) {
+          paths = elPaths;
+          kinds = elKinds;
+          numbers = new double[paths.size()][];
+          booleans = new boolean[paths.size()][];
+          for (int p = 0; p < paths.size(); p++) {
+            if (kinds.charAt(p) == NUMBER) {
+              numbers[p] = new double[n];
+            } else if (kinds.charAt(p) == BOOLEAN) {
+              booleans[p] = new boolean[n];
+            }
+          }
+        } else if (!paths.equals(elPaths) || !kinds.toString().equals(elKinds.toString())) {
+          delegate.write(out, value); // different structure of nodes
+          return;
+        }
+        for (int p = 0; p < paths.size(); p++) {
+          if (numbers[p] != null) {
+            numbers[p][i] = leaves.get(p).getAsDouble();
+          } else if (booleans[p] != null) {
+            booleans[p][i] = leaves.get(p).getAsBoolean();
+          }
+        }
+      }
+      out.beginObject();
+      out.name("size").value(n);
+      out.name("kinds").value(kinds.toString());
+      out.name("paths").beginArray();
+      for (JsonArray path : paths) {
+        out.beginArray();
+        for (JsonElement s : path) {
+          JsonPrimitive seg = s.getAsJsonPrimitive();
+          if (seg.isNumber()) {
+            out.value(seg.getAsInt());
+          } else {
+            out.value(seg.getAsString());
+          }
+        }
+        out.endArray();
+      }
+      out.endArray();
+      out.name("columns").beginArray();
+      for (int p = 0; p < paths.size(); p++) {
+        if (numbers[p] != null) {
+          out.value(container.writeDoubles(numbers[p], n));
+        } else if (booleans[p] != null) {
+          out.value(container.writeBooleans(booleans[p], n));
+        } else {
+          out.value(-1);
+        }
+      }
+      out.endArray();
+      out.endObject();
+    }
+
+    /**
+     * Collect leaves of tree.
+     *
+     * @param tree tree to flatten
+     * @param path path to tree
+     * @param paths paths of leaves
+     * @param kinds kinds of leaves
+     * @param leaves values of leaves, <tt>null</tt> for empty objects and arrays
+     * @return false if tree can not be stored in columns
+     */
+    private boolean flatten(JsonElement tree, JsonArray path, List<JsonArray> paths,
+            StringBuilder kinds, List<JsonPrimitive> leaves) {
+      if (tree.isJsonObject()) {
+        JsonObject obj = tree.getAsJsonObject();
+        if (obj.entrySet().isEmpty()) {
+          return addLeaf(path, EMPTY_OBJECT, null, paths, kinds, leaves);
+        }
+        for (Map.Entry<String, JsonElement> entry : obj.entrySet()) {
+          JsonArray p = copy(path);
+          p.add(new JsonPrimitive(entry.getKey()));
+          if (!flatten(entry.getValue(), p, paths, kinds, leaves)) {
+            return false;
+          }
+        }
+        return true;
+      }
+      if (tree.isJsonArray()) {
+        JsonArray arr = tree.getAsJsonArray();
+        if (arr.size() == 0) {
+          return addLeaf(path, EMPTY_ARRAY, null, paths, kinds, leaves);
+        }
+        for (int i = 0; i < arr.size(); i++) {
+          JsonArray p = copy(path);
+          p.add(new JsonPrimitive(i));
+          if (!flatten(arr.get(i), p, paths, kinds, leaves)) {
+            return false;
+          }
+        }
+        return true;
+      }
+      if (tree.isJsonPrimitive()) {
+        JsonPrimitive prim = tree.getAsJsonPrimitive();
+        if (prim.isNumber()) {
+          return addLeaf(path, NUMBER, prim, paths, kinds, leaves);
+        }
+        if (prim.isBoolean()) {
+          return addLeaf(path, BOOLEAN, prim, paths, kinds, leaves);
+        }
+      }
+      return false; // strings and nulls
+    }
+
+    private boolean addLeaf(JsonArray path, char kind, JsonPrimitive value, List<JsonArray> paths,
+            StringBuilder kinds, List<JsonPrimitive> leaves) {
+      paths.add(path);
+      kinds.append(kind);
+      leaves.add(value);
+      return true;
+    }
+
+    private JsonArray copy(JsonArray path) {
+      JsonArray ret = new JsonArray();
+      ret.addAll(path);
+      return ret;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public List<E> read(JsonReader in) throws IOException {
+      if (in.peek() != JsonToken.BEGIN_OBJECT) {
+        return delegate.read(in);
+      }
+      int n = 0;
+      String kinds = null;
+      List<List<Object>> paths = new ArrayList<>();
+      List<Integer> cols = new ArrayList<>();
+      in.beginObject();
+      while (in.hasNext()) {
+        switch (in.nextName()) {
+          case "size":
+            n = in.nextInt();
+            break;
+          case "kinds":
+            kinds = in.nextString();
+            break;
+          case "paths":
+            in.beginArray();
+            while (in.hasNext()) {
+              List<Object> path = new ArrayList<>();
+              in.beginArray();
+              while (in.hasNext()) {
+                if (in.peek() == JsonToken.NUMBER) {
+                  path.add(in.nextInt());
+                } else {
+                  path.add(in.nextString());
+                }
+              }
+              in.endArray();
+              paths.add(path);
+            }
+            in.endArray();
+            break;
+          case "columns":
+            in.beginArray();
+            while (in.hasNext()) {
+              cols.add(in.nextInt());
+            }
+            in.endArray();
+            break;
+          default:
+            in.skipValue();
+        }
+      }
+      in.endObject();
+      if (kinds == null || kinds.length() != paths.size() || cols.size() != paths.size()) {
+        throw new JsonSyntaxException("Broken list of nodes in columnar QCONF");
+      }
+      double[][] numbers = new double[paths.size()][];
+      boolean[][] booleans = new boolean[paths.size()][];
+      for (int p = 0; p < paths.size(); p++) {
+        if (kinds.charAt(p) == NUMBER) {
+          numbers[p] = container.readDoubles(cols.get(p));
+        } else if (kinds.charAt(p) == BOOLEAN) {
+          booleans[p] = container.readBooleans(cols.get(p));
+        }
+      }
+      List<E> ret = new ArrayList<>(n);
+      if (n == 0) {
+        return ret;
+      }
+      NodeReader reader = getReader(kinds, paths, numbers, booleans);
+      for (int i = 0; i < n; i++) {
+        ret.add(reader != null ? (E) reader.read(numbers, booleans, i)
+                : fromTree(kinds, paths, numbers, booleans, i));
+      }
+      return ret;
+    }
+
+    /**
+     * Get reader of nodes of given structure.
+     *
+     * <p>Reader is built once for each structure and checked against {@link #fromTree} on first
+     * node. <tt>null</tt> is returned if node can not be decoded directly, e.g. it has custom
+     * adapter, fields of collection type or fields that are not known to Gson.
+     *
+     * @param kinds kinds of leaves
+     * @param paths paths of leaves
+     * @param numbers numerical columns
+     * @param booleans logical columns
+     * @return reader or <tt>null</tt> if nodes must be decoded by {@link #fromTree}
+     */
+    @SuppressWarnings("unchecked")
+    private NodeReader getReader(String kinds, List<List<Object>> paths, double[][] numbers,
+            boolean[][] booleans) {
+      String key = kinds + paths;
+      if (readers.containsKey(key)) {
+        return readers.get(key);
+      }
+      NodeReader reader = null;
+      try {
+        reader = NodeReader.create(gson, elementType, kinds, paths);
+        E direct = (E) reader.read(numbers, booleans, 0);
+        E tree = fromTree(kinds, paths, numbers, booleans, 0);
+        if (!elementAdapter.toJsonTree(direct).equals(elementAdapter.toJsonTree(tree))) {
+          LOGGER.debug("Nodes of " + elementType.getName() + " are decoded from JSON tree");
+          reader = null;
+        }
+      } catch (ReflectiveOperationException | RuntimeException e) {
+        LOGGER.debug("Nodes of " + elementType.getName() + " are decoded from JSON tree: "
+                + e.getMessage());
+        reader = null;
+      }
+      readers.put(key, reader);
+      return reader;
+    }
+
+    /**
+     * Build JSON tree of node and convert it by adapter of node.
+     *
+     * @param kinds kinds of leaves
+     * @param paths paths of leaves
+     * @param numbers numerical columns
+     * @param booleans logical columns
+     * @param i index of node
+     * @return node
+     */
+    private E fromTree(String kinds, List<List<Object>> paths, double[][] numbers,
+            boolean[][] booleans, int i) {
+      JsonObject root = new JsonObject();
+      for (int p = 0; p < paths.size(); p++) {
+        JsonElement leaf;
+        switch (kinds.charAt(p)) {
+          case NUMBER:
+            leaf = new JsonPrimitive(numbers[p][i]);
+            break;
+          case BOOLEAN:
+            leaf = new JsonPrimitive(booleans[p][i]);
+            break;
+          case EMPTY_ARRAY:
+            leaf = new JsonArray();
+            break;
+          default:
+            leaf = new JsonObject();
+        }
+        put(root, paths.get(p), leaf);
+      }
+      return elementAdapter.fromJsonTree(root);
+    }
+
+    /**
+     * Put leaf into tree creating missing objects and arrays on path.
+     *
+     * @param root root of tree
+     * @param path path to leaf
+     * @param leaf leaf
+     */
+    private void put(JsonObject root, List<Object> path, JsonElement leaf) {
+      JsonElement node = root;
+      for (int s = 0; s < path.size(); s++) {
+        Object seg = path.get(s);
+        boolean last = s == path.size() - 1;
+        JsonElement child;
+        if (seg instanceof Integer) {
+          JsonArray arr = node.getAsJsonArray();
+          int idx = (Integer) seg;
+          if (idx < arr.size()) {
+            child = arr.get(idx);
+          } else {
+            child = last ? leaf : newNode(path.get(s + 1));
+            arr.add(child);
+          }
+        } else {
+          JsonObject obj = node.getAsJsonObject();
+          child = obj.get((String) seg);
+          if (child == null) {
+            child = last ? leaf : newNode(path.get(s + 1));
+            obj.add((String) seg, child);
+          }
+        }
+        node = child;
+      }
+    }
+
+    private JsonElement newNode(Object nextSegment) {
+      return nextSegment instanceof Integer ? new JsonArray() : new JsonObject();
+    }
+  }
+
+  /**
+   * Decoder of nodes of one structure from columns.
+   *
+   * <p>Objects are created as Gson creates them: by constructor without arguments if class has one,
+   * otherwise by adapter of class from empty JSON object. Leaves are then assigned to fields and
+   * elements of arrays without building JSON.
+   *
+   * @author p.baniukiewicz
+   */
+  private static class NodeReader {
+
+    /**
+     * Build value of node, its field or element of array.
+     */
+    @FunctionalInterface
+    private interface Builder {
+      Object build(double[][] numbers, boolean[][] booleans, int i)
+              throws ReflectiveOperationException;
+    }
+
+    /**
+     * Assign value to field or element of array of <tt>target</tt>.
+     */
+    @FunctionalInterface
+    private interface Setter {
+      void set(Object target, double[][] numbers, boolean[][] booleans, int i)
+              throws ReflectiveOperationException;
+    }
+
+    /**
+     * Paths of leaves merged into tree.
+     */
+    private static class Trie {
+      final Map<Object, Trie> children = new LinkedHashMap<>();
+      int leaf = -1;
+
+      void add(List<Object> path, int segment, int p) {
+        if (segment == path.size()) {
+          leaf = p;
+        } else {
+          children.computeIfAbsent(path.get(segment), k -> new Trie()).add(path, segment + 1, p);
+        }
+      }
+    }
+
+    private final Builder root;
+
+    private NodeReader(Builder root) {
+      this.root = root;
+    }
+
+    /**
+     * Build reader for nodes of given structure.
+     *
+     * @param gson Gson used for objects without constructor without arguments
+     * @param type class of node
+     * @param kinds kinds of leaves
+     * @param paths paths of leaves
+     * @return reader
+     * @throws ReflectiveOperationException if fields or constructors are not accessible
+     * @throws IllegalArgumentException if structure does not match fields of classes
+     */
+    static NodeReader create(Gson gson, Class<?> type, String kinds, List<List<Object>> paths)
+            throws ReflectiveOperationException {
+      Trie trie = new Trie();
+      for (int p = 0; p < paths.size(); p++) {
+        trie.add(paths.get(p), 0, p);
+      }
+      return new NodeReader(objectBuilder(gson, type, trie, kinds));
+    }
+
+    /**
+     * Decode node.
+     *
+     * @param numbers numerical columns
+     * @param booleans logical columns
+     * @param i index of node
+     * @return node
+     */
+    Object read(double[][] numbers, boolean[][] booleans, int i) {
+      try {
+        return root.build(numbers, booleans, i);
+      } catch (ReflectiveOperationException e) {
+        throw new JsonSyntaxException(e);
+      }
+    }
+
+    private static Builder valueBuilder(Gson gson, Class<?> type, Trie trie, String kinds)
+            throws ReflectiveOperationException {
+      if (type.isArray()) {
+        return arrayBuilder(gson, type.getComponentType(), trie, kinds);
+      }
+      if (type.isPrimitive() || Collection.class.isAssignableFrom(type)
+              || Map.class.isAssignableFrom(type)) {
+        throw new IllegalArgumentException("Unsupported type " + type.getName());
+      }
+      return objectBuilder(gson, type, trie, kinds);
+    }
+
+    private static Builder objectBuilder(Gson gson, Class<?> type, Trie trie, String kinds)
+            throws ReflectiveOperationException {
+      Builder creator = creator(gson, type);
+      if (trie.leaf >= 0) {
+        if (kinds.charAt(trie.leaf) != EMPTY_OBJECT) {
+          throw new IllegalArgumentException("Value instead of object " + type.getName());
+        }
+        return creator;
+      }
+      List<Setter> setters = new ArrayList<>();
+      for (Map.Entry<Object, Trie> e : trie.children.entrySet()) {
+        if (!(e.getKey() instanceof String)) {
+          throw new IllegalArgumentException("Array instead of object " + type.getName());
+        }
+        setters.add(fieldSetter(gson, findField(type, (String) e.getKey()), e.getValue(), kinds));
+      }
+      Setter[] all = setters.toArray(new Setter[setters.size()]);
+      return (numbers, booleans, i) -> {
+        Object ret = creator.build(numbers, booleans, i);
+        for (Setter s : all) {
+          s.set(ret, numbers, booleans, i);
+        }
+        return ret;
+      };
+    }
+
+    private static Builder creator(Gson gson, Class<?> type) throws ReflectiveOperationException {
+      if (Modifier.isAbstract(type.getModifiers())) {
+        throw new IllegalArgumentException("Abstract type " + type.getName());
+      }
+      try {
+        Constructor<?> ctor = type.getDeclaredConstructor();
+        ctor.setAccessible(true);
+        return (numbers, booleans, i) -> ctor.newInstance();
+      } catch (NoSuchMethodException e) {
+        TypeAdapter<?> adapter = gson.getAdapter(type);
+        JsonObject empty = new JsonObject();
+        return (numbers, booleans, i) -> adapter.fromJsonTree(empty);
+      }
+    }
+
+    private static Builder arrayBuilder(Gson gson, Class<?> component, Trie trie, String kinds)
+            throws ReflectiveOperationException {
+      if (trie.leaf >= 0) {
+        if (kinds.charAt(trie.leaf) != EMPTY_ARRAY) {
+          throw new IllegalArgumentException("Value instead of array");
+        }
+        return (numbers, booleans, i) -> Array.newInstance(component, 0);
+      }
+      int length = trie.children.size();
+      Setter[] setters = new Setter[length];
+      int k = 0;
+      for (Map.Entry<Object, Trie> e : trie.children.entrySet()) {
+        if (!Integer.valueOf(k).equals(e.getKey())) {
+          throw new IllegalArgumentException("Object instead of array");
+        }
+        final int index = k;
+        Trie t = e.getValue();
+        if (t.leaf >= 0 && isValue(kinds.charAt(t.leaf))) {
+          final int p = t.leaf;
+          final char kind = kinds.charAt(p);
+          convert(component, kind, 0, false); // check type
+          setters[k] = (target, numbers, booleans, i) -> Array.set(target, index,
+                  convert(component, kind, kind == NUMBER ? numbers[p][i] : 0,
+                          kind == BOOLEAN && booleans[p][i]));
+        } else {
+          Builder b = valueBuilder(gson, component, t, kinds);
+          setters[k] = (target, numbers, booleans, i) -> Array.set(target, index,
+                  b.build(numbers, booleans, i));
+        }
+        k++;
+      }
+      return (numbers, booleans, i) -> {
+        Object ret = Array.newInstance(component, length);
+        for (Setter s : setters) {
+          s.set(ret, numbers, booleans, i);
+        }
+        return ret;
+      };
+    }
+
+    private static Setter fieldSetter(Gson gson, Field field, Trie trie, String kinds)
+            throws ReflectiveOperationException {
+      Class<?> type = field.getType();
+      if (trie.leaf >= 0 && isValue(kinds.charAt(trie.leaf))) {
+        final int p = trie.leaf;
+        final char kind = kinds.charAt(p);
+        convert(type, kind, 0, false); // check type
+        if (type == double.class) {
+          return (target, numbers, booleans, i) -> field.setDouble(target, numbers[p][i]);
+        }
+        if (type == int.class) {
+          return (target, numbers, booleans, i) -> field.setInt(target, (int) numbers[p][i]);
+        }
+        if (type == boolean.class) {
+          return (target, numbers, booleans, i) -> field.setBoolean(target, booleans[p][i]);
+        }
+        return (target, numbers, booleans, i) -> field.set(target,
+                convert(type, kind, kind == NUMBER ? numbers[p][i] : 0,
+                        kind == BOOLEAN && booleans[p][i]));
+      }
+      Builder b = valueBuilder(gson, type, trie, kinds);
+      return (target, numbers, booleans, i) -> field.set(target, b.build(numbers, booleans, i));
+    }
+
+    private static boolean isValue(char kind) {
+      return kind == NUMBER || kind == BOOLEAN;
+    }
+
+    /**
+     * Convert leaf to type of field as Gson does.
+     *
+     * @param type type of field or component of array
+     * @param kind kind of leaf
+     * @param number value of numerical leaf
+     * @param bool value of logical leaf
+     * @return boxed value
+     * @throws IllegalArgumentException if leaf can not be assigned to type
+     */
+    private static Object convert(Class<?> type, char kind, double number, boolean bool) {
+      if (kind == BOOLEAN) {
+        if (type == boolean.class || type == Boolean.class) {
+          return Boolean.valueOf(bool);
+        }
+      } else if (type == double.class || type == Double.class) {
+        return Double.valueOf(number);
+      } else if (type == float.class || type == Float.class) {
+        return Float.valueOf((float) number);
+      } else if (type == int.class || type == Integer.class) {
+        return Integer.valueOf((int) number);
+      } else if (type == long.class || type == Long.class) {
+        return Long.valueOf((long) number);
+      } else if (type == short.class || type == Short.class) {
+        return Short.valueOf((short) (int) number);
+      } else if (type == byte.class || type == Byte.class) {
+        return Byte.valueOf((byte) (int) number);
+      }
+      throw new IllegalArgumentException("Can not assign leaf to " + type.getName());
+    }
+
+    /**
+     * Find field serialised under given name, as Gson does.
+     *
+     * @param type class of object
+     * @param name name of field in JSON
+     * @return accessible field
+     * @throws NoSuchFieldException if there is no such field
+     */
+    private static Field findField(Class<?> type, String name) throws NoSuchFieldException {
+      for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+        for (Field f : c.getDeclaredFields()) {
+          int mod = f.getModifiers();
+          if (Modifier.isStatic(mod) || Modifier.isTransient(mod)) {
+            continue;
+          }
+          SerializedName sn = f.getAnnotation(SerializedName.class);
+          if (name.equals(sn != null ? sn.value() : f.getName())) {
+            f.setAccessible(true);
+            return f;
+          }
+        }
+      }
+      throw new NoSuchFieldException(name + " in " + type.getName());
+    }
+  }
+}
@@ -1,5 +1,7 @@
 package com.github.celldynamics.quimp.filesystem;
 
+import java.lang.reflect.Type;
+
 import com.github.celldynamics.quimp.BOAState;
 import com.github.celldynamics.quimp.BOA_;
 import com.github.celldynamics.quimp.QParams;
@@ -9,6 +11,8 @@ import com.github.celldynamics.quimp.ViewUpdater;
 import com.github.celldynamics.quimp.filesystem.converter.FormatConverter;
 import com.github.celldynamics.quimp.plugin.engine.PluginFactory;
 import com.github.celldynamics.quimp.plugin.qanalysis.STmap;
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
 
 /**
  * Integrate outputs from every module of QuimP.
@@ -16,6 +20,12 @@ import com.github.celldynamics.quimp.plugin.qanalysis.STmap;
  * <p>All modules can add here their configuration sets. This structure is used for exchanging data
  * between modules. It can be dynamically modified.
  * 
+ * <p>Modules can be also loaded on demand from {@link QconfSections}. Then each module is restored
+ * on first call of its getter, fields of not loaded modules are <tt>null</tt>. Getters and
+ * {@link #validateDataContainer(int)} are synchronized, so module is loaded once also if it is
+ * requested from many threads. Public fields are not synchronized and must not be read before
+ * module is loaded.
+ * 
  * @author p.baniukiewicz
  * @see FormatConverter
  * @see QParams
@@ -72,6 +82,14 @@ public class DataContainer implements IQuimpSerialize {
 
   private transient PluginFactory pf;
   private transient ViewUpdater vu;
+  /**
+   * Modules not loaded yet, <tt>null</tt> if all modules are loaded.
+   */
+  private transient QconfSections sections;
+  /**
+   * Gson used for loading {@link #sections}.
+   */
+  private transient Gson gson;
 
   /**
    * Default constructor. Create empty data containers.
@@ -101,7 +119,11 @@ public class DataContainer implements IQuimpSerialize {
    * 
    * @return the bOAState
    */
-  public BOAState getBOAState() {
+  public synchronized BOAState getBOAState() {
+    if (BOAState == null && isPending("BOAState")) {
+      BOAState = loadSection("BOAState", BOAState.class);
+      restore("BOAState", this::restoreBoaState);
+    }
     return BOAState;
   }
 
@@ -110,7 +132,11 @@ public class DataContainer implements IQuimpSerialize {
    * 
    * @return the eCMMState
    */
-  public OutlinesCollection getEcmmState() {
+  public synchronized OutlinesCollection getEcmmState() {
+    if (ECMMState == null && isPending("ECMMState")) {
+      ECMMState = loadSection("ECMMState", OutlinesCollection.class);
+      restore("ECMMState", this::restoreEcmmState);
+    }
     return ECMMState;
   }
 
@@ -119,7 +145,11 @@ public class DataContainer implements IQuimpSerialize {
    * 
    * @return the qState
    */
-  public STmap[] getQState() {
+  public synchronized STmap[] getQState() {
+    if (QState == null && isPending("QState")) {
+      QState = loadSection("QState", STmap[].class);
+      restore("QState", this::restoreQState);
+    }
     return QState;
   }
 
@@ -128,7 +158,11 @@ public class DataContainer implements IQuimpSerialize {
    * 
    * @return the aNAState
    */
-  public ANAParamCollection getANAState() {
+  public synchronized ANAParamCollection getANAState() {
+    if (ANAState == null && isPending("ANAState")) {
+      ANAState = loadSection("ANAState", ANAParamCollection.class);
+      restore("ANAState", this::restoreAnaState);
+    }
     return ANAState;
   }
 
@@ -137,7 +171,11 @@ public class DataContainer implements IQuimpSerialize {
    * 
    * @return the stats
    */
-  public StatsCollection getStats() {
+  public synchronized StatsCollection getStats() {
+    if (Stats == null && isPending("Stats")) {
+      Stats = loadSection("Stats", StatsCollection.class);
+      restore("Stats", this::restoreStats);
+    }
     return Stats;
   }
 
@@ -146,20 +184,35 @@ public class DataContainer implements IQuimpSerialize {
    * 
    * @return Flags according to loaded modules.
    * @see com.github.celldynamics.quimp.filesystem.QconfLoader
+   * @see #validateDataContainer(int)
    */
   public int validateDataContainer() {
+    return validateDataContainer(BOA_RUN | ECMM_RUN | ANA_RUN | Q_RUN | STATS_AVAIL);
+  }
+
+  /**
+   * Get information about selected modules in object.
+   * 
+   * <p>Modules loaded on demand are not loaded except Q module, which must be loaded for
+   * verification.
+   * 
+   * @param modules flags of modules to check, e.g. {@link #BOA_RUN}
+   * @return Flags of selected modules that are available
+   * @see com.github.celldynamics.quimp.filesystem.QconfLoader
+   */
+  public synchronized int validateDataContainer(int modules) {
     int ret = QconfLoader.QCONF_INVALID;
     // check for all modules
-    if (getBOAState() != null) {
+    if ((modules & BOA_RUN) != 0 && (BOAState != null || isPending("BOAState"))) {
       ret += DataContainer.BOA_RUN;
     }
-    if (getEcmmState() != null) {
+    if ((modules & ECMM_RUN) != 0 && (ECMMState != null || isPending("ECMMState"))) {
       ret += DataContainer.ECMM_RUN;
     }
-    if (getANAState() != null) {
+    if ((modules & ANA_RUN) != 0 && (ANAState != null || isPending("ANAState"))) {
       ret += DataContainer.ANA_RUN;
     }
-    if (getQState() != null) {
+    if ((modules & Q_RUN) != 0 && getQState() != null) {
       if (getQState().length > 0) {
         int count = 0;
         for (STmap tmp : getQState()) {
@@ -174,12 +227,71 @@ public class DataContainer implements IQuimpSerialize {
         }
       }
     }
-    if (getStats() != null) {
+    if ((modules & STATS_AVAIL) != 0 && (Stats != null || isPending("Stats"))) {
       ret += DataContainer.STATS_AVAIL;
     }
     return ret;
   }
 
+  /**
+   * Set source of modules loaded on demand.
+   * 
+   * <p>Modules already set in this object are not replaced by those from sections.
+   * 
+   * @param sections indexed QCONF file
+   * @param gson Gson used for loading modules, configured as for loading whole file
+   * @see QconfLoader#QconfLoader(java.io.File, boolean)
+   */
+  public void setSections(QconfSections sections, Gson gson) {
+    this.sections = sections;
+    this.gson = gson;
+  }
+
+  /**
+   * Check if module is waiting for loading.
+   * 
+   * @param name name of module (field)
+   * @return true if module can be loaded from {@link #sections}
+   */
+  private boolean isPending(String name) {
+    return sections != null && sections.isPresent(name);
+  }
+
+  /**
+   * Load module from {@link #sections}.
+   * 
+   * @param name name of module (field)
+   * @param type type of module
+   * @return restored module, {@link IQuimpSerialize#afterSerialize()} is not called
+   */
+  private <S> S loadSection(String name, Type type) {
+    return sections.load(name, type, gson);
+  }
+
+  /**
+   * Call {@link IQuimpSerialize#afterSerialize()} on module loaded on demand.
+   * 
+   * @param name name of module
+   * @param restorer method restoring module
+   * @throws JsonSyntaxException if module could not be restored
+   */
+  private void restore(String name, Restorer restorer) {
+    try {
+      restorer.restore();
+    } catch (RuntimeException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new JsonSyntaxException("Can not restore " + name + " from QCONF", e);
+    }
+  }
+
+  /**
+   * Restoring state of module after loading.
+   */
+  private interface Restorer {
+    void restore() throws Exception;
+  }
+
   /**
    * Called before serialization.
    * 
@@ -188,6 +300,12 @@ public class DataContainer implements IQuimpSerialize {
    */
   @Override
   public void beforeSerialize() {
+    // modules not loaded yet would be lost
+    getBOAState();
+    getEcmmState();
+    getANAState();
+    getQState();
+    getStats();
     if (BOAState != null) {
       BOAState.beforeSerialize(); // serialize first stored data
     }
@@ -217,6 +335,19 @@ public class DataContainer implements IQuimpSerialize {
    */
   @Override
   public void afterSerialize() throws Exception {
+    restoreBoaState();
+    restoreEcmmState();
+    restoreAnaState();
+    restoreQState();
+    restoreStats();
+  }
+
+  /**
+   * Restore BOA module after loading.
+   * 
+   * @throws Exception from afterSerialize of module
+   */
+  private void restoreBoaState() throws Exception {
     if (BOAState != null) {
       BOAState.snakePluginList = new SnakePluginList(BOA_.NUM_SNAKE_PLUGINS, pf, vu);
       BOAState.afterSerialize();
@@ -224,12 +355,36 @@ public class DataContainer implements IQuimpSerialize {
         sl.updateRefs(pf, vu);
       }
     }
+  }
+
+  /**
+   * Restore ECMM module after loading.
+   * 
+   * @throws Exception from afterSerialize of module
+   */
+  private void restoreEcmmState() throws Exception {
     if (ECMMState != null) {
       ECMMState.afterSerialize();
     }
+  }
+
+  /**
+   * Restore ANA module after loading.
+   * 
+   * @throws Exception from afterSerialize of module
+   */
+  private void restoreAnaState() throws Exception {
     if (ANAState != null) {
       ANAState.afterSerialize();
     }
+  }
+
+  /**
+   * Restore Q module after loading.
+   * 
+   * @throws Exception from afterSerialize of module
+   */
+  private void restoreQState() throws Exception {
     if (QState != null) {
       for (STmap stM : QState) {
         if (stM != null) {
@@ -237,6 +392,14 @@ public class DataContainer implements IQuimpSerialize {
         }
       }
     }
+  }
+
+  /**
+   * Restore statistics module after loading.
+   * 
+   * @throws Exception from afterSerialize of module
+   */
+  private void restoreStats() throws Exception {
     if (Stats != null) {
       Stats.afterSerialize();
     }
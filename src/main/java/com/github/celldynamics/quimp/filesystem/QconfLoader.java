@@ -80,6 +80,10 @@ public class QconfLoader {
    * QParamsQconf for newer format.
    */
   private QParams qp = null;
+  /**
+   * Load modules from QCONF on demand.
+   */
+  private boolean lazy = false;
 
   /**
    * Default constructor.
@@ -114,6 +118,37 @@ public class QconfLoader {
     loader(file, null); // use default filter set in QuimP_Bar
   }
 
+  /**
+   * Parameterised constructor with option of loading QCONF modules on demand.
+   * 
+   * <p>If <tt>lazy</tt> is set, QCONF file is read once on load but modules are restored on first
+   * call of their getters, e.g. {@link #getStats()} restores only statistics. This is faster and
+   * uses less memory for tools that do not need all modules. See
+   * {@link QParamsQconf#QParamsQconf(File, boolean)} for limitations. It has no effect for paQP
+   * files.
+   * 
+   * @param file File *.paQP/QCONF. If <tt>null</tt> user is asked for this file
+   * @param lazy true for loading modules on demand
+   * @throws QuimpException when file can not be loaded
+   */
+  public QconfLoader(File file, boolean lazy) throws QuimpException {
+    this(file, null, lazy); // use default filter set in QuimP_Bar
+  }
+
+  /**
+   * Parametrised constructor. Allow to choose file selector filter and loading modules on demand.
+   * 
+   * @param file File *.paQP/QCONF. If <tt>null</tt> user is asked for this file.
+   * @param fileExt pre-selection extension or <tt>null</tt> to use default selected in QuimP_Bar.
+   * @param lazy true for loading modules on demand
+   * @throws QuimpException when file can not be loaded
+   * @see #QconfLoader(File, boolean)
+   */
+  public QconfLoader(File file, String fileExt, boolean lazy) throws QuimpException {
+    this.lazy = lazy;
+    loader(file, fileExt);
+  }
+
   /**
    * File loaded and initialiser for this class.
    * 
@@ -149,7 +184,7 @@ public class QconfLoader {
     File paramFile = new File(directory, filename); // config file (copy of input)
     // TODO #152
     if (paramFile.getName().toLowerCase().endsWith(FileExtensions.newConfigFileExt.toLowerCase())) {
-      qp = new QParamsQconf(paramFile);
+      qp = new QParamsQconf(paramFile, lazy);
     } else {
       qp = new QParams(paramFile); // initialize general param storage
     }
@@ -402,15 +437,7 @@ public class QconfLoader {
    * @return true if BOA module was run.
    */
   public boolean isBOAPresent() {
-    int ret = validateQconf();
-    if (ret == QconfLoader.QCONF_INVALID || ret == QParams.QUIMP_11) {
-      return false;
-    }
-    if ((ret & DataContainer.BOA_RUN) == DataContainer.BOA_RUN) {
-      return true;
-    } else {
-      return false;
-    }
+    return isPresent(DataContainer.BOA_RUN);
   }
 
   /**
@@ -420,16 +447,7 @@ public class QconfLoader {
    * @return true if ECMM module was run.
    */
   public boolean isECMMPresent() {
-    int ret = validateQconf();
-    if (ret == QconfLoader.QCONF_INVALID || ret == QParams.QUIMP_11) {
-      return false;
-    }
-    if ((ret & DataContainer.ECMM_RUN) == DataContainer.ECMM_RUN) {
-      return true;
-    } else {
-      return false;
-    }
-
+    return isPresent(DataContainer.ECMM_RUN);
   }
 
   /**
@@ -439,16 +457,7 @@ public class QconfLoader {
    * @return true if ANA module was run.
    */
   public boolean isANAPresent() {
-    int ret = validateQconf();
-    if (ret == QconfLoader.QCONF_INVALID || ret == QParams.QUIMP_11) {
-      return false;
-    }
-    if ((ret & DataContainer.ANA_RUN) == DataContainer.ANA_RUN) {
-      return true;
-    } else {
-      return false;
-    }
-
+    return isPresent(DataContainer.ANA_RUN);
   }
 
   /**
@@ -458,15 +467,7 @@ public class QconfLoader {
    * @return true if Q module was run.
    */
   public boolean isQPresent() {
-    int ret = validateQconf();
-    if (ret == QconfLoader.QCONF_INVALID || ret == QParams.QUIMP_11) {
-      return false;
-    }
-    if ((ret & DataContainer.Q_RUN) == DataContainer.Q_RUN) {
-      return true;
-    } else {
-      return false;
-    }
+    return isPresent(DataContainer.Q_RUN);
   }
 
   /**
@@ -476,15 +477,30 @@ public class QconfLoader {
    * @return true if stats are present.
    */
   public boolean isStatsPresent() {
-    int ret = validateQconf();
-    if (ret == QconfLoader.QCONF_INVALID || ret == QParams.QUIMP_11) {
-      return false;
-    }
-    if ((ret & DataContainer.STATS_AVAIL) == DataContainer.STATS_AVAIL) {
-      return true;
+    return isPresent(DataContainer.STATS_AVAIL);
+  }
+
+  /**
+   * Check if module is present in QCONF.
+   * 
+   * <p>If modules are loaded on demand only selected module is verified, thus other modules are not
+   * restored.
+   * 
+   * @param module flag of module, e.g. {@link DataContainer#BOA_RUN}
+   * @return true if module is present
+   * @see DataContainer#validateDataContainer(int)
+   */
+  private boolean isPresent(int module) {
+    int ret;
+    if (lazy && getQp() != null && getQp().getParamFormat() == QParams.NEW_QUIMP) {
+      ret = ((QParamsQconf) getQp()).getLoadedDataContainer().validateDataContainer(module);
     } else {
+      ret = validateQconf();
+    }
+    if (ret == QconfLoader.QCONF_INVALID || ret == QParams.QUIMP_11) {
       return false;
     }
+    return (ret & module) == module;
   }
 
   /**
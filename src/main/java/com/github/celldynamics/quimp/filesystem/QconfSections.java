@@ -0,0 +1,383 @@
+package com.github.celldynamics.quimp.filesystem;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.Type;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.celldynamics.quimp.Serializer;
+import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+
+/**
+ * Index of sections of QCONF file for loading them on demand.
+ *
+ * <p>File is read once on construction. Members of wrapped object (<tt>obj</tt> in
+ * {@link Serializer}) are not deserialised, only their positions in file are remembered. The rest
+ * of file (version, class name, etc) is available as JSON with empty wrapped object, see
+ * {@link #getHeader()}. Each section can be then deserialised separately by
+ * {@link #load(String, Type, Gson)}, what reads only the part of file where it is stored. Both plain
+ * and gzip compressed files are supported, although compressed files must be decompressed from
+ * beginning for every section.
+ *
+ * <p>Structure of JSON is checked only as far as necessary for finding sections. Syntax errors
+ * inside sections are reported on their loading.
+ *
+ * @author p.baniukiewicz
+ * @see DataContainer#setSections(QconfSections, Gson)
+ * @see QconfLoader#QconfLoader(File, boolean)
+ */
+public class QconfSections {
+
+  /**
+   * The Constant LOGGER.
+   */
+  static final Logger LOGGER = LoggerFactory.getLogger(QconfSections.class.getName());
+
+  /**
+   * Size of buffers used for reading file.
+   */
+  private static final int BUFFER_SIZE = 1 << 16;
+  /**
+   * Name of wrapped object in {@link Serializer}.
+   */
+  private static final String WRAPPED_OBJECT = "obj";
+
+  private final File file;
+  private final boolean compressed;
+  private final String header;
+  /**
+   * Positions of not loaded sections in decompressed file, start and end (exclusive).
+   */
+  private final Map<String, long[]> sections = new HashMap<>();
+
+  /**
+   * Index QCONF file.
+   *
+   * @param file file to read
+   * @throws IOException on file read error
+   * @throws JsonSyntaxException if file is not JSON object
+   */
+  public QconfSections(File file) throws IOException {
+    this.file = file;
+    compressed = Serializer.isGzipFile(file);
+    try (InputStream is = open(0)) {
+      Indexer indexer = new Indexer(is);
+      header = indexer.index();
+    }
+    LOGGER.debug("Indexed " + file.getPath() + ", sections: " + sections.keySet());
+  }
+
+  /**
+   * Open file at given position of decompressed stream.
+   *
+   * @param position position in decompressed file
+   * @return buffered stream
+   * @throws IOException on file read error
+   */
+  private InputStream open(long position) throws IOException {
+    FileInputStream fis = new FileInputStream(file);
+    InputStream is = fis;
+    try {
+      if (compressed) {
+        is = new GZIPInputStream(new BufferedInputStream(fis, BUFFER_SIZE), BUFFER_SIZE);
+        long toSkip = position;
+        while (toSkip > 0) {
+          long skipped = is.skip(toSkip);
+          if (skipped <= 0) {
+            throw new EOFException("Unexpected end of file " + file.getPath());
+          }
+          toSkip -= skipped;
+        }
+      } else {
+        fis.getChannel().position(position);
+      }
+      return new BufferedInputStream(is, BUFFER_SIZE);
+    } catch (IOException e) {
+      is.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Get JSON of file with wrapped object without members.
+   *
+   * @return JSON string that can be restored by {@link Serializer#fromString(String)}
+   */
+  public String getHeader() {
+    return header;
+  }
+
+  /**
+   * Check if section can be loaded.
+   *
+   * @param name name of section (field of wrapped object)
+   * @return true if section exists in file, is not <tt>null</tt> and has not been loaded yet
+   */
+  public boolean isPresent(String name) {
+    return sections.containsKey(name);
+  }
+
+  /**
+   * Check if file is gzip compressed.
+   *
+   * @return true if compressed
+   */
+  public boolean isGzip() {
+    return compressed;
+  }
+
+  /**
+   * Deserialise section.
+   *
+   * <p>Section is removed from index, it can be loaded only once. No
+   * {@link IQuimpSerialize#afterSerialize()} is called.
+   *
+   * @param name name of section
+   * @param type type of section
+   * @param gson configured Gson used for restoring
+   * @return restored object or <tt>null</tt> if section is not present
+   * @throws JsonIOException on file read error
+   * @throws JsonSyntaxException on wrong syntax
+   * @see #isPresent(String)
+   */
+  public <S> S load(String name, Type type, Gson gson) {
+    long[] pos = sections.remove(name);
+    if (pos == null) {
+      return null;
+    }
+    LOGGER.debug("Loading section " + name + " from " + file.getPath());
+    try (JsonReader reader = new JsonReader(new BufferedReader(
+            new InputStreamReader(open(pos[0]), Charset.defaultCharset()), BUFFER_SIZE))) {
+      return gson.fromJson(reader, type);
+    } catch (IOException e) {
+      throw new JsonIOException("Section " + name + " could not be read", e);
+    }
+  }
+
+  /**
+   * Single pass parser of JSON structure.
+   *
+   * <p>Works on bytes, structural characters of JSON are ASCII and do not appear in multi-byte
+   * characters of UTF-8 or in single byte charsets.
+   *
+   * @author p.baniukiewicz
+   */
+  private class Indexer {
+    private static final int NONE = -2;
+    private final InputStream is;
+    private int peeked = NONE;
+    /**
+     * Position of next byte returned by {@link #next()}.
+     */
+    private long pos = 0;
+    /**
+     * Collects parsed bytes, <tt>null</tt> for not collecting.
+     */
+    private ByteArrayOutputStream capture;
+
+    Indexer(InputStream is) {
+      this.is = is;
+    }
+
+    /**
+     * Parse top level object, sections of wrapped object are skipped and indexed.
+     *
+     * @return JSON of file with empty wrapped object
+     * @throws IOException on read error
+     */
+    String index() throws IOException {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      capture = out;
+      expect(skipWhitespace(), '{');
+      next();
+      if (skipWhitespace() == '}') {
+        next();
+      } else {
+        do {
+          skipWhitespace();
+          String key = readString(true);
+          expect(skipWhitespace(), ':');
+          next();
+          if (key.equals(WRAPPED_OBJECT) && skipWhitespace() == '{') {
+            capture = null;
+            indexSections();
+            out.write('{');
+            out.write('}');
+            capture = out;
+          } else {
+            skipValue();
+          }
+        } while (nextMember('}'));
+      }
+      return new String(out.toByteArray(), Charset.defaultCharset());
+    }
+
+    /**
+     * Record positions of members of wrapped object.
+     *
+     * @throws IOException on read error
+     */
+    private void indexSections() throws IOException {
+      next(); // {
+      if (skipWhitespace() == '}') {
+        next();
+        return;
+      }
+      do {
+        skipWhitespace();
+        String key = readString(true);
+        expect(skipWhitespace(), ':');
+        next();
+        boolean isNull = skipWhitespace() == 'n';
+        long start = pos;
+        skipValue();
+        if (!isNull) {
+          sections.put(key, new long[] { start, pos });
+        }
+      } while (nextMember('}'));
+    }
+
+    /**
+     * Skip any JSON value.
+     *
+     * @throws IOException on read error
+     */
+    private void skipValue() throws IOException {
+      int c = skipWhitespace();
+      switch (c) {
+        case '{':
+          next();
+          if (skipWhitespace() == '}') {
+            next();
+            return;
+          }
+          do {
+            skipWhitespace();
+            readString(false);
+            expect(skipWhitespace(), ':');
+            next();
+            skipValue();
+          } while (nextMember('}'));
+          break;
+        case '[':
+          next();
+          if (skipWhitespace() == ']') {
+            next();
+            return;
+          }
+          do {
+            skipValue();
+          } while (nextMember(']'));
+          break;
+        case '"':
+          readString(false);
+          break;
+        default: // number or literal
+          while (!isDelimiter(peek())) {
+            next();
+          }
+      }
+    }
+
+    /**
+     * Read separator after member or element of object or array.
+     *
+     * @param close closing character of object or array
+     * @return true if next member follows, false on end of object or array
+     * @throws IOException on read error
+     */
+    private boolean nextMember(char close) throws IOException {
+      int c = skipWhitespace();
+      next();
+      if (c == ',') {
+        return true;
+      }
+      expect(c, close);
+      return false;
+    }
+
+    /**
+     * Read string.
+     *
+     * @param keep true if content should be returned
+     * @return content of string without unescaping or <tt>null</tt> if not kept
+     * @throws IOException on read error
+     */
+    private String readString(boolean keep) throws IOException {
+      expect(peek(), '"');
+      next();
+      ByteArrayOutputStream str = keep ? new ByteArrayOutputStream() : null;
+      int c;
+      while ((c = next()) != '"') {
+        if (keep) {
+          str.write(c);
+        }
+        if (c == '\\') {
+          c = next();
+          if (keep) {
+            str.write(c);
+          }
+        }
+      }
+      return keep ? new String(str.toByteArray(), StandardCharsets.UTF_8) : null;
+    }
+
+    private boolean isDelimiter(int c) {
+      return c < 0 || c == ',' || c == '}' || c == ']' || c == ' ' || c == '\t' || c == '\n'
+              || c == '\r';
+    }
+
+    private int skipWhitespace() throws IOException {
+      int c = peek();
+      while (c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+        next();
+        c = peek();
+      }
+      return c;
+    }
+
+    private void expect(int c, char expected) {
+      if (c != expected) {
+        throw new JsonSyntaxException("Expected '" + expected + "' at byte " + pos + " of "
+                + file.getPath() + ". Is it proper file?");
+      }
+    }
+
+    private int peek() throws IOException {
+      if (peeked == NONE) {
+        peeked = is.read();
+      }
+      return peeked;
+    }
+
+    private int next() throws IOException {
+      int c = peek();
+      if (c < 0) {
+        throw new EOFException("Unexpected end of file " + file.getPath());
+      }
+      peeked = NONE;
+      pos++;
+      if (capture != null) {
+        capture.write(c);
+      }
+      return c;
+    }
+  }
+}
@@ -67,7 +67,8 @@ import ch.qos.logback.classic.Logger;
  * [-] QCONF->tiffs<br>
  * 
  * <p>This class can be also used to extract data from QCONF {@link DataContainer} and save them as
- * plain csv files.
+ * plain csv files. QCONF attached by {@link #attachFile(File)} is loaded on demand, so only modules
+ * needed by requested conversion are restored.
  * 
  * <p><b>Note</b>
  * 
@@ -184,7 +185,7 @@ public class FormatConverter {
    */
   public void attachFile(File fileToConvert) throws QuimpException {
     logger.info("Converting file: " + fileToConvert.getName());
-    qcL = new QconfLoader(fileToConvert);
+    qcL = new QconfLoader(fileToConvert, true);
     path = Paths.get(fileToConvert.getParent());
     filename = Paths.get(qcL.getQp().getFileName()); // can contain xx_0 if old file loaded
   }
@@ -527,7 +528,7 @@ public class FormatConverter {
     int activeHandler = 0;
     // replace location to location of QCONF
     DataContainer dt = ((QParamsQconf) qcL.getQp()).getLoadedDataContainer();
-    dt.BOAState.boap.setOutputFileCore(path + File.separator + filename.toString());
+    dt.getBOAState().boap.setOutputFileCore(path + File.separator + filename.toString());
     String name = STmap.LOGGER.getName();
     STmap.LOGGER = logger; // FIXME replace
     Qp params = new Qp();
@@ -995,8 +996,8 @@ public class FormatConverter {
       CellStats cs = csI.next();
       try {
         FrameStatistics.write(cs.getFramestat().toArray(new FrameStatistics[0]),
-                ((QParamsQconf) qcL.getQp()).getStatsQP(), dt.BOAState.boap.getImageScale(),
-                dt.BOAState.boap.getImageFrameInterval());
+                ((QParamsQconf) qcL.getQp()).getStatsQP(), dt.getBOAState().boap.getImageScale(),
+                dt.getBOAState().boap.getImageFrameInterval());
         logger.info("\tSaved stats at: " + p.getFileName());
       } catch (IOException e) {
         logger.error("Can not write file");
@@ -1018,8 +1019,8 @@ public class FormatConverter {
    */
   Path getFeatureFileName(String featName, int cellNo, String ext) {
     DataContainer dt = ((QParamsQconf) qcL.getQp()).getLoadedDataContainer();
-    dt.BOAState.boap.setOutputFileCore(path + File.separator + filename.toString());
-    String fi = dt.BOAState.boap.getOutputFileCore().toPath().toString();
+    dt.getBOAState().boap.setOutputFileCore(path + File.separator + filename.toString());
+    String fi = dt.getBOAState().boap.getOutputFileCore().toPath().toString();
     fi = fi + "_" + cellNo + "_" + featName + ext;
     return Paths.get(fi);
   }
@@ -1041,7 +1042,7 @@ public class FormatConverter {
     DataContainer dt = ((QParamsQconf) qcL.getQp()).getLoadedDataContainer();
     dt.getBOAState().boap.setOutputFileCore(path + File.separator + filename.toString());
     logger.info("\tCreating snake files");
-    dt.BOAState.nest.writeSnakes(); // write paQP and snQP together
+    dt.getBOAState().nest.writeSnakes(); // write paQP and snQP together
   }
 
   /**
@@ -1059,7 +1060,7 @@ public class FormatConverter {
     int activeHandler = 0;
     // replace location to location of QCONF
     DataContainer dt = ((QParamsQconf) qcL.getQp()).getLoadedDataContainer();
-    dt.BOAState.boap.setOutputFileCore(path + File.separator + filename.toString());
+    dt.getBOAState().boap.setOutputFileCore(path + File.separator + filename.toString());
     Iterator<OutlineHandler> ohi = dt.getEcmmState().oHs.iterator();
     do {
       logger.info("\tCreating snake file " + activeHandler);
@@ -2,10 +2,12 @@ package com.github.celldynamics.quimp.geom;
 
 import java.awt.Point;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.function.Predicate;
 
+import com.github.celldynamics.quimp.utils.ParallelTools;
 import com.github.celldynamics.quimp.utils.QuimPArrayUtils;
 
 /**
@@ -68,8 +70,29 @@ public class MapTracker {
    *        {@link com.github.celldynamics.quimp.filesystem.DataContainer}
    * @see com.github.celldynamics.quimp.filesystem.DataContainer
    * @see com.github.celldynamics.quimp.plugin.qanalysis.STmap
+   * @see #MapTracker(double[][], double[][], int)
    */
   public MapTracker(double[][] originMap, double[][] coordMap) {
+    this(originMap, coordMap, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Construct tracking maps using given number of threads.
+   * 
+   * <p>Each point is matched to the point of neighbouring frame with closest coordinate, also
+   * considering coordinates shifted by -1 and +1 (wrapped around zero). Rows of neighbouring frame
+   * are sorted once and closest coordinate is found by binary search, rows are processed in
+   * parallel. Ties are resolved as in linear search - the lowest index wins, and unshifted
+   * coordinates win over shifted ones.
+   * 
+   * @param originMap originMap stored in
+   *        {@link com.github.celldynamics.quimp.filesystem.DataContainer}
+   * @param coordMap coordMap stored in
+   *        {@link com.github.celldynamics.quimp.filesystem.DataContainer}
+   * @param threads number of threads
+   * @see #MapTracker(double[][], double[][])
+   */
+  public MapTracker(double[][] originMap, double[][] coordMap, int threads) {
 
     forwardMap = QuimPArrayUtils.initInteger2dArray(originMap.length, originMap[0].length);
     backwardMap = QuimPArrayUtils.initInteger2dArray(forwardMap.length, forwardMap[0].length);
@@ -79,90 +102,140 @@ public class MapTracker {
 
     rowsFrames = forwardMap.length;
     colsIndexes = forwardMap[0].length;
-    double[] minV = new double[3];
-    double[] minI = new double[3];
-    // backward map
-    for (int i = 1; i < rowsFrames; i++) {
-      for (int j = 0; j < colsIndexes; j++) {
-        double p = originMap[i][j];
-        double[] diffA = rowDiff(p, coordMap[i - 1]);
-        double[] diffB = rowDiff(p, rowAdd(-1, coordMap[i - 1]));
-        double[] diffC = rowDiff(p, rowAdd(+1, coordMap[i - 1]));
 
-        double[] minDiffA = QuimPArrayUtils.minArrayIndexElement(diffA);
-        double[] minDiffB = QuimPArrayUtils.minArrayIndexElement(diffB);
-        double[] minDiffC = QuimPArrayUtils.minArrayIndexElement(diffC);
+    // task i fills backward row i+1 and forward row i
+    int tasks = rowsFrames - 1;
+    ParallelTools.forBlocks(tasks, threads, (from, to) -> {
+      for (int i = from; i < to; i++) {
+        trackRow(originMap[i + 1], coordMap[i], backwardMap[i + 1]);
+        trackRow(coordMap[i], originMap[i + 1], forwardMap[i]);
+      }
+    });
+  }
 
-        // copy min values to array
-        minV[0] = minDiffA[0];
-        minV[1] = minDiffB[0];
-        minV[2] = minDiffC[0];
-        minI[0] = minDiffA[1];
-        minI[1] = minDiffB[1];
-        minI[2] = minDiffC[1];
-        double[] minMinV = QuimPArrayUtils.minArrayIndexElement(minV);
-        backwardMap[i][j] = (int) minI[(int) minMinV[1]]; // copy index of smallest among A,B,C
+  /**
+   * Find for each point of row index of closest point in other row.
+   * 
+   * <p>Based on Matlab routine buildTrackMaps.m. For value <tt>p</tt> differences
+   * <tt>|p-row|</tt>, <tt>|p-(row-1)|</tt> and <tt>|p-(row+1)|</tt> are minimised and index of
+   * smallest among them is stored.
+   * 
+   * @param points values to find
+   * @param row values to search in
+   * @param out indexes of closest values in <tt>row</tt>, one for each of <tt>points</tt>
+   */
+  private static void trackRow(double[] points, double[] row, int[] out) {
+    Integer[] order = new Integer[row.length];
+    boolean hasNan = false;
+    for (int k = 0; k < row.length; k++) {
+      order[k] = k;
+      hasNan |= Double.isNaN(row[k]);
+    }
+    double[] sortedA = null;
+    double[] sortedB = null;
+    double[] sortedC = null;
+    int[] index = null;
+    if (!hasNan) {
+      Arrays.sort(order, (a, b) -> Double.compare(row[a], row[b])); // stable
+      sortedA = new double[row.length];
+      sortedB = new double[row.length];
+      sortedC = new double[row.length];
+      index = new int[row.length];
+      for (int k = 0; k < row.length; k++) {
+        index[k] = order[k];
+        sortedA[k] = row[order[k]];
+        sortedB[k] = row[order[k]] + (-1);
+        sortedC[k] = row[order[k]] + (+1);
       }
     }
-
-    // forward map
-    for (int i = 0; i < rowsFrames - 1; i++) {
-      for (int j = 0; j < colsIndexes; j++) {
-        double p = coordMap[i][j];
-        double[] diffA = rowDiff(p, originMap[i + 1]);
-        double[] diffB = rowDiff(p, rowAdd(-1, originMap[i + 1]));
-        double[] diffC = rowDiff(p, rowAdd(+1, originMap[i + 1]));
-
-        double[] minDiffA = QuimPArrayUtils.minArrayIndexElement(diffA);
-        double[] minDiffB = QuimPArrayUtils.minArrayIndexElement(diffB);
-        double[] minDiffC = QuimPArrayUtils.minArrayIndexElement(diffC);
-
-        // copy min values to array
-        minV[0] = minDiffA[0];
-        minV[1] = minDiffB[0];
-        minV[2] = minDiffC[0];
-        minI[0] = minDiffA[1];
-        minI[1] = minDiffB[1];
-        minI[2] = minDiffC[1];
-        double[] minMinV = QuimPArrayUtils.minArrayIndexElement(minV);
-        forwardMap[i][j] = (int) minI[(int) minMinV[1]]; // copy index of smallest among A,B,C
+    double[] minA = new double[2];
+    double[] minB = new double[2];
+    double[] minC = new double[2];
+    for (int j = 0; j < points.length; j++) {
+      double p = points[j];
+      if (hasNan || Double.isNaN(p)) {
+        closest(p, row, 0, minA);
+        closest(p, row, -1, minB);
+        closest(p, row, +1, minC);
+      } else {
+        closestSorted(p, sortedA, index, minA);
+        closestSorted(p, sortedB, index, minB);
+        closestSorted(p, sortedC, index, minC);
+      }
+      // index of smallest among A,B,C, the first one if equal
+      double[] min = minA;
+      if (min[0] > minB[0]) {
+        min = minB;
       }
+      if (min[0] > minC[0]) {
+        min = minC;
+      }
+      out[j] = (int) min[1];
     }
   }
 
   /**
-   * Compute <tt>p</tt>-<tt>row</tt>.
-   * 
-   * <p>Based on Matlab routine buildTrackMaps.m
+   * Find first index of minimal <tt>|p-(row+val)|</tt> by scanning row.
    * 
-   * @param p single value that row will be subtracted from
-   * @param row row to subtract from p
-   * @return Vector of <tt>p</tt>-<tt>row</tt> as a copy.
+   * @param p value to find
+   * @param row row to search in
+   * @param val value added to row
+   * @param ret minimal difference and its index
+   * @see QuimPArrayUtils#minArrayIndexElement(double[])
    */
-  private double[] rowDiff(double p, double[] row) {
-    double[] cpy = new double[row.length];
-    for (int i = 0; i < cpy.length; i++) {
-      cpy[i] = Math.abs(p - row[i]);
+  private static void closest(double p, double[] row, double val, double[] ret) {
+    double min = Math.abs(p - (row[0] + val));
+    int imin = 0;
+    for (int i = 1; i < row.length; i++) {
+      double d = Math.abs(p - (row[i] + val));
+      if (min > d) {
+        min = d;
+        imin = i;
+      }
     }
-    return cpy;
+    ret[0] = min;
+    ret[1] = imin;
   }
 
   /**
-   * Add value <tt>val</tt> to vector <tt>row</tt>
+   * Find lowest index of minimal <tt>|p-row|</tt> in sorted row.
    * 
-   * <p>Based on Matlab routine buildTrackMaps.m
+   * <p>Difference is non increasing below <tt>p</tt> and non decreasing above it also after
+   * rounding, thus all minimal elements are around position of <tt>p</tt> in sorted row.
    * 
-   * @param val Value to add
-   * @param row Input matrix
-   * @return <tt>row</tt>+<tt>val</tt> as a copy.
+   * @param p value to find
+   * @param sorted sorted row without NaNs
+   * @param index original indexes of sorted values
+   * @param ret minimal difference and its lowest original index
    */
-  private double[] rowAdd(double val, double[] row) {
-    double[] cpy = new double[row.length];
-    System.arraycopy(row, 0, cpy, 0, row.length);
-    for (int i = 0; i < cpy.length; i++) {
-      cpy[i] += val;
+  private static void closestSorted(double p, double[] sorted, int[] index, double[] ret) {
+    // last element not larger than p
+    int lo = -1;
+    int hi = sorted.length - 1;
+    while (lo < hi) {
+      int mid = (lo + hi + 1) >>> 1;
+      if (sorted[mid] <= p) {
+        lo = mid;
+      } else {
+        hi = mid - 1;
+      }
+    }
+    double min = Double.POSITIVE_INFINITY;
+    if (lo >= 0) {
+      min = Math.abs(p - sorted[lo]);
+    }
+    if (lo + 1 < sorted.length) {
+      min = Math.min(min, Math.abs(p - sorted[lo + 1]));
+    }
+    int imin = Integer.MAX_VALUE;
+    for (int k = lo; k >= 0 && Math.abs(p - sorted[k]) == min; k--) {
+      imin = Math.min(imin, index[k]);
+    }
+    for (int k = lo + 1; k < sorted.length && Math.abs(p - sorted[k]) == min; k++) {
+      imin = Math.min(imin, index[k]);
     }
-    return cpy;
+    ret[0] = min;
+    ret[1] = imin;
   }
 
   /**
@@ -6,6 +6,7 @@ import java.io.PrintWriter;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.TreeSet;
@@ -75,12 +76,12 @@ import ij.process.ImageProcessor;
  * <li>Forming output table without protrusions.
  * </ol>
  * 
- * <p><H2>First step</H2> The window of size <i>window</i> slides over looped data. Looping is
- * performed by {@link Collections#rotate(List, int)} method that shift data left copying
- * falling out indexes
- * to end of the set (finally the window is settled in constant position between indexes
- * <0;window-1>). For each its position <i>r</i> the candidate points are deleted from original
- * contour and circularity is computed (see {@link #getCircularity(List)}). Then candidate points
+ * <p><H2>First step</H2> The window of size <i>window</i> slides over looped data (window at
+ * position <i>r</i> covers indexes <r;r+window-1> wrapped to the beginning of data). For each its
+ * position <i>r</i> the candidate points are deleted from original
+ * contour and circularity is computed (see {@link #getCircularity(List)}). Area and perimeter of
+ * contour without window are not recomputed for every position but evaluated from sums over edges
+ * of whole contour (see {@link SlidingWindowPolygon}). Then candidate points
  * are passed to {@link #getWeighting(List)} method where weight is evaluated. The role of weight is
  * to promote in <i>rank</i> candidate points that are cumulated in small area over distributed
  * sets. Thus weight should give larger values for that latter distribution than for cumulated one.
@@ -425,7 +426,10 @@ public class HatSnakeFilter implements IPadArray {
       debugCounter++;
     }
 
-    BasicPolygons bp = new BasicPolygons(); // provides geometry processing
+    // polygon without window for all window positions, input list is not rotated
+    SlidingWindowPolygon swp = new SlidingWindowPolygon(points, window);
+    // intensities sampled for points closest to each input point
+    IntensityLookup intLookup = orgIp == null ? null : new IntensityLookup(shCont, points, orgIp);
     // Step 1 - Build circularity table
     // array to store circularity for window positions. Index is related to window position
     // (negative shift in rotate)
@@ -437,14 +441,21 @@ public class HatSnakeFilter implements IPadArray {
     double tmpCirc;
     double tmpInt; // mean intensity along contour in window
     double tmpWei; // weighting based on local shape disturbation
+    // window at position r covers points r to r+window-1 (looped)
+    // first iter 0 1 2 3 4 5... (w=[0 1 2])
+    // second itr 1 2 3 4 5 0... (w=[1 2 3])
+    // last itera 5 0 1 2 3 4... (w=[5 0 1])
     for (int r = 0; r < points.size(); r++) {
-      // get all points except window. Window has constant position 0 - (window-1)
-      List<Point2d> pointsnowindow = points.subList(window, points.size());
-      tmpCirc = getCircularity(pointsnowindow);
+      // circularity of all points except window
+      tmpCirc = swp.getCircularity(r);
       // calculate weighting for circularity
-      List<Point2d> pointswindow = points.subList(0, window); // get points for window only
+      List<Point2d> pointswindow = points.subList(r, Math.min(r + window, points.size()));
+      if (r + window > points.size()) { // window wraps to beginning
+        pointswindow = new ArrayList<>(pointswindow);
+        pointswindow.addAll(points.subList(0, r + window - points.size()));
+      }
       // will return 1.0 if there is no image provided
-      tmpInt = getIntensity(shCont, pointswindow, orgIp); // mean intensity for window points
+      tmpInt = intLookup == null ? 1.0 : intLookup.getMean(r, window); // mean for window points
       tmpInt = tmpInt == 0.0 ? 1.0 : tmpInt; // remove 0 as we divide weight later
       tmpWei = getWeighting(pointswindow);
       double rank = tmpCirc / (tmpWei * tmpInt); // calculate rank for window content
@@ -453,23 +464,16 @@ public class HatSnakeFilter implements IPadArray {
       boolean tmpCon;
       switch (lookFor) {
         case CAVITIES:
-          tmpCon = bp.areAllPointsInside(pointsnowindow, pointswindow); // true if concave
+          tmpCon = swp.areAllWindowPointsInside(r); // true if concave
           break;
         case PROTRUSIONS:
         case ALL:
         default:
-          tmpCon = bp.areAllPointOutside(pointsnowindow, pointswindow); // true if protrusions
+          tmpCon = swp.areAllWindowPointsOutside(r); // true if protrusions
       }
       // true values are those that interest us (either concave or protrusions)
       // for ALL yhis list is ignored
       cavprot.add(tmpCon);
-      // move window to next position rotates by -1 what means that on first n positions
-      // of points there are different values simulate window
-      // first iter 0 1 2 3 4 5... (w=[0 1 2])
-      // second itr 1 2 3 4 5 0... (w=[1 2 3])
-      // last itera 5 0 1 2 3 4... (w=[5 0 1])
-      Collections.rotate(points, -1);
-      Collections.rotate(shCont, -1);
       // dump to file
       if (QuimP.SUPER_DEBUG) {
         pw.print(r + ",");
@@ -640,6 +644,93 @@ public class HatSnakeFilter implements IPadArray {
     return std * std;
   }
 
+  /**
+   * Mean intensities of windows sampled on shrunk outline.
+   * 
+   * <p>Gives the same values as {@link HatSnakeFilter#getIntensity(List, List, ImageProcessor)}
+   * called for shrunk outline rotated together with window, but closest points are searched only
+   * once for each point of outline. If more points of shrunk outline are in the same distance, the
+   * first one in rotated order is selected, as in
+   * {@link HatSnakeFilter#findClosest(List, Point2d)}.
+   * 
+   * @author p.baniukiewicz
+   */
+  static class IntensityLookup {
+    private final int shSize;
+    /**
+     * Indexes of shrunk outline points closest to each outline point.
+     */
+    private final int[][] closest;
+    /**
+     * Intensities sampled around each point of shrunk outline.
+     */
+    private final double[] samples;
+
+    /**
+     * Find closest points and sample intensities.
+     * 
+     * @param shpoints shrunk outline
+     * @param points outline
+     * @param orgIp image
+     */
+    IntensityLookup(List<Point2d> shpoints, List<Point2d> points, ImageProcessor orgIp) {
+      shSize = shpoints.size();
+      closest = new int[points.size()][];
+      samples = new double[shSize];
+      boolean[] sampled = new boolean[shSize];
+      int[] tmp = new int[shSize];
+      for (int i = 0; i < points.size(); i++) {
+        Point2d p = points.get(i);
+        double dist = Double.MAX_VALUE;
+        int count = 0;
+        for (int j = 0; j < shSize; j++) {
+          Point2d loc = shpoints.get(j);
+          double d = Math.sqrt((loc.x - p.x) * (loc.x - p.x) + (loc.y - p.y) * (loc.y - p.y));
+          if (d < dist) {
+            dist = d;
+            count = 0;
+          }
+          if (d == dist) {
+            tmp[count++] = j;
+          }
+        }
+        closest[i] = Arrays.copyOf(tmp, count);
+        for (int j : closest[i]) {
+          if (!sampled[j]) {
+            Point2d loc = shpoints.get(j);
+            samples[j] = ODEsolver.sampleFluo(orgIp, (int) Math.round(loc.getX()),
+                    (int) Math.round(loc.getY()));
+            sampled[j] = true;
+          }
+        }
+      }
+    }
+
+    /**
+     * Mean intensity for window.
+     * 
+     * @param r position of window, shrunk outline is rotated by the same value
+     * @param window window size
+     * @return mean intensity of window points
+     */
+    double getMean(int r, int window) {
+      double meanI = 0.0;
+      for (int k = r; k < r + window; k++) {
+        int[] cand = closest[k % closest.length];
+        int best = cand[0];
+        // first in shrunk outline rotated by r
+        for (int j : cand) {
+          if (Math.floorMod(j - r, shSize) < Math.floorMod(best - r, shSize)) {
+            best = j;
+          }
+        }
+        meanI += samples[best];
+      }
+      meanI /= window;
+      return meanI;
+    }
+  }
+
   /**
    * Class holding lower and upper index of window. Supports comparisons.
    * 
@@ -0,0 +1,322 @@
+package com.github.celldynamics.quimp.geom.filters;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.scijava.vecmath.Tuple2d;
+
+import com.github.celldynamics.quimp.geom.BasicPolygons;
+
+/**
+ * Closed polygon with window of consecutive vertices removed, for all positions of window.
+ *
+ * <p>For window at position <i>r</i> the window covers vertices <i>r</i> to <i>r+window-1</i>
+ * (looped) and the polygon without window is formed from the remaining vertices starting from
+ * <i>r+window</i>, exactly as lists used in {@link HatSnakeFilter#calculateRank}. Area and
+ * perimeter are evaluated in constant time from prefix sums of edge terms of the full polygon,
+ * because all edges of the polygon without window except the closing one are edges of the full
+ * polygon.
+ *
+ * <p>Point in polygon tests count signed crossings of horizontal ray with edges found in horizontal
+ * band of point. Non zero winding number is equivalent to
+ * {@link BasicPolygons#isPointInside(List, Tuple2d)} for points not lying on edges. Points closer
+ * to any edge than rounding tolerance are tested by
+ * {@link BasicPolygons#isPointInside(List, Tuple2d)} to give the same results.
+ *
+ * @author p.baniukiewicz
+ * @see HatSnakeFilter#calculateRank
+ */
+class SlidingWindowPolygon {
+
+  /**
+   * Relative distance to edge below which point is tested by angles.
+   */
+  private static final double EDGE_TOLERANCE = 1e-9;
+
+  /**
+   * Vertices, looped twice so that any window or polygon is a sublist.
+   */
+  private final List<Tuple2d> looped;
+  private final int size;
+  private final int window;
+  private final double[] x;
+  private final double[] y;
+  /**
+   * Prefix sums of cross products of edges over looped polygon.
+   */
+  private final double[] crossSum;
+  /**
+   * Prefix sums of lengths of edges over looped polygon.
+   */
+  private final double[] lenSum;
+  private final double minY;
+  private final double bandHeight;
+  /**
+   * Start of each band in {@link #bandEdges}.
+   */
+  private final int[] bandStart;
+  /**
+   * Edges (indexes of first vertex) stored band by band.
+   */
+  private final int[] bandEdges;
+  /**
+   * Absolute distance to edge below which point is tested by angles.
+   */
+  private final double tolerance;
+  private final BasicPolygons bp = new BasicPolygons();
+
+  /**
+   * Prepare polygon.
+   *
+   * @param points vertices of polygon, not modified
+   * @param window size of window, smaller than number of points
+   */
+  SlidingWindowPolygon(List<? extends Tuple2d> points, int window) {
+    size = points.size();
+    this.window = window;
+    looped = new ArrayList<>(2 * size);
+    looped.addAll(points);
+    looped.addAll(points);
+    x = new double[size];
+    y = new double[size];
+    double mnY = Double.POSITIVE_INFINITY;
+    double mxY = Double.NEGATIVE_INFINITY;
+    double extent = 0;
+    for (int i = 0; i < size; i++) {
+      x[i] = points.get(i).getX();
+      y[i] = points.get(i).getY();
+      mnY = Math.min(mnY, y[i]);
+      mxY = Math.max(mxY, y[i]);
+      extent = Math.max(extent, Math.max(Math.abs(x[i]), Math.abs(y[i])));
+    }
+    minY = mnY;
+    tolerance = EDGE_TOLERANCE * Math.max(extent, 1);
+
+    crossSum = new double[2 * size + 1];
+    lenSum = new double[2 * size + 1];
+    double len = 0;
+    for (int k = 0; k < 2 * size; k++) {
+      int i = k % size;
+      int j = (i + 1) % size;
+      crossSum[k + 1] = crossSum[k] + cross(i, j);
+      lenSum[k + 1] = lenSum[k] + length(i, j);
+      if (k < size) {
+        len += Math.abs(y[j] - y[i]);
+      }
+    }
+    // band of height of average edge keeps few edges per band, not smaller than tolerance
+    bandHeight = Math.max(Math.max(len / size, (mxY - minY) / size), tolerance);
+    int bands = (int) ((mxY - minY) / bandHeight) + 1;
+    bandStart = new int[bands + 1];
+    for (int i = 0; i < size; i++) {
+      int j = (i + 1) % size;
+      for (int b = band(Math.min(y[i], y[j])); b <= band(Math.max(y[i], y[j])); b++) {
+        bandStart[b + 1]++;
+      }
+    }
+    for (int b = 0; b < bands; b++) {
+      bandStart[b + 1] += bandStart[b];
+    }
+    bandEdges = new int[bandStart[bands]];
+    int[] fill = new int[bands];
+    System.arraycopy(bandStart, 0, fill, 0, bands);
+    for (int i = 0; i < size; i++) {
+      int j = (i + 1) % size;
+      for (int b = band(Math.min(y[i], y[j])); b <= band(Math.max(y[i], y[j])); b++) {
+        bandEdges[fill[b]++] = i;
+      }
+    }
+  }
+
+  /**
+   * Band for y coordinate, clamped.
+   *
+   * @param yc coordinate
+   * @return band index
+   */
+  private int band(double yc) {
+    int b = (int) Math.floor((yc - minY) / bandHeight);
+    return Math.max(0, Math.min(bandStart.length - 2, b));
+  }
+
+  /**
+   * Cross product term of shoelace formula for edge.
+   *
+   * @param i first vertex
+   * @param j second vertex
+   * @return term
+   */
+  private double cross(int i, int j) {
+    return x[i] * y[j] - y[i] * x[j];
+  }
+
+  /**
+   * Length of edge.
+   *
+   * @param i first vertex
+   * @param j second vertex
+   * @return length
+   */
+  private double length(int i, int j) {
+    double dx = x[j] - x[i];
+    double dy = y[j] - y[i];
+    return Math.sqrt(dx * dx + dy * dy);
+  }
+
+  /**
+   * Points covered by window.
+   *
+   * @param r position of window
+   * @return view of points, not modifiable
+   */
+  List<Tuple2d> getWindow(int r) {
+    return looped.subList(r, r + window);
+  }
+
+  /**
+   * Polygon without window.
+   *
+   * @param r position of window
+   * @return view of points starting from first point after window, not modifiable
+   */
+  List<Tuple2d> getPolygon(int r) {
+    return looped.subList(r + window, r + size);
+  }
+
+  /**
+   * Circularity of polygon without window.
+   *
+   * @param r position of window
+   * @return circularity, see {@link HatSnakeFilter#getCircularity(List)}
+   */
+  double getCircularity(int r) {
+    int first = (r + window) % size; // first vertex of polygon without window
+    int last = (r + size - 1) % size; // last vertex of polygon, closing edge goes to first
+    // edges from first to last are edges of full polygon
+    int from = r + window;
+    int to = r + size - 1;
+    double area = Math.abs(crossSum[to] - crossSum[from] + cross(last, first)) / 2.0;
+    double perim = lenSum[to] - lenSum[from] + length(last, first);
+    return (4 * Math.PI * area) / (perim * perim);
+  }
+
+  /**
+   * Test if all window points are inside polygon without them.
+   *
+   * @param r position of window
+   * @return true if all points are inside
+   * @see BasicPolygons#areAllPointsInside(List, List)
+   */
+  boolean areAllWindowPointsInside(int r) {
+    for (int k = r; k < r + window; k++) {
+      if (!isInside(r, k % size)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Test if all window points are outside polygon without them.
+   *
+   * @param r position of window
+   * @return true if all points are outside
+   * @see BasicPolygons#areAllPointOutside(List, List)
+   */
+  boolean areAllWindowPointsOutside(int r) {
+    for (int k = r; k < r + window; k++) {
+      if (isInside(r, k % size)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Test if vertex is inside polygon without window.
+   *
+   * @param r position of window
+   * @param p index of tested vertex
+   * @return true if inside
+   */
+  private boolean isInside(int r, int p) {
+    double px = x[p];
+    double py = y[p];
+    int first = (r + window) % size;
+    int last = (r + size - 1) % size;
+    // test tolerance with bands around point, band is not smaller than tolerance
+    for (int b = band(py - tolerance); b <= band(py + tolerance); b++) {
+      for (int e = bandStart[b]; e < bandStart[b + 1]; e++) {
+        int i = bandEdges[e];
+        if (inPolygon(r, i) && distToEdge(px, py, i, (i + 1) % size) < tolerance) {
+          return bp.isPointInside(getPolygon(r), looped.get(p));
+        }
+      }
+    }
+    if (distToEdge(px, py, last, first) < tolerance) {
+      return bp.isPointInside(getPolygon(r), looped.get(p));
+    }
+    // signed crossings of ray towards +x
+    int winding = 0;
+    int b = band(py);
+    for (int e = bandStart[b]; e < bandStart[b + 1]; e++) {
+      int i = bandEdges[e];
+      if (inPolygon(r, i)) {
+        winding += crossing(px, py, i, (i + 1) % size);
+      }
+    }
+    winding += crossing(px, py, last, first);
+    return winding != 0;
+  }
+
+  /**
+   * Check if edge of full polygon belongs to polygon without window.
+   *
+   * @param r position of window
+   * @param i first vertex of edge
+   * @return true if edge from i to i+1 is not touching window and it is not closing edge
+   */
+  private boolean inPolygon(int r, int i) {
+    return Math.floorMod(i - (r + window), size) <= size - window - 2;
+  }
+
+  /**
+   * Signed crossing of horizontal ray from point with edge.
+   *
+   * @param px point
+   * @param py point
+   * @param i first vertex of edge
+   * @param j second vertex of edge
+   * @return 1 for upward crossing, -1 for downward, 0 if not crossed
+   */
+  private int crossing(double px, double py, int i, int j) {
+    if ((y[i] > py) == (y[j] > py)) {
+      return 0;
+    }
+    double xc = x[i] + (py - y[i]) * (x[j] - x[i]) / (y[j] - y[i]);
+    if (px >= xc) {
+      return 0;
+    }
+    return y[j] > y[i] ? 1 : -1;
+  }
+
+  /**
+   * Distance from point to edge.
+   *
+   * @param px point
+   * @param py point
+   * @param i first vertex of edge
+   * @param j second vertex of edge
+   * @return distance
+   */
+  private double distToEdge(double px, double py, int i, int j) {
+    double dx = x[j] - x[i];
+    double dy = y[j] - y[i];
+    double l2 = dx * dx + dy * dy;
+    double t = l2 == 0 ? 0 : ((px - x[i]) * dx + (py - y[i]) * dy) / l2;
+    t = Math.max(0, Math.min(1, t));
+    double ex = x[i] + t * dx - px;
+    double ey = y[i] + t * dy - py;
+    return Math.sqrt(ex * ex + ey * ey);
+  }
+}
@@ -240,7 +240,7 @@
  * <h2>Segmentation</h2>
  * 
  * Read documentation of {@link com.github.celldynamics.quimp.BOA_#runBoa(int, int)},
- * {@link com.github.celldynamics.quimp.BOA_#tightenSnake(Snake)},
+ * {@link com.github.celldynamics.quimp.BoaEngine#run(int, int)},
  * {@link com.github.celldynamics.quimp.Constrictor},
  * {@link com.github.celldynamics.quimp.Constrictor#constrict(Snake, ij.process.ImageProcessor)} and
  * {@link com.github.celldynamics.quimp.Constrictor#loosen(Nest, int)}
@@ -124,7 +124,7 @@ public abstract class AbstractPluginQconf extends AbstractPluginBase {
     }
     if (qconfLoader == null || qconfLoader.getQp() == null) {
       // load new file
-      qconfLoader = new QconfLoader(pf, fileExt);
+      qconfLoader = new QconfLoader(pf, fileExt, loadOnDemand());
       if (qconfLoader.getQp() == null) {
         // not loaded (cancelled)
         throw new QuimpPluginException("Cancelled", MessageSinkTypes.MESSAGE, true);
@@ -142,6 +142,19 @@ public abstract class AbstractPluginQconf extends AbstractPluginBase {
     }
   }
 
+  /**
+   * Override this method to load modules of QCONF on their first use.
+   * 
+   * <p>Useful for plugins that use only some modules and do not save QCONF, see
+   * {@link QconfLoader#QconfLoader(File, boolean)}. It is called from constructor of this class
+   * in API mode, so it must not depend on fields of subclass.
+   * 
+   * @return true if modules should be loaded on demand, false by default
+   */
+  protected boolean loadOnDemand() {
+    return false;
+  }
+
   /**
    * Override this method to pass your own validation of QCONF structure.
    * 
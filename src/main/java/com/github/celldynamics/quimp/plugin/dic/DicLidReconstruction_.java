@@ -108,18 +108,14 @@ public class DicLidReconstruction_ implements IQuimpPluginFilter {
         result.getProcessor().setPixels(ret.getPixels());
         IJ.showProgress(1.0);
         result.show();
-      } else { // we have stack. Process slice by slice
-        // create result stack
-        ImageStack resultstack = new ImageStack(imp.getWidth(), imp.getHeight());
-        ImageStack stack = imp.getStack();
-        for (int s = 1; s <= stack.getSize(); s++) {
-          IJ.showProgress(s / ((double) stack.getSize() + 1));
-          dic.setIp(stack.getProcessor(s));
-          ret = dic.reconstructionDicLid();
-          if (invertOutput) {
-            ret.invert();
+      } else { // we have stack. Process slices concurrently using geometry of current slice
+        IJ.showProgress(0.0);
+        ImageStack resultstack = dic.reconstructionDicLid(imp.getStack(),
+                Runtime.getRuntime().availableProcessors());
+        if (invertOutput) {
+          for (int s = 1; s <= resultstack.getSize(); s++) {
+            resultstack.getProcessor(s).invert();
           }
-          resultstack.addSlice(ret);
         }
         IJ.showProgress(1.0);
         // pack in ImagePlus
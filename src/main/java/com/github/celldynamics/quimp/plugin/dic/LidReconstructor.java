@@ -1,11 +1,21 @@
 package com.github.celldynamics.quimp.plugin.dic;
 
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.github.celldynamics.quimp.plugin.utils.ImageProcessorPlus;
+import com.github.celldynamics.quimp.utils.ParallelTools;
 
+import ij.IJ;
 import ij.ImagePlus;
+import ij.ImageStack;
 import ij.process.FloatProcessor;
 import ij.process.ImageProcessor;
 import ij.process.ImageStatistics;
@@ -31,8 +41,10 @@ import ij.process.ImageStatistics;
  * position of true pixels is calculated. True pixels are those that belong to original image
  * excluding background added during rotation. For every line position of first and last true pixel
  * is noted in table ranges
- * <li>Decay factors are pre-calculated and stored in decays table.
- * <li>Final reconstruction is performed.
+ * <li>Decay factor between neighbouring pixels is pre-calculated.
+ * <li>Final reconstruction is performed. Because kernel of integration is exponential, sums in both
+ * directions are computed by first order recursive filters running forward and backward along
+ * line, that is in time proportional to line length. Lines are processed in parallel.
  * </ol>
  * Image for reconstruction is passed during construction of DICReconstruction object. For this
  * object ranges and decays are evaluated and then user can call reconstructionDicLid() method to
@@ -45,12 +57,16 @@ import ij.process.ImageStatistics;
  * setIp(ImageProcessor) are not rotated. This situation is detected in
  * {@link #reconstructionDicLid()} by <tt>isRotated</tt> flag.
  * 
+ * <p>Whole stack can be reconstructed by {@link #reconstructionDicLid(ImageStack, int)}. Geometry
+ * of rotation (size of rotated image and <tt>ranges</tt>) computed on construction is reused for
+ * all slices, which are then reconstructed concurrently.
+ * 
  * <p>Privates:
  * <ul>
  * <li><i>ranges</i> - true pixels begin and end on x axis. Set by getRanges(). [r][0] - x of first
  * pixel of line r of image, [r][1] - x of last pixel of image of line r
  * <li><i>maxWidth</i> - Set by getRanges()
- * <li><i>decays</i> - set by generateDeacy(double, int)
+ * <li><i>decayFactor</i> - set by recalculate()
  * <li><i>srcImageCopyProcessor</i> - local <b>copy</b> of input ImageProcessor passed to object.
  * Set by constructors and setIp(ImageProcessor)
  * <li><i>isRotated</i> - It is set by getRanges() that rotates object to get true pixels position
@@ -88,7 +104,7 @@ public class LidReconstructor {
   private ImageProcessor srcIp; // local reference of ImageProcessor (const)
   private double decay;
   private double angle;
-  private double[] decays; // reference to preallocated decay data created
+  private double decayFactor; // decay between neighbouring pixels
   private int maxWidth; // Width of image after rotation. Set by getRanges()
   private int[][] ranges; // true pixels begin and end on x axis.
   private ImageProcessor srcImageCopyProcessor; // local copy of input
@@ -97,6 +113,11 @@ public class LidReconstructor {
   private ImageProcessorPlus ipp; // helper class for rotating images
   private String prefilterangle;
   private int masksize;
+  /**
+   * Threads for integrating rows, created on first use and reused by all reconstructions. Idle
+   * threads are stopped, so pool is not shut down explicitly.
+   */
+  private ExecutorService pool;
 
   /**
    * Default constructor that accepts ImagePlus. It does not support stacks.
@@ -179,18 +200,29 @@ public class LidReconstructor {
    */
   public void setIp(final ImageProcessor ip) {
     this.srcIp = ip;
+    this.srcImageCopyProcessor = prepareCopy(ip);
+    // getting mean value
+    is = srcImageCopyProcessor.getStatistics();
+    this.isRotated = false; // new Processor not rotated yet
+  }
+
+  /**
+   * Make 16 bit copy of image, prefilter it and set up for rotation.
+   * 
+   * @param ip image to copy, not modified
+   * @return prepared copy
+   */
+  private ImageProcessor prepareCopy(final ImageProcessor ip) {
     // make copy of original image to not modify it - converting to 16bit
-    this.srcImageCopyProcessor = srcIp.convertToShort(true);
-    new ImageProcessorPlus().runningMean(srcImageCopyProcessor, prefilterangle, masksize);
+    ImageProcessor copy = ip.convertToShort(true);
+    new ImageProcessorPlus().runningMean(copy, prefilterangle, masksize);
     // ensure that minmax will be recalculated (usually they are stored in class field) set
     // interpolation
-    srcImageCopyProcessor.resetMinAndMax();
-    srcImageCopyProcessor.setInterpolationMethod(ImageProcessor.BICUBIC);
+    copy.resetMinAndMax();
+    copy.setInterpolationMethod(ImageProcessor.BICUBIC);
     // Rotating image - set 0 background
-    srcImageCopyProcessor.setBackgroundValue(0.0);
-    // getting mean value
-    is = srcImageCopyProcessor.getStatistics();
-    this.isRotated = false; // new Processor not rotated yet
+    copy.setBackgroundValue(0.0);
+    return copy;
   }
 
   /**
@@ -212,17 +244,10 @@ public class LidReconstructor {
    * @see #reconstructionDicLid()
    */
   private void getRanges() throws DicException {
-    double maxpixel; // minimal pixel value
     int lastpixel; // first and last pixel of image in line
     int firstpixel;
     // check condition for removing 0 value from image
-    maxpixel = srcImageCopyProcessor.getMax();
-    if (maxpixel > 65535 - shift) {
-      LOGGER.error("Possible image clipping - check if image is saturated");
-      throw new DicException(String.format(
-              "Possible image clipping - input image has at leas one" + " pixel with value %d",
-              65535 - shift));
-    }
+    checkSaturation(srcImageCopyProcessor);
     // scale pixels by adding 1 - we remove any 0 value from source image
     srcImageCopyProcessor.add(shift);
     srcImageCopyProcessor.resetMinAndMax();
@@ -260,16 +285,13 @@ public class LidReconstructor {
   }
 
   /**
-   * Recalculates tables on demand. Calculates new ranges for true pixels and new decay table.
+   * Recalculates tables on demand. Calculates new ranges for true pixels and new decay factor.
    * 
    * @throws DicException Throws exception after generateRanges()
    */
   private void recalculate() throws DicException {
-    // calculate preallocated decay data
-    // generateRanges() must be called first as it initializes fields used
-    // by generateDecay()
     getRanges();
-    generateDeacy(decay, maxWidth);
+    decayFactor = Math.exp(-decay);
   }
 
   /**
@@ -287,69 +309,194 @@ public class LidReconstructor {
    * @return Return reconstruction of srcImage as 16-bit image
    */
   public ImageProcessor reconstructionDicLid() {
-    double cumsumup;
-    double cumsumdown;
-    int c;
-    int u;
-    int d;
-    int r; // loop indexes
-    int linindex = 0; // output table linear index
     if (!isRotated) { // rotate if not rotated in getRanges
       srcImageCopyProcessor.add(shift); // we use different IP so shift must be added
       srcImageCopyProcessor = ipp.rotate(srcImageCopyProcessor, angle, true);
     }
+    return integrate(srcImageCopyProcessor, is.mean, srcIp.getWidth(), srcIp.getHeight(),
+            Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Check if shift can be added to image without clipping.
+   * 
+   * @param copy prepared 16-bit copy of image
+   * @throws DicException when image has values of 65536-shift or larger
+   */
+  private void checkSaturation(ImageProcessor copy) throws DicException {
+    if (copy.getMax() > 65535 - shift) {
+      LOGGER.error("Possible image clipping - check if image is saturated");
+      throw new DicException(String.format(
+              "Possible image clipping - input image has at leas one" + " pixel with value %d",
+              65535 - shift));
+    }
+  }
+
+  /**
+   * Reconstruct all slices of stack by LID method.
+   * 
+   * <p>Slices must have the same size as image passed to constructor. Rotation geometry and ranges
+   * of true pixels computed for that image are used for all slices. Slices are prefiltered,
+   * rotated and integrated concurrently, each one on single thread, and results are written
+   * directly to output stack. State of this object (image set by {@link #setIp(ImageProcessor)})
+   * is not changed. Progress is reported after each slice by {@link IJ#showProgress(int, int)}.
+   * 
+   * @param stack stack to reconstruct, not modified
+   * @param threads number of slices processed at once
+   * @return reconstructed stack of 16-bit slices
+   * @throws DicException if slice has different size than image used for construction or if any
+   *         slice is saturated (see {@link #getRanges()})
+   * @see #reconstructionDicLid()
+   */
+  public ImageStack reconstructionDicLid(final ImageStack stack, int threads)
+          throws DicException {
+    int width = srcIp.getWidth();
+    int height = srcIp.getHeight();
+    if (stack.getWidth() != width || stack.getHeight() != height) {
+      throw new DicException(String.format("Stack size %dx%d differs from image size %dx%d",
+              stack.getWidth(), stack.getHeight(), width, height));
+    }
+    int size = stack.getSize();
+    ImageStack result = new ImageStack(width, height, size);
+    AtomicInteger done = new AtomicInteger();
+    try {
+      ParallelTools.map(size, threads, i -> {
+        int slice = i + 1;
+        ImageProcessor copy = prepareCopy(stack.getProcessor(slice));
+        checkSaturation(copy);
+        double mean = copy.getStatistics().mean;
+        copy.add(shift);
+        copy = new ImageProcessorPlus().rotate(copy, angle, true);
+        result.setPixels(integrate(copy, mean, width, height, 1).getPixels(), slice);
+        IJ.showProgress(done.incrementAndGet(), size);
+        return null;
+      });
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof DicException) {
+        throw (DicException) e.getCause();
+      }
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Reconstruction interrupted", e);
+    }
+    return result;
+  }
+
+  /**
+   * Integrate rotated image and rotate result back.
+   * 
+   * @param rotated shifted and rotated 16-bit image, size must match {@link #ranges}
+   * @param mean mean intensity of image before shifting
+   * @param width width of original image
+   * @param height height of original image
+   * @param threads number of threads used for processing rows
+   * @return reconstruction as 16-bit image
+   */
+  private ImageProcessor integrate(ImageProcessor rotated, double mean, int width, int height,
+          int threads) {
     // dereferencing for optimization purposes
-    int newWidth = srcImageCopyProcessor.getWidth();
-    int newHeight = srcImageCopyProcessor.getHeight();
+    int newWidth = rotated.getWidth();
+    int newHeight = rotated.getHeight();
+    short[] srcPixelArray = (short[]) rotated.getPixels(); // always 16 bit
     // create array for storing results - 32bit float as imageprocessor
     ImageProcessor outputArrayProcessor = new FloatProcessor(newWidth, newHeight);
     float[] outputPixelArray = (float[]) outputArrayProcessor.getPixels();
 
-    // do for every row - bas-relief is oriented horizontally
-    for (r = 0; r < newHeight; r++) {
-      // ranges[r][0] - first image pixel in line r
-      // ranges[r][1] - last image pixel in line r
-      linindex = linindex + ranges[r][0];
-      // for every point apply KAM formula
-      for (c = ranges[r][0]; c <= ranges[r][1]; c++) {
-        // up
-        cumsumup = 0;
-        for (u = c; u >= ranges[r][0]; u--) {
-          cumsumup += (srcImageCopyProcessor.get(u, r) - shift - is.mean) * decays[Math.abs(u - c)];
-        }
-        // down
-        cumsumdown = 0; // cumulative sum from point r to the end of column
-        for (d = c; d <= ranges[r][1]; d++) {
-          cumsumdown +=
-                  (srcImageCopyProcessor.get(d, r) - shift - is.mean) * decays[Math.abs(d - c)];
-        }
-        // integral
-        outputPixelArray[linindex] = (float) (cumsumup - cumsumdown);
-        linindex++;
-      }
-      linindex = linindex + newWidth - ranges[r][1] - 1;
+    // do for every row - bas-relief is oriented horizontally. Rows are split into blocks
+    if (threads > 1) {
+      ParallelTools.forBlocks(getPool(threads), newHeight, threads,
+              (from, to) -> integrateRows(srcPixelArray, outputPixelArray, newWidth, mean, from,
+                      to));
+    } else {
+      integrateRows(srcPixelArray, outputPixelArray, newWidth, mean, 0, newHeight);
     }
     // rotate back output processor
     outputArrayProcessor.setBackgroundValue(0.0);
     outputArrayProcessor.rotate(-angle);
     // crop it back to original size
     outputArrayProcessor =
-            ipp.cropImageAfterRotation(outputArrayProcessor, srcIp.getWidth(), srcIp.getHeight());
+            new ImageProcessorPlus().cropImageAfterRotation(outputArrayProcessor, width, height);
 
     return outputArrayProcessor.convertToShort(true); // return reconstruction
   }
 
   /**
-   * Generates decay table with exponential distances between pixels multiplied by decay
-   * coefficient.
+   * Get pool for integrating rows.
    * 
-   * @param decay The value of decay coefficient
-   * @param length Length of table, usually equals to longest processed line on image
+   * @param threads number of threads, used only when pool is created
+   * @return pool of this object
    */
-  private void generateDeacy(double decay, int length) {
-    decays = new double[length];
-    for (int i = 0; i < length; i++) {
-      decays[i] = Math.exp(-decay * i);
+  private synchronized ExecutorService getPool(int threads) {
+    if (pool == null) {
+      ThreadPoolExecutor tp = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.SECONDS,
+              new LinkedBlockingQueue<Runnable>(), r -> {
+                Thread t = new Thread(r, "LidReconstructor");
+                t.setDaemon(true);
+                return t;
+              });
+      tp.allowCoreThreadTimeOut(true);
+      pool = tp;
+    }
+    return pool;
+  }
+
+  /**
+   * Apply KAM formula to true pixels of rows of rotated image.
+   * 
+   * @param src pixels of rotated image
+   * @param out output pixels, the same size as src
+   * @param width width of rotated image
+   * @param mean mean intensity of image
+   * @param from first row to process
+   * @param to row after last one to process
+   */
+  private void integrateRows(short[] src, float[] out, int width, double mean, int from,
+          int to) {
+    double[] buffer = new double[width];
+    for (int r = from; r < to; r++) {
+      // ranges[r][0] - first image pixel in line r
+      // ranges[r][1] - last image pixel in line r
+      integrateRow(src, out, r * width, ranges[r][0], ranges[r][1], shift, mean, decayFactor,
+              buffer);
+    }
+  }
+
+  /**
+   * Integrate one line of image.
+   * 
+   * <p>For every pixel <i>c</i> of line the result is
+   * <i>sum_{u&lt;=c}(p_u-m)e^(-decay*(c-u)) - sum_{d&gt;=c}(p_d-m)e^(-decay*(d-c))</i>, where
+   * <i>p</i> are pixel values without shift and <i>m</i> is mean intensity. Both sums are
+   * evaluated recursively: each of them equals to value of current pixel plus sum at previous pixel
+   * multiplied by <i>decayFactor</i>. After rounding to float the result is usually equal to direct
+   * summation, for very long lines with small decay it may differ by one unit in the last place.
+   * 
+   * @param src pixels of image, 16 bit
+   * @param out output pixels, only pixels between first and last are set
+   * @param offset index of first pixel of line in src and out
+   * @param first first pixel of line to process (counted from offset)
+   * @param last last pixel of line to process (inclusive), if smaller than first nothing is done
+   * @param shift value added to pixels
+   * @param mean mean intensity subtracted from pixels
+   * @param decayFactor <i>e^(-decay)</i>
+   * @param buffer temporary array at least of length of line
+   */
+  static void integrateRow(short[] src, float[] out, int offset, int first, int last, int shift,
+          double mean, double decayFactor, double[] buffer) {
+    double cumsumup = 0;
+    for (int c = first; c <= last; c++) { // up - from first pixel to c
+      cumsumup = cumsumup * decayFactor + ((src[offset + c] & 0xffff) - shift - mean);
+      buffer[c] = cumsumup;
+    }
+    double cumsumdown = 0; // cumulative sum from last pixel to c
+    for (int c = last; c >= first; c--) {
+      cumsumdown = cumsumdown * decayFactor + ((src[offset + c] & 0xffff) - shift - mean);
+      // integral
+      out[offset + c] = (float) (buffer[c] - cumsumdown);
     }
   }
 
@@ -5,6 +5,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 // import java.util.Vector;
 import java.util.Random;
+import java.util.concurrent.ExecutionException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -27,6 +28,7 @@ import com.github.celldynamics.quimp.filesystem.converter.FormatConverter;
 import com.github.celldynamics.quimp.geom.ExtendedVector2d;
 import com.github.celldynamics.quimp.plugin.AbstractPluginQconf;
 import com.github.celldynamics.quimp.plugin.QuimpPluginException;
+import com.github.celldynamics.quimp.utils.ParallelTools;
 
 import ij.IJ;
 import ij.WindowManager;
@@ -68,6 +70,10 @@ import ij.process.ImageProcessor;
  * 
  * <p>To disable plotting hide {@link ECMplot#imPlus} by accessing {@link #plot}.
  * 
+ * <p>Parameters from {@link ECMp} are copied to {@link EcmmConfig} before mapping of each cell.
+ * Cells from QCONF are mapped concurrently, each with own {@link EcmmContext}. {@link #plot} refers
+ * to plot of the last cell.
+ * 
  * @author Richard Tyson. 23/09/2009. ECM Mapping Systems Biology DTC, Warwick University.
  * @author p.baniukiewicz
  *
@@ -109,7 +115,7 @@ public class ECMM_Mapping extends AbstractPluginQconf {
   public ECMM_Mapping(int frames) { // work around. b is nothing
     this();
     if (ECMp.plot) {
-      plot = new ECMplot(frames);
+      plot = new ECMplot(frames, new EcmmConfig());
     }
   }
 
@@ -251,7 +257,6 @@ public class ECMM_Mapping extends AbstractPluginQconf {
    */
   public OutlineHandler runByANA(OutlineHandler m, ImageProcessor ipr, double d) {
     oh = m;
-    ECMp.image = ipr;
     ECMp.setParams(oh.maxLength);
     ECMp.startFrame = oh.getStartFrame();
     ECMp.endFrame = oh.getEndFrame();
@@ -261,10 +266,6 @@ public class ECMM_Mapping extends AbstractPluginQconf {
     ECMp.migQ = 1.5E-5; //
     ECMp.tarQ = -1.5E-5; // use same charge
 
-    if (ECMp.plot) {
-      plot = new ECMplot(oh.getSize() - 1);
-    }
-
     // ECMp.setParams(m.indexGetOutline(0));
 
     // *******adjust params for ana***********
@@ -273,7 +274,13 @@ public class ECMM_Mapping extends AbstractPluginQconf {
     ECMp.d = 0.4;
     ECMp.maxVertF = 0.7;
     // *************************
-    runPlugin();
+    EcmmConfig cfg = new EcmmConfig();
+    if (cfg.plot) {
+      plot = new ECMplot(oh.getSize() - 1, cfg);
+    }
+    EcmmContext ctx = new EcmmContext(cfg, ipr, plot, "");
+    outputH = runPlugin(oh, ctx);
+    updateCounters(ctx);
     // IJ.log("ECM Mapping FINISHED");
     return outputH;
   }
@@ -281,27 +288,34 @@ public class ECMM_Mapping extends AbstractPluginQconf {
   /**
    * Main executive for ECMM plugin.
    * 
+   * <p>Maps outlines of one cell. Uses only parameters, image and plot from context, thus can be
+   * run for many cells concurrently.
+   * 
+   * @param oh outlines of cell
+   * @param ctx context of mapping of this cell
+   * @return mapped outlines
    * @see #runFromQconf()
    * @see #runFromPaqp()
    */
-  private void runPlugin() {
+  private static OutlineHandler runPlugin(OutlineHandler oh, EcmmContext ctx) {
     long time = System.currentTimeMillis();
-    if (!ECMp.ANA) {
-      IJ.log("ECMM resolution: " + ECMp.markerRes + "(av. spacing)\n");
+    EcmmConfig cfg = ctx.cfg;
+    ECMplot plot = ctx.plot;
+    if (!cfg.ana) {
+      IJ.log(ctx.logPrefix + "ECMM resolution: " + cfg.markerRes + "(av. spacing)\n");
     }
 
-    outputH = new OutlineHandler(oh);
-    ECMp.unSnapped = 0;
+    OutlineHandler outputH = new OutlineHandler(oh);
     // int skippedFrames = 0; // if a frame is skipped need to divide next
     // time point migration by 2, etc...
 
     Mapping map1;
-    int f = ECMp.startFrame; // now in frames
+    int f = cfg.startFrame; // now in frames
     Outline o1 = oh.getStoredOutline(f);
     // resolution is always as in segmentation - not now
-    if (!ECMp.ANA) {
-      if (Math.abs(ECMp.markerRes) > 0) {
-        o1.setResolution(Math.abs(ECMp.markerRes));
+    if (!cfg.ana) {
+      if (Math.abs(cfg.markerRes) > 0) {
+        o1.setResolution(Math.abs(cfg.markerRes));
       }
     }
     // LOGGER.trace("Outline o1:head =[" + o1.getHead().getX() + "," + o1.getHead().getY() +
@@ -313,43 +327,38 @@ public class ECMM_Mapping extends AbstractPluginQconf {
     outputH.save(o1, f);
     Outline o2;
 
-    int stopAt = -1; // debug break
-
     for (; f <= oh.getEndFrame() - 1; f++) {
-      if (f == stopAt) {
-        ECMp.plot = true;
-      }
       if (o1.checkCoordErrors()) {
         IJ.error("There was an error in tracking due to a bug (frame " + (f) + ")"
                 + "\nPlease try again");
         break;
       }
 
-      if (!ECMp.ANA) {
+      if (!cfg.ana) {
         IJ.showStatus("Running ECMM");
         IJ.showProgress(f, oh.getEndFrame());
-        IJ.log("Mapping " + f + " to " + (f + 1));
+        IJ.log(ctx.logPrefix + "Mapping " + f + " to " + (f + 1));
       }
 
       o2 = oh.getStoredOutline(f + 1);
       // o2 left as seen in the segmentation - i.e. marker res unchanged
-      if (!ECMp.ANA && ECMp.markerRes > 0) {
-        o2.setResolution(ECMp.markerRes); // must be done b4 intersects are calculated
+      if (!cfg.ana && cfg.markerRes > 0) {
+        o2.setResolution(cfg.markerRes); // must be done b4 intersects are calculated
       }
       o2.resetAllCoords();
       o2.clearFluores();
 
-      if (!ECMp.ANA) {
-        this.nudgeOverlaps(o1, o2); // ensure no points/edges lie directly on each other (to 1e-4)/
+      if (!cfg.ana) {
+        nudgeOverlaps(o1, o2); // ensure no points/edges lie directly on each other (to 1e-4)/
       }
 
-      if (ECMp.plot) {
+      if (ctx.isPlot()) {
         plot.setDrawingFrame(f);
         o1.calcCentroid(); // calc it again as it is broken in loop by migrate() where Outline is
         // initialzied from one vertex
         plot.centre = o1.getCentroid();
 
-        if (ECMp.drawInitialOutlines) {
+        if (cfg.drawInitialOutlines) {
           plot.setColor(0d, 0d, 1d);
           plot.drawOutline(o1);
           plot.setColor(0d, 1d, 0d);
@@ -361,7 +370,7 @@ public class ECMM_Mapping extends AbstractPluginQconf {
       // OutlineHandler.writeSingle("o2.snQP", o2);
       // OutlineHandler.writeSingle("o1.snQP", o1);
 
-      map1 = new Mapping(o1, o2);
+      map1 = new Mapping(o1, o2, ctx);
 
       /*
        * if (map1.invalid) { //Use no sectors IJ.log(" invalid outline intersection,
@@ -372,32 +381,32 @@ public class ECMM_Mapping extends AbstractPluginQconf {
       o1 = map1.migrate();
       // System.out.println("num nodes: "+o1.getVerts());
 
-      if (!ECMp.ANA) {
+      if (!cfg.ana) {
         // System.out.println("\n check final intersects");
-        if (!ECMp.disableDensityCorrections) {
+        if (!cfg.disableDensityCorrections) {
           if (o1.removeNanoEdges()) {
             // IJ.log(" result had some v.small edges- removed");
           }
           if (o1.cutSelfIntersects()) {
-            IJ.log("    result self intersected - fixed");
-            if (ECMp.plot) {
+            IJ.log(ctx.logPrefix + "    result self intersected - fixed");
+            if (ctx.isPlot()) {
               plot.writeText("Fixed self intersection");
             }
           }
 
-          if (ECMp.markerRes == 0) {
+          if (cfg.markerRes == 0) {
             o1.correctDensity(2 * 1.6, 2 / 1.6);
           } else {
-            o1.correctDensity(ECMp.markerRes * 1.6, ECMp.markerRes / 1.6);
+            o1.correctDensity(cfg.markerRes * 1.6, cfg.markerRes / 1.6);
           }
         }
-        if (ECMp.plot && ECMp.drawSolutionOutlines) {
+        if (ctx.isPlot() && cfg.drawSolutionOutlines) {
           plot.setColor(1d, 0d, 0d);
           plot.drawOutline(o1);
         }
       }
 
-      if (ECMp.ANA && ECMp.plot) {
+      if (cfg.ana && ctx.isPlot()) {
         plot.setColor(0d, 0.7d, 0.7d);
         plot.drawOutline(o1);
       }
@@ -408,25 +417,38 @@ public class ECMM_Mapping extends AbstractPluginQconf {
       o1.coordReset(); // reset the frame Coordinate system
 
       outputH.save(o1, f + 1);
-      if (f == stopAt) {
-        break;
-      }
     }
 
     // IJ.log("Total iterations = " + ECMp.its);
-    if (ECMp.plot) {
+    if (ctx.isPlot()) {
       plot.repaint();
     }
 
-    if (!ECMp.ANA) {
+    if (!cfg.ana) {
       double timeSec = (System.currentTimeMillis() - time) / 1000d;
       IJ.showStatus("ECMM finished");
-      IJ.log("ECMM finished in " + timeSec + " seconds.");
+      IJ.log(ctx.logPrefix + "ECMM finished in " + timeSec + " seconds.");
     }
-    return;
+    return outputH;
   }
 
-  private void nudgeOverlaps(Outline o1, Outline o2) {
+  /**
+   * Copy counters of finished mapping to {@link ECMp}.
+   * 
+   * @param contexts contexts of mapped cells
+   */
+  private static void updateCounters(EcmmContext... contexts) {
+    ECMp.its = 0;
+    ECMp.unSnapped = 0;
+    for (EcmmContext ctx : contexts) {
+      if (ctx != null) {
+        ECMp.its += ctx.its;
+        ECMp.unSnapped += ctx.unSnapped;
+      }
+    }
+  }
+
+  private static void nudgeOverlaps(Outline o1, Outline o2) {
 
     int state;
     double[] intersect = new double[2];
@@ -483,6 +505,9 @@ public class ECMM_Mapping extends AbstractPluginQconf {
     LOGGER.debug("Processing from new file format");
     Nest nest = ((QParamsQconf) qconfLoader.getQp()).getNest();
     outputOutlineHandlers = new OutlinesCollection(nest.size());
+    // parameters depend on cell, prepare them in sequence and map cells concurrently
+    EcmmContext[] contexts = new EcmmContext[nest.size()];
+    OutlineHandler[] inputs = new OutlineHandler[nest.size()];
     for (int i = 0; i < nest.size(); i++) { // go over all snakes
       // For compatibility, all methods have the same syntax (assumes that there is only one
       // handler)
@@ -495,11 +520,22 @@ public class ECMM_Mapping extends AbstractPluginQconf {
       ECMp.setup(qconfLoader.getQp());
       ECMp.setParams(oh.maxLength); // base params on outline in middle of
       // sequence
-      if (ECMp.plot) {
-        plot = new ECMplot(oh.getSize() - 1);
+      EcmmConfig cfg = new EcmmConfig();
+      if (cfg.plot) {
+        plot = new ECMplot(oh.getSize() - 1, cfg);
         plot.imPlus.setTitle(WindowManager.makeUniqueName(ECMplot.ECMM_TITLE + "_" + "cell_" + i));
       }
-      runPlugin(); // fills outputH
+      inputs[i] = oh;
+      contexts[i] = new EcmmContext(cfg, null, plot, nest.size() > 1 ? "cell " + i + ": " : "");
+    }
+    OutlineHandler[] results =
+            runCells(inputs, contexts, Runtime.getRuntime().availableProcessors());
+    updateCounters(contexts);
+    for (int i = 0; i < results.length; i++) {
+      if (results[i] == null) {
+        continue;
+      }
+      outputH = results[i];
       outputOutlineHandlers.oHs.add(i, new OutlineHandler(outputH)); // store actual result
     }
 
@@ -518,6 +554,39 @@ public class ECMM_Mapping extends AbstractPluginQconf {
 
   }
 
+  /**
+   * Map many cells concurrently.
+   * 
+   * <p>Results do not depend on number of threads, each cell uses only its own context.
+   * 
+   * @param inputs outlines of cells, null cells are skipped
+   * @param contexts context for each cell
+   * @param threads number of threads
+   * @return mapped outlines in order of cells, null for skipped cells
+   * @throws QuimpPluginException if mapping of any cell failed or was interrupted
+   */
+  static OutlineHandler[] runCells(OutlineHandler[] inputs, EcmmContext[] contexts, int threads)
+          throws QuimpPluginException {
+    try {
+      return ParallelTools.map(inputs.length, threads, i -> {
+        try {
+          return inputs[i] == null ? null : runPlugin(inputs[i], contexts[i]);
+        } catch (Exception e) {
+          throw new QuimpPluginException("ECMM mapping of cell " + i + " failed: " + e.getMessage(),
+                  e);
+        }
+      }).toArray(new OutlineHandler[0]);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof QuimpPluginException) {
+        throw (QuimpPluginException) e.getCause();
+      }
+      throw new QuimpPluginException(e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new QuimpPluginException("ECMM mapping interrupted", e);
+    }
+  }
+
   /*
    * (non-Javadoc)
    * 
@@ -535,10 +604,13 @@ public class ECMM_Mapping extends AbstractPluginQconf {
     // ECMp.endFrame);
     // System.out.println("outfile " + ECMp.OUTFILE.getAbsolutePath());
     ECMp.setParams(oh.maxLength); // base params on outline in middle of sequence
-    if (ECMp.plot) {
-      plot = new ECMplot(oh.getSize() - 1);
+    EcmmConfig cfg = new EcmmConfig();
+    if (cfg.plot) {
+      plot = new ECMplot(oh.getSize() - 1, cfg);
     }
-    runPlugin();
+    EcmmContext ctx = new EcmmContext(cfg, null, plot, "");
+    outputH = runPlugin(oh, ctx);
+    updateCounters(ctx);
 
     if (ECMp.saveTemp) {
       // ------ save a temporary version instead as to not over write the
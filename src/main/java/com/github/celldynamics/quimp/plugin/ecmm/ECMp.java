@@ -4,11 +4,12 @@ import java.io.File;
 
 import com.github.celldynamics.quimp.QParams;
 
-import ij.process.ImageProcessor;
-
 /**
  * Container class holding parameters related to ECMM analysis.
  * 
+ * <p>Values are copied to {@link EcmmConfig} when mapping starts, changes made during mapping do
+ * not affect it.
+ * 
  * @author rtyson
  *
  */
@@ -32,12 +33,6 @@ public class ECMp {
   /** The end frame. */
   public static int endFrame;
 
-  /** The image. */
-  public static ImageProcessor image;
-
-  /** The num INTS. */
-  public static int numINTS;
-
   /** The ana. */
   public static boolean ANA;
 
@@ -54,6 +49,14 @@ public class ECMp {
    * field complexity (set to -1 to leave as marker density).
    */
   public static double chargeDensity;
+  /**
+   * accuracy of field of line charges, 0 for exact field. Positive values are opening angle of
+   * Barnes-Hut approximation, about 0.2 speeds up dense outlines keeping direction of field within
+   * fraction of degree.
+   * 
+   * @see SectorField
+   */
+  public static double fieldApproximation;
   /**
    * max force allowed on a marker (0.06).
    */
@@ -107,10 +110,10 @@ public class ECMp {
   /** The disable density corrections. */
   public static boolean disableDensityCorrections;
 
-  /** total euler iterations. */
+  /** total euler iterations, summed over all cells after mapping. */
   public static int its;
 
-  /** number of nodes that failed to snap. */
+  /** number of nodes that failed to snap, summed over all cells after mapping. */
   public static int unSnapped;
 
   /** The visual res. */
@@ -178,6 +181,7 @@ public class ECMp {
     // frame)
     markerRes = 4;
     chargeDensity = -1; // field complexity (set to -1 to leave as marker density)
+    fieldApproximation = 0; // exact field of line charges
     maxVertF = 0.1; // max force allowed on a marker (0.06)
     migPower = 2;
     tarPower = 2;
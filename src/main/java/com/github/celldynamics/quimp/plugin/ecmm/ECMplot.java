@@ -35,23 +35,28 @@ class ECMplot {
   public int width;
   public int height;
   public int frame;
+  private final int visualRes;
+  private final int startFrame;
   // private int percentScreen = 65; //make visual output x% of screen height
 
   /**
    * Create ECMM plot.
    * 
    * @param ff number of frames
+   * @param cfg parameters of mapping
    */
-  ECMplot(int ff) {
+  ECMplot(int ff, EcmmConfig cfg) {
+    visualRes = cfg.visualRes;
+    startFrame = cfg.startFrame;
 
     // Dimension screen = IJ.getScreenSize();
     // ECMp.visualRes = (int) Math.round((screen.height / 100d) *
     // percentScreen);
-    double fitTo = ECMp.visualRes * 0.7;
-    scale = fitTo / ECMp.maxCellSize;
+    double fitTo = visualRes * 0.7;
+    scale = fitTo / cfg.maxCellSize;
 
-    width = ECMp.visualRes;
-    height = ECMp.visualRes;
+    width = visualRes;
+    height = visualRes;
 
     frame = ff;
     centre = new ExtendedVector2d(0, 0);
@@ -64,7 +69,7 @@ class ECMplot {
   }
 
   public void setDrawingFrame(int d) {
-    drawFrame = d - ECMp.startFrame + 1;
+    drawFrame = d - startFrame + 1;
     textPos = 25;
     imProc = imStack.getProcessor(drawFrame);
     this.writeText("Frame map " + d + " to " + (d + 1));
@@ -136,7 +141,7 @@ class ECMplot {
     // move a point to the centre
     p.addVec(new ExtendedVector2d(-centre.getX(), -centre.getY()));
     p.multiply(scale);
-    p.addVec(new ExtendedVector2d(ECMp.visualRes / 2, ECMp.visualRes / 2));
+    p.addVec(new ExtendedVector2d(visualRes / 2, visualRes / 2));
 
   }
 
@@ -0,0 +1,89 @@
+package com.github.celldynamics.quimp.plugin.ecmm;
+
+/**
+ * Immutable copy of ECMM parameters used by one run of mapping.
+ *
+ * <p>{@link ECMp} keeps parameters set by user and plugins. They are copied to this object before
+ * mapping starts, so mapping of many cells can run concurrently without sharing mutable state.
+ * Names of fields follow {@link ECMp}.
+ *
+ * @author p.baniukiewicz
+ * @see EcmmContext
+ */
+final class EcmmConfig {
+
+  final double scale;
+  final double frameInterval;
+  final int startFrame;
+  final int endFrame;
+  final boolean ana;
+  final boolean plot;
+  final boolean lineCharges;
+  final double markerRes;
+  final double chargeDensity;
+  final double fieldApproximation;
+  final double maxVertF;
+  final double migPower;
+  final double tarPower;
+  final double migQ;
+  final double tarQ;
+  final double mobileQ;
+  final double d;
+  final double w;
+  final double h;
+  final int maxIter;
+  final double k;
+  final double anaMigDist;
+  final boolean forceNoSectors;
+  final boolean forceForwardMapping;
+  final boolean forceBackwardMapping;
+  final boolean disableDensityCorrections;
+  final int visualRes;
+  final double maxCellSize;
+  final boolean drawIntersects;
+  final boolean drawInitialOutlines;
+  final boolean drawSolutionOutlines;
+  final boolean drawPaths;
+  final boolean drawFails;
+  final boolean inspectSectors;
+
+  /**
+   * Copy current values of {@link ECMp}.
+   */
+  EcmmConfig() {
+    scale = ECMp.scale;
+    frameInterval = ECMp.frameInterval;
+    startFrame = ECMp.startFrame;
+    endFrame = ECMp.endFrame;
+    ana = ECMp.ANA;
+    plot = ECMp.plot;
+    lineCharges = ECMp.lineCharges;
+    markerRes = ECMp.markerRes;
+    chargeDensity = ECMp.chargeDensity;
+    fieldApproximation = ECMp.fieldApproximation;
+    maxVertF = ECMp.maxVertF;
+    migPower = ECMp.migPower;
+    tarPower = ECMp.tarPower;
+    migQ = ECMp.migQ;
+    tarQ = ECMp.tarQ;
+    mobileQ = ECMp.mobileQ;
+    d = ECMp.d;
+    w = ECMp.w;
+    h = ECMp.h;
+    maxIter = ECMp.maxIter;
+    k = ECMp.k;
+    anaMigDist = ECMp.anaMigDist;
+    forceNoSectors = ECMp.forceNoSectors;
+    forceForwardMapping = ECMp.forceForwardMapping;
+    forceBackwardMapping = ECMp.forceBackwardMapping;
+    disableDensityCorrections = ECMp.disableDensityCorrections;
+    visualRes = ECMp.visualRes;
+    maxCellSize = ECMp.maxCellSize;
+    drawIntersects = ECMp.drawIntersects;
+    drawInitialOutlines = ECMp.drawInitialOutlines;
+    drawSolutionOutlines = ECMp.drawSolutionOutlines;
+    drawPaths = ECMp.drawPaths;
+    drawFails = ECMp.drawFails;
+    inspectSectors = ECMp.inspectSectors;
+  }
+}
@@ -0,0 +1,64 @@
+package com.github.celldynamics.quimp.plugin.ecmm;
+
+import ij.process.ImageProcessor;
+
+/**
+ * State of mapping of one cell.
+ *
+ * <p>Holds parameters, image, plot and counters used by {@link Mapping}, {@link Sector} and
+ * {@link ODEsolver} during mapping of one outline sequence. Each concurrently mapped cell uses its
+ * own context.
+ *
+ * @author p.baniukiewicz
+ */
+class EcmmContext {
+
+  /**
+   * Parameters of mapping.
+   */
+  final EcmmConfig cfg;
+  /**
+   * Image sampled in ANA mode, can be null otherwise.
+   */
+  final ImageProcessor image;
+  /**
+   * Plot of mapping, null if {@link EcmmConfig#plot} is not set.
+   */
+  final ECMplot plot;
+  /**
+   * Prefix of messages logged by mapping, identifies cell.
+   */
+  final String logPrefix;
+  /**
+   * Total euler iterations.
+   */
+  int its = 0;
+  /**
+   * Number of nodes that failed to snap.
+   */
+  int unSnapped = 0;
+
+  /**
+   * Create context.
+   *
+   * @param cfg parameters
+   * @param image image to sample, used by ANA
+   * @param plot plot or null
+   * @param logPrefix prefix of log messages
+   */
+  EcmmContext(EcmmConfig cfg, ImageProcessor image, ECMplot plot, String logPrefix) {
+    this.cfg = cfg;
+    this.image = image;
+    this.plot = cfg.plot ? plot : null;
+    this.logPrefix = logPrefix;
+  }
+
+  /**
+   * Check if plotting is enabled.
+   *
+   * @return true if plot is available
+   */
+  boolean isPlot() {
+    return plot != null;
+  }
+}
@@ -1,5 +1,8 @@
 package com.github.celldynamics.quimp.plugin.ecmm;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.github.celldynamics.quimp.Outline;
 import com.github.celldynamics.quimp.Vert;
 import com.github.celldynamics.quimp.geom.ExtendedVector2d;
@@ -14,16 +17,33 @@ import ij.IJ;
  */
 class Mapping {
 
+  private static final Logger LOGGER = LoggerFactory.getLogger(Mapping.class.getName());
+
   Outline o1;
   Outline o2;
   Sector[] sectors;
+  private final EcmmContext ctx;
+  private final EcmmConfig cfg;
+  /**
+   * Number of intersections between outlines.
+   */
+  private int numInts;
 
-  public Mapping(Outline oo1, Outline oo2) {
+  /**
+   * Create mapping between outlines.
+   * 
+   * @param oo1 outline in frame f
+   * @param oo2 outline in frame f+1
+   * @param ctx context of mapping of cell
+   */
+  public Mapping(Outline oo1, Outline oo2, EcmmContext ctx) {
     o1 = oo1;
     o2 = oo2;
-    ECMp.numINTS = 0;
+    this.ctx = ctx;
+    this.cfg = ctx.cfg;
+    numInts = 0;
 
-    if (ECMp.ANA || ECMp.forceNoSectors) { // for ANA force no intersection points
+    if (cfg.ana || cfg.forceNoSectors) { // for ANA force no intersection points
       insertFake();
       o1.updateNormals(true);
       o2.updateNormals(true);
@@ -32,26 +52,26 @@ class Mapping {
     }
 
     // shift them slightly
-    ECMp.numINTS = calcIntersects(); // temp intersect points are inserted
+    numInts = calcIntersects(); // temp intersect points are inserted
 
-    if (ECMp.numINTS == 0) {
+    if (numInts == 0) {
       System.out.println("No intersects found");
       insertFake();
       o1.updateNormals(true);
       o2.updateNormals(true);
       formSectors();
     } else {
-      if (ECMp.inspectSectors) {
+      if (cfg.inspectSectors) {
         if (!inspectInts()) {
-          IJ.log("    invalid outline intersections. Intersects corrected");
-          if (ECMp.plot && ECMp.drawFails) {
-            ECMM_Mapping.plot.writeText("Intersects corrected");
+          IJ.log(ctx.logPrefix + "    invalid outline intersections. Intersects corrected");
+          if (ctx.isPlot() && cfg.drawFails) {
+            ctx.plot.writeText("Intersects corrected");
           }
           rebuildInts();
 
         }
       }
-      if (ECMp.plot && ECMp.drawIntersects) {
+      if (ctx.isPlot() && cfg.drawIntersects) {
         drawIntersects();
       }
       // System.out.println("Num intersects: " + INTS);
@@ -129,7 +149,7 @@ class Mapping {
     temp.setX(pos.getX());
     temp.setY(pos.getY());
     temp.setIntPoint(true, 1);
-    ECMp.numINTS++;
+    numInts++;
   }
 
   private boolean inspectInts() {
@@ -145,7 +165,7 @@ class Mapping {
     Vert v2p;
     Vert v2m;
 
-    for (int j = 0; j < ECMp.numINTS; j++) {
+    for (int j = 0; j < numInts; j++) {
       do {
         v1 = v1.getNext();
       } while (!v1.isIntPoint()); // find next int point
@@ -271,8 +291,8 @@ class Mapping {
     int d3;
     int d4;
 
-    if (ECMp.plot && ECMp.drawFails) {
-      ECMM_Mapping.plot.setColor(0, 0.8, 0); // deleted colour
+    if (ctx.isPlot() && cfg.drawFails) {
+      ctx.plot.setColor(0, 0.8, 0); // deleted colour
     }
 
     do {
@@ -316,8 +336,8 @@ class Mapping {
               // also delete in o1
               o2.removeVert(Outline.findIntersect(o2.getHead(), v1.intsectID));
               // System.out.println("removed o2 intersects");
-              if (ECMp.plot && ECMp.drawFails) {
-                ECMM_Mapping.plot.drawCross(v1.getPoint(), 5);
+              if (ctx.isPlot() && cfg.drawFails) {
+                ctx.plot.drawCross(v1.getPoint(), 5);
               }
             }
           } while (true);
@@ -336,8 +356,8 @@ class Mapping {
               // also delete in o2
               o1.removeVert(Outline.findIntersect(o1.getHead(), v2.intsectID));
               // System.out.println("removed o1 intersects");
-              if (ECMp.plot && ECMp.drawFails) {
-                ECMM_Mapping.plot.drawCross(v2.getPoint(), 5);
+              if (ctx.isPlot() && cfg.drawFails) {
+                ctx.plot.drawCross(v2.getPoint(), 5);
               }
             }
           } while (true);
@@ -356,21 +376,21 @@ class Mapping {
       v1 = v1.getNext();
     } while (!v1.isHead());
 
-    ECMp.numINTS = intersects;
-    System.out.println("finished rebuilding. INTS:" + ECMp.numINTS);
+    numInts = intersects;
+    LOGGER.debug("finished rebuilding. INTS:" + numInts);
   }
 
   private void drawIntersects() {
-    if (!ECMp.plot) {
+    if (!ctx.isPlot()) {
       return;
     }
 
-    ECMM_Mapping.plot.setColor(0, 0.8, 0);
+    ctx.plot.setColor(0, 0.8, 0);
     Vert v1 = o1.getHead();
     do {
       if (v1.isIntPoint()) {
-        ECMM_Mapping.plot.drawCross(v1.getPoint(), 6);
-        ECMM_Mapping.plot.drawCircle(v1.getPoint(), 12);
+        ctx.plot.drawCross(v1.getPoint(), 6);
+        ctx.plot.drawCircle(v1.getPoint(), 12);
       }
       v1 = v1.getNext();
     } while (!v1.isHead());
@@ -383,16 +403,16 @@ class Mapping {
    */
   private void formSectors() {
 
-    if (ECMp.numINTS == 0) {
+    if (numInts == 0) {
       // IJ.error("NO INTERSECTS");
       System.out.println("No Intersects"); // should never happen. fake ones insterted
     }
-    sectors = new Sector[ECMp.numINTS];
+    sectors = new Sector[numInts];
 
     Vert vo1 = o1.getHead();
     Vert vo2 = o2.getHead();
 
-    for (int i = 0; i < ECMp.numINTS; i++) {
+    for (int i = 0; i < numInts; i++) {
       do {
         vo1 = vo1.getNext();
       } while (!vo1.isIntPoint());
@@ -405,31 +425,31 @@ class Mapping {
         }
       } while (true);
 
-      if (ECMp.numINTS == 1) { // no intersects present, forced or otherwise
-        sectors[0] = new Sector(0);
+      if (numInts == 1) { // no intersects present, forced or otherwise
+        sectors[0] = new Sector(0, cfg);
         sectors[0].setStarts(vo1, vo2);
         break;
       } else {
         if (i == 0) {
-          sectors[i] = new Sector(i);
+          sectors[i] = new Sector(i, cfg);
           sectors[i].setStarts(vo1, vo2);
-          sectors[ECMp.numINTS - 1] = new Sector(ECMp.numINTS - 1); // set as ends for last sector
+          sectors[numInts - 1] = new Sector(numInts - 1, cfg); // set as ends for last sector
           // sectors[INTS - 1].setEnds(vo1, vo2);
-        } else if (i == ECMp.numINTS - 1) {
+        } else if (i == numInts - 1) {
           sectors[i].setStarts(vo1, vo2);
           // sectors[i - 1].setEnds(vo1, vo2);
         } else {
-          sectors[i] = new Sector(i);
+          sectors[i] = new Sector(i, cfg);
           sectors[i].setStarts(vo1, vo2);
           // sectors[i - 1].setEnds(vo1, vo2);
         }
       }
     }
 
-    if (ECMp.numINTS == 1) { // no intersects present, forced or otherwise
+    if (numInts == 1) { // no intersects present, forced or otherwise
       sectors[0].constructWhole(o1.calcArea(), o2.calcArea());
     } else {
-      for (int i = 0; i < ECMp.numINTS; i++) {
+      for (int i = 0; i < numInts; i++) {
         sectors[i].construct(); // calc lengths, determin exp or contr, make charges
         // sectors[i].showPlot();
       }
@@ -445,6 +465,7 @@ class Mapping {
     Vert newVert; // placed at the marker
     ExtendedVector2d newPos;
     Sector s;
+    ODEsolver solver = new ODEsolver(ctx);
 
     Vert mapHead = new Vert(-1);
     Outline mappedOutline = new Outline(mapHead);
@@ -460,12 +481,12 @@ class Mapping {
         // }
         // IJ.log("migrating x:" + v.getX() + ", y:" + v.getY());
         // //debug
-        newPos = ODEsolver.euler(v, s);
+        newPos = solver.euler(v, s);
         if (!v.snapped) {
-          ECMp.unSnapped++;
-          IJ.log("    node failed to map (" + ECMp.unSnapped + ") - removed");
-          if (!ECMp.ANA && ECMp.plot && ECMp.drawFails) {
-            ECMM_Mapping.plot.writeText("FN(" + ECMp.unSnapped + ")");
+          ctx.unSnapped++;
+          IJ.log(ctx.logPrefix + "    node failed to map (" + ctx.unSnapped + ") - removed");
+          if (!cfg.ana && ctx.isPlot() && cfg.drawFails) {
+            ctx.plot.writeText("FN(" + ctx.unSnapped + ")");
           }
           v = v.getNext();
 
@@ -497,7 +518,7 @@ class Mapping {
           newVert.fCoord = v.coord;
         }
 
-        if (ECMp.ANA) {
+        if (cfg.ana) {
           // newVert.fluores = v.cloneFluo();
           newVert.setFluores(v.fluores);
           newVert.setTrackNum(v.getTrackNum());
@@ -513,7 +534,7 @@ class Mapping {
   }
 
   public Sector getSector(int i) {
-    if (i < 0 || i > ECMp.numINTS) {
+    if (i < 0 || i > numInts) {
       IJ.error("sectors out of bounds - 250");
     }
     return sectors[i];
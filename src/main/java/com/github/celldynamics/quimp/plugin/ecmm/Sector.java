@@ -18,6 +18,11 @@ import ij.process.FloatPolygon;
 class Sector {
 
   private int id;
+  private final EcmmConfig cfg;
+  /**
+   * true if sector covers whole outline (no intersections).
+   */
+  private boolean whole = false;
   private Vert startO1;
   private Vert startO2;
   public Outline migCharges;
@@ -43,9 +48,11 @@ class Sector {
    * Constructor of sector.
    * 
    * @param i id
+   * @param cfg parameters of mapping
    */
-  public Sector(int i) {
+  public Sector(int i, EcmmConfig cfg) {
     id = i;
+    this.cfg = cfg;
   }
 
   /**
@@ -70,7 +77,7 @@ class Sector {
     double sectorTriArea = ExtendedVector2d.triangleArea(startO1.getPoint(),
             startO1.getNext().getPoint(), startO2.getNext().getPoint());
 
-    if ((lengthO1 > lengthO2) || ECMp.forceForwardMapping) {
+    if ((lengthO1 > lengthO2) || cfg.forceForwardMapping) {
       forwardMap = true;
       migCharges = formCharges(startO1);
       tarCharges = formCharges(startO2);
@@ -99,14 +106,14 @@ class Sector {
     ExtendedVector2d normal;
     do {
       normal = new ExtendedVector2d(v.getNormal().getX(), v.getNormal().getY());
-      normal.multiply(outerNormal * ECMp.w);
+      normal.multiply(outerNormal * cfg.w);
       v.getPoint().addVec(normal);
       v = v.getNext();
     } while (!v.isHead());
 
-    if (ECMp.chargeDensity != -1) {
-      migCharges.setResolution(ECMp.chargeDensity);
-      tarCharges.setResolution(ECMp.chargeDensity);
+    if (cfg.chargeDensity != -1) {
+      migCharges.setResolution(cfg.chargeDensity);
+      tarCharges.setResolution(cfg.chargeDensity);
     }
 
     // create polygon off all charges for cal point inside/outside sector
@@ -124,10 +131,11 @@ class Sector {
     Outline innerCharges;
     Outline outerCharges;
 
+    whole = true;
     calcLengths();
 
-    if (((lengthO1 > lengthO2) || ECMp.forceForwardMapping || ECMp.ANA)
-            && !ECMp.forceBackwardMapping) {
+    if (((lengthO1 > lengthO2) || cfg.forceForwardMapping || cfg.ana)
+            && !cfg.forceBackwardMapping) {
       forwardMap = true;
       migCharges = formCharges(startO1);
       tarCharges = formCharges(startO2);
@@ -163,14 +171,14 @@ class Sector {
     ExtendedVector2d normal;
     do {
       normal = new ExtendedVector2d(v.getNormal().getX(), v.getNormal().getY());
-      normal.multiply(outerNormal * ECMp.w);
+      normal.multiply(outerNormal * cfg.w);
       v.getPoint().addVec(normal);
       v = v.getNext();
     } while (!v.isHead());
 
-    if (ECMp.chargeDensity != -1) {
-      migCharges.setResolution(ECMp.chargeDensity);
-      tarCharges.setResolution(ECMp.chargeDensity);
+    if (cfg.chargeDensity != -1) {
+      migCharges.setResolution(cfg.chargeDensity);
+      tarCharges.setResolution(cfg.chargeDensity);
     }
 
     outerPoly = ioPolygons(outerCharges);
@@ -271,7 +279,7 @@ class Sector {
     newVert.setX(tv.getX());
     newVert.setY(tv.getY());
     ExtendedVector2d normal = new ExtendedVector2d(tv.getNormal().getX(), tv.getNormal().getY());
-    normal.multiply(outerNormal * ECMp.w);
+    normal.multiply(outerNormal * cfg.w);
     newVert.getPoint().addVec(normal);
     newVert.updateNormale(true);
     return newVert;
@@ -337,7 +345,7 @@ class Sector {
   }
 
   public boolean insideCharges(ExtendedVector2d p) {
-    if (ECMp.numINTS > 1) {
+    if (!whole) {
       return chargesPoly.contains(p.getX(), p.getY());
     } else {
       if (outerPoly.contains(p.getX(), p.getY())) {
@@ -0,0 +1,566 @@
+package com.github.celldynamics.quimp.plugin.ecmm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.github.celldynamics.quimp.Outline;
+import com.github.celldynamics.quimp.Vert;
+import com.github.celldynamics.quimp.geom.ExtendedVector2d;
+
+/**
+ * Charges and target contour of {@link Sector} prepared for repeated evaluation by
+ * {@link ODEsolver}.
+ *
+ * <p>Charges are copied to arrays once per sector. Field is summed over all charges in the same
+ * order and with the same arithmetic as by walking the charge outlines, unless
+ * {@link EcmmConfig#fieldApproximation} is positive. Then line charges are grouped in a tree and
+ * groups seen from the evaluated point under angle (size of group to distance to its centre)
+ * smaller than this value are replaced by point charge of total length of group located at its
+ * centre (Barnes-Hut approximation).
+ *
+ * <p>Far from segment of length <i>l</i> and charge <i>q</i> its field is <i>kql/R^2</i>, so the
+ * group acts as one charge. Groups are centred at their length weighted centroids, therefore
+ * relative error of field of each accepted group is of order of square of the approximation angle.
+ * Errors of groups add up, relative error of total field is larger where fields of charges nearly
+ * cancel. For smooth outline of 1600 charges and angle 0.2 direction of field differed from exact
+ * by less than 0.3 degree in 99% of points, field was about 6 times faster.
+ * Close charges are always summed exactly. Only direction of field is used by
+ * {@link ODEsolver#dydt}.
+ *
+ * <p>Landing points are not bounded analytically, error of direction integrates along path of node.
+ * For angles up to 0.3 and paths up to 20 pixels landing points differed from exact ones by less
+ * than two Euler steps (<i>2*h*maxVertF</i>), angle 0.5 gave errors up to three steps. This is
+ * tested for angle 0.2 in SectorFieldTest.
+ *
+ * <p>Edges of target contour are indexed in uniform grid, proximity and snap queries test only
+ * edges close to point. These queries give the same results as testing all edges.
+ *
+ * <p>Sector must not be modified while this object is in use.
+ *
+ * @author p.baniukiewicz
+ * @see ODEsolver
+ */
+class SectorField {
+
+  /**
+   * Maximal number of charges in leaf of tree.
+   */
+  private static final int LEAF_SIZE = 8;
+  /**
+   * Maximal average number of grid cells per edge of target contour.
+   */
+  private static final int CELLS_PER_EDGE = 4;
+
+  /**
+   * Sector this field was built for.
+   */
+  final Sector sector;
+  /**
+   * Migrating charges at construction, sector can switch them.
+   */
+  private final Outline migCharges;
+  private final Outline tarCharges;
+  private final EcmmConfig cfg;
+  private final Charges mig;
+  private final Charges tar;
+
+  /**
+   * Start nodes of target edges in order of walking contour.
+   */
+  private final Vert[] edges;
+  private final double minX;
+  private final double minY;
+  private final double cellSize;
+  private final int cols;
+  private final int rows;
+  /**
+   * Start of each cell in {@link #cellEdges}.
+   */
+  private final int[] cellStart;
+  /**
+   * Edges stored cell by cell.
+   */
+  private final int[] cellEdges;
+
+  /**
+   * Prepare sector.
+   *
+   * @param s sector
+   * @param cfg parameters of mapping
+   */
+  SectorField(Sector s, EcmmConfig cfg) {
+    this.sector = s;
+    this.cfg = cfg;
+    migCharges = s.migCharges;
+    tarCharges = s.tarCharges;
+    double theta = cfg.lineCharges ? cfg.fieldApproximation : 0;
+    mig = new Charges(migCharges, cfg.lineCharges, theta);
+    tar = new Charges(tarCharges, cfg.lineCharges, theta);
+
+    // target edges as walked by ODEsolver#proximity, with edge ending at start used by snap
+    List<Vert> list = new ArrayList<>();
+    Vert v = s.getTarStart().getPrev();
+    list.add(v);
+    v = v.getNext();
+    do {
+      list.add(v);
+      v = v.getNext();
+    } while (!v.isIntPoint());
+    edges = list.toArray(new Vert[list.size()]);
+
+    int n = edges.length;
+    double mnX = Double.POSITIVE_INFINITY;
+    double mnY = Double.POSITIVE_INFINITY;
+    double mxX = Double.NEGATIVE_INFINITY;
+    double mxY = Double.NEGATIVE_INFINITY;
+    double len = 0;
+    for (Vert e : edges) {
+      ExtendedVector2d a = e.getPoint();
+      ExtendedVector2d b = e.getNext().getPoint();
+      mnX = Math.min(mnX, Math.min(a.getX(), b.getX()));
+      mnY = Math.min(mnY, Math.min(a.getY(), b.getY()));
+      mxX = Math.max(mxX, Math.max(a.getX(), b.getX()));
+      mxY = Math.max(mxY, Math.max(a.getY(), b.getY()));
+      len += Math.max(Math.abs(b.getX() - a.getX()), Math.abs(b.getY() - a.getY()));
+    }
+    minX = mnX;
+    minY = mnY;
+    // cell not smaller than proximity range and average edge, not more cells than limit
+    double cs = Math.max(cfg.d, len / n);
+    cs = Math.max(cs, Math.sqrt((mxX - minX) * (mxY - minY) / ((double) CELLS_PER_EDGE * n)));
+    cellSize = cs > 0 ? cs : 1;
+    cols = (int) ((mxX - minX) / cellSize) + 1;
+    rows = (int) ((mxY - minY) / cellSize) + 1;
+
+    // two passes - count edges in cells then fill
+    cellStart = new int[cols * rows + 1];
+    for (int i = 0; i < n; i++) {
+      forCells(i, false, null);
+    }
+    for (int c = 0; c < cols * rows; c++) {
+      cellStart[c + 1] += cellStart[c];
+    }
+    cellEdges = new int[cellStart[cols * rows]];
+    int[] fill = Arrays.copyOf(cellStart, cols * rows);
+    for (int i = 0; i < n; i++) {
+      forCells(i, true, fill);
+    }
+  }
+
+  /**
+   * Count or store edge in all cells covered by its bounding box.
+   *
+   * @param i edge
+   * @param store false for counting, true for storing
+   * @param fill next free position of each cell, used for storing
+   */
+  private void forCells(int i, boolean store, int[] fill) {
+    ExtendedVector2d a = edges[i].getPoint();
+    ExtendedVector2d b = edges[i].getNext().getPoint();
+    int c0 = col(Math.min(a.getX(), b.getX()));
+    int c1 = col(Math.max(a.getX(), b.getX()));
+    int r0 = row(Math.min(a.getY(), b.getY()));
+    int r1 = row(Math.max(a.getY(), b.getY()));
+    for (int r = r0; r <= r1; r++) {
+      for (int c = c0; c <= c1; c++) {
+        if (store) {
+          cellEdges[fill[r * cols + c]++] = i;
+        } else {
+          cellStart[r * cols + c + 1]++;
+        }
+      }
+    }
+  }
+
+  private int col(double x) {
+    return Math.max(0, Math.min(cols - 1, (int) Math.floor((x - minX) / cellSize)));
+  }
+
+  private int row(double y) {
+    return Math.max(0, Math.min(rows - 1, (int) Math.floor((y - minY) / cellSize)));
+  }
+
+  /**
+   * Check if this object reflects current state of sector.
+   *
+   * @param s sector
+   * @return true if built for this sector and its charges were not switched
+   */
+  boolean isFor(Sector s) {
+    return s == sector && s.migCharges == migCharges && s.tarCharges == tarCharges;
+  }
+
+  /**
+   * Check if point is closer than {@link EcmmConfig#d} to target contour.
+   *
+   * @param p point
+   * @return true if any target edge is within distance
+   * @see ODEsolver#proximity(ExtendedVector2d, Sector)
+   */
+  boolean proximity(ExtendedVector2d p) {
+    double r = cfg.d * (1 + 1e-9) + 1e-9; // margin for rounding of cells
+    if (p.getX() + r < minX || p.getY() + r < minY || p.getX() - r > minX + cols * cellSize
+            || p.getY() - r > minY + rows * cellSize) {
+      return false;
+    }
+    int c0 = col(p.getX() - r);
+    int c1 = col(p.getX() + r);
+    int r0 = row(p.getY() - r);
+    int r1 = row(p.getY() + r);
+    for (int rr = r0; rr <= r1; rr++) {
+      for (int c = c0; c <= c1; c++) {
+        int cell = rr * cols + c;
+        for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+          int e = cellEdges[k];
+          if (e == 0) {
+            continue; // edge before start is not tested by proximity
+          }
+          Vert v = edges[e];
+          if (ExtendedVector2d.distPointToSegment(p, v.getPoint(),
+                  v.getNext().getPoint()) <= cfg.d) {
+            return true;
+          }
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Find target edge closest to point.
+   *
+   * <p>Edges are searched in growing rings of cells around point, the first closest edge in order
+   * of contour wins as in exhaustive search.
+   *
+   * @param p point
+   * @return first node of closest edge, see ODEsolver#snap
+   */
+  Vert snap(ExtendedVector2d p) {
+    // start from edge ending at start of target, reported as start node
+    Vert first = edges[0];
+    double best = ExtendedVector2d.distPointToSegment(p, first.getPoint(),
+            first.getNext().getPoint());
+    int bestEdge = 0;
+    int pc = (int) Math.floor((p.getX() - minX) / cellSize);
+    int pr = (int) Math.floor((p.getY() - minY) / cellSize);
+    // rings closer than grid are empty
+    int firstRing = Math.max(Math.max(-pc, pc - cols + 1), Math.max(-pr, pr - rows + 1));
+    int lastRing = Math.max(Math.max(pc, cols - 1 - pc), Math.max(pr, rows - 1 - pr));
+    boolean[] seen = new boolean[edges.length];
+    seen[0] = true;
+    for (int ring = Math.max(0, firstRing); ring <= lastRing; ring++) {
+      // edges not seen yet are further than (ring - 1) cells, small margin for rounding
+      if (best < (ring - 1) * cellSize * (1 - 1e-9)) {
+        break;
+      }
+      for (int r = Math.max(0, pr - ring); r <= Math.min(rows - 1, pr + ring); r++) {
+        boolean edgeRow = r == pr - ring || r == pr + ring;
+        int step = edgeRow ? 1 : 2 * ring; // only left and right cell of ring in inner rows
+        for (int c = pc - ring; c <= pc + ring; c += Math.max(1, step)) {
+          if (c < 0 || c >= cols) {
+            continue;
+          }
+          int cell = r * cols + c;
+          for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+            int e = cellEdges[k];
+            if (seen[e]) {
+              continue;
+            }
+            seen[e] = true;
+            Vert v = edges[e];
+            ExtendedVector2d current =
+                    ExtendedVector2d.pointToSegment(p, v.getPoint(), v.getNext().getPoint());
+            double dist = ExtendedVector2d.lengthP2P(p, current);
+            if (dist < best || (dist == best && e < bestEdge)) {
+              best = dist;
+              bestEdge = e;
+            }
+          }
+        }
+      }
+    }
+    return edges[Math.max(bestEdge, 1)];
+  }
+
+  /**
+   * Field of all charges at point.
+   *
+   * @param px point
+   * @param py point
+   * @param orientation polarity of line charges, 1 or -1
+   * @return field
+   * @see ODEsolver#fieldAtLines
+   */
+  ExtendedVector2d fieldAt(double px, double py, double orientation) {
+    double[] acc = new double[2];
+    if (cfg.lineCharges) {
+      mig.addLineField(px, py, cfg.k * cfg.migQ, orientation, acc);
+      tar.addLineField(px, py, cfg.k * cfg.tarQ, orientation, acc);
+    } else {
+      mig.addPointField(px, py, cfg.k, cfg.migQ, cfg.migPower, acc);
+      tar.addPointField(px, py, cfg.k, cfg.tarQ, cfg.tarPower, acc);
+    }
+    return new ExtendedVector2d(acc[0], acc[1]);
+  }
+
+  /**
+   * Line or point charges of one outline.
+   *
+   * @author p.baniukiewicz
+   */
+  private static class Charges {
+    /**
+     * Number of charges.
+     */
+    final int size;
+    /**
+     * Start points of segments or point charges.
+     */
+    final double[] x1;
+    final double[] y1;
+    /**
+     * End points of segments.
+     */
+    final double[] x2;
+    final double[] y2;
+    /**
+     * Lengths of segments.
+     */
+    final double[] len;
+    /**
+     * Opening angle, 0 for exact sum.
+     */
+    final double theta;
+    // tree over segments, nodes in preorder, children of node i are i+1 and right[i]
+    private int nodes = 0;
+    private int[] start;
+    private int[] end;
+    private int[] right;
+    private double[] cx;
+    private double[] cy;
+    private double[] totalLen;
+    private double[] extent;
+    /**
+     * Order of segments in tree.
+     */
+    private int[] order;
+
+    /**
+     * Copy charges.
+     *
+     * @param charges outline of charges
+     * @param lines true for line charges, false for point charges
+     * @param theta opening angle of approximation, 0 for exact
+     */
+    Charges(Outline charges, boolean lines, double theta) {
+      this.theta = theta;
+      List<Vert> list = new ArrayList<>();
+      Vert v = charges.getHead();
+      if (lines) { // the same loop as ODEsolver#fieldAtLines
+        do {
+          list.add(v);
+          v = v.getNext();
+        } while (!v.isIntPoint() || v.isHead());
+      } else { // the same loop as ODEsolver#fieldAtPoints
+        do {
+          list.add(v);
+          v = v.getNext();
+        } while (!v.getPrev().isIntPoint() || v.getPrev().isHead());
+      }
+      size = list.size();
+      x1 = new double[size];
+      y1 = new double[size];
+      x2 = new double[size];
+      y2 = new double[size];
+      len = new double[size];
+      for (int i = 0; i < size; i++) {
+        Vert s = list.get(i);
+        x1[i] = s.getX();
+        y1[i] = s.getY();
+        x2[i] = s.getNext().getX();
+        y2[i] = s.getNext().getY();
+        double dx = x2[i] - x1[i];
+        double dy = y2[i] - y1[i];
+        len[i] = Math.sqrt(dx * dx + dy * dy);
+      }
+      if (lines && theta > 0 && size > LEAF_SIZE) {
+        buildTree();
+      }
+    }
+
+    /**
+     * Build binary tree by splitting segments at median of longer side of bounding box.
+     */
+    private void buildTree() {
+      int maxNodes = 4 * (size / LEAF_SIZE) + 1; // grown if needed
+      start = new int[maxNodes];
+      end = new int[maxNodes];
+      right = new int[maxNodes];
+      cx = new double[maxNodes];
+      cy = new double[maxNodes];
+      totalLen = new double[maxNodes];
+      extent = new double[maxNodes];
+      order = new int[size];
+      for (int i = 0; i < size; i++) {
+        order[i] = i;
+      }
+      build(0, size);
+    }
+
+    private int build(int from, int to) {
+      if (nodes == start.length) {
+        int n = nodes * 2;
+        start = Arrays.copyOf(start, n);
+        end = Arrays.copyOf(end, n);
+        right = Arrays.copyOf(right, n);
+        cx = Arrays.copyOf(cx, n);
+        cy = Arrays.copyOf(cy, n);
+        totalLen = Arrays.copyOf(totalLen, n);
+        extent = Arrays.copyOf(extent, n);
+      }
+      int node = nodes++;
+      start[node] = from;
+      end[node] = to;
+      double mnX = Double.POSITIVE_INFINITY;
+      double mnY = Double.POSITIVE_INFINITY;
+      double mxX = Double.NEGATIVE_INFINITY;
+      double mxY = Double.NEGATIVE_INFINITY;
+      double sl = 0;
+      double sx = 0;
+      double sy = 0;
+      for (int k = from; k < to; k++) {
+        int i = order[k];
+        mnX = Math.min(mnX, Math.min(x1[i], x2[i]));
+        mnY = Math.min(mnY, Math.min(y1[i], y2[i]));
+        mxX = Math.max(mxX, Math.max(x1[i], x2[i]));
+        mxY = Math.max(mxY, Math.max(y1[i], y2[i]));
+        sl += len[i];
+        sx += len[i] * (x1[i] + x2[i]) / 2;
+        sy += len[i] * (y1[i] + y2[i]) / 2;
+      }
+      totalLen[node] = sl;
+      if (sl > 0) {
+        cx[node] = sx / sl;
+        cy[node] = sy / sl;
+      } else {
+        cx[node] = (mnX + mxX) / 2;
+        cy[node] = (mnY + mxY) / 2;
+      }
+      // radius of group around centre
+      extent[node] = 2 * Math.max(Math.max(mxX - cx[node], cx[node] - mnX),
+              Math.max(mxY - cy[node], cy[node] - mnY));
+      right[node] = -1;
+      if (to - from > LEAF_SIZE) {
+        boolean alongX = mxX - mnX >= mxY - mnY;
+        Integer[] idx = new Integer[to - from];
+        for (int k = from; k < to; k++) {
+          idx[k - from] = order[k];
+        }
+        Arrays.sort(idx, (a, b) -> alongX
+                ? Double.compare(x1[a] + x2[a], x1[b] + x2[b])
+                : Double.compare(y1[a] + y2[a], y1[b] + y2[b]));
+        for (int k = from; k < to; k++) {
+          order[k] = idx[k - from];
+        }
+        int mid = (from + to) >>> 1;
+        build(from, mid);
+        right[node] = build(mid, to);
+      }
+      return node;
+    }
+
+    /**
+     * Add field of line charges.
+     *
+     * @param px point
+     * @param py point
+     * @param kq product of Coulomb constant and charge
+     * @param orientation polarity
+     * @param acc accumulator of field
+     * @see ODEsolver#forceLpolar
+     */
+    void addLineField(double px, double py, double kq, double orientation, double[] acc) {
+      if (order == null) {
+        for (int i = 0; i < size; i++) {
+          addSegment(i, px, py, kq, orientation, acc);
+        }
+        return;
+      }
+      int[] stack = new int[64];
+      int sp = 0;
+      stack[sp++] = 0;
+      while (sp > 0) {
+        int node = stack[--sp];
+        double dx = px - cx[node];
+        double dy = py - cy[node];
+        double dist2 = dx * dx + dy * dy;
+        if (extent[node] * extent[node] < theta * theta * dist2) { // far group
+          double dist = Math.sqrt(dist2);
+          double multiplier = kq * totalLen[node] / (dist2 * dist);
+          acc[0] += dx * multiplier * orientation;
+          acc[1] += dy * multiplier * orientation;
+        } else if (right[node] < 0) { // leaf
+          for (int k = start[node]; k < end[node]; k++) {
+            addSegment(order[k], px, py, kq, orientation, acc);
+          }
+        } else {
+          if (sp + 2 > stack.length) {
+            stack = Arrays.copyOf(stack, stack.length * 2);
+          }
+          stack[sp++] = right[node];
+          stack[sp++] = node + 1;
+        }
+      }
+    }
+
+    /**
+     * Add field of one segment, arithmetic as in ODEsolver#forceLpolar.
+     */
+    private void addSegment(int i, double px, double py, double kq, double orientation,
+            double[] acc) {
+      double rux = px - x2[i];
+      double ruy = py - y2[i];
+      double r = Math.sqrt(rux * rux + ruy * ruy);
+      if (r != 0) {
+        rux = rux / r;
+        ruy = ruy / r;
+      }
+      double rpux = px - x1[i];
+      double rpuy = py - y1[i];
+      double rp = Math.sqrt(rpux * rpux + rpuy * rpuy);
+      if (rp != 0) {
+        rpux = rpux / rp;
+        rpuy = rpuy / rp;
+      }
+      double l = len[i];
+      double d = (((rp + r) * (rp + r)) - (l * l)) / (2 * l);
+      double multiplier = (kq / d);
+      rpux += rux;
+      rpuy += ruy;
+      acc[0] += rpux * multiplier * orientation;
+      acc[1] += rpuy * multiplier * orientation;
+    }
+
+    /**
+     * Add field of point charges, arithmetic as in ODEsolver#forceP.
+     */
+    void addPointField(double px, double py, double k, double q, double power, double[] acc) {
+      for (int i = 0; i < size; i++) {
+        double ux = px - x1[i];
+        double uy = py - y1[i];
+        double r = Math.sqrt(ux * ux + uy * uy);
+        if (r == 0) {
+          ODEsolver.infiniteForce(acc);
+          continue;
+        }
+        ux = ux / r;
+        uy = uy / r;
+        r = Math.abs(Math.pow(r, power));
+        double multiplier = (k * (q / r));
+        acc[0] += ux * multiplier;
+        acc[1] += uy * multiplier;
+      }
+    }
+  }
+}
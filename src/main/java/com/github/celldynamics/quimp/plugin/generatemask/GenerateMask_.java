@@ -86,6 +86,16 @@ public class GenerateMask_ extends AbstractPluginQconf {
             + "mail: p.baniukiewicz@warwick.ac.uk";
   }
 
+  /*
+   * (non-Javadoc)
+   * 
+   * @see com.github.celldynamics.quimp.plugin.AbstractPluginQconf#loadOnDemand()
+   */
+  @Override
+  protected boolean loadOnDemand() {
+    return true; // only BOA is used
+  }
+
   /*
    * (non-Javadoc)
    * 
@@ -1,24 +1,34 @@
 package com.github.celldynamics.quimp.plugin.protanalysis;
 
+import java.awt.GraphicsEnvironment;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.github.celldynamics.quimp.CellStats;
 import com.github.celldynamics.quimp.Outline;
 import com.github.celldynamics.quimp.QParamsQconf;
 import com.github.celldynamics.quimp.QuimpException;
 import com.github.celldynamics.quimp.QuimpException.MessageSinkTypes;
 import com.github.celldynamics.quimp.filesystem.FileExtensions;
+import com.github.celldynamics.quimp.filesystem.QconfLoader;
 import com.github.celldynamics.quimp.plugin.AbstractPluginQconf;
 import com.github.celldynamics.quimp.plugin.QuimpPluginException;
 import com.github.celldynamics.quimp.plugin.qanalysis.STmap;
+import com.github.celldynamics.quimp.utils.ParallelTools;
+import com.github.celldynamics.quimp.utils.QuimPArrayUtils;
 
 import ij.ImagePlus;
+import ij.WindowManager;
+import ij.process.FloatProcessor;
 
 // TODO Update UML below
 /*
@@ -316,6 +326,9 @@ import ij.ImagePlus;
  * <br>
  * <img src="doc-files/Prot_Analysis_2_UML.png"/><br>
  * 
+ * <p>Maxima of motility maps of all cells can be also tracked in batch by
+ * {@link #runBatch(boolean)}, which is used instead of UI if there is no display.
+ * 
  * @author p.baniukiewicz
  */
 public class Prot_Analysis extends AbstractPluginQconf {
@@ -352,6 +365,19 @@ public class Prot_Analysis extends AbstractPluginQconf {
     outlines = new ArrayList<>();
   }
 
+  /**
+   * Constructor for already loaded QCONF file.
+   * 
+   * <p>Does not create UI nor run any computation, allows to call {@link #analyseCells(int)}
+   * directly.
+   * 
+   * @param qconfLoader loaded QCONF file
+   */
+  Prot_Analysis(QconfLoader qconfLoader) {
+    this();
+    this.qconfLoader = qconfLoader;
+  }
+
   /**
    * Constructor that allows to provide own configuration parameters.
    * 
@@ -405,26 +431,12 @@ public class Prot_Analysis extends AbstractPluginQconf {
   /**
    * Write cell statistic and protrusion statistics to files.
    * 
-   * <p>Currently not used might be useful. Example of use:
-   * 
-   * <pre>
-   * <code>
-   * // write stats, and add to table
-   * writeStats(h, mapCell, mf, trackCollection).cellStatistics.addCellToCellTable(rt);
-   * </code>
-   * </pre>
-   * 
    * @param h Cell number
-   * @param mapCell cell map
-   * @param mf maxima finder object
-   * @param trackCollection track collection object
-   * @return ProtStat instance of object that keeps cell statistics. Can be used to form e.g.
-   *         table with results.
-   * 
+   * @param cellStat statistics of cell
    * @throws FileNotFoundException if stats can not be written
+   * @see #saveResults(List)
    */
-  private ProtStat writeStats(int h, STmap mapCell, MaximaFinder mf,
-          TrackCollection trackCollection) throws FileNotFoundException {
+  private void writeStats(int h, ProtStat cellStat) throws FileNotFoundException {
     QParamsQconf qp = (QParamsQconf) qconfLoader.getQp();
     // Maps are correlated in order with Outlines in DataContainer.
     // write data
@@ -434,16 +446,165 @@ public class Prot_Analysis extends AbstractPluginQconf {
     PrintWriter protStatFile = new PrintWriter(
             Paths.get(qp.getPath(), qp.getFileName() + "_" + h + FileExtensions.protStatSuffix)
                     .toFile());
-    new ProtStat(mf, trackCollection, qp.getLoadedDataContainer().getStats().sHs.get(h), mapCell)
-            .writeProtrusion(protStatFile, h);
-
-    ProtStat cellStat = new ProtStat(mf, trackCollection,
-            qp.getLoadedDataContainer().getStats().sHs.get(h), mapCell);
-
+    cellStat.writeProtrusion(protStatFile, h);
     cellStat.writeCell(cellStatFile, h);
     protStatFile.close();
     cellStatFile.close();
-    return cellStat;
+  }
+
+  /**
+   * Results of protrusion analysis of one cell.
+   * 
+   * @author p.baniukiewicz
+   * @see Prot_Analysis#analyseCells(int)
+   */
+  public static class CellResult {
+    /**
+     * Maps of cell.
+     */
+    public final STmap mapCell;
+    /**
+     * Maxima found on motility map.
+     */
+    public final MaximaFinder maxima;
+    /**
+     * Tracks of maxima.
+     */
+    public final TrackCollection tracks;
+    /**
+     * Cell and protrusion statistics.
+     */
+    public final ProtStat stats;
+
+    CellResult(STmap mapCell, MaximaFinder maxima, TrackCollection tracks, ProtStat stats) {
+      this.mapCell = mapCell;
+      this.maxima = maxima;
+      this.tracks = tracks;
+      this.stats = stats;
+    }
+  }
+
+  /**
+   * Find and track maxima of motility maps of all cells, save results and optionally show them.
+   * 
+   * <p>Read:
+   * <ol>
+   * <li>{@link ProtAnalysisOptions#noiseTolerance}
+   * <li>{@link ProtAnalysisOptions#dropValue}
+   * <li>{@link ProtAnalysisOptions#saveTracks}
+   * </ol>
+   * 
+   * @param visualise if true motility maps with maxima and tracks are shown at the end
+   * @return results in order of cells
+   * @throws QuimpException on error
+   * @see #analyseCells(int)
+   * @see #saveResults(List)
+   * @see #visualiseResults(List)
+   */
+  public List<CellResult> runBatch(boolean visualise) throws QuimpException {
+    List<CellResult> results = analyseCells(Runtime.getRuntime().availableProcessors());
+    saveResults(results);
+    if (visualise) {
+      visualiseResults(results);
+    }
+    return results;
+  }
+
+  /**
+   * Find and track maxima of motility maps and compute statistics for all cells.
+   * 
+   * <p>Cells are processed concurrently, nothing is displayed or saved.
+   * 
+   * @param threads number of threads
+   * @return results in order of cells
+   * @throws QuimpPluginException on error in any cell
+   */
+  List<CellResult> analyseCells(int threads) throws QuimpPluginException {
+    ProtAnalysisOptions opts = (ProtAnalysisOptions) options;
+    QParamsQconf qp = (QParamsQconf) qconfLoader.getQp();
+    STmap[] stMap = qp.getLoadedDataContainer().getQState();
+    List<CellStats> stats = qp.getLoadedDataContainer().getStats().sHs;
+    List<CellResult> ret;
+    // tracking maps of one cell are built in one thread if cells are processed in parallel
+    int trackThreads = Math.min(stMap.length, threads) > 1 ? 1
+            : Runtime.getRuntime().availableProcessors();
+    try {
+      ret = ParallelTools.map(stMap.length, threads, cell -> analyseCell(stMap[cell],
+              stats.get(cell), opts.noiseTolerance, opts.dropValue, trackThreads));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new QuimpPluginException("Protrusion Analysis interrupted", e);
+    } catch (ExecutionException e) {
+      throw new QuimpPluginException(e.getCause());
+    }
+    LOGGER.debug("Analysed cells: " + ret.size());
+    return ret;
+  }
+
+  /**
+   * Find and track maxima of motility map and compute statistics for one cell.
+   * 
+   * @param mapCell maps of cell
+   * @param cs statistics of cell
+   * @param noiseTolerance sensitivity of maximum detection
+   * @param drop drop from maximum to consider point in tracking line
+   * @param threads number of threads used for building tracking maps
+   * @return result for cell
+   */
+  private static CellResult analyseCell(STmap mapCell, CellStats cs, double noiseTolerance,
+          double drop, int threads) {
+    // x - frames, y - outline indexes
+    FloatProcessor motMap = new FloatProcessor(QuimPArrayUtils.double2dfloat(mapCell.getMotMap()));
+    MaximaFinder mf = new MaximaFinder(motMap);
+    mf.computeMaximaIJ(noiseTolerance);
+    TrackMapAnalyser pt = new TrackMapAnalyser();
+    pt.trackMaxima(mapCell, drop, mf, threads);
+    TrackCollection trackCollection = pt.getTrackCollection();
+    return new CellResult(mapCell, mf, trackCollection, new ProtStat(mf, trackCollection, cs,
+            mapCell));
+  }
+
+  /**
+   * Write statistics and tracks of all cells, in order of cells.
+   * 
+   * <p>Tracks are written only if {@link ProtAnalysisOptions#saveTracks} is set.
+   * 
+   * @param results results of {@link #analyseCells(int)}
+   * @throws QuimpException if files can not be written
+   */
+  void saveResults(List<CellResult> results) throws QuimpException {
+    ProtAnalysisOptions opts = (ProtAnalysisOptions) options;
+    String path = qconfLoader.getQp().getPath();
+    try {
+      for (int h = 0; h < results.size(); h++) {
+        writeStats(h, results.get(h).stats);
+        if (opts.saveTracks.booleanValue()) {
+          try (PrintWriter pw =
+                  new PrintWriter(Paths.get(path, "tracks_" + h + ".csv").toFile())) {
+            results.get(h).tracks.saveTracks(pw);
+          }
+        }
+      }
+    } catch (IOException e) {
+      throw new QuimpException(e);
+    }
+  }
+
+  /**
+   * Show motility maps of all cells with maxima and tracking lines.
+   * 
+   * @param results results of {@link #analyseCells(int)}
+   */
+  void visualiseResults(List<CellResult> results) {
+    for (int h = 0; h < results.size(); h++) {
+      CellResult r = results.get(h);
+      TrackVisualisation.Map vis =
+              new TrackVisualisation.Map(WindowManager.makeUniqueName("motility_map_cell_" + h),
+                      QuimPArrayUtils.double2dfloat(r.mapCell.getMotMap()));
+      vis.addMaximaToImage(r.maxima);
+      vis.addTrackingLinesToImage(r.tracks);
+      vis.getOriginalImage().show();
+    }
   }
 
   /*
@@ -529,6 +690,10 @@ public class Prot_Analysis extends AbstractPluginQconf {
    */
   @Override
   protected void runFromQconf() throws QuimpException {
+    if (GraphicsEnvironment.isHeadless()) {
+      runBatch(false); // no UI, process all cells
+      return;
+    }
     // we do not support run from macro so just show UI here
     createUIInstance();
     try {
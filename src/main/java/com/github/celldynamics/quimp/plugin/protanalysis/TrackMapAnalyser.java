@@ -5,10 +5,15 @@ import java.awt.Polygon;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
@@ -102,12 +107,29 @@ public class TrackMapAnalyser {
    * 
    */
   public void trackMaxima(final STmap mapCell, double drop, final MaximaFinder maximaFinder) {
+    trackMaxima(mapCell, drop, maximaFinder, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Track maxima across motility map as long as they fulfil criterion of amplitude.
+   * 
+   * <p>Work like {@link #trackMaxima(STmap, double, MaximaFinder)} but allows to limit number of
+   * threads used for building tracking maps, e.g. when many cells are tracked concurrently.
+   * 
+   * @param mapCell holds all maps generated and saved by QuimP
+   * @param drop the value (in x/100) while velocity remains above of the peak speed
+   * @param maximaFinder properly initialized object that holds maxima of motility map
+   * @param threads number of threads used by {@link MapTracker}
+   * @see #trackMaxima(STmap, double, MaximaFinder)
+   */
+  public void trackMaxima(final STmap mapCell, double drop, final MaximaFinder maximaFinder,
+          int threads) {
     int numFrames = mapCell.getMotMap().length;
     // int[] indexes = new int[numFrames];
     Polygon maxi = maximaFinder.getMaxima(); // restore computed maxima
     double[] maxValues = maximaFinder.getMaxValues(); // max values in order of maxi
     // build tracking map
-    MapTracker trackMap = new MapTracker(mapCell.getOriginMap(), mapCell.getCoordMap());
+    MapTracker trackMap = new MapTracker(mapCell.getOriginMap(), mapCell.getCoordMap(), threads);
     trackMap.includeFirst = INCLUDE_INITIAL; // include also initial point
     ArrayList<Point> trackForward = null;
     ArrayList<Point> trackBackward = null;
@@ -154,44 +176,51 @@ public class TrackMapAnalyser {
    * getCommonPoints.
    * 
    * @return All common points among tracks without self crossings (forward-backward for the same
-   *         starting point)
+   *         starting point). Order of points is not specified.
    */
   public Polygon getCommonPoints() {
-    ArrayList<Point> tmpRet = new ArrayList<>();
     List<Pair<Track, Track>> tracks = trackCollection.getBf();
-    for (int i = 0; i < tracks.size() - 1; i++) {
-      for (int j = i + 1; j < tracks.size(); j++) {
-        Track b1 = tracks.get(i).getLeft();
-        Track b2 = tracks.get(j).getLeft();
-        Track f1 = tracks.get(i).getRight();
-        Track f2 = tracks.get(j).getRight();
-        // check b1-b2, b1-f2, b2-f1, f1-f2
-        // b1-b2
-        {
-          Track copy = new Track(b1);
-          copy.retainAll(b2);
-          tmpRet.addAll(copy);
-        }
-        // b1-f2
-        {
-          Track copy = new Track(b1);
-          copy.retainAll(f2);
-          tmpRet.addAll(copy);
-        }
-        // b2-f1
-        {
-          Track copy = new Track(b2);
-          copy.retainAll(f1);
-          tmpRet.addAll(copy);
-        }
-        // f1-f2
-        {
-          Track copy = new Track(f1);
-          copy.retainAll(f2);
-          tmpRet.addAll(copy);
-        }
+    // backward track of pair i is 2i, forward 2i+1
+    PointIndex index = new PointIndex();
+    for (int i = 0; i < tracks.size(); i++) {
+      index.addAll(2 * i, tracks.get(i).getLeft());
+      index.addAll(2 * i + 1, tracks.get(i).getRight());
+    }
+    // Point is common if it belongs to two different pairs. It would be found first for two
+    // pairs with lowest indexes i<j, in b1-b2, b1-f2, b2-f1, f1-f2 order, at its position in
+    // first track of these. Keys follow this order, so removeDuplicates gets points in the same
+    // order as from pairwise scan. Its output is still in HashSet order, which is not specified.
+    List<int[]> keys = new ArrayList<>();
+    List<Point> points = new ArrayList<>();
+    for (Occupancy o : index.values()) {
+      int i = o.tracks[0] / 2;
+      int k = 0;
+      int[] posi = { -1, -1 }; // positions in b_i, f_i
+      for (; k < o.count && o.tracks[k] / 2 == i; k++) {
+        posi[o.tracks[k] % 2] = o.first[k];
+      }
+      if (k == o.count) {
+        continue; // only in one pair
+      }
+      int j = o.tracks[k] / 2;
+      int[] posj = { -1, -1 }; // positions in b_j, f_j
+      for (; k < o.count && o.tracks[k] / 2 == j; k++) {
+        posj[o.tracks[k] % 2] = o.first[k];
       }
+      int[] key;
+      if (posi[0] >= 0 && posj[0] >= 0) { // b1-b2
+        key = new int[] { i, j, 0, posi[0] };
+      } else if (posi[0] >= 0 && posj[1] >= 0) { // b1-f2
+        key = new int[] { i, j, 1, posi[0] };
+      } else if (posj[0] >= 0 && posi[1] >= 0) { // b2-f1
+        key = new int[] { i, j, 2, posj[0] };
+      } else { // f1-f2
+        key = new int[] { i, j, 3, posi[1] };
+      }
+      keys.add(key);
+      points.add(o.point);
     }
+    List<Point> tmpRet = sortByKeys(points, keys);
     LOGGER.debug("Common points found:" + tmpRet.size());
     return point2i2Polygon(QuimPArrayUtils.removeDuplicates(tmpRet));
   }
@@ -211,17 +240,19 @@ public class TrackMapAnalyser {
    *         polygons, they appear only once in returned polygon.
    */
   public Polygon getIntersectionPoints(List<Polygon> tracks) {
-    List<Polygon> tmpRet = new ArrayList<>();
-    for (int i = 0; i < tracks.size() - 1; i++) {
-      for (int j = i + 1; j < tracks.size(); j++) {
-        Polygon retPol = getIntersectionPoints(tracks.get(i), tracks.get(j));
-        if (retPol.npoints != 0) {
-          tmpRet.add(retPol); // add retained elements (common with p2)
-        }
+    PointIndex index = indexOf(tracks);
+    // point would be found first for two polygons with lowest indexes, at its position in first.
+    // Output of removeDuplicates is in HashSet order, only input order is the same as before
+    List<int[]> keys = new ArrayList<>();
+    List<Point> tmpRet = new ArrayList<>();
+    for (Occupancy o : index.values()) {
+      if (o.count > 1) {
+        keys.add(new int[] { o.tracks[0], o.tracks[1], o.first[0] });
+        tmpRet.add(o.point);
       }
     }
     // remove repeating vertexes
-    List<Point> retP2i = QuimPArrayUtils.removeDuplicates(polygon2Point2i(tmpRet));
+    List<Point> retP2i = QuimPArrayUtils.removeDuplicates(sortByKeys(tmpRet, keys));
     // convert from list of polygons to one polygon
     return point2i2Polygon(retP2i);
   }
@@ -237,7 +268,7 @@ public class TrackMapAnalyser {
     Polygon ret = new Polygon();
     List<Point> tmpRet = new ArrayList<>();
     List<Point> p1p = polygon2Point2i(Arrays.asList(p1)); // polygon as list of points
-    List<Point> p2p = polygon2Point2i(Arrays.asList(p2)); // polygon as list of points
+    Set<Point> p2p = new HashSet<>(polygon2Point2i(Arrays.asList(p2))); // points of p2
     // check if p1 and p2 have common elements
     p1p.retainAll(p2p);
     tmpRet.addAll(p1p); // add retained elements (common with p2)
@@ -260,12 +291,23 @@ public class TrackMapAnalyser {
   public List<Pair<Point, Point>> getIntersectionParents(List<Polygon> tracks, int mode) {
     ArrayList<Pair<Point, Point>> retTmp = new ArrayList<>();
     List<Pair<Point, Point>> ret;
+    PointIndex index = indexOf(tracks);
     for (int i = 0; i < tracks.size() - 1; i++) {
-      for (int j = i + 1; j < tracks.size(); j++) {
-        Polygon retPol = getIntersectionPoints(tracks.get(i), tracks.get(j));
-        for (int n = 0; n < retPol.npoints; n++) {
-          Pair<Point, Point> pairTmp = new ImmutablePair<Point, Point>(new Point(i, j),
-                  new Point(retPol.xpoints[n], retPol.ypoints[n]));
+      Polygon p1 = tracks.get(i);
+      // vertexes of p1 common with polygon j, in order of p1
+      TreeMap<Integer, List<Point>> common = new TreeMap<>();
+      for (int n = 0; n < p1.npoints; n++) {
+        Occupancy o = index.get(p1.xpoints[n], p1.ypoints[n]);
+        for (int k = 0; k < o.count; k++) {
+          if (o.tracks[k] > i) {
+            common.computeIfAbsent(o.tracks[k], j -> new ArrayList<>()).add(o.point);
+          }
+        }
+      }
+      for (Map.Entry<Integer, List<Point>> e : common.entrySet()) {
+        for (Point p : e.getValue()) {
+          Pair<Point, Point> pairTmp = new ImmutablePair<Point, Point>(new Point(i, e.getKey()),
+                  new Point(p.x, p.y));
           retTmp.add(pairTmp);
         }
       }
@@ -403,6 +445,157 @@ public class TrackMapAnalyser {
     return new Polygon(x, y, list.size());
   }
 
+  /**
+   * Build index of vertexes of polygons.
+   * 
+   * @param tracks polygons, their indexes are indexes of tracks in {@link PointIndex}
+   * @return index of vertexes
+   */
+  private static PointIndex indexOf(List<Polygon> tracks) {
+    PointIndex index = new PointIndex();
+    for (int i = 0; i < tracks.size(); i++) {
+      Polygon pl = tracks.get(i);
+      for (int n = 0; n < pl.npoints; n++) {
+        index.add(i, pl.xpoints[n], pl.ypoints[n], n);
+      }
+    }
+    return index;
+  }
+
+  /**
+   * Sort points according to their keys.
+   * 
+   * @param points points to sort
+   * @param keys keys of points compared lexicographically, one for each point
+   * @return sorted points
+   */
+  private static List<Point> sortByKeys(List<Point> points, List<int[]> keys) {
+    Integer[] order = new Integer[points.size()];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    Comparator<Integer> cmp = (a, b) -> {
+      int[] ka = keys.get(a);
+      int[] kb = keys.get(b);
+      for (int k = 0; k < ka.length; k++) {
+        if (ka[k] != kb[k]) {
+          return Integer.compare(ka[k], kb[k]);
+        }
+      }
+      return 0;
+    };
+    Arrays.sort(order, cmp);
+    List<Point> ret = new ArrayList<>(order.length);
+    for (Integer i : order) {
+      ret.add(points.get(i));
+    }
+    return ret;
+  }
+
+  /**
+   * Tracks passing through one point of map.
+   * 
+   * @author p.baniukiewicz
+   * @see PointIndex
+   */
+  private static class Occupancy {
+    /**
+     * Point of map.
+     */
+    final Point point;
+    /**
+     * Indexes of tracks passing through point, increasing.
+     */
+    int[] tracks = new int[2];
+    /**
+     * Position of first occurrence of point in each track from {@link #tracks}.
+     */
+    int[] first = new int[2];
+    /**
+     * Number of tracks.
+     */
+    int count = 0;
+
+    Occupancy(int x, int y) {
+      point = new Point(x, y);
+    }
+  }
+
+  /**
+   * Occupancy index of map points.
+   * 
+   * <p>Map every (frame, index) point to the tracks passing through it, so common points of any
+   * number of tracks can be found in one pass instead of comparing all pairs of tracks. Tracks must
+   * be added in order of increasing indexes.
+   * 
+   * @author p.baniukiewicz
+   */
+  private static class PointIndex {
+    /**
+     * Occupancy of points, key is frame in high and index in low bits.
+     */
+    private final HashMap<Long, Occupancy> index = new HashMap<>();
+
+    /**
+     * Add all points of track.
+     * 
+     * @param track index of track, not smaller than already added
+     * @param points points of track
+     */
+    void addAll(int track, List<Point> points) {
+      for (int n = 0; n < points.size(); n++) {
+        Point p = points.get(n);
+        add(track, p.x, p.y, n);
+      }
+    }
+
+    /**
+     * Add point of track.
+     * 
+     * @param track index of track, not smaller than already added
+     * @param x frame
+     * @param y outline index
+     * @param pos position of point in track
+     */
+    void add(int track, int x, int y, int pos) {
+      Occupancy o = index.computeIfAbsent(key(x, y), k -> new Occupancy(x, y));
+      if (o.count > 0 && o.tracks[o.count - 1] == track) {
+        return; // only first occurrence in track
+      }
+      if (o.count == o.tracks.length) {
+        o.tracks = Arrays.copyOf(o.tracks, 2 * o.count);
+        o.first = Arrays.copyOf(o.first, 2 * o.count);
+      }
+      o.tracks[o.count] = track;
+      o.first[o.count] = pos;
+      o.count++;
+    }
+
+    /**
+     * Get tracks passing through point.
+     * 
+     * @param x frame
+     * @param y outline index
+     * @return tracks or null if point is not in any track
+     */
+    Occupancy get(int x, int y) {
+      return index.get(key(x, y));
+    }
+
+    /**
+     * Get all indexed points.
+     * 
+     * @return occupancy of all points
+     */
+    Iterable<Occupancy> values() {
+      return index.values();
+    }
+
+    private static long key(int x, int y) {
+      return ((long) x << 32) | (y & 0xffffffffL);
+    }
+  }
+
   /**
    * Get index of point in the whole track line composed from backward+forward tracks.
    * 
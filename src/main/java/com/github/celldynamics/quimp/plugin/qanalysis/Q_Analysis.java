@@ -1,9 +1,11 @@
 package com.github.celldynamics.quimp.plugin.qanalysis;
 
+import java.awt.GraphicsEnvironment;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -21,6 +23,7 @@ import com.github.celldynamics.quimp.filesystem.converter.FormatConverter;
 import com.github.celldynamics.quimp.plugin.AbstractPluginQconf;
 import com.github.celldynamics.quimp.plugin.QuimpPluginException;
 import com.github.celldynamics.quimp.plugin.ecmm.ECMM_Mapping;
+import com.github.celldynamics.quimp.utils.ParallelTools;
 import com.github.celldynamics.quimp.utils.graphics.svg.SVGplotter;
 
 import ij.IJ;
@@ -40,6 +43,9 @@ import ij.gui.YesNoCancelDialog;
  * covered by {@link #runFromPaqp()} and {@link #runFromQconf()} (similarly to {@link ECMM_Mapping
  * ECMM_Mapping})
  * 
+ * <p>If {@link Qp#headless} is set or there is no display, images of maps are saved but not shown,
+ * and all cells from QCONF are processed concurrently.
+ * 
  * @author rtyson
  * @author p.baniukiewicz
  */
@@ -216,7 +222,34 @@ public class Q_Analysis extends AbstractPluginQconf {
    * 
    */
   private void runPlugin() throws QuimpException {
-    Qp opts = (Qp) options;
+    stMap = runPlugin(oh, (Qp) options, isHeadless());
+  }
+
+  /**
+   * Check whether maps should be shown.
+   * 
+   * <p>Does not modify options, so detected state is not recorded with them.
+   * 
+   * @return true if {@link Qp#headless} is set or there is no display
+   */
+  private boolean isHeadless() {
+    return ((Qp) options).headless || GraphicsEnvironment.isHeadless();
+  }
+
+  /**
+   * Do all calculations on given OutlineHandler.
+   * 
+   * <p>Modifies <tt>oh</tt> filling some fields from Vertex class. Cells can be processed
+   * concurrently if each one uses own <tt>opts</tt>.
+   * 
+   * @param oh outlines of cell
+   * @param opts options set up for this cell, modified during run and restored after
+   * @param headless true if images of maps should be only saved, not shown
+   * @return generated maps
+   * @throws QuimpException on error wit saving maps
+   */
+  private static STmap runPlugin(OutlineHandler oh, Qp opts, boolean headless)
+          throws QuimpException {
     if (oh.getSize() == 1) {
       opts.singleImage = true;
       // only one frame - re lable node indices
@@ -225,7 +258,12 @@ public class Q_Analysis extends AbstractPluginQconf {
 
     opts.convexityToPixels();
 
-    stMap = new STmap(oh, opts.mapRes, opts);
+    STmap stMap = new STmap(oh, opts.mapRes, opts, false);
+    stMap.createImages();
+    if (!headless) {
+      stMap.show();
+    }
+    stMap.saveImages();
     if (QuimP.newFileFormat.get() == false) {
       stMap.saveMaps(STmap.ALLMAPS); // save maps only for old path
     }
@@ -236,6 +274,7 @@ public class Q_Analysis extends AbstractPluginQconf {
     svgPlotter.plotTrackER(opts.outlinePlot);
 
     opts.convexityToUnits(); // reset the covexity options to units (as they are static)
+    return stMap;
   }
 
   private boolean showDialog() {
@@ -312,16 +351,19 @@ public class Q_Analysis extends AbstractPluginQconf {
     // {@link #run()} updates also {@link DataContainer#ECMMState ECMMState} by modifying fields in
     // Outlines that are accessed by reference here.
     Qp opts = (Qp) options;
-    int i = 0;
     QParamsQconf qp = (QParamsQconf) qconfLoader.getQp();
-    Iterator<OutlineHandler> oi = qp.getLoadedDataContainer().getEcmmState().oHs.iterator();
+    List<OutlineHandler> ohs = qp.getLoadedDataContainer().getEcmmState().oHs;
     ArrayList<STmap> tmp = new ArrayList<>();
-    while (oi.hasNext()) {
-      qp.setActiveHandler(i++); // set current handler number.
-      opts.setup(qconfLoader.getQp()); // copy selected data from general QParams to local storage
-      oh = oi.next();
-      runPlugin();
-      tmp.add(new STmap(stMap)); // store generated map
+    if (!isHeadless()) {
+      for (int i = 0; i < ohs.size(); i++) {
+        qp.setActiveHandler(i); // set current handler number.
+        opts.setup(qconfLoader.getQp()); // copy selected data from general QParams to local storage
+        oh = ohs.get(i);
+        runPlugin();
+        tmp.add(new STmap(stMap)); // store generated map
+      }
+    } else {
+      tmp.addAll(runCells(qp, ohs));
     }
     qp.getLoadedDataContainer().QState = tmp.toArray(new STmap[0]);
     try {
@@ -337,6 +379,44 @@ public class Q_Analysis extends AbstractPluginQconf {
 
   }
 
+  /**
+   * Process all cells concurrently without displaying maps.
+   * 
+   * <p>Options for each cell are set up sequentially because they depend on active handler of
+   * <tt>qp</tt>.
+   * 
+   * @param qp loaded QCONF
+   * @param ohs outlines of all cells
+   * @return maps in order of cells
+   * @throws QuimpException on error in any cell
+   */
+  private List<STmap> runCells(QParamsQconf qp, List<OutlineHandler> ohs) throws QuimpException {
+    Qp opts = (Qp) options;
+    Qp[] cellOpts = new Qp[ohs.size()];
+    try {
+      for (int i = 0; i < ohs.size(); i++) {
+        qp.setActiveHandler(i); // set current handler number.
+        opts.setup(qp); // copy selected data from general QParams to local storage
+        cellOpts[i] = (Qp) opts.clone();
+        cellOpts[i].mapThreads = 1; // cells are processed in parallel
+      }
+    } catch (CloneNotSupportedException e) {
+      throw new QuimpPluginException(e);
+    }
+    try {
+      return ParallelTools.map(ohs.size(), Runtime.getRuntime().availableProcessors(),
+              cell -> new STmap(runPlugin(ohs.get(cell), cellOpts[cell], true)));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new QuimpPluginException("Q Analysis interrupted", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof QuimpException) {
+        throw (QuimpException) e.getCause();
+      }
+      throw new QuimpPluginException(e.getCause());
+    }
+  }
+
   /*
    * (non-Javadoc)
    * 
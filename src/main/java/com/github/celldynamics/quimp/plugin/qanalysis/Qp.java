@@ -74,6 +74,13 @@ public class Qp extends AbstractPluginOptions {
   /** The map resolution. */
   public int mapRes = 400;
 
+  /**
+   * Save images of maps without displaying them and process cells concurrently.
+   * 
+   * <p>The same is done when there is no display available, but this field is not changed then.
+   */
+  public boolean headless = false;
+
   /** The channel. */
   public transient int channel = 0; // TODO Remove
 
@@ -83,6 +90,9 @@ public class Qp extends AbstractPluginOptions {
   /** If use dialog. */
   transient boolean useDialog = true;
 
+  /** Number of threads used for filling rows of maps. */
+  transient int mapThreads = Runtime.getRuntime().availableProcessors();
+
   /** The Constant Build3D. */
   final transient boolean Build3D = false;
 
@@ -168,9 +178,11 @@ public class Qp extends AbstractPluginOptions {
     cp.sumCov = this.sumCov;
     cp.avgCov = this.avgCov;
     cp.mapRes = this.mapRes;
+    cp.headless = this.headless;
     cp.channel = this.channel;
     cp.singleImage = this.singleImage;
     cp.useDialog = this.useDialog;
+    cp.mapThreads = this.mapThreads;
 
     return cp;
   }
@@ -2,6 +2,8 @@ package com.github.celldynamics.quimp.plugin.qanalysis;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -16,6 +18,7 @@ import com.github.celldynamics.quimp.filesystem.IQuimpSerialize;
 import com.github.celldynamics.quimp.filesystem.converter.FormatConverter;
 import com.github.celldynamics.quimp.geom.ExtendedVector2d;
 import com.github.celldynamics.quimp.geom.filters.OutlineProcessor;
+import com.github.celldynamics.quimp.utils.ParallelTools;
 import com.github.celldynamics.quimp.utils.QuimPArrayUtils;
 import com.github.celldynamics.quimp.utils.QuimpToolsCollection;
 
@@ -189,8 +192,15 @@ public class STmap implements IQuimpSerialize {
    * The conv im P.
    */
   transient ImagePlus migImP;
-  transient ImagePlus fluImP;
+  /**
+   * Images of fluorescence maps, null for disabled channels.
+   */
+  transient ImagePlus[] fluImP = new ImagePlus[3];
   transient ImagePlus convImP;
+  /**
+   * True if all rows of maps were filled by {@link #generate()}.
+   */
+  private transient boolean complete = false;
   /**
    * Contain OutlineHandler used for generating maps.
    * 
@@ -258,14 +268,32 @@ public class STmap implements IQuimpSerialize {
   }
 
   /**
-   * Build object for given.
+   * Build object for given and show and save images of maps.
    * 
    * @param o Outline from ECMM
    * @param r Map resolution in pixels
    * @param params configuration of Qanalysis
    * @see com.github.celldynamics.quimp.plugin.qanalysis.Qp
+   * @see #STmap(OutlineHandler, int, Qp, boolean)
    */
   public STmap(OutlineHandler o, int r, Qp params) {
+    this(o, r, params, true);
+  }
+
+  /**
+   * Build object for given.
+   * 
+   * <p>If <tt>render</tt> is false only maps are computed, no images are created, shown or saved,
+   * thus this can be used without display. Images can be created later by {@link #render()} or,
+   * without display, by {@link #createImages()} and {@link #saveImages()}.
+   * 
+   * @param o Outline from ECMM
+   * @param r Map resolution in pixels
+   * @param params configuration of Qanalysis
+   * @param render true to show and save images of maps
+   * @see com.github.celldynamics.quimp.plugin.qanalysis.Qp
+   */
+  public STmap(OutlineHandler o, int r, Qp params, boolean render) {
     this();
     this.params = params;
     mapPixelHeight = 1;
@@ -301,32 +329,39 @@ public class STmap implements IQuimpSerialize {
     }
 
     generate();
-    saveConvMotImages(); // save images that are opened already
+    if (render) {
+      render();
+    } else if (complete && QuimPArrayUtils.sumArray(migColor) == 0) {
+      LOGGER.warn("ECMM data is missing (or corrupt), and is needed for building accurate maps");
+    }
   }
 
   /**
    * Generate all maps saved by Q Analysis Fill internal class fields.
+   * 
+   * <p>Origin of each row depends on previous frame, so origins are found frame by frame first.
+   * Then rows are filled concurrently, each frame from its own {@link FloorIndex}. Only arrays of
+   * maps are filled here, see {@link #render()}.
    */
   private void generate() {
+    generate(true);
+  }
+
+  /**
+   * Generate all maps.
+   * 
+   * @param indexed true to find nodes by {@link FloorIndex}, false to walk outline from head for
+   *        each pixel, see {@link #closestFloor(Outline, double, char, Vert)}. Both give the same
+   *        maps.
+   */
+  void generate(boolean indexed) {
 
     this.calcCurvature();
     Vert zeroVert;
-    Vert v;
-    String migColorMap = "rwb";
-
     double fraction;
-    double intMig;
-    double intFlu;
-    double intConv;
-    double target;
-    double actualTarget;
-    QColor color;
-    int pn;
     Vert fhead;
     Vert chead;
 
-    double step = 1.0d / res;
-
     // ------debug----
     // System.out.println("210.in generate: min:"+ oh.migLimits[0]+",
     // max"+oh.migLimits[1]);
@@ -338,12 +373,13 @@ public class STmap implements IQuimpSerialize {
 
     double origin = 0; // co-ord for zeroVert to move to next
     int frame;
+    RowStart[] rows = new RowStart[T];
+    int filled = T; // number of rows with complete data
 
     for (int tt = 0; tt < T; tt++) {
 
       frame = tt + oh.getStartFrame();
       // System.out.println("frame " + t);
-      pn = tt * res; // pixel index
 
       // find the first node in terms of coord and fcoord (not the head)
       fhead = oh.getStoredOutline(frame).findFirstNode('f');
@@ -371,98 +407,118 @@ public class STmap implements IQuimpSerialize {
         origin = interpCoord(zeroVert, fraction, chead); // the new origin
         // System.out.println("new origin: " + origin);
       }
-      target = origin; // coord to fill in map next
-
-      intMig = interpolate(zeroVert.distance, zeroVert.getNext().distance, fraction);
-      motMap[tt][0] = intMig;
-      color = QColor.erColorMap2(migColorMap, intMig, oh.migLimits[0], oh.migLimits[1]);
-      migColor[pn] = color.getColorInt();
-      migPixels[pn] = (float) intMig;
-
-      // fill fluo maps
-      for (int i = 0; i < 3; i++) {
-        if (fluoMaps[i].isEnabled()) {
-          if (zeroVert.fluores[i].intensity == -2) {
-            IJ.log("ERROR: There are missing fluoresecne values! Run ANA");
-            return;
-          }
-          intFlu = interpolate(zeroVert.fluores[i].intensity,
-                  zeroVert.getNext().fluores[i].intensity, fraction);
-          fluoMaps[i].fill(tt, 0, pn, intFlu, oh.fluLims[i][1]);
-        }
+      rows[tt] = new RowStart(zeroVert, fraction, origin, fhead, chead);
+      if (isFluoMissing(zeroVert)) {
+        filled = tt;
+        break;
       }
+    }
 
-      /*
-       * if (zeroVert.floures == -1) { fluMap[t][0] = 0; fluColor[pN] = (byte)
-       * QColor.bwScale(0, 256, oh.maxFlu, 0); } else { intFlu = interpolate(zeroVert.floures,
-       * zeroVert.getNext().floures, fraction); fluMap[t][0] = intFlu; fluColor[pN] = (byte)
-       * QColor.bwScale(intFlu, 256, oh.maxFlu, 0); }
-       */
-
-      intConv = interpolate(zeroVert.curvatureSum, zeroVert.getNext().curvatureSum, fraction);
-      convMap[tt][0] = intConv;
-      color = QColor.erColorMap2("rbb", intConv, oh.curvLimits[0], oh.curvLimits[1]);
-      convColor[pn] = color.getColorInt();
-
-      coordMap[tt][0] = origin;
-      originMap[tt][0] = interpFCoord(zeroVert, fraction, fhead);
-      xMap[tt][0] = interpolate(zeroVert.getX(), zeroVert.getNext().getX(), fraction);
-      yMap[tt][0] = interpolate(zeroVert.getY(), zeroVert.getNext().getY(), fraction);
+    fillRows(rows, filled, indexed);
+    if (filled < T) {
+      fillRow(filled, rows[filled], indexed); // fills first pixel only
+      IJ.log("ERROR: There are missing fluoresecne values! Run ANA");
+      return;
+    }
+    complete = true;
+  }
 
-      if (target >= 1 || target < 0) {
-        System.out.println("target out of range: " + target);
-      }
+  /**
+   * Create, show and save images of maps generated for OutlineHandler.
+   * 
+   * <p>Requires display. Images are not created if maps were not completed because of missing
+   * fluorescence data.
+   * 
+   * @see #createImages()
+   * @see #show()
+   * @see #saveImages()
+   */
+  public void render() {
+    if (!complete) {
+      return;
+    }
+    createImages();
+    show();
+    saveImages();
+  }
 
-      for (int p = 1; p < res; p++) {
-        pn = (tt * res) + p; // pixel index
-        target += step;
-        actualTarget = (target >= 1) ? target - 1 : target; // wraps around to zero
-        // System.out.println("\tactualtarget:"+actualTarget);
-        coordMap[tt][p] = actualTarget;
-
-        v = closestFloor(oh.getStoredOutline(frame), actualTarget, 'c', chead); // should this be g
-        fraction = cfraction(v, actualTarget, chead);
-
-        originMap[tt][p] = interpFCoord(v, fraction, fhead);
-        xMap[tt][p] = interpolate(v.getX(), v.getNext().getX(), fraction);
-        yMap[tt][p] = interpolate(v.getY(), v.getNext().getY(), fraction);
-
-        intMig = interpolate(v.distance, v.getNext().distance, fraction);
-        motMap[tt][p] = intMig;
-        color = QColor.erColorMap2(migColorMap, intMig, oh.migLimits[0], oh.migLimits[1]);
-        migColor[pn] = color.getColorInt();
-        migPixels[pn] = (float) intMig;
-
-        for (int i = 0; i < 3; i++) {
-          if (fluoMaps[i].isEnabled()) {
-            intFlu = interpolate(v.fluores[i].intensity, v.getNext().fluores[i].intensity,
-                    fraction);
-            fluoMaps[i].fill(tt, p, pn, intFlu, oh.fluLims[i][1]);
-          }
-        }
-        /*
-         * if (zeroVert.floures == -1) { fluMap[t][p] = 0; fluColor[pN] = (byte)
-         * QColor.bwScale(0, 256, oh.maxFlu, 0); } else { intFlu = interpolate(v.floures,
-         * v.getNext().floures, fraction); fluMap[t][p] = intFlu; fluColor[pN] = (byte)
-         * QColor.bwScale(intFlu, 256, oh.maxFlu, 0); }
-         */
-
-        intConv = interpolate(v.curvatureSum, v.getNext().curvatureSum, fraction);
-        convMap[tt][p] = intConv;
-        color = QColor.erColorMap2("rbb", intConv, oh.curvLimits[0], oh.curvLimits[1]);
-        convColor[pn] = color.getColorInt();
+  /**
+   * Create images of motility, convexity and enabled fluorescence maps.
+   * 
+   * <p>Does not require display. Nothing is created if maps were not completed because of missing
+   * fluorescence data.
+   */
+  public void createImages() {
+    if (!complete) {
+      return;
+    }
+    migImP = map2ImagePlus("motility_map", new ColorProcessor(res, T, migColor));
+    convImP = map2ImagePlus("convexity_map", new ColorProcessor(res, T, convColor));
 
+    // create fluo images
+    for (int i = 0; i < 3; i++) {
+      if (!fluoMaps[i].isEnabled()) {
+        fluImP[i] = null;
+        continue;
       }
-
+      fluImP[i] = IJ.createImage(params.filename + "_fluoCH" + fluoMaps[i].getChannel(),
+              "8-bit black", res, T, 1);
+      fluImP[i].getProcessor().setPixels(fluoMaps[i].getColours());
+      resize(fluImP[i]);
+      setCalibration(fluImP[i]);
     }
+    // test making LUT images
+    /*
+     * ImagePlus migImPLut = IJ.createImage("mig_32", "32-bit", res, T,1); ImageProcessor
+     * ipFloat = new FloatProcessor(res, T, migPixels, null); LUT lut = new LUT();
+     * ipFloat.setLut(lut) migImPLut.setProcessor(ipFloat); resize(migImPLut); migImPLut.show();
+     */
+  }
 
-    migImP = map2ImagePlus("motility_map", new ColorProcessor(res, T, migColor));
-    convImP = map2ImagePlus("convexity_map", new ColorProcessor(res, T, convColor));
+  /**
+   * Show images created by {@link #createImages()}.
+   * 
+   * <p>Requires display. Fluorescence maps are coloured by ImageJ command applied to shown window.
+   */
+  public void show() {
+    if (migImP == null) {
+      return;
+    }
     migImP.show();
     convImP.show();
     // fluImP.show();
     // IJ.doCommand("Red");
 
+    for (int i = 0; i < 3; i++) {
+      if (fluImP[i] == null) {
+        continue;
+      }
+      fluImP[i].show();
+
+      try {
+        Thread.sleep(500); // needed to let imageJ set the right colour maps
+      } catch (Exception e) {
+        ;
+      }
+
+      IJ.doCommand("Red"); // this don't always work. dun know why
+    }
+
+    if (QuimPArrayUtils.sumArray(migColor) == 0) {
+      IJ.showMessage("ECMM data is missing (or corrupt), and is needed for building accurate maps.+"
+              + "\nPlease run ECMM (fluorescence data will be lost)");
+    }
+  }
+
+  /**
+   * Save images created by {@link #createImages()}.
+   * 
+   * <p>Does not require display.
+   */
+  public void saveImages() {
+    if (migImP == null) {
+      return;
+    }
     if (params.Build3D) {
       // create 3D of motility
       STMap3D map3d = new STMap3D(xMap, yMap, migColor);
@@ -479,45 +535,147 @@ public class STmap implements IQuimpSerialize {
       map3dCur.write(new File("/tmp/cell_02_cur.wrl"));
     }
 
-    // create fluo images
-
     for (int i = 0; i < 3; i++) {
-      if (!fluoMaps[i].isEnabled()) {
+      if (fluImP[i] == null) {
         continue;
       }
-
-      fluImP = IJ.createImage(params.filename + "_fluoCH" + fluoMaps[i].getChannel(), "8-bit black",
-              res, T, 1);
-      fluImP.getProcessor().setPixels(fluoMaps[i].getColours());
-      resize(fluImP);
-      setCalibration(fluImP);
-      fluImP.show();
-
-      try {
-        Thread.sleep(500); // needed to let imageJ set the right colour maps
-      } catch (Exception e) {
-        ;
-      }
-
-      IJ.doCommand("Red"); // this don't always work. dun know why
       String tmpfilename = FileExtensions.fluomapFileExt.replaceFirst("%",
               Integer.toString(fluoMaps[i].getChannel()));
-      IJ.saveAs(fluImP, "tiff",
+      IJ.saveAs(fluImP[i], "tiff",
               params.outFile.getParent() + File.separator + params.filename + tmpfilename);
     }
 
     // saveMaps(); // save maQP files
+    saveConvMotImages();
+  }
 
-    if (QuimPArrayUtils.sumArray(migColor) == 0) {
-      IJ.showMessage("ECMM data is missing (or corrupt), and is needed for building accurate maps.+"
-              + "\nPlease run ECMM (fluorescence data will be lost)");
+  /**
+   * Check if fluorescence data are missing for enabled maps.
+   * 
+   * @param v node to check
+   * @return true if any enabled channel has no data at v
+   */
+  private boolean isFluoMissing(Vert v) {
+    for (int i = 0; i < 3; i++) {
+      if (fluoMaps[i].isEnabled() && v.fluores[i].intensity == -2) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Fill rows of maps concurrently.
+   * 
+   * @param rows starting points of rows
+   * @param count number of rows to fill, from 0
+   * @param indexed true to find nodes by {@link FloorIndex}
+   */
+  private void fillRows(RowStart[] rows, int count, boolean indexed) {
+    ParallelTools.forBlocks(count, params.mapThreads, (from, to) -> {
+      for (int tt = from; tt < to; tt++) {
+        fillRow(tt, rows[tt], indexed);
+      }
+    });
+  }
+
+  /**
+   * Fill one row of all maps.
+   * 
+   * <p>Row is filled only up to first pixel if fluorescence data are missing at start of row.
+   * 
+   * @param tt row index (frame counted from 0)
+   * @param row starting point of row
+   * @param indexed true to find nodes by {@link FloorIndex}
+   */
+  private void fillRow(int tt, RowStart row, boolean indexed) {
+    String migColorMap = "rwb";
+    Vert zeroVert = row.zeroVert;
+    double fraction = row.fraction;
+    double origin = row.origin;
+    Vert fhead = row.fhead;
+    Vert chead = row.chead;
+    Vert v;
+    double intMig;
+    double intFlu;
+    double intConv;
+    double actualTarget;
+    QColor color;
+    double step = 1.0d / res;
+    int pn = tt * res; // pixel index
+
+    double target = origin; // coord to fill in map next
+
+    intMig = interpolate(zeroVert.distance, zeroVert.getNext().distance, fraction);
+    motMap[tt][0] = intMig;
+    color = QColor.erColorMap2(migColorMap, intMig, oh.migLimits[0], oh.migLimits[1]);
+    migColor[pn] = color.getColorInt();
+    migPixels[pn] = (float) intMig;
+
+    // fill fluo maps
+    for (int i = 0; i < 3; i++) {
+      if (fluoMaps[i].isEnabled()) {
+        if (zeroVert.fluores[i].intensity == -2) {
+          return; // reported by caller
+        }
+        intFlu = interpolate(zeroVert.fluores[i].intensity,
+                zeroVert.getNext().fluores[i].intensity, fraction);
+        fluoMaps[i].fill(tt, 0, pn, intFlu, oh.fluLims[i][1]);
+      }
+    }
+
+    intConv = interpolate(zeroVert.curvatureSum, zeroVert.getNext().curvatureSum, fraction);
+    convMap[tt][0] = intConv;
+    color = QColor.erColorMap2("rbb", intConv, oh.curvLimits[0], oh.curvLimits[1]);
+    convColor[pn] = color.getColorInt();
+
+    coordMap[tt][0] = origin;
+    originMap[tt][0] = interpFCoord(zeroVert, fraction, fhead);
+    xMap[tt][0] = interpolate(zeroVert.getX(), zeroVert.getNext().getX(), fraction);
+    yMap[tt][0] = interpolate(zeroVert.getY(), zeroVert.getNext().getY(), fraction);
+
+    if (target >= 1 || target < 0) {
+      System.out.println("target out of range: " + target);
+    }
+
+    FloorIndex index = indexed ? new FloorIndex(chead, 'c') : null;
+    Outline outline = oh.getStoredOutline(tt + oh.getStartFrame());
+    for (int p = 1; p < res; p++) {
+      pn = (tt * res) + p; // pixel index
+      target += step;
+      actualTarget = (target >= 1) ? target - 1 : target; // wraps around to zero
+      coordMap[tt][p] = actualTarget;
+
+      if (index != null) {
+        v = index.closestFloor(actualTarget); // should this be g
+      } else {
+        v = closestFloor(outline, actualTarget, 'c', chead);
+      }
+      fraction = cfraction(v, actualTarget, chead);
+
+      originMap[tt][p] = interpFCoord(v, fraction, fhead);
+      xMap[tt][p] = interpolate(v.getX(), v.getNext().getX(), fraction);
+      yMap[tt][p] = interpolate(v.getY(), v.getNext().getY(), fraction);
+
+      intMig = interpolate(v.distance, v.getNext().distance, fraction);
+      motMap[tt][p] = intMig;
+      color = QColor.erColorMap2(migColorMap, intMig, oh.migLimits[0], oh.migLimits[1]);
+      migColor[pn] = color.getColorInt();
+      migPixels[pn] = (float) intMig;
+
+      for (int i = 0; i < 3; i++) {
+        if (fluoMaps[i].isEnabled()) {
+          intFlu = interpolate(v.fluores[i].intensity, v.getNext().fluores[i].intensity,
+                  fraction);
+          fluoMaps[i].fill(tt, p, pn, intFlu, oh.fluLims[i][1]);
+        }
+      }
+
+      intConv = interpolate(v.curvatureSum, v.getNext().curvatureSum, fraction);
+      convMap[tt][p] = intConv;
+      color = QColor.erColorMap2("rbb", intConv, oh.curvLimits[0], oh.curvLimits[1]);
+      convColor[pn] = color.getColorInt();
     }
-    // test making LUT images
-    /*
-     * ImagePlus migImPLut = IJ.createImage("mig_32", "32-bit", res, T,1); ImageProcessor
-     * ipFloat = new FloatProcessor(res, T, migPixels, null); LUT lut = new LUT();
-     * ipFloat.setLut(lut) migImPLut.setProcessor(ipFloat); resize(migImPLut); migImPLut.show();
-     */
   }
 
   /**
@@ -1197,4 +1355,102 @@ public class STmap implements IQuimpSerialize {
   public void afterSerialize() throws Exception {
     LOGGER.debug("This class can not be deserialzied without assgning OutlineHndler and Qp");
   }
-}
\ No newline at end of file
+
+  /**
+   * Start of map row found for frame.
+   * 
+   * @author p.baniukiewicz
+   */
+  private static class RowStart {
+    final Vert zeroVert;
+    final double fraction;
+    final double origin;
+    final Vert fhead;
+    final Vert chead;
+
+    RowStart(Vert zeroVert, double fraction, double origin, Vert fhead, Vert chead) {
+      this.zeroVert = zeroVert;
+      this.fraction = fraction;
+      this.origin = origin;
+      this.fhead = fhead;
+      this.chead = chead;
+    }
+  }
+
+  /**
+   * Nodes of outline in order from given head with their coordinates.
+   * 
+   * <p>Finds the same node as walking outline from head node by node, see
+   * {@link STmap#closestFloor(Outline, double, char, Vert)}. If coordinates are strictly increasing
+   * from head, node is found by binary search, otherwise nodes are checked in order.
+   * 
+   * @author p.baniukiewicz
+   */
+  static class FloorIndex {
+    /**
+     * Nodes visited by walking from head, the last one is returned if no other matches.
+     */
+    private final Vert[] nodes;
+    private final double[] coords;
+    private final boolean sorted;
+
+    /**
+     * Copy coordinates of outline.
+     * 
+     * @param head first node, see {@link Outline#findFirstNode(char)}
+     * @param c 'f' for {@link Vert#fCoord}, other for {@link Vert#coord}
+     */
+    FloorIndex(Vert head, char c) {
+      List<Vert> list = new ArrayList<>();
+      Vert v = head;
+      list.add(v);
+      do {
+        v = v.getNext();
+        list.add(v);
+      } while (v.getNext().getTrackNum() != head.getTrackNum());
+      nodes = list.toArray(new Vert[list.size()]);
+      coords = new double[nodes.length];
+      boolean inc = true;
+      for (int i = 0; i < nodes.length; i++) {
+        coords[i] = (c == 'f') ? nodes[i].fCoord : nodes[i].coord;
+        if (i > 0 && !(coords[i - 1] < coords[i])) {
+          inc = false;
+        }
+      }
+      sorted = inc;
+    }
+
+    /**
+     * Find node with coordinate closest (floored) to target.
+     * 
+     * @param target coordinate
+     * @return node at or before target
+     */
+    Vert closestFloor(double target) {
+      int last = nodes.length - 1;
+      if (!sorted) {
+        for (int i = 0; i < last; i++) {
+          if (coords[i] == target || (coords[i + 1] > target && coords[i] < target)) {
+            return nodes[i];
+          }
+        }
+        return nodes[last];
+      }
+      // last node with coordinate not larger than target
+      if (!(coords[0] <= target)) {
+        return nodes[last];
+      }
+      int lo = 0;
+      int hi = last;
+      while (lo < hi) {
+        int mid = (lo + hi + 1) >>> 1;
+        if (coords[mid] <= target) {
+          lo = mid;
+        } else {
+          hi = mid - 1;
+        }
+      }
+      return nodes[lo];
+    }
+  }
+}
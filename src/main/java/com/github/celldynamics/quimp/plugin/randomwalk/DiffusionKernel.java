@@ -0,0 +1,349 @@
+package com.github.celldynamics.quimp.plugin.randomwalk;
+
+import java.awt.Rectangle;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import com.github.celldynamics.quimp.plugin.randomwalk.RandomWalkSegmentation.StoppedBy;
+
+/**
+ * Explicit diffusion engine used by {@link RandomWalkSegmentation} solver.
+ *
+ * <p>Performs Euler iterations of anisotropic diffusion on flat, row-ordered <tt>double[]</tt>
+ * buffers. Two buffers are allocated once and swapped after each iteration (ping-pong) so no
+ * memory is allocated during the diffusion loop. Neighbours are addressed by index with periodic
+ * boundary conditions resolved inline, which is equivalent to the
+ * {@link RandomWalkSegmentation#circshift(org.apache.commons.math3.linear.RealMatrix, int)}
+ * approach used in Matlab code (rw_laplace4.m). Image is split into bands of rows processed on
+ * {@link ForkJoinPool}.
+ *
+ * <p>Weights given to constructor are copied, thus the object can be reused for many iterations of
+ * the same object.
+ *
+ * @author p.baniukiewicz
+ * @see RandomWalkSegmentation#solver(Seeds, org.apache.commons.math3.linear.RealMatrix[])
+ */
+public class DiffusionKernel implements EulerKernel {
+
+  /**
+   * Minimal number of rows processed by one task.
+   */
+  static final int MIN_ROWS_PER_TASK = 16;
+
+  /**
+   * Number of rows of the region.
+   */
+  private final int rows;
+  /**
+   * Number of columns of the region.
+   */
+  private final int cols;
+  /**
+   * Column of the image where region starts.
+   */
+  private final int col0;
+  /**
+   * Row of the image where region starts.
+   */
+  private final int row0;
+  /**
+   * Number of pixels of the whole image, used for normalisation of relative error.
+   */
+  private final int numofel;
+  /**
+   * Weight to right, flat.
+   */
+  private final double[] wr;
+  /**
+   * Weight to left, flat.
+   */
+  private final double[] wl;
+  /**
+   * Weight to top, flat.
+   */
+  private final double[] wt;
+  /**
+   * Weight to bottom, flat.
+   */
+  private final double[] wb;
+  /**
+   * Current solution.
+   */
+  private double[] current;
+  /**
+   * Solution from next iteration. Swapped with {@link #current} after each step.
+   */
+  private double[] next;
+  /**
+   * Solution remembered by {@link #storeCurrent()}, allocated on first use.
+   */
+  private double[] last;
+  /**
+   * Pool used for processing bands.
+   */
+  private final ForkJoinPool pool;
+
+  /**
+   * Create diffusion kernel for given weights. Initial solution is 0-filled.
+   *
+   * <p>Weights are related to directions defined in {@link RandomWalkSegmentation}.
+   *
+   * @param wr weights to right [rows][cols]
+   * @param wl weights to left [rows][cols]
+   * @param wt weights to top [rows][cols]
+   * @param wb weights to bottom [rows][cols]
+   * @param pool pool to run on, if null common pool is used
+   */
+  public DiffusionKernel(double[][] wr, double[][] wl, double[][] wt, double[][] wb,
+          ForkJoinPool pool) {
+    this(wr, wl, wt, wb, new Rectangle(wr[0].length, wr.length), pool);
+  }
+
+  /**
+   * Create diffusion kernel for region of image. Initial solution is 0-filled.
+   *
+   * <p>Diffusion is computed only within region with periodic boundary conditions of region.
+   * Solution is the same as for whole image if all pixels outside region and those on its border
+   * are seeds of the same value.
+   *
+   * @param wr weights to right [rows][cols]
+   * @param wl weights to left [rows][cols]
+   * @param wt weights to top [rows][cols]
+   * @param wb weights to bottom [rows][cols]
+   * @param region region of image, x - column, y - row
+   * @param pool pool to run on, if null common pool is used
+   * @see RandomWalkSegmentation#getCropRegion(List, List, int)
+   */
+  public DiffusionKernel(double[][] wr, double[][] wl, double[][] wt, double[][] wb,
+          Rectangle region, ForkJoinPool pool) {
+    this.rows = region.height;
+    this.cols = region.width;
+    this.row0 = region.y;
+    this.col0 = region.x;
+    this.numofel = wr.length * wr[0].length;
+    this.wr = flatten(wr, region);
+    this.wl = flatten(wl, region);
+    this.wt = flatten(wt, region);
+    this.wb = flatten(wb, region);
+    this.current = new double[rows * cols];
+    this.next = new double[rows * cols];
+    this.pool = pool == null ? ForkJoinPool.commonPool() : pool;
+  }
+
+  /**
+   * Set specified value for all points in current solution.
+   *
+   * @param points points to set
+   * @param value value to set
+   */
+  @Override
+  public void setValues(List<Point> points, double value) {
+    for (Point p : points) {
+      int r = p.row - row0;
+      int c = p.col - col0;
+      if (r >= 0 && r < rows && c >= 0 && c < cols) { // outside region is constant
+        current[r * cols + c] = value;
+      }
+    }
+  }
+
+  /**
+   * Perform one Euler iteration.
+   *
+   * <p>fg += dt * (D * (((fgRight - fg) / wr - (fg - fgLeft) / wl) + ((fgTop - fg) / wt - (fg -
+   * fgBottom) / wb)))
+   *
+   * @param dt time step
+   * @param diffusion diffusion constant
+   * @return {@link StoppedBy#NANS} or {@link StoppedBy#INFS} if solution is not finite,
+   *         {@link StoppedBy#ITERATIONS} otherwise
+   */
+  @Override
+  public StoppedBy step(double dt, double diffusion) {
+    StoppedBy ret = pool.invoke(new Band(0, rows, dt, diffusion));
+    double[] tmp = current;
+    current = next;
+    next = tmp;
+    return ret;
+  }
+
+  /**
+   * Copy current solution to given array.
+   *
+   * @param dst destination array of size rows*cols
+   */
+  public void copyCurrent(double[] dst) {
+    System.arraycopy(current, 0, dst, 0, current.length);
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see com.github.celldynamics.quimp.plugin.randomwalk.EulerKernel#storeCurrent()
+   */
+  @Override
+  public void storeCurrent() {
+    if (last == null) {
+      last = new double[current.length];
+    }
+    copyCurrent(last);
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see com.github.celldynamics.quimp.plugin.randomwalk.EulerKernel#computeRelErr()
+   */
+  @Override
+  public double computeRelErr() {
+    return computeRelErr(last);
+  }
+
+  /**
+   * Compute relative error between current solution and given one.
+   *
+   * <p>Pixels outside region do not change thus error is normalised by number of pixels of
+   * whole image.
+   *
+   * @param last solution from previous iteration, flat
+   * @return relative mean error sum[2* |fg - fglast|/(fg + fglast)]/numofel
+   * @see RandomWalkSegmentation#computeRelErr(double[][], double[][])
+   */
+  public double computeRelErr(double[] last) {
+    double rel = 0;
+    for (int i = 0; i < current.length; i++) {
+      double denominator = current[i] + last[i];
+      if (denominator != 0.0) {
+        rel += 2 * Math.abs(current[i] - last[i]) / denominator;
+      }
+    }
+    return rel / numofel;
+  }
+
+  /**
+   * Get current solution as 2D array.
+   *
+   * @return copy of current solution within region [rows][cols]
+   */
+  @Override
+  public double[][] getSolution() {
+    double[][] ret = new double[rows][cols];
+    for (int r = 0; r < rows; r++) {
+      System.arraycopy(current, r * cols, ret[r], 0, cols);
+    }
+    return ret;
+  }
+
+  /**
+   * Get number of elements in solution.
+   *
+   * @return rows*cols of region
+   */
+  public int size() {
+    return current.length;
+  }
+
+  /**
+   * Convert 2D array to row-ordered flat array.
+   *
+   * @param in array to convert
+   * @param region region of in to copy, x - column, y - row
+   * @return flat copy of region of in
+   */
+  static double[] flatten(double[][] in, Rectangle region) {
+    double[] ret = new double[region.height * region.width];
+    for (int r = 0; r < region.height; r++) {
+      System.arraycopy(in[region.y + r], region.x, ret, r * region.width, region.width);
+    }
+    return ret;
+  }
+
+  /**
+   * Process band of rows [from, to).
+   *
+   * @author p.baniukiewicz
+   *
+   */
+  @SuppressWarnings("serial")
+  private class Band extends RecursiveTask<StoppedBy> {
+    private final int from;
+    private final int to;
+    private final double dt;
+    private final double diffusion;
+
+    /**
+     * Define band.
+     *
+     * @param from first row
+     * @param to last row (exclusive)
+     * @param dt time step
+     * @param diffusion diffusion constant
+     */
+    Band(int from, int to, double dt, double diffusion) {
+      this.from = from;
+      this.to = to;
+      this.dt = dt;
+      this.diffusion = diffusion;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.util.concurrent.RecursiveTask#compute()
+     */
+    @Override
+    protected StoppedBy compute() {
+      if (to - from > MIN_ROWS_PER_TASK) {
+        int mid = (from + to) >>> 1;
+        Band upper = new Band(from, mid, dt, diffusion);
+        upper.fork();
+        StoppedBy lower = new Band(mid, to, dt, diffusion).compute();
+        StoppedBy up = upper.join();
+        // INFS overwrites NANS
+        return up.getValue() > lower.getValue() ? up : lower;
+      }
+      return computeBand();
+    }
+
+    /**
+     * Update rows of the band. Shifts follow
+     * {@link RandomWalkSegmentation#circshift(org.apache.commons.math3.linear.RealMatrix, int)}.
+     *
+     * @return status of solution in this band
+     */
+    private StoppedBy computeBand() {
+      final double[] fg = current;
+      final double[] out = next;
+      boolean nans = false;
+      boolean infs = false;
+      for (int r = from; r < to; r++) {
+        int row = r * cols;
+        int rowRight = (r == rows - 1 ? 0 : r + 1) * cols; // RIGHT shift - next row
+        int rowLeft = (r == 0 ? rows - 1 : r - 1) * cols; // LEFT shift - previous row
+        for (int c = 0; c < cols; c++) {
+          int i = row + c;
+          int top = row + (c == cols - 1 ? 0 : c + 1); // TOP shift - next column
+          int bottom = row + (c == 0 ? cols - 1 : c - 1); // BOTTOM shift - previous column
+          double v = fg[i];
+          double res = v + dt * (diffusion * (((fg[rowRight + c] - v) / wr[i]
+                  - (v - fg[rowLeft + c]) / wl[i])
+                  + ((fg[top] - v) / wt[i] - (v - fg[bottom]) / wb[i])));
+          out[i] = res;
+          if (Double.isNaN(res)) {
+            nans = true;
+          } else if (Double.isInfinite(res)) {
+            infs = true;
+          }
+        }
+      }
+      if (infs) {
+        return StoppedBy.INFS;
+      }
+      if (nans) {
+        return StoppedBy.NANS;
+      }
+      return StoppedBy.ITERATIONS;
+    }
+  }
+}
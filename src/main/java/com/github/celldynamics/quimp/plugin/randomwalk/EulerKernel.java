@@ -0,0 +1,53 @@
+package com.github.celldynamics.quimp.plugin.randomwalk;
+
+import java.util.List;
+
+import com.github.celldynamics.quimp.plugin.randomwalk.RandomWalkSegmentation.StoppedBy;
+
+/**
+ * Common interface of explicit diffusion engines used by {@link RandomWalkSegmentation} solver.
+ *
+ * @author p.baniukiewicz
+ * @see DiffusionKernel
+ * @see FloatDiffusionKernel
+ */
+interface EulerKernel {
+
+  /**
+   * Set specified value for all points in current solution.
+   *
+   * @param points points to set
+   * @param value value to set
+   */
+  void setValues(List<Point> points, double value);
+
+  /**
+   * Perform one Euler iteration.
+   *
+   * @param dt time step
+   * @param diffusion diffusion constant
+   * @return {@link StoppedBy#NANS} or {@link StoppedBy#INFS} if solution is not finite,
+   *         {@link StoppedBy#ITERATIONS} otherwise
+   */
+  StoppedBy step(double dt, double diffusion);
+
+  /**
+   * Remember current solution for {@link #computeRelErr()}.
+   */
+  void storeCurrent();
+
+  /**
+   * Compute relative error between current solution and that remembered by
+   * {@link #storeCurrent()}.
+   *
+   * @return relative mean error sum[2* |fg - fglast|/(fg + fglast)]/numofel
+   */
+  double computeRelErr();
+
+  /**
+   * Get current solution as 2D array.
+   *
+   * @return copy of current solution [rows][cols]
+   */
+  double[][] getSolution();
+}
@@ -0,0 +1,319 @@
+package com.github.celldynamics.quimp.plugin.randomwalk;
+
+import java.awt.Rectangle;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import com.github.celldynamics.quimp.plugin.randomwalk.RandomWalkSegmentation.StoppedBy;
+
+/**
+ * Single precision variant of {@link DiffusionKernel}.
+ *
+ * <p>Weights and solution are stored in <tt>float[]</tt> buffers, which halves memory used by
+ * diffusion and memory bandwidth of each iteration. Accumulation of relative error is done in
+ * double. Used by {@link RandomWalkSegmentation} if {@link RandomWalkOptions#singlePrecision} is
+ * set.
+ *
+ * @author p.baniukiewicz
+ * @see DiffusionKernel
+ */
+public class FloatDiffusionKernel implements EulerKernel {
+
+  /**
+   * Number of rows of the region.
+   */
+  private final int rows;
+  /**
+   * Number of columns of the region.
+   */
+  private final int cols;
+  /**
+   * Column of the image where region starts.
+   */
+  private final int col0;
+  /**
+   * Row of the image where region starts.
+   */
+  private final int row0;
+  /**
+   * Number of pixels of the whole image, used for normalisation of relative error.
+   */
+  private final int numofel;
+  /**
+   * Weight to right, flat.
+   */
+  private final float[] wr;
+  /**
+   * Weight to left, flat.
+   */
+  private final float[] wl;
+  /**
+   * Weight to top, flat.
+   */
+  private final float[] wt;
+  /**
+   * Weight to bottom, flat.
+   */
+  private final float[] wb;
+  /**
+   * Current solution.
+   */
+  private float[] current;
+  /**
+   * Solution from next iteration. Swapped with {@link #current} after each step.
+   */
+  private float[] next;
+  /**
+   * Solution remembered by {@link #storeCurrent()}, allocated on first use.
+   */
+  private float[] last;
+  /**
+   * Pool used for processing bands.
+   */
+  private final ForkJoinPool pool;
+
+  /**
+   * Create diffusion kernel for given weights. Initial solution is 0-filled.
+   *
+   * @param wr weights to right [rows][cols]
+   * @param wl weights to left [rows][cols]
+   * @param wt weights to top [rows][cols]
+   * @param wb weights to bottom [rows][cols]
+   * @param pool pool to run on, if null common pool is used
+   * @see DiffusionKernel#DiffusionKernel(double[][], double[][], double[][], double[][],
+   *      ForkJoinPool)
+   */
+  public FloatDiffusionKernel(double[][] wr, double[][] wl, double[][] wt, double[][] wb,
+          ForkJoinPool pool) {
+    this(toFloat(wr), toFloat(wl), toFloat(wt), toFloat(wb), new Rectangle(wr[0].length,
+            wr.length), pool);
+  }
+
+  /**
+   * Create diffusion kernel for region of image and single precision weights. Initial solution
+   * is 0-filled.
+   *
+   * @param wr weights to right [rows][cols]
+   * @param wl weights to left [rows][cols]
+   * @param wt weights to top [rows][cols]
+   * @param wb weights to bottom [rows][cols]
+   * @param region region of image, x - column, y - row
+   * @param pool pool to run on, if null common pool is used
+   * @see DiffusionKernel#DiffusionKernel(double[][], double[][], double[][], double[][],
+   *      Rectangle, ForkJoinPool)
+   */
+  public FloatDiffusionKernel(float[][] wr, float[][] wl, float[][] wt, float[][] wb,
+          Rectangle region, ForkJoinPool pool) {
+    this.rows = region.height;
+    this.cols = region.width;
+    this.row0 = region.y;
+    this.col0 = region.x;
+    this.numofel = wr.length * wr[0].length;
+    this.wr = flatten(wr, region);
+    this.wl = flatten(wl, region);
+    this.wt = flatten(wt, region);
+    this.wb = flatten(wb, region);
+    this.current = new float[rows * cols];
+    this.next = new float[rows * cols];
+    this.pool = pool == null ? ForkJoinPool.commonPool() : pool;
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see com.github.celldynamics.quimp.plugin.randomwalk.EulerKernel#setValues(java.util.List,
+   * double)
+   */
+  @Override
+  public void setValues(List<Point> points, double value) {
+    float v = (float) value;
+    for (Point p : points) {
+      int r = p.row - row0;
+      int c = p.col - col0;
+      if (r >= 0 && r < rows && c >= 0 && c < cols) { // outside region is constant
+        current[r * cols + c] = v;
+      }
+    }
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see com.github.celldynamics.quimp.plugin.randomwalk.EulerKernel#step(double, double)
+   */
+  @Override
+  public StoppedBy step(double dt, double diffusion) {
+    StoppedBy ret = pool.invoke(new Band(0, rows, (float) dt, (float) diffusion));
+    float[] tmp = current;
+    current = next;
+    next = tmp;
+    return ret;
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see com.github.celldynamics.quimp.plugin.randomwalk.EulerKernel#storeCurrent()
+   */
+  @Override
+  public void storeCurrent() {
+    if (last == null) {
+      last = new float[current.length];
+    }
+    System.arraycopy(current, 0, last, 0, current.length);
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see com.github.celldynamics.quimp.plugin.randomwalk.EulerKernel#computeRelErr()
+   */
+  @Override
+  public double computeRelErr() {
+    double rel = 0;
+    for (int i = 0; i < current.length; i++) {
+      double denominator = (double) current[i] + last[i];
+      if (denominator != 0.0) {
+        rel += 2 * Math.abs((double) current[i] - last[i]) / denominator;
+      }
+    }
+    return rel / numofel;
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see com.github.celldynamics.quimp.plugin.randomwalk.EulerKernel#getSolution()
+   */
+  @Override
+  public double[][] getSolution() {
+    double[][] ret = new double[rows][cols];
+    for (int r = 0; r < rows; r++) {
+      int row = r * cols;
+      for (int c = 0; c < cols; c++) {
+        ret[r][c] = current[row + c];
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Convert 2D array to row-ordered flat array.
+   *
+   * @param in array to convert
+   * @param region region of in to copy, x - column, y - row
+   * @return flat copy of region of in
+   */
+  static float[] flatten(float[][] in, Rectangle region) {
+    float[] ret = new float[region.height * region.width];
+    for (int r = 0; r < region.height; r++) {
+      System.arraycopy(in[region.y + r], region.x, ret, r * region.width, region.width);
+    }
+    return ret;
+  }
+
+  /**
+   * Convert 2D array to single precision.
+   *
+   * @param in array to convert
+   * @return float copy of in
+   */
+  static float[][] toFloat(double[][] in) {
+    float[][] ret = new float[in.length][];
+    for (int r = 0; r < in.length; r++) {
+      ret[r] = new float[in[r].length];
+      for (int c = 0; c < in[r].length; c++) {
+        ret[r][c] = (float) in[r][c];
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Process band of rows [from, to).
+   *
+   * @author p.baniukiewicz
+   * @see DiffusionKernel
+   */
+  @SuppressWarnings("serial")
+  private class Band extends RecursiveTask<StoppedBy> {
+    private final int from;
+    private final int to;
+    private final float dt;
+    private final float diffusion;
+
+    /**
+     * Define band.
+     *
+     * @param from first row
+     * @param to last row (exclusive)
+     * @param dt time step
+     * @param diffusion diffusion constant
+     */
+    Band(int from, int to, float dt, float diffusion) {
+      this.from = from;
+      this.to = to;
+      this.dt = dt;
+      this.diffusion = diffusion;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.util.concurrent.RecursiveTask#compute()
+     */
+    @Override
+    protected StoppedBy compute() {
+      if (to - from > DiffusionKernel.MIN_ROWS_PER_TASK) {
+        int mid = (from + to) >>> 1;
+        Band upper = new Band(from, mid, dt, diffusion);
+        upper.fork();
+        StoppedBy lower = new Band(mid, to, dt, diffusion).compute();
+        StoppedBy up = upper.join();
+        // INFS overwrites NANS
+        return up.getValue() > lower.getValue() ? up : lower;
+      }
+      return computeBand();
+    }
+
+    /**
+     * Update rows of the band.
+     *
+     * @return status of solution in this band
+     */
+    private StoppedBy computeBand() {
+      final float[] fg = current;
+      final float[] out = next;
+      boolean nans = false;
+      boolean infs = false;
+      for (int r = from; r < to; r++) {
+        int row = r * cols;
+        int rowRight = (r == rows - 1 ? 0 : r + 1) * cols; // RIGHT shift - next row
+        int rowLeft = (r == 0 ? rows - 1 : r - 1) * cols; // LEFT shift - previous row
+        for (int c = 0; c < cols; c++) {
+          int i = row + c;
+          int top = row + (c == cols - 1 ? 0 : c + 1); // TOP shift - next column
+          int bottom = row + (c == 0 ? cols - 1 : c - 1); // BOTTOM shift - previous column
+          float v = fg[i];
+          float res = v + dt * (diffusion * (((fg[rowRight + c] - v) / wr[i]
+                  - (v - fg[rowLeft + c]) / wl[i])
+                  + ((fg[top] - v) / wt[i] - (v - fg[bottom]) / wb[i])));
+          out[i] = res;
+          if (Float.isNaN(res)) {
+            nans = true;
+          } else if (Float.isInfinite(res)) {
+            infs = true;
+          }
+        }
+      }
+      if (infs) {
+        return StoppedBy.INFS;
+      }
+      if (nans) {
+        return StoppedBy.NANS;
+      }
+      return StoppedBy.ITERATIONS;
+    }
+  }
+}
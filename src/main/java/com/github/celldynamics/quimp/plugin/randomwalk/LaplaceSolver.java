@@ -0,0 +1,405 @@
+package com.github.celldynamics.quimp.plugin.randomwalk;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Direct solver of steady state of diffusion process used by {@link RandomWalkSegmentation}.
+ *
+ * <p>Instead of integrating diffusion equation in time (see {@link DiffusionKernel}), this class
+ * builds weighted graph Laplacian from the same weights and solves Dirichlet problem with seeds as
+ * boundary conditions:
+ *
+ * <pre>
+ * <code>
+ * (fgRight - fg) / wr - (fg - fgLeft) / wl + (fgTop - fg) / wt - (fg - fgBottom) / wb = 0
+ * </code>
+ * </pre>
+ *
+ * <p>for each not seeded pixel, with periodic boundary conditions on image edges. Weights are in
+ * general different for both ends of the edge (they depend on intensity in pixel), so the system
+ * is not symmetric and it is solved by BiCGSTAB method with Jacobi preconditioner. Operator is
+ * applied matrix-free on flat arrays, bands of rows are processed on {@link ForkJoinPool} like in
+ * {@link DiffusionKernel}.
+ *
+ * @author p.baniukiewicz
+ * @see RandomWalkOptions#solverBackend
+ */
+public class LaplaceSolver {
+
+  /**
+   * The Constant LOGGER.
+   */
+  static final Logger LOGGER = LoggerFactory.getLogger(LaplaceSolver.class.getName());
+
+  /**
+   * Number of rows of the image.
+   */
+  private final int rows;
+  /**
+   * Number of columns of the image.
+   */
+  private final int cols;
+  /**
+   * Conductance to right (1/wr), flat.
+   */
+  private final double[] cr;
+  /**
+   * Conductance to left (1/wl), flat.
+   */
+  private final double[] cl;
+  /**
+   * Conductance to top (1/wt), flat.
+   */
+  private final double[] ct;
+  /**
+   * Conductance to bottom (1/wb), flat.
+   */
+  private final double[] cb;
+  /**
+   * true for pixels with fixed value (seeds).
+   */
+  private final boolean[] fixed;
+  /**
+   * Solution, contains values of seeds on fixed positions.
+   */
+  private final double[] x;
+  /**
+   * Partial sums for each row, used for deterministic dot products.
+   */
+  private final double[] partial;
+  /**
+   * Pool used for processing bands.
+   */
+  private final ForkJoinPool pool;
+
+  /**
+   * Create solver for given weights running on common pool.
+   *
+   * @param wr weights to right [rows][cols]
+   * @param wl weights to left [rows][cols]
+   * @param wt weights to top [rows][cols]
+   * @param wb weights to bottom [rows][cols]
+   * @see #LaplaceSolver(double[][], double[][], double[][], double[][], ForkJoinPool)
+   */
+  public LaplaceSolver(double[][] wr, double[][] wl, double[][] wt, double[][] wb) {
+    this(wr, wl, wt, wb, null);
+  }
+
+  /**
+   * Create solver for given weights.
+   *
+   * <p>Weights are related to directions defined in {@link RandomWalkSegmentation}.
+   *
+   * @param wr weights to right [rows][cols]
+   * @param wl weights to left [rows][cols]
+   * @param wt weights to top [rows][cols]
+   * @param wb weights to bottom [rows][cols]
+   * @param pool pool to run on, if null common pool is used
+   */
+  public LaplaceSolver(double[][] wr, double[][] wl, double[][] wt, double[][] wb,
+          ForkJoinPool pool) {
+    this.rows = wr.length;
+    this.cols = wr[0].length;
+    this.cr = reciprocal(wr);
+    this.cl = reciprocal(wl);
+    this.ct = reciprocal(wt);
+    this.cb = reciprocal(wb);
+    this.fixed = new boolean[rows * cols];
+    this.x = new double[rows * cols];
+    this.partial = new double[rows];
+    this.pool = pool == null ? ForkJoinPool.commonPool() : pool;
+  }
+
+  /**
+   * Fix value of specified points (Dirichlet boundary condition).
+   *
+   * <p>Subsequent calls for the same point override previous value.
+   *
+   * @param points points to set
+   * @param value value to set
+   */
+  public void setValues(List<Point> points, double value) {
+    for (Point p : points) {
+      int i = p.row * cols + p.col;
+      fixed[i] = true;
+      x[i] = value;
+    }
+  }
+
+  /**
+   * Solve the system.
+   *
+   * @param tol relative residual ||b-Ax||/||b|| to stop at
+   * @param maxIter maximal number of iterations
+   * @return number of iterations performed
+   */
+  public int solve(double tol, int maxIter) {
+    final int n = x.length;
+    double[] b = new double[n];
+    double[] invDiag = new double[n];
+    // right hand side contains contribution of fixed neighbours
+    forRows(r -> {
+      for (int c = 0; c < cols; c++) {
+        int i = r * cols + c;
+        if (fixed[i]) {
+          b[i] = x[i];
+          invDiag[i] = 1.0;
+          continue;
+        }
+        int[] nb = neighbours(r, c);
+        double[] cond = { cr[i], cl[i], ct[i], cb[i] };
+        double diag = 0;
+        double rhs = 0;
+        for (int k = 0; k < 4; k++) {
+          diag += cond[k];
+          if (fixed[nb[k]]) {
+            rhs += cond[k] * x[nb[k]];
+          }
+        }
+        b[i] = rhs;
+        invDiag[i] = 1.0 / diag;
+        x[i] = 0;
+      }
+    });
+    double normb = Math.sqrt(dot(b, b));
+    if (normb == 0.0) { // no nonzero seeds, zero solution
+      return 0;
+    }
+    double[] res = new double[n]; // residual r and s
+    apply(x, res);
+    axpy(-1.0, res, b, res); // r = b - Ax
+    double[] rhat = res.clone();
+    double[] p = new double[n];
+    double[] v = new double[n];
+    double[] y = new double[n]; // preconditioned p and then s
+    double[] t = b; // b is not needed anymore
+    double rho = 1;
+    double alpha = 1;
+    double omega = 1;
+    int it;
+    for (it = 0; it < maxIter; it++) {
+      double rhoNew = dot(rhat, res);
+      if (rhoNew == 0.0) {
+        LOGGER.debug("BiCGSTAB breakdown at " + it);
+        break;
+      }
+      final double beta = (rhoNew / rho) * (alpha / omega);
+      final double om = omega;
+      forEach(i -> p[i] = res[i] + beta * (p[i] - om * v[i]));
+      forEach(i -> y[i] = p[i] * invDiag[i]);
+      apply(y, v);
+      alpha = rhoNew / dot(rhat, v);
+      axpy(alpha, y, x, x); // x = x + alpha*y
+      axpy(-alpha, v, res, res); // s = r - alpha*v
+      double norms = Math.sqrt(dot(res, res));
+      if (norms / normb < tol) {
+        it++;
+        break;
+      }
+      forEach(i -> y[i] = res[i] * invDiag[i]);
+      apply(y, t);
+      omega = dot(t, res) / dot(t, t);
+      axpy(omega, y, x, x); // x = x + omega*z
+      axpy(-omega, t, res, res); // r = s - omega*t
+      double normr = Math.sqrt(dot(res, res));
+      if (normr / normb < tol || omega == 0.0) {
+        it++;
+        break;
+      }
+      rho = rhoNew;
+    }
+    LOGGER.debug("BiCGSTAB stopped after " + it + " iterations");
+    return it;
+  }
+
+  /**
+   * Get current solution as 2D array.
+   *
+   * @return copy of current solution [rows][cols]
+   */
+  public double[][] getSolution() {
+    double[][] ret = new double[rows][cols];
+    for (int r = 0; r < rows; r++) {
+      System.arraycopy(x, r * cols, ret[r], 0, cols);
+    }
+    return ret;
+  }
+
+  /**
+   * Compute out = A*in.
+   *
+   * <p>Rows related to fixed pixels are identity, connections to fixed pixels are moved to right
+   * hand side.
+   *
+   * @param in input vector
+   * @param out output vector
+   */
+  private void apply(double[] in, double[] out) {
+    forRows(r -> {
+      int row = r * cols;
+      int rowRight = (r == rows - 1 ? 0 : r + 1) * cols; // RIGHT shift - next row
+      int rowLeft = (r == 0 ? rows - 1 : r - 1) * cols; // LEFT shift - previous row
+      for (int c = 0; c < cols; c++) {
+        int i = row + c;
+        if (fixed[i]) {
+          out[i] = in[i];
+          continue;
+        }
+        int right = rowRight + c;
+        int left = rowLeft + c;
+        int top = row + (c == cols - 1 ? 0 : c + 1); // TOP shift - next column
+        int bottom = row + (c == 0 ? cols - 1 : c - 1); // BOTTOM shift - previous column
+        double ret = (cr[i] + cl[i] + ct[i] + cb[i]) * in[i];
+        if (!fixed[right]) {
+          ret -= cr[i] * in[right];
+        }
+        if (!fixed[left]) {
+          ret -= cl[i] * in[left];
+        }
+        if (!fixed[top]) {
+          ret -= ct[i] * in[top];
+        }
+        if (!fixed[bottom]) {
+          ret -= cb[i] * in[bottom];
+        }
+        out[i] = ret;
+      }
+    });
+  }
+
+  /**
+   * Indexes of neighbours of pixel in order right, left, top, bottom.
+   *
+   * @param r row
+   * @param c column
+   * @return flat indexes of neighbours
+   */
+  private int[] neighbours(int r, int c) {
+    int row = r * cols;
+    return new int[] { (r == rows - 1 ? 0 : r + 1) * cols + c,
+        (r == 0 ? rows - 1 : r - 1) * cols + c, row + (c == cols - 1 ? 0 : c + 1),
+        row + (c == 0 ? cols - 1 : c - 1) };
+  }
+
+  /**
+   * Dot product computed by rows in parallel and then summed in fixed order.
+   *
+   * @param a left operand
+   * @param b right operand
+   * @return a.b
+   */
+  private double dot(double[] a, double[] b) {
+    forRows(r -> {
+      double s = 0;
+      for (int i = r * cols; i < (r + 1) * cols; i++) {
+        s += a[i] * b[i];
+      }
+      partial[r] = s;
+    });
+    double ret = 0;
+    for (double s : partial) {
+      ret += s;
+    }
+    return ret;
+  }
+
+  /**
+   * Compute out = a*x + y.
+   *
+   * @param a scalar
+   * @param x vector
+   * @param y vector
+   * @param out output, can be x or y
+   */
+  private void axpy(double a, double[] x, double[] y, double[] out) {
+    forEach(i -> out[i] = a * x[i] + y[i]);
+  }
+
+  /**
+   * Run operation for each element, rows in parallel.
+   *
+   * @param op operation on element index
+   */
+  private void forEach(IntConsumer op) {
+    forRows(r -> {
+      for (int i = r * cols; i < (r + 1) * cols; i++) {
+        op.accept(i);
+      }
+    });
+  }
+
+  /**
+   * Run operation for each row, bands of rows in parallel on {@link #pool}.
+   *
+   * @param op operation on row index
+   */
+  private void forRows(IntConsumer op) {
+    pool.invoke(new Band(0, rows, op));
+  }
+
+  /**
+   * Process band of rows [from, to).
+   *
+   * @author p.baniukiewicz
+   * @see DiffusionKernel
+   */
+  @SuppressWarnings("serial")
+  private static class Band extends RecursiveAction {
+    private final int from;
+    private final int to;
+    private final IntConsumer op;
+
+    /**
+     * Define band.
+     *
+     * @param from first row
+     * @param to last row (exclusive)
+     * @param op operation on row index
+     */
+    Band(int from, int to, IntConsumer op) {
+      this.from = from;
+      this.to = to;
+      this.op = op;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.util.concurrent.RecursiveAction#compute()
+     */
+    @Override
+    protected void compute() {
+      if (to - from > DiffusionKernel.MIN_ROWS_PER_TASK) {
+        int mid = (from + to) >>> 1;
+        invokeAll(new Band(from, mid, op), new Band(mid, to, op));
+        return;
+      }
+      for (int r = from; r < to; r++) {
+        op.accept(r);
+      }
+    }
+  }
+
+  /**
+   * Convert 2D array of weights to flat array of their reciprocals.
+   *
+   * @param in weights
+   * @return 1/in, flat
+   */
+  private static double[] reciprocal(double[][] in) {
+    int cols = in[0].length;
+    double[] ret = new double[in.length * cols];
+    for (int r = 0; r < in.length; r++) {
+      for (int c = 0; c < cols; c++) {
+        ret[r * cols + c] = 1.0 / in[r][c];
+      }
+    }
+    return ret;
+  }
+}
@@ -466,6 +466,15 @@ public class RandomWalkModel extends AbstractPluginOptions {
    * true for showing probability maps.
    */
   public boolean showProbMaps;
+  /**
+   * Number of threads used for segmenting stack.
+   * 
+   * <p>If seeds are given as stack, frames are independent and up to this number of frames is
+   * segmented concurrently. If seeds are propagated from previous frame, preparation of next frame
+   * is overlapped with segmentation of current one if this value is larger than 1. Value 1 or less
+   * processes frames sequentially.
+   */
+  public int stackThreads;
 
   /**
    * Default constructor setting default parameters.
@@ -489,6 +498,7 @@ public class RandomWalkModel extends AbstractPluginOptions {
     showSeeds = false;
     showPreview = false;
     showProbMaps = false;
+    stackThreads = 1;
   }
 
   /*
@@ -507,6 +517,7 @@ public class RandomWalkModel extends AbstractPluginOptions {
             + ", hatFilter=" + hatFilter + ", alev=" + alev + ", num=" + num + ", window=" + window
             + ", selectedFilteringPostMethod=" + selectedFilteringPostMethod + ", showSeeds="
             + showSeeds + ", showPreview=" + showPreview + ", showPprobMaps=" + showProbMaps
+            + ", stackThreads=" + stackThreads
             + ", getShrinkMethods()=" + Arrays.toString(getShrinkMethods())
             + ", getFilteringMethods()=" + Arrays.toString(getFilteringMethods())
             + ", getselectedShrinkMethod()=" + getselectedShrinkMethod()
@@ -13,6 +13,37 @@ import com.github.celldynamics.quimp.plugin.randomwalk.RandomWalkSegmentation.Se
  *
  */
 public class RandomWalkOptions {
+
+  /**
+   * Available methods of solving diffusion problem.
+   * 
+   * @author p.baniukiewicz
+   * @see RandomWalkOptions#solverBackend
+   */
+  public enum SolverBackend {
+    /**
+     * Integrate diffusion equation in time by explicit Euler method. Default.
+     * 
+     * @see DiffusionKernel
+     */
+    EULER,
+    /**
+     * Solve steady state (Dirichlet problem for graph Laplacian) of objects by BiCGSTAB method.
+     * 
+     * <p>{@link RandomWalkOptions#iter} is the maximal number of BiCGSTAB iterations,
+     * {@link RandomWalkOptions#solverTolerance} is used as stopping criterion instead of
+     * {@link RandomWalkOptions#relim}.
+     * 
+     * <p>Background is still solved by {@link #EULER} with number of iterations limited to
+     * {@link RandomWalkOptions#iter}, because its steady state would dominate objects. Thus
+     * background maps are the same as for {@link #EULER} if no object reaches
+     * {@link RandomWalkOptions#relim} in that mode, only object maps differ.
+     * 
+     * @see LaplaceSolver
+     */
+    BICGSTAB
+  }
+
   /**
    * Alpha penalises pixels whose intensities are far away from the mean seed intensity.
    */
@@ -80,6 +111,48 @@ public class RandomWalkOptions {
    */
   public boolean maskLimit;
 
+  /**
+   * Method used for solving diffusion problem.
+   */
+  public SolverBackend solverBackend;
+
+  /**
+   * Relative residual used as stopping criterion by {@link SolverBackend#BICGSTAB}.
+   */
+  public double solverTolerance;
+
+  /**
+   * Number of objects (seed labels) solved concurrently.
+   * 
+   * <p>Value 1 or less solves objects sequentially. Background is always solved after all
+   * foreground objects. Does not affect results.
+   */
+  public int parallelism;
+
+  /**
+   * If true, {@link SolverBackend#EULER} diffusion is computed in single precision.
+   * 
+   * @see FloatDiffusionKernel
+   */
+  public boolean singlePrecision;
+
+  /**
+   * If true, Euler diffusion (see {@link SolverBackend}) is computed only within bounding box of
+   * pixels that are not {@link SeedTypes#BACKGROUND} seeds, extended by {@link #cropMargin}.
+   * Pixels outside the box are background seeds that do not change during diffusion, thus results
+   * are exactly the same as for whole image.
+   * 
+   * <p>Requires exactly one background seed map, otherwise or if the box covers whole image,
+   * whole image is processed.
+   */
+  public boolean cropToSeeds;
+
+  /**
+   * Number of pixels the bounding box is extended by on each side if {@link #cropToSeeds} is set.
+   * At least 1 is used. If there is no room for margin along image axis, whole axis is processed.
+   */
+  public int cropMargin;
+
   /**
    * Set default values.
    */
@@ -97,6 +170,12 @@ public class RandomWalkOptions {
     useLocalMean = false;
     localMeanMaskSize = 25;
     maskLimit = false;
+    parallelism = 1;
+    solverBackend = SolverBackend.EULER;
+    solverTolerance = 1e-6;
+    singlePrecision = false;
+    cropToSeeds = false;
+    cropMargin = 32;
   }
 
   /**
@@ -156,7 +235,9 @@ public class RandomWalkOptions {
             + Arrays.toString(gamma) + ", iter=" + iter + ", dt=" + dt + ", relim="
             + Arrays.toString(relim) + ", useLocalMean=" + useLocalMean + ", localMeanMaskSize="
             + localMeanMaskSize + ", intermediateFilter=" + intermediateFilter + ", finalFilter="
-            + finalFilter + "]";
+            + finalFilter + ", parallelism=" + parallelism + ", solverBackend=" + solverBackend
+            + ", solverTolerance=" + solverTolerance + ", singlePrecision=" + singlePrecision
+            + ", cropToSeeds=" + cropToSeeds + ", cropMargin=" + cropMargin + "]";
   }
 
   /*
@@ -185,6 +266,12 @@ public class RandomWalkOptions {
     result = prime * result + localMeanMaskSize;
     result = prime * result + Arrays.hashCode(relim);
     result = prime * result + (useLocalMean ? 1231 : 1237);
+    result = prime * result + ((solverBackend == null) ? 0 : solverBackend.hashCode());
+    temp = Double.doubleToLongBits(solverTolerance);
+    result = prime * result + (int) (temp ^ (temp >>> 32));
+    result = prime * result + (singlePrecision ? 1231 : 1237);
+    result = prime * result + (cropToSeeds ? 1231 : 1237);
+    result = prime * result + cropMargin;
     return result;
   }
 
@@ -234,6 +321,22 @@ public class RandomWalkOptions {
     if (useLocalMean != other.useLocalMean) {
       return false;
     }
+    if (solverBackend != other.solverBackend) {
+      return false;
+    }
+    if (Double.doubleToLongBits(solverTolerance) != Double
+            .doubleToLongBits(other.solverTolerance)) {
+      return false;
+    }
+    if (singlePrecision != other.singlePrecision) {
+      return false;
+    }
+    if (cropToSeeds != other.cropToSeeds) {
+      return false;
+    }
+    if (cropMargin != other.cropMargin) {
+      return false;
+    }
     return true;
   }
 
@@ -1,15 +1,17 @@
 package com.github.celldynamics.quimp.plugin.randomwalk;
 
 import java.awt.Color;
+import java.awt.Rectangle;
 import java.io.File;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.security.InvalidParameterException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.IntStream;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import org.apache.commons.math3.linear.Array2DRowRealMatrix;
 import org.apache.commons.math3.linear.ArrayRealVector;
@@ -22,6 +24,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.github.celldynamics.quimp.QuimP;
+import com.github.celldynamics.quimp.plugin.randomwalk.RandomWalkOptions.SolverBackend;
 import com.github.celldynamics.quimp.utils.QuimPArrayUtils;
 
 import ij.IJ;
@@ -295,7 +298,7 @@ public class RandomWalkSegmentation {
    * @author p.baniukiewicz
    *
    */
-  private enum StoppedBy {
+  enum StoppedBy {
     /**
      * Maximum number of iterations reached.
      */
@@ -416,6 +419,14 @@ public class RandomWalkSegmentation {
    * Probability map obtained in {@link #run(Seeds)}.
    */
   private ProbabilityMaps solved = null;
+  /**
+   * Gradients computed by {@link #precompute()}.
+   */
+  private RealMatrix[] precomputed = null;
+  /**
+   * Key of {@link #image} in {@link WeightCache}, computed on first use.
+   */
+  private volatile WeightCache.ImageKey imageKey = null;
 
   /**
    * Construct segmentation object from ImageProcessor.
@@ -473,7 +484,7 @@ public class RandomWalkSegmentation {
     if (seeds.get(SeedTypes.FOREGROUNDS) == null) {
       return null; // no FG maps - no segmentation
     }
-    RealMatrix[] precomputed = precomputeGradients(); // precompute gradients
+    precompute(); // precompute gradients if not done yet
     solved = solver(seeds, precomputed);
     if (params.intermediateFilter != null && params.gamma[1] != 0) { // do second sweep
       LOGGER.debug("Running next sweep: " + params.intermediateFilter.getClass().getName());
@@ -504,6 +515,35 @@ public class RandomWalkSegmentation {
 
   }
 
+  /**
+   * Pre-compute data that depend only on segmented image.
+   * 
+   * <p>Called by {@link #run(Seeds)} if not called before. Can be called in advance, e.g. in other
+   * thread, to overlap these computations with processing of other image. Gradients are taken from
+   * {@link WeightCache} if the same image has been processed before.
+   */
+  public void precompute() {
+    if (precomputed == null) {
+      precomputed = WeightCache.getInstance().getGradients(getImageKey());
+    }
+    if (precomputed == null) {
+      precomputed = precomputeGradients();
+      WeightCache.getInstance().putGradients(getImageKey(), precomputed);
+    }
+  }
+
+  /**
+   * Get key identifying segmented image in {@link WeightCache}.
+   * 
+   * @return key of {@link #image}
+   */
+  private WeightCache.ImageKey getImageKey() {
+    if (imageKey == null) {
+      imageKey = new WeightCache.ImageKey(image, maxTheoreticalIntSqr);
+    }
+    return imageKey;
+  }
+
   /**
    * Prepare seeds from results of previous solver.
    * 
@@ -991,11 +1031,9 @@ public class RandomWalkSegmentation {
    *         not contain BG map.
    */
   protected ProbabilityMaps solver(Seeds seeds, RealMatrix[] gradients) {
-    ImageStack debugPm = null;
-    RealMatrix diffIfg = null; // normalised squared differences to mean seed intensities for FG
     // store number of iterations performed for each object. These numbers are used for stopping
     // iterations earlier for background object
-    ArrayList<Integer> iterations = new ArrayList<>();
+    List<Integer> iterations = Collections.synchronizedList(new ArrayList<>());
 
     ProbabilityMaps ret = new ProbabilityMaps(); // keep output probab map for each object
 
@@ -1008,218 +1046,422 @@ public class RandomWalkSegmentation {
     // for it so we need to know what was selected by user as background). There is possible
     // that there will be no BCK key, if input is given as GraySclale image
     List<List<Point>> userBckPoints = seeds.convertToList(SeedTypes.BACKGROUND);
+    // region that Euler diffusion is computed for, null for whole image
+    Rectangle region = null;
+    if (params.cropToSeeds) {
+      region = getCropRegion(seedsPointsFg, userBckPoints, params.cropMargin);
+      LOGGER.debug("Diffusion limited to " + region);
+    }
     // add background at the end - it will be solved as regular object
     seedsPointsFg.addAll(userBckPoints);
-    // background points used in conjunction with current foreground. Background points are all
-    // other points which are not current foreground (e.g. other cells + user background, or all
-    // cells if we solve for user background)
-    List<List<Point>> seedsPointsBg = new ArrayList<>();
 
-    // solve problem for each label in FOREGROUNDS, other labels (if any) are merged with BACKGROUND
+    // split labels into objects and background. Background is solved after all objects because it
+    // uses number of iterations performed for them.
+    List<Integer> fgObjects = new ArrayList<>();
+    List<Integer> bgObjects = new ArrayList<>();
     for (int cell = 0; cell < seedsPointsFg.size(); cell++) { // over each seed label
       // some maps for FOREGROUNDS key can be empty, so lists will be too. Note that decodeSeeds
       // throw exception when all maps for specified key are empty. Other situations are allowed.
       if (seedsPointsFg.get(cell).isEmpty()) {
         continue;
       }
-      // make copy of objects seeds - need of removing current one and integrate remaining with bck
-      ArrayList<List<Point>> tmpSeedsPointsFg = new ArrayList<List<Point>>(seedsPointsFg);
-      tmpSeedsPointsFg.remove(cell); // remove current object seed
-      // clear Bg, it always contains all objects except current (seedsPointsFg[cell])
-      seedsPointsBg.clear();
-      seedsPointsBg.addAll(tmpSeedsPointsFg); // add all remaining foregrounds to current bck
-
-      // decide whether to use local mean or global mean. Local mean is computed within square mask
-      // of configurable size whereas the global mean is a mean intensity of all seeded pixels.
-      // Local mean evaluated only for FG objects.
-      if (params.useLocalMean && seeds.get(SeedTypes.ROUGHMASK) != null
-              && !userBckPoints.contains(seedsPointsFg.get(cell))) { // skip BG object
-        RealMatrix localMeanFg =
-                getMeanSeedLocal(seeds.get(SeedTypes.ROUGHMASK, 1), params.localMeanMaskSize);
-        diffIfg = image.subtract(localMeanFg);
-      } else { // global for whole seeds
-        // compute intensity means for image points labelled by seeds
-        double meanseed = getMeanSeedGlobal(seedsPointsFg.get(cell));
-        LOGGER.debug("meanseed_fg=" + meanseed);
-        // compute normalised squared differences to mean seed intensities (Image-meanseed).^2
-        diffIfg = image.scalarAdd(-meanseed);
+      if (userBckPoints.contains(seedsPointsFg.get(cell))) {
+        bgObjects.add(cell);
+      } else {
+        fgObjects.add(cell);
       }
-      // normalize (Image-meanseed).^2 to maximal (theoretical) value which is 255^2 for 8-bit
-      // images. Have it as private field as we support 16 images as well
-      diffIfg.walkInOptimizedOrder(new MatrixElementPowerDiv(maxTheoreticalIntSqr));
-      LOGGER.trace("fseeds size: " + seedsPointsFg.get(cell).size());
-      LOGGER.trace("bseeds size: " + seedsPointsBg.stream().mapToInt(p -> p.size()).sum());
-
-      // compute weights for diffusion in all four directions, dependent on local gradients and
-      // differences to mean intensities of seeds, for FG maps
-      Array2DRowRealMatrix wrfg = (Array2DRowRealMatrix) computeweights(diffIfg, gradients[0]);
-      Array2DRowRealMatrix wlfg = (Array2DRowRealMatrix) computeweights(diffIfg, gradients[2]);
-      Array2DRowRealMatrix wtfg = (Array2DRowRealMatrix) computeweights(diffIfg, gradients[1]);
-      Array2DRowRealMatrix wbfg = (Array2DRowRealMatrix) computeweights(diffIfg, gradients[3]);
-
-      // compute averaged weights, left/right and top/bottom used when computing second spatial
-      // derivative from first one, avgwx_fg = 0.5*(wl_fg+wr_fg) - for FG
-      RealMatrix avgwxfg = wlfg.add(wrfg); // wl_fg+wr_fg - (left+right)
-      avgwxfg.walkInOptimizedOrder(new MatrixElementMultiply(0.5)); // 0.5*(wl_fg+wr_fg)
-      RealMatrix avgwyfg = wtfg.add(wbfg); // wt_fg+wb_fg - (top+bottom)
-      avgwyfg.walkInOptimizedOrder(new MatrixElementMultiply(0.5)); // 0.5*(wt_fg+wb_fg)
-
-      // Compute diffusion coefficient that will obey stability criterion
-      double diffusion = getDiffusionConst(wrfg, wlfg, wtfg, wbfg, avgwxfg, avgwyfg);
-      LOGGER.debug("D=" + diffusion);
-
-      // get average "distance" between weights multiplying w = w.*avgw, this is only for
-      // optimisation purposes.
-      // does not apply for FG if we use local mean, applied for BG always (better results)
-      if (params.useLocalMean == false || userBckPoints.contains(seedsPointsFg.get(cell))) {
-        wrfg.walkInOptimizedOrder(new MatrixDotProduct(avgwxfg));
-        wlfg.walkInOptimizedOrder(new MatrixDotProduct(avgwxfg));
-        wtfg.walkInOptimizedOrder(new MatrixDotProduct(avgwyfg));
-        wbfg.walkInOptimizedOrder(new MatrixDotProduct(avgwyfg));
+    }
+    // solve problem for each label in FOREGROUNDS, other labels (if any) are merged with BACKGROUND
+    ForkJoinPool pool = params.parallelism > 1 ? new ForkJoinPool(params.parallelism) : null;
+    try {
+      for (RealMatrix fg : solveObjects(fgObjects, seeds, seedsPointsFg, userBckPoints, gradients,
+              region, iterations, pool)) {
+        ret.put(SeedTypes.FOREGROUNDS, fg);
       }
+      for (RealMatrix fg : solveObjects(bgObjects, seeds, seedsPointsFg, userBckPoints, gradients,
+              region, iterations, pool)) {
+        ret.put(SeedTypes.BACKGROUND, fg); // store it in separate key - needed for proper compar.
+      }
+    } finally {
+      if (pool != null) {
+        pool.shutdown();
+      }
+    }
+    return ret;
+  }
 
-      // initialize FG probability maps, they are outputs from this routine
-      Array2DRowRealMatrix fg =
-              new Array2DRowRealMatrix(image.getRowDimension(), image.getColumnDimension());
-      // this temporary array will keep solution from n-1 iteration used for computing rel error
-      double[][] tmpFglast2d = new double[image.getRowDimension()][image.getColumnDimension()];
-
-      // dereferencing arrays, all computations are done on underlying [][] arrays but not on
-      // RelaMatrix objects, optimisation again
-      double[][] wrfg2d = wrfg.getDataRef(); // weight to right for FG
-      double[][] wlfg2d = wlfg.getDataRef(); // weight to left for FG
-      double[][] wtfg2d = wtfg.getDataRef(); // weight to top for FG
-      double[][] wbfg2d = wbfg.getDataRef(); // weight to bottom for FG
-
-      double[][] fg2d = fg.getDataRef(); // reference to FG probabilities
-
-      StoppedBy stoppedReason = StoppedBy.ITERATIONS; // default assumption
-      int i; // iteration counter
-      // compute correct number of iterations. Second sweep uses 0.5*user
-      int iter;
-      // use less iterations when diffuse background. Background needs much more iterations to reach
-      // specified relError and after weighting it dominates leaving only original object seed as
-      // segmented object. Here we stop segmenting background after certain number of iterations but
-      // not relErr. This is how we have it solved in MAtlab
-      if (true && (userBckPoints.contains(seedsPointsFg.get(cell)) && iterations.size() > 0)) {
-        // just use average of iters for BCK
-        iter = iterations.stream().mapToInt(Integer::intValue).max().getAsInt();
-        // FIXME This can be disabled, then BCK will need more iterations but sometimes results are
-        // better
-        // potential pitfall is if user mark BG far from cell, then small number of iters is not
-        // enough to flood whole background (but it will work because during comparison bck is on 0
-        // and FG segmentation rather does not leave object
-        iter /= (currentSweep + 1);
-      } else { // object - use specified number of iters
-        iter = params.iter / (currentSweep + 1);
+  /**
+   * Solve specified objects sequentially or concurrently, depending on pool.
+   * 
+   * @param cells indexes of objects in seedsPointsFg to solve
+   * @param seeds seed array returned from {@link SeedProcessor}
+   * @param seedsPointsFg seeds of all objects, including user background
+   * @param userBckPoints seeds of user background
+   * @param gradients pre-computed gradients returned from {@link #precomputeGradients()}
+   * @param region region of image diffusion is computed for or null for whole image
+   * @param iterations number of iterations performed for objects, updated
+   * @param pool pool to run objects on or null for sequential processing
+   * @return probability maps in order of cells
+   * @see #solveObject(int, Seeds, List, List, RealMatrix[], Rectangle, List, ForkJoinPool)
+   */
+  private List<RealMatrix> solveObjects(List<Integer> cells, Seeds seeds,
+          List<List<Point>> seedsPointsFg, List<List<Point>> userBckPoints, RealMatrix[] gradients,
+          Rectangle region, List<Integer> iterations, ForkJoinPool pool) {
+    List<RealMatrix> ret = new ArrayList<>(cells.size());
+    if (pool == null) {
+      for (int cell : cells) {
+        ret.add(solveObject(cell, seeds, seedsPointsFg, userBckPoints, gradients, region,
+                iterations, null));
       }
-      // main loop here we simulate diffusion process in time
-      outerloop: for (i = 0; i < iter; i++) {
-        if (i % relErrStep == 0) {
-          LOGGER.info("Iter: " + i);
-        } else {
-          LOGGER.trace("Iter: " + i);
-        }
-        // fill seed pixels explicitly with probability 1 for FG and BG
-        ArrayRealVector tmp = new ArrayRealVector(1); // filled with 0, setValues() needs that input
-        double[] tmpref = tmp.getDataRef(); // just get reference to underlying array
-        // set probability to 0 of being FG for BG seeds and vice versa
-        for (List<Point> b : seedsPointsBg) {
-          setValues(fg, b, tmp); // set 0 all seed pixel currently considered as BG
-        }
-        // set probability to 1 for of being FG for FG seeds and vice versa
-        tmpref[0] = 1;
-        setValues(fg, seedsPointsFg.get(cell), tmp); // set 1
-        tmp = null;
-
-        // ------------------- Computation of FG map ----------------------------------------------
-        // groups for long term for FG. Get all four neighbours to current pixel
-        Array2DRowRealMatrix fgcircright = (Array2DRowRealMatrix) circshift(fg, RIGHT);
-        Array2DRowRealMatrix fgcircleft = (Array2DRowRealMatrix) circshift(fg, LEFT);
-        Array2DRowRealMatrix fgcirctop = (Array2DRowRealMatrix) circshift(fg, TOP);
-        Array2DRowRealMatrix fgcircbottom = (Array2DRowRealMatrix) circshift(fg, BOTTOM);
-
-        // extract required references from RealMatrix objects.
-        double[][] fgcircright2d = fgcircright.getDataRef(); // reference to FG prob shifted right
-        double[][] fgcircleft2d = fgcircleft.getDataRef(); // reference to FG probab. shifted left
-        double[][] fgcirctop2d = fgcirctop.getDataRef(); // reference to FG probab. shifted top
-        double[][] fgcircbottom2d = fgcircbottom.getDataRef(); // reference to FG prob. shifted bot
-
-        AtomicInteger at = new AtomicInteger(stoppedReason.getValue());
-        // Traverse all pixels in FG map and update them according to diffusion from 4 neighbours of
-        // each pixel
-        int nrows = fg.getRowDimension();
-        int ncols = fg.getColumnDimension();
-        IntStream.range(0, nrows * ncols).parallel().forEach(ii -> {
-          int c = ii % ncols;
-          int r = ii / ncols;
-          fg2d[r][c] += params.dt * (diffusion * (((fgcircright2d[r][c] - fg2d[r][c]) / wrfg2d[r][c]
-                  - (fg2d[r][c] - fgcircleft2d[r][c]) / wlfg2d[r][c])
-                  + ((fgcirctop2d[r][c] - fg2d[r][c]) / wtfg2d[r][c]
-                          - (fg2d[r][c] - fgcircbottom2d[r][c]) / wbfg2d[r][c])));
-          // - params.gamma[currentSweep] * fg2d[r][c] * bg2d[r][c] - disabled
-          // validate numerical quality. This flags will stop iterations (break outerloop) but
-          // after updating all pixels in FG maps
-          if (Double.isNaN(fg2d[r][c])) { // if at least one NaN in solution
-            at.set(StoppedBy.NANS.getValue());
-          }
-          if (Double.isInfinite(fg2d[r][c])) { // or Inf (will overwrite previous flag of course)
-            at.set(StoppedBy.INFS.getValue());
-          }
-        });
+      return ret;
+    }
+    List<ForkJoinTask<RealMatrix>> tasks = new ArrayList<>(cells.size());
+    for (int cell : cells) {
+      tasks.add(pool.submit(() -> solveObject(cell, seeds, seedsPointsFg, userBckPoints, gradients,
+              region, iterations, pool)));
+    }
+    for (ForkJoinTask<RealMatrix> t : tasks) { // collect in order of cells
+      ret.add(t.join());
+    }
+    return ret;
+  }
 
-        // Test state of the flag. Stop iteration if there is NaN or Inf. Iterations are stopped
-        // after full looping over FG maps.
-        if (stoppedReason == StoppedBy.NANS || stoppedReason == StoppedBy.INFS) {
-          break outerloop;
-        }
-        // check error every relErrStep number of iterations
-        if ((i + 1) % relErrStep == 0) {
-          double rele = computeRelErr(tmpFglast2d, fg2d);
-          LOGGER.info("Relative error for object " + cell + " = " + rele);
-          if (rele < params.relim[currentSweep]) {
-            stoppedReason = StoppedBy.RELERR;
-            // store number of iters for object, required for limiting iterations for BCK
-            if (!userBckPoints.contains(seedsPointsFg.get(cell))) {
-              iterations.add(i);
-            }
-            break outerloop;
+  /**
+   * Compute diffusion weights for one object.
+   * 
+   * @param roughMask rough mask used for computing local mean intensity or null if global mean is
+   *        used
+   * @param meanseed global mean intensity of object seeds, used if roughMask is null
+   * @param averaged true if weights are multiplied by averaged weights
+   * @param single true if weights are returned in single precision
+   * @param gradients pre-computed gradients returned from {@link #precomputeGradients()}
+   * @return weights in four directions and diffusion constant
+   */
+  private WeightCache.Weights computeObjectWeights(ImageProcessor roughMask, double meanseed,
+          boolean averaged, boolean single, RealMatrix[] gradients) {
+    RealMatrix diffIfg = null; // normalised squared differences to mean seed intensities for FG
+    if (roughMask != null) {
+      RealMatrix localMeanFg = getMeanSeedLocal(roughMask, params.localMeanMaskSize);
+      diffIfg = image.subtract(localMeanFg);
+    } else { // global for whole seeds
+      // compute normalised squared differences to mean seed intensities (Image-meanseed).^2
+      diffIfg = image.scalarAdd(-meanseed);
+    }
+    // normalize (Image-meanseed).^2 to maximal (theoretical) value which is 255^2 for 8-bit
+    // images. Have it as private field as we support 16 images as well
+    diffIfg.walkInOptimizedOrder(new MatrixElementPowerDiv(maxTheoreticalIntSqr));
+
+    // compute weights for diffusion in all four directions, dependent on local gradients and
+    // differences to mean intensities of seeds, for FG maps
+    Array2DRowRealMatrix wrfg = (Array2DRowRealMatrix) computeweights(diffIfg, gradients[0]);
+    Array2DRowRealMatrix wlfg = (Array2DRowRealMatrix) computeweights(diffIfg, gradients[2]);
+    Array2DRowRealMatrix wtfg = (Array2DRowRealMatrix) computeweights(diffIfg, gradients[1]);
+    Array2DRowRealMatrix wbfg = (Array2DRowRealMatrix) computeweights(diffIfg, gradients[3]);
+
+    // compute averaged weights, left/right and top/bottom used when computing second spatial
+    // derivative from first one, avgwx_fg = 0.5*(wl_fg+wr_fg) - for FG
+    RealMatrix avgwxfg = wlfg.add(wrfg); // wl_fg+wr_fg - (left+right)
+    avgwxfg.walkInOptimizedOrder(new MatrixElementMultiply(0.5)); // 0.5*(wl_fg+wr_fg)
+    RealMatrix avgwyfg = wtfg.add(wbfg); // wt_fg+wb_fg - (top+bottom)
+    avgwyfg.walkInOptimizedOrder(new MatrixElementMultiply(0.5)); // 0.5*(wt_fg+wb_fg)
+
+    // Compute diffusion coefficient that will obey stability criterion
+    double diffusion = getDiffusionConst(wrfg, wlfg, wtfg, wbfg, avgwxfg, avgwyfg);
+    LOGGER.debug("D=" + diffusion);
+
+    if (averaged) {
+      wrfg.walkInOptimizedOrder(new MatrixDotProduct(avgwxfg));
+      wlfg.walkInOptimizedOrder(new MatrixDotProduct(avgwxfg));
+      wtfg.walkInOptimizedOrder(new MatrixDotProduct(avgwyfg));
+      wbfg.walkInOptimizedOrder(new MatrixDotProduct(avgwyfg));
+    }
+    if (single) { // double matrices are released here, only float copies are kept
+      return new WeightCache.Weights(FloatDiffusionKernel.toFloat(wrfg.getDataRef()),
+              FloatDiffusionKernel.toFloat(wlfg.getDataRef()),
+              FloatDiffusionKernel.toFloat(wtfg.getDataRef()),
+              FloatDiffusionKernel.toFloat(wbfg.getDataRef()), diffusion);
+    }
+    return new WeightCache.Weights(wrfg.getDataRef(), wlfg.getDataRef(), wtfg.getDataRef(),
+            wbfg.getDataRef(), diffusion);
+  }
+
+  /**
+   * Solve one object (seed label).
+   * 
+   * <p>Solved object is set to FG and all other labels are set to BG.
+   * 
+   * @param cell index of object in seedsPointsFg
+   * @param seeds seed array returned from {@link SeedProcessor}
+   * @param seedsPointsFg seeds of all objects, including user background
+   * @param userBckPoints seeds of user background
+   * @param gradients pre-computed gradients returned from {@link #precomputeGradients()}
+   * @param region region of image diffusion is computed for or null for whole image. Pixels
+   *        outside it must be seeds of the only user background, see
+   *        {@link #getCropRegion(List, List, int)}
+   * @param iterations number of iterations performed for objects. Updated if object is not
+   *        background, used for limiting iterations if it is.
+   * @param pool pool used by {@link DiffusionKernel} or {@link LaplaceSolver}, can be null
+   * @return probability map for object
+   */
+  private RealMatrix solveObject(int cell, Seeds seeds, List<List<Point>> seedsPointsFg,
+          List<List<Point>> userBckPoints, RealMatrix[] gradients, Rectangle region,
+          List<Integer> iterations, ForkJoinPool pool) {
+    ImageStack debugPm = null;
+    // background points used in conjunction with current foreground. Background points are all
+    // other points which are not current foreground (e.g. other cells + user background, or all
+    // cells if we solve for user background)
+    // make copy of objects seeds - need of removing current one and integrate remaining with bck
+    List<List<Point>> seedsPointsBg = new ArrayList<List<Point>>(seedsPointsFg);
+    seedsPointsBg.remove(cell); // remove current object seed
+
+    boolean isBackground = userBckPoints.contains(seedsPointsFg.get(cell));
+    // decide whether to use local mean or global mean. Local mean is computed within square mask
+    // of configurable size whereas the global mean is a mean intensity of all seeded pixels.
+    // Local mean evaluated only for FG objects.
+    boolean localMean =
+            params.useLocalMean && seeds.get(SeedTypes.ROUGHMASK) != null && !isBackground;
+    double meanseed = 0;
+    if (!localMean) {
+      // compute intensity means for image points labelled by seeds
+      meanseed = getMeanSeedGlobal(seedsPointsFg.get(cell));
+      LOGGER.debug("meanseed_fg=" + meanseed);
+    }
+    // get average "distance" between weights multiplying w = w.*avgw, this is only for
+    // optimisation purposes.
+    // does not apply for FG if we use local mean, applied for BG always (better results)
+    boolean averaged = params.useLocalMean == false || isBackground;
+    ImageProcessor roughMask = localMean ? seeds.get(SeedTypes.ROUGHMASK, 1) : null;
+    // weights depend only on image, parameters and mean intensity, reuse them if possible
+    // background is always diffused by Euler method with limited number of iterations, see below
+    boolean euler = params.solverBackend == SolverBackend.EULER || isBackground;
+    // single precision weights are used only by Euler diffusion
+    boolean single = params.singlePrecision && euler;
+    WeightCache.WeightsKey key = new WeightCache.WeightsKey(getImageKey(), params, meanseed,
+            roughMask, averaged, single);
+    WeightCache.Weights weights = WeightCache.getInstance().getWeights(key);
+    if (weights == null) {
+      weights = computeObjectWeights(roughMask, meanseed, averaged, single, gradients);
+      WeightCache.getInstance().putWeights(key, weights);
+    } else {
+      LOGGER.debug("Weights for object " + cell + " taken from cache");
+    }
+    double diffusion = weights.diffusion;
+    LOGGER.trace("fseeds size: " + seedsPointsFg.get(cell).size());
+    LOGGER.trace("bseeds size: " + seedsPointsBg.stream().mapToInt(p -> p.size()).sum());
+
+    // solve objects for steady state directly. Steady state of background would dominate objects
+    if (!euler) {
+      LaplaceSolver laplace =
+              new LaplaceSolver(weights.wr, weights.wl, weights.wt, weights.wb, pool);
+      for (List<Point> b : seedsPointsBg) {
+        laplace.setValues(b, 0); // set 0 all seed pixel currently considered as BG
+      }
+      laplace.setValues(seedsPointsFg.get(cell), 1); // set 1
+      int it = laplace.solve(params.solverTolerance, params.iter / (currentSweep + 1));
+      LOGGER.info("Sweep " + currentSweep + " for object " + cell + " solved by "
+              + params.solverBackend + " after " + it + " iterations");
+      return new Array2DRowRealMatrix(laplace.getSolution(), false);
+    }
+    // diffusion is solved on flat buffers, weights are copied there so cached ones are not changed
+    Rectangle kernelRegion = region != null ? region
+            : new Rectangle(image.getColumnDimension(), image.getRowDimension());
+    EulerKernel kernel;
+    if (single) {
+      kernel = new FloatDiffusionKernel(weights.wrf, weights.wlf, weights.wtf, weights.wbf,
+              kernelRegion, pool);
+    } else {
+      kernel = new DiffusionKernel(weights.wr, weights.wl, weights.wt, weights.wb, kernelRegion,
+              pool);
+    }
+    // all pixels outside region are user background seeds, they keep their seed value
+    double outside = isBackground ? 1 : 0;
+
+    StoppedBy stoppedReason = StoppedBy.ITERATIONS; // default assumption
+    int i; // iteration counter
+    // compute correct number of iterations. Second sweep uses 0.5*user
+    int iter;
+    // use less iterations when diffuse background. Background needs much more iterations to reach
+    // specified relError and after weighting it dominates leaving only original object seed as
+    // segmented object. Here we stop segmenting background after certain number of iterations but
+    // not relErr. This is how we have it solved in MAtlab
+    if (true && (isBackground && iterations.size() > 0)) {
+      // just use average of iters for BCK
+      iter = iterations.stream().mapToInt(Integer::intValue).max().getAsInt();
+      // FIXME This can be disabled, then BCK will need more iterations but sometimes results are
+      // better
+      // potential pitfall is if user mark BG far from cell, then small number of iters is not
+      // enough to flood whole background (but it will work because during comparison bck is on 0
+      // and FG segmentation rather does not leave object
+      iter /= (currentSweep + 1);
+    } else { // object - use specified number of iters
+      iter = params.iter / (currentSweep + 1);
+    }
+    // main loop here we simulate diffusion process in time
+    outerloop: for (i = 0; i < iter; i++) {
+      if (i % relErrStep == 0) {
+        LOGGER.info("Iter: " + i);
+      } else {
+        LOGGER.trace("Iter: " + i);
+      }
+      // remember FG map from previous iteration to use it to compute relative error in this
+      // iteration. Copied only when error is going to be computed
+      if ((i + 1) % relErrStep == 0) {
+        kernel.storeCurrent();
+      }
+      // fill seed pixels explicitly with probability 1 for FG and BG
+      // set probability to 0 of being FG for BG seeds and vice versa
+      for (List<Point> b : seedsPointsBg) {
+        kernel.setValues(b, 0); // set 0 all seed pixel currently considered as BG
+      }
+      // set probability to 1 for of being FG for FG seeds and vice versa
+      kernel.setValues(seedsPointsFg.get(cell), 1); // set 1
+
+      // ------------------- Computation of FG map ----------------------------------------------
+      // Traverse all pixels in FG map and update them according to diffusion from 4 neighbours of
+      // each pixel. NaN and Inf flags will stop iterations (break outerloop) but after updating
+      // all pixels in FG maps
+      stoppedReason = kernel.step(params.dt, diffusion);
+      // - params.gamma[currentSweep] * fg2d[r][c] * bg2d[r][c] - disabled
+
+      // Test state of the flag. Stop iteration if there is NaN or Inf. Iterations are stopped
+      // after full looping over FG maps.
+      if (stoppedReason == StoppedBy.NANS || stoppedReason == StoppedBy.INFS) {
+        break outerloop;
+      }
+      // check error every relErrStep number of iterations
+      if ((i + 1) % relErrStep == 0) {
+        double rele = kernel.computeRelErr();
+        LOGGER.info("Relative error for object " + cell + " = " + rele);
+        if (rele < params.relim[currentSweep]) {
+          stoppedReason = StoppedBy.RELERR;
+          // store number of iters for object, required for limiting iterations for BCK
+          if (!isBackground) {
+            iterations.add(i);
           }
+          break outerloop;
         }
-        // store probabilities over iterations
-        if (QuimP.SUPER_DEBUG) {
-          debugPm =
-                  (debugPm == null) ? new ImageStack(fg.getColumnDimension(), fg.getRowDimension())
-                          : debugPm;
-          if (i > 1000) {
-            if (i % 50 == 0) {
-              debugPm.addSlice(QuimPArrayUtils.realMatrix2ImageProcessor(fg));
-            }
-          } else {
-            debugPm.addSlice(QuimPArrayUtils.realMatrix2ImageProcessor(fg));
+      }
+      // store probabilities over iterations
+      if (QuimP.SUPER_DEBUG) {
+        debugPm = (debugPm == null) ? new ImageStack(image.getColumnDimension(),
+                image.getRowDimension()) : debugPm;
+        if (i > 1000) {
+          if (i % 50 == 0) {
+            debugPm.addSlice(QuimPArrayUtils.realMatrix2ImageProcessor(
+                    new Array2DRowRealMatrix(uncrop(kernel.getSolution(), region, outside))));
           }
+        } else {
+          debugPm.addSlice(QuimPArrayUtils.realMatrix2ImageProcessor(
+                  new Array2DRowRealMatrix(uncrop(kernel.getSolution(), region, outside))));
         }
-        // remember FG map for this iteration to use it to compute relative error in next iteration
-        QuimPArrayUtils.copy2darray(fg2d, tmpFglast2d);
-      } // iter
-      LOGGER.info("Sweep " + currentSweep + " for object " + cell + " stopped by " + stoppedReason
-              + " after " + i + " iteration from " + iter);
-      if (userBckPoints.contains(seedsPointsFg.get(cell))) { // we processed background seeds
-        ret.put(SeedTypes.BACKGROUND, fg); // store it in separate key - needed for proper compar.
-      } else {
-        ret.put(SeedTypes.FOREGROUNDS, fg);
       }
-      // save stack of probability maps (over iterations) for each processed object separately
-      if (QuimP.SUPER_DEBUG) {
-        if (debugPm != null) {
-          ImagePlus debugIm = new ImagePlus("debug", debugPm);
-          String tmp = System.getProperty("java.io.tmpdir");
-          Path p = Paths.get(tmp, "Rw_ProbMap-cell_" + cell);
-          IJ.saveAsTiff(debugIm, p.toString());
-          debugPm = null; // next object
+    } // iter
+    // FG probability map, output from this routine
+    Array2DRowRealMatrix fg =
+            new Array2DRowRealMatrix(uncrop(kernel.getSolution(), region, outside), false);
+    LOGGER.info("Sweep " + currentSweep + " for object " + cell + " stopped by " + stoppedReason
+            + " after " + i + " iteration from " + iter);
+    // save stack of probability maps (over iterations) for each processed object separately
+    if (QuimP.SUPER_DEBUG) {
+      if (debugPm != null) {
+        ImagePlus debugIm = new ImagePlus("debug", debugPm);
+        String tmp = System.getProperty("java.io.tmpdir");
+        Path p = Paths.get(tmp, "Rw_ProbMap-cell_" + cell);
+        IJ.saveAsTiff(debugIm, p.toString());
+      }
+    }
+    return fg;
+  }
+
+  /**
+   * Compute region of image that Euler diffusion must be computed for if
+   * {@link RandomWalkOptions#cropToSeeds} is set.
+   * 
+   * <p>Region is bounding box of all pixels that are not user background seeds, extended by
+   * margin. Pixels outside it are background seeds and their values are set explicitly in every
+   * iteration, so they do not change during diffusion and the result within region is the same as
+   * for whole image. Margin of at least one pixel of background seeds pads region from each side,
+   * then periodic boundary of region connects pixels of the same value like for whole image. If
+   * there is no room for margin along image axis, whole axis is used.
+   * 
+   * @param seedsPointsFg seeds of objects
+   * @param userBckPoints seeds of user background
+   * @param margin number of pixels region is extended by on each side, at least 1 is used
+   * @return region in matrix coordinates (x - column, y - row) or null if whole image must be
+   *         processed, e.g. if there is not exactly one user background
+   */
+  Rectangle getCropRegion(List<List<Point>> seedsPointsFg, List<List<Point>> userBckPoints,
+          int margin) {
+    if (userBckPoints.size() != 1) {
+      return null; // pixels outside region must have the same value in all maps
+    }
+    int rows = image.getRowDimension();
+    int cols = image.getColumnDimension();
+    boolean[] fixed = new boolean[rows * cols]; // user background seeds
+    for (Point p : userBckPoints.get(0)) {
+      fixed[p.row * cols + p.col] = true;
+    }
+    for (List<Point> object : seedsPointsFg) { // object seeds overwrite background
+      for (Point p : object) {
+        fixed[p.row * cols + p.col] = false;
+      }
+    }
+    int minr = rows;
+    int maxr = -1;
+    int minc = cols;
+    int maxc = -1;
+    for (int r = 0; r < rows; r++) {
+      for (int c = 0; c < cols; c++) {
+        if (!fixed[r * cols + c]) {
+          minr = Math.min(minr, r);
+          maxr = Math.max(maxr, r);
+          minc = Math.min(minc, c);
+          maxc = Math.max(maxc, c);
         }
       }
-    } // cell
+    }
+    if (maxr < 0) {
+      return null;
+    }
+    int m = Math.max(margin, 1);
+    Rectangle ret = new Rectangle(0, 0, cols, rows);
+    if (minc - m >= 0 && maxc + m < cols) {
+      ret.x = minc - m;
+      ret.width = maxc - minc + 1 + 2 * m;
+    }
+    if (minr - m >= 0 && maxr + m < rows) {
+      ret.y = minr - m;
+      ret.height = maxr - minr + 1 + 2 * m;
+    }
+    if (ret.width == cols && ret.height == rows) {
+      return null;
+    }
+    return ret;
+  }
+
+  /**
+   * Paste solution computed for region into array of image size.
+   * 
+   * @param solution solution for region [region.height][region.width]
+   * @param region region of image, null for whole image
+   * @param outside value of pixels outside region
+   * @return solution of size of image, solution itself if region is null
+   * @see #getCropRegion(List, List, int)
+   */
+  private double[][] uncrop(double[][] solution, Rectangle region, double outside) {
+    if (region == null) {
+      return solution;
+    }
+    double[][] ret = new double[image.getRowDimension()][image.getColumnDimension()];
+    for (int r = 0; r < ret.length; r++) {
+      if (r < region.y || r >= region.y + region.height) {
+        Arrays.fill(ret[r], outside);
+      } else {
+        Arrays.fill(ret[r], 0, region.x, outside);
+        System.arraycopy(solution[r - region.y], 0, ret[r], region.x, region.width);
+        Arrays.fill(ret[r], region.x + region.width, ret[r].length, outside);
+      }
+    }
     return ret;
   }
 
@@ -8,10 +8,17 @@ import java.awt.event.WindowEvent;
 import java.awt.event.WindowFocusListener;
 import java.net.URI;
 import java.nio.file.Paths;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import javax.swing.JOptionPane;
 import javax.swing.SwingWorker;
@@ -581,6 +588,7 @@ public class RandomWalkSegmentationPlugin_ extends AbstractPluginTemplate {
       isCanceled = true;
       if (isRun == false) {
         view.getWnd().dispose();
+        WeightCache.getInstance().clear(); // release memory kept for reruns
       }
 
     }
@@ -965,58 +973,14 @@ public class RandomWalkSegmentationPlugin_ extends AbstractPluginTemplate {
         prev.updateAndDraw();
       }
       // iterate over all slices after first (may not run for one image and for current image seg)
-      for (int s = 2; s <= is.getSize() && isCanceled == false && oneSlice == false; s++) {
-        LOGGER.info("----- Slice " + s + " -----");
-        Seeds nextseed = new Seeds(); // just to remove null warning
-        obj = new RandomWalkSegmentation(is.getProcessor(s), model.algOptions);
-        // get seeds from previous result
-        if (useSeedStack) { // true - use slices
-          switch (model.getSelectedSeedSource()) {
-            case RGBImage:
-            case Rois:
-              // TODO add support for multislice seeds
-              throw new RandomWalkException(
-                      "This combination is not supported - for ROI seeds should be selected in "
-                              + "single image, " + "not a stack");
-            case QconfFile:
-            case MaskImage:
-              // do no scale here as seedImage is 16bit and it would remove some colors. Assume
-              // clipping
-              nextseed = propagateSeeds.propagateSeed(
-                      seedImage.getStack().getProcessor(s).duplicate().convertToByte(false),
-                      is.getProcessor(s), model.shrinkPower, model.expandPower);
-              nextseed.put(SeedTypes.ROUGHMASK,
-                      seedImage.getStack().getProcessor(s).duplicate().convertToByte(false));
-              nextseed.get(SeedTypes.ROUGHMASK, 1).threshold(0); // to have BW map in case
-              break;
-            default:
-          }
-        } else { // false - use previous frame
-          // modify masks and convert to lists
-          // retIp can be grayscale but it does not matter, return from propagateSeed is BW, each
-          // object separated
-          nextseed = propagateSeeds.propagateSeed(retIp, is.getProcessor(s), model.shrinkPower,
-                  model.expandPower);
-          nextseed.put(SeedTypes.ROUGHMASK, retIp.duplicate());
-          nextseed.get(SeedTypes.ROUGHMASK, 1).threshold(0); // to have BW map in case
-        }
-        // segmentation and results stored for next seeding
-        retIp = obj.run(nextseed);
-        if (retIp == null) { // segmentation failed, return empty image
-          LOGGER.error("Segmentation failed - no Foreground maps provided"); // not very important
-          retIp = new ByteProcessor(image.getWidth(), image.getHeight());
-        }
-        if (model.hatFilter) {
-          retIp = applyHatSnakeFilter(retIp, is.getProcessor(s));
-        }
-        ret.addSlice(retIp); // add next slice
-        if (model.showPreview) { // show preview remaining slices
-          prev.setProcessor(retIp);
-          prev.setTitle("Previev - frame: " + s);
-          prev.setActivated();
-          prev.updateAndDraw();
+      if (oneSlice == false && is.getSize() > 1) {
+        RandomWalkSegmentation last;
+        if (useSeedStack && model.stackThreads > 1) {
+          last = segmentSeedStack(is, seedImage, propagateSeeds, ret, prev);
+        } else {
+          last = segmentStack(is, seedImage, useSeedStack, propagateSeeds, retIp, ret, prev);
         }
-        IJ.showProgress(s - 1, is.getSize());
+        obj = last != null ? last : obj; // null if cancelled before second slice
       }
       // convert to ImagePlus and show
       segmented = new ImagePlus("Segmented_" + image.getTitle(), ret);
@@ -1079,6 +1043,286 @@ public class RandomWalkSegmentationPlugin_ extends AbstractPluginTemplate {
         prev.close();
       }
       model.algOptions.useLocalMean = localMeanUserStatus; // restore status
+      // frames of stack do not share cached data, keep them only for reruns on one slice
+      if (oneSlice == false && is != null && is.getSize() > 1) {
+        LOGGER.info("Stack segmented, releasing " + WeightCache.getInstance());
+        WeightCache.getInstance().clear();
+      }
+    }
+  }
+
+  /**
+   * Segment slices after first one sequentially.
+   * 
+   * <p>If {@link RandomWalkModel#stackThreads} is larger than 1, segmentation object for next
+   * slice is created and its gradients are precomputed in background while current slice is
+   * seeded, segmented and filtered.
+   * 
+   * @param is stack to segment
+   * @param seedImage seed image or stack
+   * @param useSeedStack true if seedImage is stack of seeds
+   * @param propagateSeeds seed propagator
+   * @param retIp result of segmentation of first slice
+   * @param ret output stack, slices are appended
+   * @param prev preview window, can be null
+   * @return segmentation object used for last slice, finished. Background preparation of next
+   *         slice is stopped before return.
+   * @throws QuimpPluginException on segmentation error
+   * @throws InterruptedException if interrupted while waiting for next slice
+   */
+  private RandomWalkSegmentation segmentStack(ImageStack is, ImagePlus seedImage,
+          boolean useSeedStack, PropagateSeeds propagateSeeds, ImageProcessor retIp,
+          ImageStack ret, ImagePlus prev) throws QuimpPluginException, InterruptedException {
+    RandomWalkModel model = (RandomWalkModel) options;
+    RandomWalkSegmentation obj = null;
+    ExecutorService executor = null;
+    Future<RandomWalkSegmentation> next = null;
+    if (model.stackThreads > 1) {
+      executor = Executors.newSingleThreadExecutor();
+      next = executor.submit(prepareSlice(is, 2));
+    }
+    try {
+      for (int s = 2; s <= is.getSize() && isCanceled == false; s++) {
+        LOGGER.info("----- Slice " + s + " -----");
+        Seeds nextseed = new Seeds(); // just to remove null warning
+        if (next != null) {
+          obj = waitFor(next);
+          // prepare next slice while seeding, segmenting and filtering this one
+          next = s < is.getSize() ? executor.submit(prepareSlice(is, s + 1)) : null;
+        } else {
+          obj = new RandomWalkSegmentation(is.getProcessor(s), model.algOptions);
+        }
+        // get seeds from previous result
+        if (useSeedStack) { // true - use slices
+          nextseed = getSeedFromStack(seedImage, is, s, propagateSeeds);
+        } else { // false - use previous frame
+          // modify masks and convert to lists
+          // retIp can be grayscale but it does not matter, return from propagateSeed is BW, each
+          // object separated
+          nextseed = propagateSeeds.propagateSeed(retIp, is.getProcessor(s), model.shrinkPower,
+                  model.expandPower);
+          nextseed.put(SeedTypes.ROUGHMASK, retIp.duplicate());
+          nextseed.get(SeedTypes.ROUGHMASK, 1).threshold(0); // to have BW map in case
+        }
+        // segmentation and results stored for next seeding
+        retIp = segmentSlice(obj, nextseed, is.getProcessor(s));
+        ret.addSlice(retIp); // add next slice
+        showPreview(prev, retIp, s);
+        IJ.showProgress(s - 1, is.getSize());
+      }
+    } finally {
+      if (next != null) {
+        next.cancel(true);
+      }
+      if (executor != null) {
+        shutdown(executor);
+      }
+    }
+    return obj;
+  }
+
+  /**
+   * Segment slices after first one concurrently.
+   * 
+   * <p>Used when seeds are given as stack, then slices are independent. Seeds are propagated in
+   * order of slices (propagator can store history), segmentation and filtering are run on pool of
+   * {@link RandomWalkModel#stackThreads} threads. Number of slices being in progress is bounded,
+   * results are added to output stack in order of slices. If segmentation is cancelled, slices
+   * not started yet are cancelled and those in progress are awaited before return, their results
+   * are discarded.
+   * 
+   * @param is stack to segment
+   * @param seedImage stack of seeds
+   * @param propagateSeeds seed propagator
+   * @param ret output stack, slices are appended
+   * @param prev preview window, can be null
+   * @return segmentation object used for last slice added to output stack or null if none was
+   *         added
+   * @throws QuimpPluginException on segmentation error
+   * @throws InterruptedException if interrupted while waiting for results
+   */
+  private RandomWalkSegmentation segmentSeedStack(ImageStack is, ImagePlus seedImage,
+          PropagateSeeds propagateSeeds, ImageStack ret, ImagePlus prev)
+          throws QuimpPluginException, InterruptedException {
+    RandomWalkModel model = (RandomWalkModel) options;
+    RandomWalkSegmentation obj = null;
+    ExecutorService executor = Executors.newFixedThreadPool(model.stackThreads);
+    Deque<Future<ImageProcessor>> inProgress = new ArrayDeque<>();
+    Deque<RandomWalkSegmentation> objects = new ArrayDeque<>(); // in order of inProgress
+    int done = 2; // next slice to add to output stack
+    try {
+      for (int s = 2; s <= is.getSize() && isCanceled == false; s++) {
+        LOGGER.info("----- Slice " + s + " -----");
+        Seeds nextseed = getSeedFromStack(seedImage, is, s, propagateSeeds);
+        ImageProcessor orIp = is.getProcessor(s);
+        RandomWalkSegmentation sliceObj = new RandomWalkSegmentation(orIp, model.algOptions);
+        inProgress.add(executor.submit(() -> segmentSlice(sliceObj, nextseed, orIp)));
+        objects.add(sliceObj);
+        // limit number of slices kept in memory
+        while (inProgress.size() >= 2 * model.stackThreads) {
+          addSlice(waitFor(inProgress.poll()), ret, prev, done++, is.getSize());
+          obj = objects.poll();
+        }
+      }
+      while (!inProgress.isEmpty() && isCanceled == false) {
+        addSlice(waitFor(inProgress.poll()), ret, prev, done++, is.getSize());
+        obj = objects.poll();
+      }
+    } finally {
+      for (Future<ImageProcessor> f : inProgress) {
+        f.cancel(true);
+      }
+      shutdown(executor);
+    }
+    return obj;
+  }
+
+  /**
+   * Stop executor and wait until its running tasks finish.
+   * 
+   * <p>Segmentation does not respond to interruption, thus tasks in progress run to the end. This
+   * guarantees that no segmentation object is used by other thread after return.
+   * 
+   * @param executor executor to stop
+   */
+  private void shutdown(ExecutorService executor) {
+    executor.shutdownNow();
+    try {
+      while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+        LOGGER.debug("Waiting for slices in progress");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Get seeds for slice from seed stack.
+   * 
+   * @param seedImage stack of seeds
+   * @param is segmented stack
+   * @param s slice number
+   * @param propagateSeeds seed propagator
+   * @return seeds for slice s
+   * @throws QuimpPluginException if seed source does not support stacks
+   */
+  private Seeds getSeedFromStack(ImagePlus seedImage, ImageStack is, int s,
+          PropagateSeeds propagateSeeds) throws QuimpPluginException {
+    RandomWalkModel model = (RandomWalkModel) options;
+    Seeds nextseed = new Seeds(); // just to remove null warning
+    switch (model.getSelectedSeedSource()) {
+      case RGBImage:
+      case Rois:
+        // TODO add support for multislice seeds
+        throw new RandomWalkException(
+                "This combination is not supported - for ROI seeds should be selected in "
+                        + "single image, " + "not a stack");
+      case QconfFile:
+      case MaskImage:
+        // do no scale here as seedImage is 16bit and it would remove some colors. Assume
+        // clipping
+        nextseed = propagateSeeds.propagateSeed(
+                seedImage.getStack().getProcessor(s).duplicate().convertToByte(false),
+                is.getProcessor(s), model.shrinkPower, model.expandPower);
+        nextseed.put(SeedTypes.ROUGHMASK,
+                seedImage.getStack().getProcessor(s).duplicate().convertToByte(false));
+        nextseed.get(SeedTypes.ROUGHMASK, 1).threshold(0); // to have BW map in case
+        break;
+      default:
+    }
+    return nextseed;
+  }
+
+  /**
+   * Create segmentation object for slice and precompute its gradients.
+   * 
+   * @param is segmented stack
+   * @param s slice number
+   * @return task that creates segmentation object
+   */
+  private Callable<RandomWalkSegmentation> prepareSlice(ImageStack is, int s) {
+    RandomWalkModel model = (RandomWalkModel) options;
+    ImageProcessor ip = is.getProcessor(s);
+    return () -> {
+      RandomWalkSegmentation obj = new RandomWalkSegmentation(ip, model.algOptions);
+      obj.precompute();
+      return obj;
+    };
+  }
+
+  /**
+   * Segment one slice and apply hat filter if selected.
+   * 
+   * @param obj segmentation object for slice
+   * @param seeds seeds for slice
+   * @param orIp original slice
+   * @return segmented slice, empty if segmentation failed
+   * @throws QuimpPluginException on segmentation or filtering error
+   */
+  private ImageProcessor segmentSlice(RandomWalkSegmentation obj, Seeds seeds,
+          ImageProcessor orIp) throws QuimpPluginException {
+    ImageProcessor retIp = obj.run(seeds);
+    if (retIp == null) { // segmentation failed, return empty image
+      LOGGER.error("Segmentation failed - no Foreground maps provided"); // not very important
+      retIp = new ByteProcessor(orIp.getWidth(), orIp.getHeight());
+    }
+    if (((RandomWalkModel) options).hatFilter) {
+      retIp = applyHatSnakeFilter(retIp, orIp);
+    }
+    return retIp;
+  }
+
+  /**
+   * Add segmented slice to output stack and update preview and progress.
+   * 
+   * @param retIp segmented slice
+   * @param ret output stack
+   * @param prev preview window, can be null
+   * @param s slice number
+   * @param size number of slices
+   */
+  private void addSlice(ImageProcessor retIp, ImageStack ret, ImagePlus prev, int s, int size) {
+    ret.addSlice(retIp);
+    showPreview(prev, retIp, s);
+    IJ.showProgress(s - 1, size);
+  }
+
+  /**
+   * Show slice in preview window.
+   * 
+   * @param prev preview window, can be null
+   * @param retIp segmented slice
+   * @param s slice number
+   */
+  private void showPreview(ImagePlus prev, ImageProcessor retIp, int s) {
+    if (prev != null) { // show preview remaining slices
+      prev.setProcessor(retIp);
+      prev.setTitle("Previev - frame: " + s);
+      prev.setActivated();
+      prev.updateAndDraw();
+    }
+  }
+
+  /**
+   * Wait for result of background task.
+   * 
+   * @param <T> type of result
+   * @param future task
+   * @return result of task
+   * @throws QuimpPluginException rethrown from task, other exceptions are wrapped
+   * @throws InterruptedException if interrupted while waiting
+   */
+  private <T> T waitFor(Future<T> future) throws QuimpPluginException, InterruptedException {
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof QuimpPluginException) {
+        throw (QuimpPluginException) e.getCause();
+      }
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new RandomWalkException(e.getCause());
     }
   }
 
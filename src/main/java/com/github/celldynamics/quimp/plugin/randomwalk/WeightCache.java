@@ -0,0 +1,567 @@
+package com.github.celldynamics.quimp.plugin.randomwalk;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import org.apache.commons.math3.linear.RealMatrix;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ij.process.ImageProcessor;
+
+/**
+ * Cache of data computed by {@link RandomWalkSegmentation} that depend only on segmented image and
+ * algorithm parameters.
+ *
+ * <p>Holds gradients of images and diffusion weights computed for objects. Weights depend on
+ * image, {@link RandomWalkOptions#alpha}, {@link RandomWalkOptions#beta}, and mean intensity of
+ * seeds (or rough mask if local mean is used), thus they can be reused for different objects,
+ * sweeps and subsequent runs on the same image. Images are identified by their content, not by
+ * reference, so modified image will not use outdated data. Keys hold copies of compared data and
+ * fingerprints are used only for hashing.
+ *
+ * <p>Within one run gradients are computed once per image anyway, thus hits come from:
+ * <ol>
+ * <li>second sweep of objects segmented with local mean, as rough mask does not change,
+ * <li>objects of the same frame with equal mean intensity of seeds,
+ * <li>subsequent runs on the same frame with the same alpha, beta and seeds, e.g. when other
+ * parameters are tuned.
+ * </ol>
+ * Different frames of a stack never share entries. Numbers of hits and misses are reported by
+ * {@link #toString()}.
+ *
+ * <p>Cached data are shared and must not be modified. Cache is bounded by memory occupied by
+ * stored arrays, least recently used entries are removed first. Use {@link #clear()} to release
+ * memory explicitly, e.g. after segmenting stack.
+ *
+ * @author p.baniukiewicz
+ * @see RandomWalkSegmentation#solver(Seeds, RealMatrix[])
+ */
+public class WeightCache {
+
+  /**
+   * The Constant LOGGER.
+   */
+  static final Logger LOGGER = LoggerFactory.getLogger(WeightCache.class.getName());
+
+  /**
+   * Default instance used by {@link RandomWalkSegmentation}.
+   */
+  private static final WeightCache INSTANCE = new WeightCache(Runtime.getRuntime().maxMemory() / 4);
+
+  /**
+   * Stored entries in access order.
+   */
+  private final LinkedHashMap<Object, Entry> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+  /**
+   * Maximal number of bytes occupied by cached arrays.
+   */
+  private long maxBytes;
+
+  /**
+   * Current number of bytes occupied by cached arrays.
+   */
+  private long bytes = 0;
+
+  /**
+   * Number of successful lookups.
+   */
+  private long hits = 0;
+
+  /**
+   * Number of failed lookups.
+   */
+  private long misses = 0;
+
+  /**
+   * Create cache.
+   *
+   * @param maxBytes maximal number of bytes occupied by cached arrays. 0 disables caching.
+   */
+  public WeightCache(long maxBytes) {
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Get default instance shared by all {@link RandomWalkSegmentation} objects.
+   *
+   * @return default cache
+   */
+  public static WeightCache getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Set memory limit. Entries over limit are removed.
+   *
+   * @param maxBytes maximal number of bytes occupied by cached arrays. 0 disables caching.
+   */
+  public synchronized void setMaxBytes(long maxBytes) {
+    this.maxBytes = maxBytes;
+    trim();
+  }
+
+  /**
+   * Remove all entries and reset statistics.
+   */
+  public synchronized void clear() {
+    LOGGER.debug("Clearing " + toString());
+    cache.clear();
+    bytes = 0;
+    hits = 0;
+    misses = 0;
+  }
+
+  /**
+   * Get number of cached entries.
+   *
+   * @return number of entries
+   */
+  public synchronized int size() {
+    return cache.size();
+  }
+
+  /**
+   * Get gradients for image.
+   *
+   * @param image image key
+   * @return gradients as returned by {@link RandomWalkSegmentation} or null if not cached
+   */
+  public synchronized RealMatrix[] getGradients(ImageKey image) {
+    Entry ret = lookup(image);
+    return ret == null ? null : (RealMatrix[]) ret.data;
+  }
+
+  /**
+   * Store gradients for image.
+   *
+   * @param image image key
+   * @param gradients gradients, must not be modified later
+   */
+  public synchronized void putGradients(ImageKey image, RealMatrix[] gradients) {
+    // copy of image kept in key is counted here
+    put(image, gradients, (gradients.length + 1) * image.size());
+  }
+
+  /**
+   * Get weights for object.
+   *
+   * @param key weights key
+   * @return weights or null if not cached
+   */
+  public synchronized Weights getWeights(WeightsKey key) {
+    Entry ret = lookup(key);
+    return ret == null ? null : (Weights) ret.data;
+  }
+
+  /**
+   * Get entry and update statistics.
+   *
+   * @param key key
+   * @return entry or null if not cached
+   */
+  private Entry lookup(Object key) {
+    Entry ret = cache.get(key);
+    if (ret == null) {
+      misses++;
+    } else {
+      hits++;
+    }
+    return ret;
+  }
+
+  /**
+   * Get number of successful lookups since creation or last {@link #clear()}.
+   *
+   * @return number of hits
+   */
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  /**
+   * Get number of failed lookups since creation or last {@link #clear()}.
+   *
+   * @return number of misses
+   */
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see java.lang.Object#toString()
+   */
+  @Override
+  public synchronized String toString() {
+    return "WeightCache [entries=" + cache.size() + ", bytes=" + bytes + ", hits=" + hits
+            + ", misses=" + misses + "]";
+  }
+
+  /**
+   * Store weights.
+   *
+   * @param key weights key
+   * @param weights weights, must not be modified later
+   */
+  public synchronized void putWeights(WeightsKey key, Weights weights) {
+    put(key, weights, weights.size());
+  }
+
+  /**
+   * Store entry and remove old ones if memory limit is exceeded.
+   *
+   * @param key key
+   * @param data data to store
+   * @param size size of data in bytes
+   */
+  private void put(Object key, Object data, long size) {
+    if (size > maxBytes) {
+      return;
+    }
+    Entry old = cache.put(key, new Entry(data, size));
+    if (old != null) {
+      bytes -= old.size;
+    }
+    bytes += size;
+    trim();
+  }
+
+  /**
+   * Remove least recently used entries until memory limit is met.
+   */
+  private void trim() {
+    Iterator<Map.Entry<Object, Entry>> it = cache.entrySet().iterator();
+    while (bytes > maxBytes && it.hasNext()) {
+      bytes -= it.next().getValue().size;
+      it.remove();
+      LOGGER.trace("Removed entry from cache");
+    }
+  }
+
+  /**
+   * Compute fingerprint of matrix content.
+   *
+   * @param matrix matrix
+   * @return hash of all elements
+   */
+  public static long fingerprint(RealMatrix matrix) {
+    long h = 1125899906842597L;
+    for (int r = 0; r < matrix.getRowDimension(); r++) {
+      for (int c = 0; c < matrix.getColumnDimension(); c++) {
+        h = 31 * h + Double.doubleToLongBits(matrix.getEntry(r, c));
+      }
+    }
+    return h;
+  }
+
+  /**
+   * Compute fingerprint of image content.
+   *
+   * @param ip image
+   * @return hash of all pixels and image size
+   */
+  public static long fingerprint(ImageProcessor ip) {
+    long h = 1125899906842597L;
+    h = 31 * h + ip.getWidth();
+    h = 31 * h + ip.getHeight();
+    for (int i = 0; i < ip.getPixelCount(); i++) {
+      h = 31 * h + Float.floatToIntBits(ip.getf(i));
+    }
+    return h;
+  }
+
+  /**
+   * Compare content of images.
+   *
+   * @param ip1 image, can be null
+   * @param ip2 image, can be null
+   * @return true if both are null or have the same size and pixel values
+   */
+  static boolean sameContent(ImageProcessor ip1, ImageProcessor ip2) {
+    if (ip1 == null || ip2 == null) {
+      return ip1 == ip2;
+    }
+    if (ip1.getWidth() != ip2.getWidth() || ip1.getHeight() != ip2.getHeight()) {
+      return false;
+    }
+    for (int i = 0; i < ip1.getPixelCount(); i++) {
+      if (Float.floatToIntBits(ip1.getf(i)) != Float.floatToIntBits(ip2.getf(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Cached data with their size.
+   *
+   * @author p.baniukiewicz
+   *
+   */
+  private static final class Entry {
+    private final Object data;
+    private final long size;
+
+    Entry(Object data, long size) {
+      this.data = data;
+      this.size = size;
+    }
+  }
+
+  /**
+   * Identify segmented image.
+   *
+   * @author p.baniukiewicz
+   *
+   */
+  public static final class ImageKey {
+    private final long fingerprint;
+    private final double[][] data;
+    private final int rows;
+    private final int cols;
+    private final int maxTheoreticalIntSqr;
+
+    /**
+     * Create key.
+     *
+     * @param image segmented image, copied
+     * @param maxTheoreticalIntSqr normalisation value used for image
+     */
+    public ImageKey(RealMatrix image, int maxTheoreticalIntSqr) {
+      this.fingerprint = fingerprint(image);
+      this.data = image.getData();
+      this.rows = image.getRowDimension();
+      this.cols = image.getColumnDimension();
+      this.maxTheoreticalIntSqr = maxTheoreticalIntSqr;
+    }
+
+    /**
+     * Size of one double matrix of image size.
+     *
+     * @return size in bytes
+     */
+    long size() {
+      return 8L * rows * cols;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Object#hashCode()
+     */
+    @Override
+    public int hashCode() {
+      return Objects.hash(fingerprint, rows, cols, maxTheoreticalIntSqr);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (obj == null || getClass() != obj.getClass()) {
+        return false;
+      }
+      ImageKey other = (ImageKey) obj;
+      return fingerprint == other.fingerprint && rows == other.rows && cols == other.cols
+              && maxTheoreticalIntSqr == other.maxTheoreticalIntSqr
+              && Arrays.deepEquals(data, other.data);
+    }
+  }
+
+  /**
+   * Identify weights computed for object.
+   *
+   * @author p.baniukiewicz
+   *
+   */
+  public static final class WeightsKey {
+    private final ImageKey image;
+    private final double alpha;
+    private final double beta;
+    private final double meanSeed;
+    private final long localMeanMaskFingerprint;
+    private final ImageProcessor localMeanMask;
+    private final int localMeanMaskSize;
+    private final boolean averaged;
+    private final boolean single;
+
+    /**
+     * Create key.
+     *
+     * @param image segmented image
+     * @param params parameters, alpha and beta are used
+     * @param meanSeed global mean intensity of seeds, ignored if localMeanMask is not null
+     * @param localMeanMask rough mask if local mean is used, null otherwise. Copied.
+     * @param averaged true if weights are multiplied by averaged weights
+     * @param single true if weights are stored in single precision
+     */
+    public WeightsKey(ImageKey image, RandomWalkOptions params, double meanSeed,
+            ImageProcessor localMeanMask, boolean averaged, boolean single) {
+      this.image = image;
+      this.alpha = params.alpha;
+      this.beta = params.beta;
+      if (localMeanMask != null) {
+        this.meanSeed = Double.NaN;
+        this.localMeanMaskFingerprint = fingerprint(localMeanMask);
+        this.localMeanMask = localMeanMask.duplicate();
+        this.localMeanMaskSize = params.localMeanMaskSize;
+      } else {
+        this.meanSeed = meanSeed;
+        this.localMeanMaskFingerprint = 0;
+        this.localMeanMask = null;
+        this.localMeanMaskSize = 0;
+      }
+      this.averaged = averaged;
+      this.single = single;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Object#hashCode()
+     */
+    @Override
+    public int hashCode() {
+      return Objects.hash(image, alpha, beta, meanSeed, localMeanMaskFingerprint,
+              localMeanMaskSize, averaged, single);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (obj == null || getClass() != obj.getClass()) {
+        return false;
+      }
+      WeightsKey other = (WeightsKey) obj;
+      return image.equals(other.image)
+              && Double.doubleToLongBits(alpha) == Double.doubleToLongBits(other.alpha)
+              && Double.doubleToLongBits(beta) == Double.doubleToLongBits(other.beta)
+              && Double.doubleToLongBits(meanSeed) == Double.doubleToLongBits(other.meanSeed)
+              && localMeanMaskFingerprint == other.localMeanMaskFingerprint
+              && localMeanMaskSize == other.localMeanMaskSize && averaged == other.averaged
+              && single == other.single && sameContent(localMeanMask, other.localMeanMask);
+    }
+  }
+
+  /**
+   * Diffusion weights in four directions and diffusion constant computed for them.
+   *
+   * <p>Weights are stored either in double or in single precision, arrays of other precision are
+   * null.
+   *
+   * @author p.baniukiewicz
+   *
+   */
+  public static final class Weights {
+    /**
+     * Weight to right.
+     */
+    final double[][] wr;
+    /**
+     * Weight to left.
+     */
+    final double[][] wl;
+    /**
+     * Weight to top.
+     */
+    final double[][] wt;
+    /**
+     * Weight to bottom.
+     */
+    final double[][] wb;
+    /**
+     * Weight to right, single precision.
+     */
+    final float[][] wrf;
+    /**
+     * Weight to left, single precision.
+     */
+    final float[][] wlf;
+    /**
+     * Weight to top, single precision.
+     */
+    final float[][] wtf;
+    /**
+     * Weight to bottom, single precision.
+     */
+    final float[][] wbf;
+    /**
+     * Diffusion constant.
+     */
+    final double diffusion;
+
+    /**
+     * Create weights.
+     *
+     * @param wr weight to right
+     * @param wl weight to left
+     * @param wt weight to top
+     * @param wb weight to bottom
+     * @param diffusion diffusion constant
+     */
+    public Weights(double[][] wr, double[][] wl, double[][] wt, double[][] wb, double diffusion) {
+      this.wr = wr;
+      this.wl = wl;
+      this.wt = wt;
+      this.wb = wb;
+      this.wrf = null;
+      this.wlf = null;
+      this.wtf = null;
+      this.wbf = null;
+      this.diffusion = diffusion;
+    }
+
+    /**
+     * Create weights in single precision.
+     *
+     * @param wr weight to right
+     * @param wl weight to left
+     * @param wt weight to top
+     * @param wb weight to bottom
+     * @param diffusion diffusion constant
+     * @see FloatDiffusionKernel
+     */
+    public Weights(float[][] wr, float[][] wl, float[][] wt, float[][] wb, double diffusion) {
+      this.wr = null;
+      this.wl = null;
+      this.wt = null;
+      this.wb = null;
+      this.wrf = wr;
+      this.wlf = wl;
+      this.wtf = wt;
+      this.wbf = wb;
+      this.diffusion = diffusion;
+    }
+
+    /**
+     * Size of stored arrays.
+     *
+     * @return size in bytes
+     */
+    long size() {
+      if (wrf != null) {
+        return 4 * 4L * wrf.length * wrf[0].length;
+      }
+      return 4 * 8L * wr.length * wr[0].length;
+    }
+  }
+}
@@ -276,7 +276,7 @@ public class QuimpDataConverter {
    * 
    * @param id new Id of snake
    * @return Snake object with Nodes in order of data given on input. Can be null. Normals depend
-   *         on BOA_.qState.segParam.expandSnake
+   *         on BOA_.getQState().segParam.expandSnake
    * @throws BoaException when there is less than 3 nodes.
    * @see com.github.celldynamics.quimp.Snake#Snake(double[], double[], int)
    * @see com.github.celldynamics.quimp.Snake#removeNode(com.github.celldynamics.quimp.Node)
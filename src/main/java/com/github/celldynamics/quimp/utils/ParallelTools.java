@@ -0,0 +1,147 @@
+package com.github.celldynamics.quimp.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Run independent parts of computations on fixed thread pools.
+ *
+ * <p>Results are always collected in order of tasks, so output does not depend on number of
+ * threads.
+ *
+ * @author p.baniukiewicz
+ *
+ */
+public class ParallelTools {
+
+  /**
+   * Task processing range of indexes.
+   *
+   * @author p.baniukiewicz
+   *
+   */
+  @FunctionalInterface
+  public interface RangeTask {
+    /**
+     * Process indexes from <tt>from</tt> to <tt>to</tt>, exclusive.
+     *
+     * @param from first index
+     * @param to index after last one
+     */
+    void run(int from, int to);
+  }
+
+  /**
+   * Task computing result for one index.
+   *
+   * @author p.baniukiewicz
+   *
+   * @param <T> type of result
+   */
+  @FunctionalInterface
+  public interface IndexTask<T> {
+    /**
+     * Compute result for index.
+     *
+     * @param index index of task
+     * @return result
+     * @throws Exception on any error
+     */
+    T call(int index) throws Exception;
+  }
+
+  /**
+   * Split indexes 0..count-1 into contiguous blocks and process them concurrently.
+   *
+   * <p>Blocks are processed in calling thread if <tt>threads</tt> is 1 or less.
+   *
+   * @param count number of indexes
+   * @param threads number of threads, also number of blocks
+   * @param task task run for each block
+   * @throws IllegalStateException if any block failed or waiting was interrupted
+   */
+  public static void forBlocks(int count, int threads, RangeTask task) {
+    threads = Math.min(count, threads);
+    if (threads <= 1) {
+      task.run(0, count);
+      return;
+    }
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    try {
+      forBlocks(pool, count, threads, task);
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /**
+   * Split indexes 0..count-1 into contiguous blocks and process them on given pool.
+   *
+   * <p>Pool is not shut down.
+   *
+   * @param pool pool to use
+   * @param count number of indexes
+   * @param blocks number of blocks
+   * @param task task run for each block
+   * @throws IllegalStateException if any block failed or waiting was interrupted
+   */
+  public static void forBlocks(ExecutorService pool, int count, int blocks, RangeTask task) {
+    blocks = Math.max(1, Math.min(count, blocks));
+    List<Future<?>> futures = new ArrayList<>(blocks);
+    for (int t = 0; t < blocks; t++) {
+      final int from = (int) ((long) count * t / blocks);
+      final int to = (int) ((long) count * (t + 1) / blocks);
+      futures.add(pool.submit(() -> task.run(from, to)));
+    }
+    try {
+      for (Future<?> f : futures) {
+        f.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Computation interrupted", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    } finally {
+      for (Future<?> f : futures) {
+        f.cancel(true); // no-op for finished
+      }
+    }
+  }
+
+  /**
+   * Compute results for indexes 0..count-1 concurrently.
+   *
+   * @param count number of tasks
+   * @param threads number of threads
+   * @param task task computing result for one index
+   * @return results in order of indexes
+   * @throws InterruptedException if interrupted while waiting
+   * @throws ExecutionException failure of first task, in order of indexes, that failed
+   */
+  public static <T> List<T> map(int count, int threads, IndexTask<T> task)
+          throws InterruptedException, ExecutionException {
+    List<T> ret = new ArrayList<>(count);
+    if (count == 0) {
+      return ret;
+    }
+    ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(count, threads)));
+    try {
+      List<Future<T>> futures = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+        final int index = i;
+        futures.add(pool.submit(() -> task.call(index)));
+      }
+      for (Future<T> f : futures) {
+        ret.add(f.get());
+      }
+      return ret;
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+}
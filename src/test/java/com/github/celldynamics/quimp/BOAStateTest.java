@@ -1,5 +1,21 @@
 package com.github.celldynamics.quimp;
 
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.lang.reflect.Field;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.github.celldynamics.quimp.BOAState.SegParam;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.process.ByteProcessor;
+
 /**
  * Verify keys in JSon for tested class (field naming).
  * 
@@ -18,4 +34,86 @@ public class BOAStateTest extends JsonKeyMatchTemplate<BOAState> {
     obj = new BOAState();
     indir = "com.github.celldynamics.quimp.BOAState";
   }
+
+  /**
+   * Test of {@link BOAState#store(int)} and {@link BOAState#restore(int)}.
+   * 
+   * <p>Post: unchanged parameters are shared between consecutive frames, restored frame gets own
+   * copy that does not affect others.
+   * 
+   * @throws Exception on error
+   */
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testStoreRestore() throws Exception {
+    ImageStack stack = new ImageStack(10, 10);
+    for (int i = 0; i < 5; i++) {
+      stack.addSlice(new ByteProcessor(10, 10));
+    }
+    BOAState state = new BOAState(new ImagePlus("", stack));
+    Field f = BOAState.class.getDeclaredField("segParamSnapshots");
+    f.setAccessible(true);
+    List<SegParam> segParamSnapshots = (List<SegParam>) f.get(state);
+
+    for (int frame = 1; frame <= 3; frame++) {
+      state.store(frame);
+    }
+    state.segParam.f_image = 0.5;
+    state.store(4);
+    state.store(5);
+    assertThat(segParamSnapshots.get(1), is(sameInstance(segParamSnapshots.get(0))));
+    assertThat(segParamSnapshots.get(2), is(sameInstance(segParamSnapshots.get(0))));
+    assertThat(segParamSnapshots.get(3), is(not(sameInstance(segParamSnapshots.get(2)))));
+    assertThat(segParamSnapshots.get(4), is(sameInstance(segParamSnapshots.get(3))));
+    assertThat(state.snakePluginListSnapshots.get(4),
+            is(sameInstance(state.snakePluginListSnapshots.get(0))));
+
+    state.restore(2);
+    state.segParam.f_image = 0.1; // edit restored frame
+    assertThat(segParamSnapshots.get(1).f_image, is(0.1));
+    assertThat(segParamSnapshots.get(0).f_image, is(state.new SegParam().f_image));
+    assertThat(segParamSnapshots.get(2).f_image, is(state.new SegParam().f_image));
+    assertThat(state.snakePluginList, is(sameInstance(state.snakePluginListSnapshots.get(1))));
+    assertThat(state.snakePluginList,
+            is(not(sameInstance(state.snakePluginListSnapshots.get(0)))));
+  }
+
+  /**
+   * Test of {@link BOAState#restore(int)}.
+   * 
+   * <p>Pre: all frames share parameters, frames 2 and 4 are restored before frame 3
+   * 
+   * <p>Post: frame 3 gets own copy although its neighbours do not share it any more, edit of frame
+   * 3 does not change frames 1 and 5.
+   * 
+   * @throws Exception on error
+   */
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testRestore_nonAdjacent() throws Exception {
+    ImageStack stack = new ImageStack(10, 10);
+    for (int i = 0; i < 5; i++) {
+      stack.addSlice(new ByteProcessor(10, 10));
+    }
+    BOAState state = new BOAState(new ImagePlus("", stack));
+    Field f = BOAState.class.getDeclaredField("segParamSnapshots");
+    f.setAccessible(true);
+    List<SegParam> segParamSnapshots = (List<SegParam>) f.get(state);
+    for (int frame = 1; frame <= 5; frame++) {
+      state.store(frame);
+    }
+    assertThat(segParamSnapshots.get(4), is(sameInstance(segParamSnapshots.get(0))));
+
+    state.restore(2);
+    state.restore(4);
+    state.restore(3);
+    state.segParam.f_image = 0.1; // edit restored frame
+    assertThat(segParamSnapshots.get(2).f_image, is(0.1));
+    assertThat(segParamSnapshots.get(0).f_image, is(state.new SegParam().f_image));
+    assertThat(segParamSnapshots.get(4).f_image, is(state.new SegParam().f_image));
+    for (int i : new int[] { 0, 1, 3, 4 }) {
+      assertThat(state.snakePluginList,
+              is(not(sameInstance(state.snakePluginListSnapshots.get(i)))));
+    }
+  }
 }
@@ -0,0 +1,144 @@
+package com.github.celldynamics.quimp;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.celldynamics.quimp.BOAState.BOAp;
+import com.github.celldynamics.quimp.BOAState.SegParam;
+import com.github.celldynamics.quimp.geom.ExtendedVector2d;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.gui.OvalRoi;
+import ij.gui.Roi;
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+
+/**
+ * Test of {@link BoaEngine}.
+ *
+ * @author p.baniukiewicz
+ */
+public class BoaEngineTest {
+
+  private ImagePlus image;
+
+  /**
+   * Create stack with moving disc.
+   *
+   * @throws Exception the exception
+   */
+  @Before
+  public void setUp() throws Exception {
+    BOA_.qState = new BOAState(null);
+    ImageStack stack = new ImageStack(200, 200);
+    for (int f = 0; f < 3; f++) {
+      ImageProcessor ip = new ByteProcessor(200, 200);
+      ip.setValue(200);
+      ip.fill(new OvalRoi(60 + 2 * f, 60, 80, 80));
+      stack.addSlice(ip);
+    }
+    image = new ImagePlus("disc", stack);
+  }
+
+  /**
+   * Segment stack headless.
+   *
+   * <p>Post: snake at each frame around disc
+   *
+   * @throws Exception on error
+   */
+  @Test
+  public void testRun() throws Exception {
+    BoaEngine engine =
+            new BoaEngine(image, new Roi[] { new OvalRoi(40, 40, 120, 120) },
+                    BOA_.qState.new SegParam(), null);
+    BOAState state = engine.run();
+    assertThat(state.nest.size(), is(1));
+    for (int f = 1; f <= 3; f++) {
+      Snake snake = state.nest.getHandler(0).getStoredSnake(f);
+      assertThat(snake, is(notNullValue()));
+      ExtendedVector2d c = snake.getCentroid();
+      assertThat(c.getX(), is(closeTo(100 + 2 * (f - 1), 3)));
+      assertThat(c.getY(), is(closeTo(100, 3)));
+    }
+  }
+
+  /**
+   * Segment stacks concurrently.
+   *
+   * <p>Post: the same results as for sequential processing, parameters of one stack do not affect
+   * others
+   *
+   * @throws Exception on error
+   */
+  @Test
+  public void testRunBatch() throws Exception {
+    List<BoaEngine> engines = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      SegParam sp = BOA_.qState.new SegParam();
+      sp.f_image = 0.1 + 0.05 * i; // different parameters for each stack
+      engines.add(new BoaEngine(image, new Roi[] { new OvalRoi(40, 40, 120, 120) }, sp, null));
+    }
+    List<BOAState> ret = BoaEngine.runBatch(engines, 4);
+    for (int i = 0; i < 4; i++) {
+      SegParam sp = BOA_.qState.new SegParam();
+      sp.f_image = 0.1 + 0.05 * i;
+      BOAState expected =
+              new BoaEngine(image, new Roi[] { new OvalRoi(40, 40, 120, 120) }, sp, null).run();
+      for (int f = 1; f <= 3; f++) {
+        Snake s = ret.get(i).nest.getHandler(0).getStoredSnake(f);
+        Snake e = expected.nest.getHandler(0).getStoredSnake(f);
+        assertThat(s.xtoArr(), is(e.xtoArr()));
+        assertThat(s.ytoArr(), is(e.ytoArr()));
+      }
+    }
+  }
+
+  /**
+   * Segment stack with snakes of frame tightened concurrently.
+   *
+   * <p>Post: the same snakes as tightened one after another
+   *
+   * @throws Exception on error
+   */
+  @Test
+  public void testRun_threads() throws Exception {
+    ImageStack stack = new ImageStack(300, 300);
+    for (int f = 0; f < 3; f++) {
+      ImageProcessor ip = new ByteProcessor(300, 300);
+      ip.setValue(200);
+      for (int c = 0; c < 3; c++) {
+        ip.fill(new OvalRoi(20 + 90 * c + 2 * f, 100, 60 + 5 * c, 60));
+      }
+      stack.addSlice(ip);
+    }
+    ImagePlus cells = new ImagePlus("cells", stack);
+    Roi[] rois = new Roi[3];
+    for (int c = 0; c < 3; c++) {
+      rois[c] = new OvalRoi(10 + 90 * c, 90, 85, 80);
+    }
+    BOAState expected =
+            new BoaEngine(cells, rois, BOA_.qState.new SegParam(), BOA_.qState.new BOAp()).run();
+    BOAp boap = BOA_.qState.new BOAp();
+    boap.tightenThreads = 4;
+    BOAState ret = new BoaEngine(cells, rois, BOA_.qState.new SegParam(), boap).run();
+    assertThat(ret.nest.size(), is(3));
+    for (int c = 0; c < 3; c++) {
+      for (int f = 1; f <= 3; f++) {
+        Snake s = ret.nest.getHandler(c).getStoredSnake(f);
+        Snake e = expected.nest.getHandler(c).getStoredSnake(f);
+        assertThat(s.xtoArr(), is(e.xtoArr()));
+        assertThat(s.ytoArr(), is(e.ytoArr()));
+      }
+    }
+  }
+}
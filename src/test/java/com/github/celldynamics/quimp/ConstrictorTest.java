@@ -0,0 +1,115 @@
+package com.github.celldynamics.quimp;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.celldynamics.quimp.geom.ExtendedVector2d;
+
+import ij.gui.OvalRoi;
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+
+/**
+ * Test of {@link Constrictor}.
+ *
+ * @author p.baniukiewicz
+ */
+public class ConstrictorTest {
+
+  private ImageProcessor ip;
+
+  /**
+   * Setup.
+   *
+   * @throws Exception the exception
+   */
+  @Before
+  public void setUp() throws Exception {
+    BOA_.qState = new BOAState(null);
+    ip = new ByteProcessor(200, 200);
+    ip.setValue(200);
+    ip.fill(new OvalRoi(60, 70, 80, 60));
+  }
+
+  /**
+   * Compare constriction of packed snake with constriction of {@link Snake}.
+   *
+   * <p>Post: the same nodes, normals, velocities and frozen status
+   *
+   * @throws Exception on error
+   */
+  @Test
+  public void testConstrict_packed() throws Exception {
+    Snake snake = new Snake(new OvalRoi(30, 30, 140, 140), 0, false);
+    Snake expected = new Snake(snake);
+    Constrictor constrictor = new Constrictor();
+    PackedSnake packed = new PackedSnake(snake);
+    for (int i = 0; i < 200; i++) {
+      boolean frozen = constrictor.constrict(expected, ip);
+      assertThat(constrictor.constrict(packed, ip), is(frozen));
+    }
+    packed.store();
+    assertThat(snake.isFrozen(), is(expected.isFrozen()));
+    Node n = snake.getHead();
+    Node e = expected.getHead();
+    do {
+      assertThat(n.getPoint(), is(e.getPoint()));
+      assertThat(n.getNormal(), is(e.getNormal()));
+      assertThat(n.getTangent(), is(e.getTangent()));
+      assertThat(n.getVel(), is(e.getVel()));
+      assertThat(n.isFrozen(), is(e.isFrozen()));
+      n = n.getNext();
+      e = e.getNext();
+    } while (!n.isHead());
+  }
+
+  /**
+   * Compare freezing of nodes in contact with testing all nodes against all segments.
+   *
+   * <p>Post: the same nodes frozen in both snakes
+   *
+   * @throws Exception on error
+   */
+  @Test
+  public void testFreezeProx() throws Exception {
+    BOA_.qState.boap.proxFreeze = 3;
+    Snake a = new Snake(new OvalRoi(30, 30, 80, 70), 0, false);
+    Snake b = new Snake(new OvalRoi(105, 40, 60, 90), 1, false);
+    a.freezeNode(a.getHead().getNext()); // some frozen already
+    Snake ea = new Snake(a);
+    Snake eb = new Snake(b);
+    new Constrictor().freezeProx(a, new SegmentGrid(b, BOA_.qState.boap.proxFreeze));
+    // reference - all nodes of ea against all segments of eb
+    Node an = ea.getHead();
+    do {
+      Node bn = eb.getHead();
+      do {
+        if (!(an.isFrozen() && bn.isFrozen()) && ExtendedVector2d.distPointToSegment(
+                an.getPoint(), bn.getPoint(), bn.getNext().getPoint()) < 3) {
+          ea.freezeNode(an);
+          eb.freezeNode(bn);
+          eb.freezeNode(bn.getNext());
+          break;
+        }
+        bn = bn.getNext();
+      } while (!bn.isHead());
+      an = an.getNext();
+    } while (!an.isHead());
+
+    int frozen = 0;
+    for (Snake[] s : new Snake[][] { { a, ea }, { b, eb } }) {
+      Node n = s[0].getHead();
+      Node e = s[1].getHead();
+      do {
+        assertThat(n.isFrozen(), is(e.isFrozen()));
+        frozen += n.isFrozen() ? 1 : 0;
+        n = n.getNext();
+        e = e.getNext();
+      } while (!n.isHead());
+    }
+    assertThat(frozen > 2, is(true));
+  }
+}
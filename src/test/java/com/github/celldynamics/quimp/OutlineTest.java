@@ -501,4 +501,33 @@ public class OutlineTest extends JsonKeyMatchTemplate<Outline> {
     f.setDouble(Shape.class, 0.5);
   }
 
+  /**
+   * Test of {@link Outline#cutSelfIntersects()}.
+   * 
+   * <p>Post: loop is cut out at intersection point
+   * 
+   * @throws Exception Exception
+   */
+  @Test
+  public void testCutSelfIntersects() throws Exception {
+    List<Point2d> list = new ArrayList<>();
+    list.add(new Point2d(0, 0));
+    list.add(new Point2d(20, 0));
+    list.add(new Point2d(20, 20));
+    list.add(new Point2d(10, 20));
+    list.add(new Point2d(14, 24)); // loop crossing edge (20,20)-(10,20)
+    list.add(new Point2d(14, 16));
+    list.add(new Point2d(0, 20));
+    Outline outline = new QuimpDataConverter(list).getOutline();
+
+    assertThat(outline.cutSelfIntersects(), is(true));
+    assertThat(outline.getNumPoints(), is(6));
+    boolean found = false;
+    for (Vert v : outline) {
+      found |= Math.abs(v.getX() - 14) < 1e-6 && Math.abs(v.getY() - 20) < 1e-6;
+    }
+    assertThat(found, is(true));
+    assertThat(outline.cutSelfIntersects(), is(false));
+  }
+
 }
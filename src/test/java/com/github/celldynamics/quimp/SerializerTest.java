@@ -1,5 +1,6 @@
 package com.github.celldynamics.quimp;
 
+import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.IsInstanceOf.instanceOf;
 import static org.junit.Assert.assertEquals;
@@ -20,9 +21,11 @@ import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.github.celldynamics.quimp.filesystem.ColumnarQconf;
 import com.github.celldynamics.quimp.filesystem.DataContainer;
 import com.github.celldynamics.quimp.filesystem.IQuimpSerialize;
 import com.github.celldynamics.quimp.filesystem.versions.Converter170202;
+import com.google.gson.Gson;
 import com.google.gson.JsonSyntaxException;
 import com.google.gson.annotations.Since;
 
@@ -218,6 +221,58 @@ public class SerializerTest {
     assertEquals(out.timeStamp, version);
   }
 
+  /**
+   * Test method for com.github.celldynamics.quimp.Serializer.save(String) with compression.
+   * 
+   * <p>Post: compressed file is detected and loaded, the same object restored
+   * 
+   * @throws Exception Exception
+   */
+  @Test
+  public void testSaveGzip() throws Exception {
+    Serializer<TestClass> save = new Serializer<>(testClass, version);
+    save.setGzip();
+    save.save(tmpdir + "local_gz.josn");
+    assertThat(Serializer.isGzipFile(new File(tmpdir + "local_gz.josn")), is(true));
+
+    Serializer<TestClass> s = new Serializer<>(TestClass.class, version);
+    Serializer<TestClass> out = s.load(tmpdir + "local_gz.josn");
+    assertEquals(testClass.al, out.obj.al);
+    assertEquals(testClass.a, out.obj.a);
+    assertEquals(out.timeStamp, version);
+    assertThat(out.isGzip(), is(true));
+  }
+
+  /**
+   * Test method for com.github.celldynamics.quimp.Serializer.save(String) for columnar container.
+   * 
+   * <p>Pre: QCONF with snakes, outlines and maps
+   * 
+   * <p>Post: Saved as columnar and loaded back gives the same data
+   * 
+   * @throws Exception Exception
+   */
+  @Test
+  public void testSaveColumnar() throws Exception {
+    QuimpVersion toolversion = new QuimpVersion("20.20.02", "baniuk", "QuimP");
+    Serializer<DataContainer> s = new Serializer<>(DataContainer.class, toolversion);
+    s.registerConverter(new Converter170202<>(toolversion));
+    DataContainer dt = s.load("src/test/Resources-static/ticket199/fluoreszenz-test.QCONF").obj;
+    dt.beforeSerialize();
+    String expected = new Gson().toJson(dt);
+
+    Serializer<DataContainer> save = new Serializer<>(dt, toolversion);
+    save.setColumnar();
+    save.save(tmpdir + "local_col.QCONF");
+    assertThat(ColumnarQconf.isColumnarFile(new File(tmpdir + "local_col.QCONF")), is(true));
+
+    Serializer<DataContainer> l = new Serializer<>(DataContainer.class, toolversion);
+    Serializer<DataContainer> out = l.load(tmpdir + "local_col.QCONF");
+    assertThat(out.isColumnar(), is(true));
+    out.obj.beforeSerialize();
+    assertEquals(expected, new Gson().toJson(out.obj));
+  }
+
   /**
    * Test method for com.github.celldynamics.quimp.Serializer.load(final String)
    * 
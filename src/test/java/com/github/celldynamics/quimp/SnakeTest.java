@@ -8,7 +8,9 @@ import static org.junit.Assert.assertEquals;
 import java.awt.Rectangle;
 import java.io.IOException;
 import java.lang.reflect.Field;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.junit.After;
@@ -20,6 +22,7 @@ import org.slf4j.LoggerFactory;
 
 import com.github.celldynamics.quimp.geom.ExtendedVector2d;
 import com.github.celldynamics.quimp.plugin.utils.QuimpDataConverter;
+import com.github.celldynamics.quimp.utils.ParallelTools;
 
 import ij.gui.PolygonRoi;
 
@@ -38,6 +41,11 @@ public class SnakeTest extends JsonKeyMatchTemplate<Snake> {
   /** The info. */
   private QuimpVersion info = new QuimpVersion();
 
+  /**
+   * Node resolution set in {@link #setUp()}, restored after test.
+   */
+  private double nodeRes;
+
   /**
    * Configure test.
    * 
@@ -55,6 +63,7 @@ public class SnakeTest extends JsonKeyMatchTemplate<Snake> {
   @Before
   public void setUp() throws Exception {
     BOA_.qState = new BOAState(null);
+    nodeRes = BOA_.qState.segParam.getNodeRes();
     Node head = NodeTest.getRandomNodePointList().get(0);
     obj = new Snake(head, 4, 1);
 
@@ -69,6 +78,7 @@ public class SnakeTest extends JsonKeyMatchTemplate<Snake> {
   @After
   public void tearDown() throws Exception {
     obj = null;
+    BOA_.qState.segParam.setNodeRes(nodeRes);
   }
 
   /**
@@ -312,4 +322,103 @@ public class SnakeTest extends JsonKeyMatchTemplate<Snake> {
     f.setDouble(Shape.class, 0.5);
   }
 
+  /**
+   * Test method for {@link Snake#correctDistance(boolean)}.
+   * 
+   * <p>Pre: copies of irregular snake with the same ID corrected one after another and concurrently
+   * 
+   * <p>Post: the same nodes in all copies
+   * 
+   * @throws Exception on error
+   */
+  @Test
+  public void testCorrectDistance_threads() throws Exception {
+    BOA_.qState.segParam.setNodeRes(6);
+    Random rnd = new Random(0);
+    double[] t = new double[120];
+    for (int i = 0; i < t.length; i++) {
+      t[i] = 2 * Math.PI * rnd.nextDouble();
+    }
+    Arrays.sort(t);
+    double[] x = new double[t.length];
+    double[] y = new double[t.length];
+    for (int i = 0; i < t.length; i++) {
+      x[i] = 100 + 50 * Math.cos(t[i]);
+      y[i] = 100 + 50 * Math.sin(t[i]);
+    }
+    Snake ref = new Snake(x, y, 3);
+    for (int r = 0; r < 5; r++) {
+      ref.correctDistance(true);
+    }
+    List<Snake> ret = ParallelTools.map(8, 8, i -> {
+      Snake s = new Snake(x, y, 3);
+      for (int r = 0; r < 5; r++) {
+        s.correctDistance(true);
+      }
+      return s;
+    });
+    for (Snake s : ret) {
+      assertThat(s.getNumPoints(), is(ref.getNumPoints()));
+      assertThat(s.xtoArr(), is(ref.xtoArr()));
+      assertThat(s.ytoArr(), is(ref.ytoArr()));
+    }
+  }
+
+  /**
+   * Test method for {@link Snake#correctDistance(boolean)}.
+   * 
+   * <p>Pre: circle with edges longer than max_dist and pairs of nodes closer than min_dist, nodes
+   * processed clockwise and counter-clockwise (direction is the first value drawn by
+   * {@link Snake#random()} seeded with snake ID)
+   * 
+   * <p>Post: in both directions one node inserted in each long edge and one node of each close
+   * pair removed, all edges within [min_dist, max_dist]
+   * 
+   * @throws Exception on error
+   */
+  @Test
+  public void testCorrectDistance_directions() throws Exception {
+    BOA_.qState.segParam.setNodeRes(6);
+    double minDist = BOA_.qState.segParam.getMin_dist();
+    double maxDist = BOA_.qState.segParam.getMax_dist();
+    // lengths of edges, last edge closes circle
+    double[] edges = { 9, 9, 15, 9, 1, 9, 9, 9, 15, 9, 9, 9 };
+    int repeats = 3;
+    double r = 55;
+    double[] x = new double[edges.length * repeats + 1];
+    double[] y = new double[x.length];
+    double angle = 0;
+    for (int i = 0; i < x.length; i++) {
+      x[i] = 100 + r * Math.cos(angle);
+      y[i] = 100 + r * Math.sin(angle);
+      angle += 2 * Math.asin(edges[i % edges.length] / (2 * r));
+    }
+    // one node added for each 15 and one removed for each 1
+    int expected = x.length + 2 * repeats - repeats;
+    // snake IDs that process nodes clockwise (first value < 0.5) and counter-clockwise
+    int[] ids = new int[2];
+    int found = 0;
+    for (int id = 0; found < 3; id++) {
+      boolean clockwise = new Random(id).nextDouble() < 0.5;
+      if (clockwise && (found & 1) == 0) {
+        ids[0] = id;
+        found |= 1;
+      } else if (!clockwise && (found & 2) == 0) {
+        ids[1] = id;
+        found |= 2;
+      }
+    }
+    for (int id : ids) {
+      Snake s = new Snake(x, y, id);
+      s.correctDistance(false);
+      assertThat(s.getNumPoints(), is(expected));
+      double[] sx = s.xtoArr();
+      double[] sy = s.ytoArr();
+      for (int i = 0; i < sx.length; i++) {
+        int n = (i + 1) % sx.length;
+        double d = Math.hypot(sx[n] - sx[i], sy[n] - sy[i]);
+        assertThat("edge " + i + " of snake " + id, d >= minDist && d <= maxDist, is(true));
+      }
+    }
+  }
 }
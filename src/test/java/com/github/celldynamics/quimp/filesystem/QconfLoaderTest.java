@@ -7,6 +7,7 @@ import java.io.File;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.util.List;
 
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
@@ -19,12 +20,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.github.celldynamics.quimp.BOAState;
+import com.github.celldynamics.quimp.CellStats;
 import com.github.celldynamics.quimp.QParams;
 import com.github.celldynamics.quimp.QParamsQconf;
 import com.github.celldynamics.quimp.QuimpException;
 import com.github.celldynamics.quimp.QuimpVersion;
 import com.github.celldynamics.quimp.Serializer;
 import com.github.celldynamics.quimp.plugin.qanalysis.STmap;
+import com.github.celldynamics.quimp.utils.ParallelTools;
 import com.github.celldynamics.quimp.utils.QuimPArrayUtils;
 
 import ij.IJ;
@@ -336,4 +339,65 @@ public class QconfLoaderTest {
     q.getEcmm();
   }
 
+  /**
+   * Test of loading modules on demand.
+   * 
+   * <p>Post: only requested module is restored, other modules are reported as present
+   * 
+   * @throws Exception Exception
+   */
+  @Test
+  public void testQconfLoaderLazy() throws Exception {
+    for (boolean gzip : new boolean[] { false, true }) {
+      DataContainer dt = new DataContainer();
+      dt.Stats = new StatsCollection();
+      dt.Stats.sHs.add(new CellStats());
+      dt.Stats.sHs.add(new CellStats());
+      dt.ANAState = new ANAParamCollection(2);
+      Serializer<DataContainer> serializer =
+              new Serializer<>(dt, new QuimpVersion("17.10.11", "p.baniukiewicz", "QuimP"));
+      if (gzip) {
+        serializer.setGzip();
+      }
+      serializer.save(tmpdir + "qconftestloaderlazy.QCONF");
+
+      QconfLoader q =
+              new QconfLoader(Paths.get(tmpdir + "qconftestloaderlazy.QCONF").toFile(), true);
+      DataContainer dc = ((QParamsQconf) q.getQp()).getLoadedDataContainer();
+      assertThat(q.isStatsPresent(), is(true));
+      assertThat(q.isANAPresent(), is(true));
+      assertThat(q.isBOAPresent(), is(false));
+      assertThat(dc.Stats == null && dc.ANAState == null, is(true)); // nothing restored yet
+      assertThat(q.getStats().sHs.size(), is(2));
+      assertThat(dc.ANAState == null, is(true));
+      assertThat(q.getANA().aS.size(), is(2));
+    }
+  }
+
+  /**
+   * Test of loading modules on demand from many threads.
+   * 
+   * <p>Post: module is restored once, all threads get the same object
+   * 
+   * @throws Exception Exception
+   */
+  @Test
+  public void testQconfLoaderLazy_threads() throws Exception {
+    DataContainer dt = new DataContainer();
+    dt.Stats = new StatsCollection();
+    for (int i = 0; i < 100; i++) {
+      dt.Stats.sHs.add(new CellStats());
+    }
+    Serializer<DataContainer> serializer =
+            new Serializer<>(dt, new QuimpVersion("17.10.11", "p.baniukiewicz", "QuimP"));
+    serializer.save(tmpdir + "qconftestloaderlazy.QCONF");
+
+    QconfLoader q = new QconfLoader(Paths.get(tmpdir + "qconftestloaderlazy.QCONF").toFile(), true);
+    List<StatsCollection> ret = ParallelTools.map(8, 8, i -> q.getStats());
+    for (StatsCollection st : ret) {
+      assertThat(st == ret.get(0), is(true));
+    }
+    assertThat(ret.get(0).sHs.size(), is(100));
+  }
+
 }
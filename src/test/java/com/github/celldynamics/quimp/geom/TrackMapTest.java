@@ -6,6 +6,7 @@ import static org.junit.Assert.assertThat;
 import java.awt.Point;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Random;
 
 import org.junit.After;
 import org.junit.AfterClass;
@@ -135,6 +136,70 @@ public class TrackMapTest {
     assertThat(tmpMt.backwardMap, is(backwardExpected));
   }
 
+  /**
+   * Test method for {@link com.github.celldynamics.quimp.geom.MapTracker}.
+   * 
+   * <p>Pre: random maps with repeating coordinates and coordinates close to 0 and 1
+   * 
+   * <p>Post: maps equal to those found by linear search, also for one thread
+   * 
+   * @throws Exception Exception
+   */
+  @Test
+  public void testTrackMap_random() throws Exception {
+    Random rnd = new Random(0);
+    int frames = 20;
+    int points = 57;
+    double[][] origin = new double[frames][points];
+    double[][] coord = new double[frames][points];
+    for (int i = 0; i < frames; i++) {
+      for (int j = 0; j < points; j++) {
+        origin[i][j] = Math.round(rnd.nextDouble() * 40) / 40.0;
+        coord[i][j] = Math.round(rnd.nextDouble() * 40) / 40.0;
+      }
+    }
+    int[][] forwardExpected = new int[frames][points];
+    int[][] backwardExpected = new int[frames][points];
+    for (int j = 0; j < points; j++) {
+      forwardExpected[frames - 1][j] = -1;
+      backwardExpected[0][j] = -1;
+    }
+    for (int i = 0; i < frames - 1; i++) {
+      for (int j = 0; j < points; j++) {
+        backwardExpected[i + 1][j] = closestLinear(origin[i + 1][j], coord[i]);
+        forwardExpected[i][j] = closestLinear(coord[i][j], origin[i + 1]);
+      }
+    }
+    MapTracker tmpMt = new MapTracker(origin, coord);
+    assertThat(tmpMt.forwardMap, is(forwardExpected));
+    assertThat(tmpMt.backwardMap, is(backwardExpected));
+    tmpMt = new MapTracker(origin, coord, 1);
+    assertThat(tmpMt.forwardMap, is(forwardExpected));
+    assertThat(tmpMt.backwardMap, is(backwardExpected));
+  }
+
+  /**
+   * Reference search for closest coordinate as in buildTrackMaps.m.
+   * 
+   * @param p value to find
+   * @param row row to search in
+   * @return first index of minimal difference, unshifted row first, then -1 and +1
+   */
+  private int closestLinear(double p, double[] row) {
+    double min = Double.POSITIVE_INFINITY;
+    int ret = -1;
+    for (int shift : new int[] { 0, -1, 1 }) {
+      for (int k = 0; k < row.length; k++) {
+        double d = Math.abs(p - (row[k] + shift));
+        if (min > d) {
+          min = d;
+          ret = k;
+        }
+      }
+    }
+    return ret;
+  }
+
   /**
    * Test method for
    * {@link com.github.celldynamics.quimp.geom.MapTracker#trackForward(int, int, int)}.
@@ -1,11 +1,14 @@
 package com.github.celldynamics.quimp.geom.filters;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.TreeSet;
 
@@ -18,6 +21,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.github.baniuk.ImageJTestSuite.dataaccess.DataLoader;
+import com.github.celldynamics.quimp.geom.BasicPolygons;
 import com.github.celldynamics.quimp.geom.filters.HatSnakeFilter.WindowIndRange;
 import com.github.celldynamics.quimp.plugin.QuimpPluginException;
 import com.github.celldynamics.quimp.utils.test.RoiSaver;
@@ -280,4 +284,31 @@ public class HatSnakeFilterTest {
     LOGGER.debug(p.toString());
   }
 
+  /**
+   * Compare {@link SlidingWindowPolygon} with polygons built for every window position.
+   * 
+   * <p>Post: the same circularity and convex/concave flags
+   */
+  @Test
+  public void testSlidingWindowPolygon() {
+    BasicPolygons bp = new BasicPolygons();
+    HatSnakeFilter hf = new HatSnakeFilter();
+    for (List<Point2d> data : Arrays.asList(input, circ, prot)) {
+      for (int window : new int[] { 3, 5, 9 }) {
+        SlidingWindowPolygon swp = new SlidingWindowPolygon(data, window);
+        List<Point2d> rotated = new ArrayList<>(data);
+        for (int r = 0; r < data.size(); r++) {
+          List<Point2d> pointsnowindow = rotated.subList(window, rotated.size());
+          List<Point2d> pointswindow = rotated.subList(0, window);
+          assertEquals(hf.getCircularity(pointsnowindow), swp.getCircularity(r), 1e-10);
+          assertEquals(bp.areAllPointsInside(pointsnowindow, pointswindow),
+                  swp.areAllWindowPointsInside(r));
+          assertEquals(bp.areAllPointOutside(pointsnowindow, pointswindow),
+                  swp.areAllWindowPointsOutside(r));
+          Collections.rotate(rotated, -1);
+        }
+      }
+    }
+  }
+
 }
@@ -1,8 +1,10 @@
 package com.github.celldynamics.quimp.plugin.dic;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 import java.io.File;
+import java.util.Random;
 
 import org.junit.After;
 import org.junit.Before;
@@ -184,4 +186,88 @@ public class LidReconstructor_Test {
       LOGGER.error(e.toString());
     }
   }
+
+  /**
+   * Test method for LidReconstructor.reconstructionDicLid(ImageStack, int).
+   * 
+   * <p>Pre: stack of 4 slices
+   * 
+   * <p>Post: concurrent reconstruction gives the same slices as reconstruction slice by slice
+   * 
+   * @throws Exception Exception
+   */
+  @Test
+  public void test_ReconstructionDicLid_stackConcurrent() throws Exception {
+    ImageStack is = stack.getStack();
+    LidReconstructor dcr = new LidReconstructor(stack, 0.04, 135f);
+    ImageStack ret = dcr.reconstructionDicLid(is, 4);
+    assertEquals(is.getSize(), ret.getSize());
+
+    LidReconstructor ref = new LidReconstructor(stack, 0.04, 135f);
+    for (int s = 1; s <= is.getSize(); s++) {
+      ref.setIp(is.getProcessor(s));
+      short[] expected = (short[]) ref.reconstructionDicLid().getPixels();
+      assertArrayEquals(expected, (short[]) ret.getPixels(s));
+    }
+  }
+
+  /**
+   * Test method for LidReconstructor.reconstructionDicLid(ImageStack, int).
+   * 
+   * <p>Pre: 16-bit stack with second slice saturated, first slice correct
+   * 
+   * <p>Post: DicException
+   * 
+   * @throws Exception Exception
+   */
+  @Test(expected = DicException.class)
+  public void test_ReconstructionDicLid_stackSaturated() throws Exception {
+    ImageProcessor first = stack.getStack().getProcessor(1).convertToShort(false);
+    ImageProcessor saturated = first.duplicate();
+    saturated.setValue(65535);
+    saturated.fill();
+    ImageStack is = new ImageStack(first.getWidth(), first.getHeight());
+    is.addSlice(first);
+    is.addSlice(saturated);
+    LidReconstructor dcr = new LidReconstructor(first, 0.04, 135f);
+    dcr.reconstructionDicLid(is, 2);
+  }
+
+  /**
+   * Test of {@link LidReconstructor#integrateRow}.
+   * 
+   * <p>Pre: random line with background at both ends
+   * 
+   * <p>Post: recursive integration gives the same float values as direct sums of exponentially
+   * weighted pixels
+   */
+  @Test
+  public void testIntegrateRow() {
+    int w = 300;
+    int first = 7;
+    int last = w - 11;
+    double mean = 120.3;
+    double decay = 0.04;
+    Random rnd = new Random(0);
+    short[] src = new short[w];
+    for (int i = first; i <= last; i++) {
+      src[i] = (short) (1 + rnd.nextInt(255));
+    }
+    float[] out = new float[w];
+    LidReconstructor.integrateRow(src, out, 0, first, last, 1, mean, Math.exp(-decay),
+            new double[w]);
+    for (int c = first; c <= last; c++) {
+      double up = 0;
+      for (int u = c; u >= first; u--) {
+        up += (src[u] - 1 - mean) * Math.exp(-decay * (c - u));
+      }
+      double down = 0;
+      for (int d = c; d <= last; d++) {
+        down += (src[d] - 1 - mean) * Math.exp(-decay * (d - c));
+      }
+      assertEquals((float) (up - down), out[c], 0);
+    }
+    assertEquals(0, out[first - 1], 0);
+    assertEquals(0, out[last + 1], 0);
+  }
 }
@@ -0,0 +1,41 @@
+package com.github.celldynamics.quimp.plugin.ecmm;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.junit.Test;
+
+/**
+ * Test of EcmmConfig.
+ *
+ * @author p.baniukiewicz
+ *
+ */
+public class EcmmConfigTest {
+
+  /**
+   * Test method for {@link com.github.celldynamics.quimp.plugin.ecmm.EcmmConfig#EcmmConfig()}.
+   *
+   * <p>Pre: parameters in ECMp changed after creating config
+   *
+   * <p>Post: config keeps values from its creation
+   *
+   * @throws Exception Exception
+   */
+  @Test
+  public void testEcmmConfig() throws Exception {
+    ECMp.setParams(100);
+    ECMp.ANA = false;
+    EcmmConfig cfg = new EcmmConfig();
+    ECMp.h = 0.9;
+    ECMp.ANA = true;
+    ECMp.setParams(200);
+
+    assertThat(cfg.h, is(0.3));
+    assertThat(cfg.ana, is(false));
+    assertThat(cfg.maxCellSize, is(100 / Math.PI));
+    assertThat(cfg.maxIter, is(4000));
+    assertThat(cfg.fieldApproximation, is(0.0));
+  }
+
+}
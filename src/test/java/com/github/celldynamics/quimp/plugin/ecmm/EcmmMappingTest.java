@@ -22,6 +22,9 @@ import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.github.celldynamics.quimp.Nest;
+import com.github.celldynamics.quimp.OutlineHandler;
+import com.github.celldynamics.quimp.QParamsQconf;
 import com.github.celldynamics.quimp.filesystem.OutlinesCollection;
 import com.github.celldynamics.quimp.filesystem.QconfLoader;
 import com.github.celldynamics.quimp.utils.IJTools;
@@ -224,6 +227,55 @@ public class EcmmMappingTest {
     assertThat(sn, containsExactText(boasnRef.toFile()));
   }
 
+  /**
+   * Test method for
+   * {@link ECMM_Mapping#runCells(OutlineHandler[], EcmmContext[], int)}.
+   * 
+   * <p>Pre: several copies of cells from QCONF mapped sequentially and concurrently
+   * 
+   * <p>Post: the same outlines
+   * 
+   * @throws Exception Exception
+   */
+  @Test
+  public void testRunCells_threads() throws Exception {
+    Path boan = Paths.get(
+            "src/test/Resources-static/com.github.celldynamics.quimp.plugin.ecmm.EcmmMapping",
+            "fluoreszenz-test_eq_smooth_frames_1-5_BOA.QCONF");
+    QconfLoader qcl = new QconfLoader(boan.toFile());
+    OutlinesCollection seq = runCells(qcl, 6, 1);
+    OutlinesCollection con = runCells(qcl, 6, 4);
+    assertThat(con, givesSameJson(seq));
+  }
+
+  /**
+   * Map copies of cells from QCONF as {@link ECMM_Mapping#runFromQconf()} does.
+   * 
+   * @param qcl loaded QCONF
+   * @param cells number of cells to map, cells of QCONF are repeated
+   * @param threads number of threads
+   * @return mapped outlines
+   * @throws Exception Exception
+   */
+  private OutlinesCollection runCells(QconfLoader qcl, int cells, int threads) throws Exception {
+    Nest nest = ((QParamsQconf) qcl.getQp()).getNest();
+    OutlineHandler[] inputs = new OutlineHandler[cells];
+    EcmmContext[] contexts = new EcmmContext[cells];
+    for (int i = 0; i < cells; i++) {
+      ((QParamsQconf) qcl.getQp()).setActiveHandler(i % nest.size());
+      inputs[i] = new OutlineHandler(nest.getHandler(i % nest.size()));
+      ECMp.setup(qcl.getQp());
+      ECMp.setParams(inputs[i].maxLength);
+      ECMp.plot = false;
+      contexts[i] = new EcmmContext(new EcmmConfig(), null, null, "cell " + i + ": ");
+    }
+    OutlinesCollection ret = new OutlinesCollection(cells);
+    for (OutlineHandler oh : ECMM_Mapping.runCells(inputs, contexts, threads)) {
+      ret.oHs.add(oh);
+    }
+    return ret;
+  }
+
   /**
    * About test.
    */
@@ -0,0 +1,306 @@
+package com.github.celldynamics.quimp.plugin.ecmm;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.celldynamics.quimp.Outline;
+import com.github.celldynamics.quimp.Vert;
+import com.github.celldynamics.quimp.geom.ExtendedVector2d;
+
+/**
+ * Test of {@link SectorField}.
+ *
+ * <p>Reference results are computed by walking charges and target contour of sector node by node,
+ * as ODEsolver did before {@link SectorField} was introduced.
+ *
+ * @author p.baniukiewicz
+ *
+ */
+public class SectorFieldTest {
+
+  /**
+   * Set default parameters of mapping.
+   *
+   * @throws Exception Exception
+   */
+  @Before
+  public void setUp() throws Exception {
+    ECMp.setParams(100);
+    ECMp.ANA = false;
+  }
+
+  /**
+   * Restore default parameters.
+   *
+   * @throws Exception Exception
+   */
+  @After
+  public void tearDown() throws Exception {
+    ECMp.setParams(100);
+  }
+
+  /**
+   * Test method for {@link SectorField#fieldAt(double, double, double)}.
+   *
+   * <p>Pre: line charges, no approximation
+   *
+   * <p>Post: the same field as sum of forceLpolar over charges
+   *
+   * @throws Exception Exception
+   */
+  @Test
+  public void testFieldAt_lines() throws Exception {
+    EcmmConfig cfg = new EcmmConfig();
+    Sector s = wholeSector(cfg);
+    SectorField field = new SectorField(s, cfg);
+    for (ExtendedVector2d p : samplePoints(s)) {
+      for (double orientation : new double[] { -1, 1 }) {
+        ExtendedVector2d exp = fieldAtLines(p, s, cfg, orientation);
+        ExtendedVector2d ret = field.fieldAt(p.getX(), p.getY(), orientation);
+        assertThat(ret.getX(), is(exp.getX()));
+        assertThat(ret.getY(), is(exp.getY()));
+      }
+    }
+  }
+
+  /**
+   * Test method for {@link SectorField#fieldAt(double, double, double)}.
+   *
+   * <p>Pre: point charges
+   *
+   * <p>Post: the same field as sum of forceP over charges
+   *
+   * @throws Exception Exception
+   */
+  @Test
+  public void testFieldAt_points() throws Exception {
+    ECMp.lineCharges = false;
+    EcmmConfig cfg = new EcmmConfig();
+    Sector s = wholeSector(cfg);
+    SectorField field = new SectorField(s, cfg);
+    for (ExtendedVector2d p : samplePoints(s)) {
+      ExtendedVector2d exp = fieldAtPoints(p, s, cfg);
+      ExtendedVector2d ret = field.fieldAt(p.getX(), p.getY(), 1);
+      assertThat(ret.getX(), is(exp.getX()));
+      assertThat(ret.getY(), is(exp.getY()));
+    }
+  }
+
+  /**
+   * Test method for {@link SectorField#proximity(ExtendedVector2d)} and
+   * {@link SectorField#snap(ExtendedVector2d)}.
+   *
+   * <p>Pre: points inside, outside and close to target contour
+   *
+   * <p>Post: the same results as testing all edges of target contour
+   *
+   * @throws Exception Exception
+   */
+  @Test
+  public void testProximitySnap() throws Exception {
+    EcmmConfig cfg = new EcmmConfig();
+    Sector s = wholeSector(cfg);
+    SectorField field = new SectorField(s, cfg);
+    int close = 0;
+    for (ExtendedVector2d p : samplePoints(s)) {
+      boolean exp = proximity(p, s, cfg);
+      assertThat(field.proximity(p), is(exp));
+      assertThat(field.snap(p), is(snap(p, s)));
+      close += exp ? 1 : 0;
+    }
+    assertThat(close > 100, is(true));
+  }
+
+  /**
+   * Test method for {@link SectorField#fieldAt(double, double, double)} used by
+   * {@link ODEsolver#euler(Vert, Sector)}.
+   *
+   * <p>Pre: line charges approximated with angle 0.2
+   *
+   * <p>Post: every node lands closer than two Euler steps from its landing point for exact field
+   *
+   * @throws Exception Exception
+   */
+  @Test
+  public void testEuler_approximation() throws Exception {
+    EcmmConfig cfgExact = new EcmmConfig();
+    ECMp.fieldApproximation = 0.2;
+    EcmmConfig cfgApprox = new EcmmConfig();
+    List<ExtendedVector2d> exact = landings(cfgExact);
+    List<ExtendedVector2d> approx = landings(cfgApprox);
+    double bound = 2 * cfgExact.h * cfgExact.maxVertF;
+    assertThat(approx.size(), is(exact.size()));
+    for (int i = 0; i < exact.size(); i++) {
+      assertThat(ExtendedVector2d.lengthP2P(exact.get(i), approx.get(i)), lessThan(bound));
+    }
+  }
+
+  /**
+   * Migrate all nodes of sector.
+   *
+   * @param cfg parameters
+   * @return landing points in order of nodes
+   */
+  private List<ExtendedVector2d> landings(EcmmConfig cfg) {
+    Sector s = wholeSector(cfg);
+    ODEsolver solver = new ODEsolver(new EcmmContext(cfg, null, null, ""));
+    List<ExtendedVector2d> ret = new ArrayList<>();
+    Vert v = s.getMigStart().getNext();
+    do {
+      ret.add(solver.euler(v, s));
+      assertThat(v.snapped, is(true));
+      v = v.getNext();
+    } while (!v.isIntPoint());
+    return ret;
+  }
+
+  /**
+   * Create sector of circle expanding to ellipse around it.
+   *
+   * @param cfg parameters
+   * @return sector covering whole outlines
+   */
+  private Sector wholeSector(EcmmConfig cfg) {
+    int n1 = 190;
+    double[] x1 = new double[n1];
+    double[] y1 = new double[n1];
+    for (int i = 0; i < n1; i++) {
+      double t = 2 * Math.PI * i / n1;
+      double r = 30 + 3 * Math.sin(5 * t);
+      x1[i] = 100 + r * Math.cos(t);
+      y1[i] = 100 + r * Math.sin(t);
+    }
+    int n2 = 250;
+    double[] x2 = new double[n2];
+    double[] y2 = new double[n2];
+    for (int i = 0; i < n2; i++) {
+      double t = 2 * Math.PI * i / n2;
+      x2[i] = 103 + 1.1 * 38 * Math.cos(t);
+      y2[i] = 98 + 38 * Math.sin(t);
+    }
+    Mapping mapping = new Mapping(new Outline(x1, y1), new Outline(x2, y2),
+            new EcmmContext(cfg, null, null, ""));
+    return mapping.getSector(0);
+  }
+
+  /**
+   * Random points around sector and close to nodes of target contour.
+   *
+   * @param s sector
+   * @return points
+   */
+  private List<ExtendedVector2d> samplePoints(Sector s) {
+    Random rnd = new Random(0);
+    List<ExtendedVector2d> ret = new ArrayList<>();
+    for (int i = 0; i < 2000; i++) {
+      ret.add(new ExtendedVector2d(40 + 120 * rnd.nextDouble(), 40 + 120 * rnd.nextDouble()));
+    }
+    Vert v = s.tarCharges.getHead();
+    do {
+      ret.add(new ExtendedVector2d(v.getX() + 0.6 * (rnd.nextDouble() - 0.5),
+              v.getY() + 0.6 * (rnd.nextDouble() - 0.5)));
+      v = v.getNext();
+    } while (!v.isHead());
+    return ret;
+  }
+
+  private ExtendedVector2d fieldAtLines(ExtendedVector2d p, Sector s, EcmmConfig cfg,
+          double polarDir) {
+    ExtendedVector2d field = new ExtendedVector2d(0, 0);
+    ExtendedVector2d totalF = new ExtendedVector2d(0, 0);
+    Vert v = s.migCharges.getHead();
+    do {
+      forceLpolar(field, p, v.getPoint(), v.getNext().getPoint(), cfg.migQ, cfg, polarDir);
+      totalF.addVec(field);
+      v = v.getNext();
+    } while (!v.isIntPoint() || v.isHead());
+    v = s.tarCharges.getHead();
+    do {
+      forceLpolar(field, p, v.getPoint(), v.getNext().getPoint(), cfg.tarQ, cfg, polarDir);
+      totalF.addVec(field);
+      v = v.getNext();
+    } while (!v.isIntPoint() || v.isHead());
+    return totalF;
+  }
+
+  private void forceLpolar(ExtendedVector2d force, ExtendedVector2d p, ExtendedVector2d s1,
+          ExtendedVector2d s2, double q, EcmmConfig cfg, double orientation) {
+    double l = ExtendedVector2d.lengthP2P(s1, s2);
+    ExtendedVector2d ru = ExtendedVector2d.unitVector(s2, p);
+    double r = ExtendedVector2d.lengthP2P(s2, p);
+    ExtendedVector2d rpU = ExtendedVector2d.unitVector(s1, p);
+    double rp = ExtendedVector2d.lengthP2P(s1, p);
+    double d = (((rp + r) * (rp + r)) - (l * l)) / (2 * l);
+    double multiplier = ((cfg.k * q) / d);
+    rpU.addVec(ru);
+    force.setX(rpU.getX() * multiplier * orientation);
+    force.setY(rpU.getY() * multiplier * orientation);
+  }
+
+  private ExtendedVector2d fieldAtPoints(ExtendedVector2d p, Sector s, EcmmConfig cfg) {
+    ExtendedVector2d field = new ExtendedVector2d(0, 0);
+    ExtendedVector2d totalF = new ExtendedVector2d(0, 0);
+    Vert v = s.migCharges.getHead();
+    do {
+      forceP(field, p, v.getPoint(), cfg.migQ, cfg.migPower, cfg);
+      totalF.addVec(field);
+      v = v.getNext();
+    } while (!v.getPrev().isIntPoint() || v.getPrev().isHead());
+    v = s.tarCharges.getHead();
+    do {
+      forceP(field, p, v.getPoint(), cfg.tarQ, cfg.tarPower, cfg);
+      totalF.addVec(field);
+      v = v.getNext();
+    } while (!v.getPrev().isIntPoint() || v.getPrev().isHead());
+    return totalF;
+  }
+
+  private void forceP(ExtendedVector2d force, ExtendedVector2d p, ExtendedVector2d pq, double q,
+          double power, EcmmConfig cfg) {
+    double r = ExtendedVector2d.lengthP2P(pq, p);
+    r = Math.abs(Math.pow(r, power));
+    ExtendedVector2d unitV = ExtendedVector2d.unitVector(pq, p);
+    double multiplier = (cfg.k * (q / r));
+    force.setX(unitV.getX() * multiplier);
+    force.setY(unitV.getY() * multiplier);
+  }
+
+  private boolean proximity(ExtendedVector2d p, Sector s, EcmmConfig cfg) {
+    Vert v = s.getTarStart();
+    do {
+      double d = ExtendedVector2d.distPointToSegment(p, v.getPoint(), v.getNext().getPoint());
+      if (d <= cfg.d) {
+        return true;
+      }
+      v = v.getNext();
+    } while (!v.isIntPoint());
+    return false;
+  }
+
+  private Vert snap(ExtendedVector2d p, Sector s) {
+    Vert v = s.getTarStart().getPrev(); // include the edge to the starting intersect point
+    double distance = ExtendedVector2d.distPointToSegment(p, v.getPoint(), v.getNext().getPoint());
+    v = v.getNext();
+    Vert closestEdge = v;
+    do {
+      ExtendedVector2d current =
+              ExtendedVector2d.pointToSegment(p, v.getPoint(), v.getNext().getPoint());
+      double tempDis = ExtendedVector2d.lengthP2P(p, current);
+      if (tempDis < distance) {
+        closestEdge = v;
+        distance = tempDis;
+      }
+      v = v.getNext();
+    } while (!v.isIntPoint());
+    return closestEdge;
+  }
+}
@@ -8,6 +8,7 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
 
 import org.apache.commons.io.FileUtils;
 import org.junit.After;
@@ -146,6 +147,42 @@ public class ProtAnalysisTest {
     assertThat(retF, is(expectedF));
   }
 
+  /**
+   * Test of {@link Prot_Analysis#analyseCells(int)} and {@link Prot_Analysis#saveResults(List)}.
+   * 
+   * <p>Pre: QCONF with two cells
+   * 
+   * <p>Post: the same maxima and tracks for concurrent and sequential run, results saved for
+   * every cell
+   * 
+   * @throws Exception Exception
+   */
+  @Test
+  public void testAnalyseCells() throws Exception {
+    Path target = Paths.get(temp.getRoot().getPath(), "fluoreszenz-test.QCONF");
+    FileUtils.copyFile(
+            new File("src/test/Resources-static/ProtAnalysisTest/fluoreszenz-test.QCONF"),
+            target.toFile());
+    Prot_Analysis obj = new Prot_Analysis(new QconfLoader(target.toFile()));
+
+    List<Prot_Analysis.CellResult> ret = obj.analyseCells(4);
+    List<Prot_Analysis.CellResult> expected = obj.analyseCells(1);
+    assertThat(ret.size(), is(2));
+    for (int h = 0; h < ret.size(); h++) {
+      assertThat(ret.get(h).maxima.getMaxima().xpoints,
+              is(expected.get(h).maxima.getMaxima().xpoints));
+      assertThat(ret.get(h).maxima.getMaxima().ypoints,
+              is(expected.get(h).maxima.getMaxima().ypoints));
+      assertThat(ret.get(h).tracks.getBf(), is(expected.get(h).tracks.getBf()));
+    }
+    obj.saveResults(ret);
+    assertThat(Paths.get(temp.getRoot().getPath(), "fluoreszenz-test_0_cellstat.csv").toFile()
+            .exists(), is(true));
+    assertThat(Paths.get(temp.getRoot().getPath(), "fluoreszenz-test_1_protstat.csv").toFile()
+            .exists(), is(true));
+    assertThat(Paths.get(temp.getRoot().getPath(), "tracks_1.csv").toFile().exists(), is(true));
+  }
+
   /**
    * Example of high level call.
    * 
@@ -7,7 +7,9 @@ import java.awt.Point;
 import java.awt.Polygon;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.tuple.ImmutablePair;
@@ -22,6 +24,8 @@ import org.mockito.MockitoAnnotations;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.github.celldynamics.quimp.utils.QuimPArrayUtils;
+
 import junitparams.JUnitParamsRunner;
 import junitparams.Parameters;
 
@@ -449,4 +453,67 @@ public class TrackMapAnalyserTest {
     /**/
   }
 
+  /**
+   * Test method for {@link TrackMapAnalyser#getCommonPoints()} and
+   * {@link TrackMapAnalyser#getIntersectionPoints(List)}.
+   * 
+   * <p>Pre: many random tracks on small map, so points are shared by several tracks
+   * 
+   * <p>Post: the same points in the same order as found by comparing all pairs of tracks and
+   * removing duplicates
+   * 
+   * @throws Exception Exception
+   */
+  @Test
+  public void testGetCommonPoints_pairwise() throws Exception {
+    Random rnd = new Random(0);
+    List<Pair<Track, Track>> tracks = new ArrayList<>();
+    List<Polygon> polygons = new ArrayList<>();
+    for (int i = 0; i < 60; i++) {
+      Track b = new Track();
+      Track f = new Track();
+      Point p = new Point(rnd.nextInt(20), rnd.nextInt(20));
+      for (int n = 0; n < 15; n++) {
+        b.add(new Point(p.x - n, p.y + rnd.nextInt(3) - 1));
+        f.add(new Point(p.x + n, p.y + rnd.nextInt(3) - 1));
+      }
+      tracks.add(new ImmutablePair<Track, Track>(b, f));
+      polygons.add(TrackMapAnalyser.point2i2Polygon(b));
+      polygons.add(TrackMapAnalyser.point2i2Polygon(f));
+    }
+    // b1-b2, b1-f2, b2-f1, f1-f2 for all pairs
+    List<Point> expCommon = new ArrayList<>();
+    for (int i = 0; i < tracks.size() - 1; i++) {
+      for (int j = i + 1; j < tracks.size(); j++) {
+        Track b1 = tracks.get(i).getLeft();
+        Track f1 = tracks.get(i).getRight();
+        Track b2 = tracks.get(j).getLeft();
+        Track f2 = tracks.get(j).getRight();
+        for (Track[] t : new Track[][] { { b1, b2 }, { b1, f2 }, { b2, f1 }, { f1, f2 } }) {
+          Track copy = new Track(t[0]);
+          copy.retainAll(t[1]);
+          expCommon.addAll(copy);
+        }
+      }
+    }
+    List<Point> expIntersection = new ArrayList<>();
+    for (int i = 0; i < polygons.size() - 1; i++) {
+      for (int j = i + 1; j < polygons.size(); j++) {
+        List<Point> copy = TrackMapAnalyser.polygon2Point2i(Arrays.asList(polygons.get(i)));
+        copy.retainAll(TrackMapAnalyser.polygon2Point2i(Arrays.asList(polygons.get(j))));
+        expIntersection.addAll(copy);
+      }
+    }
+    expCommon = QuimPArrayUtils.removeDuplicates(expCommon);
+    expIntersection = QuimPArrayUtils.removeDuplicates(expIntersection);
+
+    Mockito.when(trackCollection.getBf()).thenReturn(tracks);
+    List<Point> common =
+            TrackMapAnalyser.polygon2Point2i(Arrays.asList(trackMapAnalyser.getCommonPoints()));
+    List<Point> intersection = TrackMapAnalyser
+            .polygon2Point2i(Arrays.asList(trackMapAnalyser.getIntersectionPoints(polygons)));
+    assertThat(expCommon.size() > 10, is(true));
+    assertThat(common, is(expCommon));
+    assertThat(intersection, is(expIntersection));
+  }
 }
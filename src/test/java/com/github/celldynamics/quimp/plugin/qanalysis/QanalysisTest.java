@@ -19,6 +19,7 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
 import com.github.celldynamics.quimp.QuimpException;
+import com.github.celldynamics.quimp.filesystem.QconfLoader;
 import com.github.celldynamics.quimp.utils.IJTools;
 
 import ij.ImageJ;
@@ -146,6 +147,62 @@ public class QanalysisTest {
 
   }
 
+  /**
+   * Test of headless mode.
+   * 
+   * <p>Pre: three cells in QCONF
+   * 
+   * <p>Post: cells processed concurrently give the same maps as processed one by one, images of
+   * maps are saved but not shown
+   * 
+   * @throws Exception Exception
+   */
+  @Test
+  public void testQ_AnalysisFile_headless() throws Exception {
+    File seqDir = temp.newFolder("seq");
+    File conDir = temp.newFolder("con");
+    Path seqFile = Paths.get(seqDir.getPath(), "test.QCONF");
+    Path conFile = Paths.get(conDir.getPath(), "test.QCONF");
+    FileUtils.copyFile(
+            Paths.get("src/test/Resources-static/FormatConverter/QCONF/test.QCONF").toFile(),
+            seqFile.toFile());
+    FileUtils.copyFile(seqFile.toFile(), conFile.toFile());
+
+    new Q_Analysis().run("opts={trackColor:Summer,outlinePlot:Speed,sumCov:1.0,avgCov:0.0,"
+            + "mapRes:400,paramFile:(" + seqFile.toString().replace("\\", "/") + ")}");
+    IJTools.closeAllImages();
+    new Q_Analysis().run("opts={trackColor:Summer,outlinePlot:Speed,sumCov:1.0,avgCov:0.0,"
+            + "mapRes:400,headless:true,paramFile:(" + conFile.toString().replace("\\", "/")
+            + ")}");
+
+    assertThat(WindowManager.getImageTitles().length, is(0));
+    for (int i = 0; i < 3; i++) {
+      assertThat(Paths.get(conDir.toString(), "test_" + i + "_track.svg").toFile().exists(),
+              is(true));
+      assertThat(Paths.get(conDir.toString(), "test_" + i + "_motility.tif").toFile().exists(),
+              is(true));
+      assertThat(Paths.get(conDir.toString(), "test_" + i + "_convexity.tif").toFile().exists(),
+              is(true));
+      assertThat(Paths.get(conDir.toString(), "test_" + i + "_fluoCh" + (i + 1) + ".tif")
+              .toFile().exists(), is(true));
+    }
+
+    STmap[] seq = new QconfLoader(seqFile.toFile()).getQ();
+    STmap[] con = new QconfLoader(conFile.toFile()).getQ();
+    assertThat(con.length, is(seq.length));
+    for (int i = 0; i < seq.length; i++) {
+      assertThat(con[i].getCoordMap(), is(seq[i].getCoordMap()));
+      assertThat(con[i].getOriginMap(), is(seq[i].getOriginMap()));
+      assertThat(con[i].getxMap(), is(seq[i].getxMap()));
+      assertThat(con[i].getyMap(), is(seq[i].getyMap()));
+      assertThat(con[i].getMotMap(), is(seq[i].getMotMap()));
+      assertThat(con[i].getConvMap(), is(seq[i].getConvMap()));
+      for (int f = 0; f < seq[i].getFluMaps().length; f++) {
+        assertThat(con[i].getFluMaps()[f].getMap(), is(seq[i].getFluMaps()[f].getMap()));
+      }
+    }
+  }
+
   /**
    * About test.
    */
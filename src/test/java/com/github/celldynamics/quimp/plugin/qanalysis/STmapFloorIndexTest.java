@@ -0,0 +1,143 @@
+package com.github.celldynamics.quimp.plugin.qanalysis;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.celldynamics.quimp.Outline;
+import com.github.celldynamics.quimp.OutlineHandler;
+import com.github.celldynamics.quimp.QParamsQconf;
+import com.github.celldynamics.quimp.Vert;
+import com.github.celldynamics.quimp.filesystem.QconfLoader;
+
+/**
+ * Test of {@link STmap.FloorIndex}.
+ *
+ * @author p.baniukiewicz
+ *
+ */
+public class STmapFloorIndexTest {
+
+  private Vert[] verts;
+
+  /**
+   * Create outline of 6 nodes.
+   *
+   * @throws Exception Exception
+   */
+  @Before
+  public void setUp() throws Exception {
+    Outline o = new Outline(new double[] { 0, 10, 20, 20, 10, 0 },
+            new double[] { 0, 0, 0, 10, 10, 10 });
+    verts = new Vert[6];
+    Vert v = o.getHead();
+    for (int i = 0; i < verts.length; i++) {
+      verts[i] = v;
+      v = v.getNext();
+    }
+  }
+
+  private void setCoords(double... coords) {
+    for (int i = 0; i < coords.length; i++) {
+      verts[i].coord = coords[i];
+    }
+  }
+
+  /**
+   * Test method for {@link STmap.FloorIndex#closestFloor(double)}.
+   *
+   * <p>Pre: coordinates increasing from head
+   *
+   * <p>Post: node at or just before target, last node if target is outside
+   *
+   * @throws Exception Exception
+   */
+  @Test
+  public void testClosestFloor() throws Exception {
+    setCoords(0, 0.1, 0.3, 0.5, 0.7, 0.9);
+    STmap.FloorIndex index = new STmap.FloorIndex(verts[0], 'c');
+    assertThat(index.closestFloor(0), is(verts[0]));
+    assertThat(index.closestFloor(0.3), is(verts[2]));
+    assertThat(index.closestFloor(0.35), is(verts[2]));
+    assertThat(index.closestFloor(0.8), is(verts[4]));
+    assertThat(index.closestFloor(0.95), is(verts[5]));
+    assertThat(index.closestFloor(-0.1), is(verts[5]));
+  }
+
+  /**
+   * Test method for {@link STmap.FloorIndex#closestFloor(double)}.
+   *
+   * <p>Pre: coordinates not increasing
+   *
+   * <p>Post: first node in order from head that brackets target
+   *
+   * @throws Exception Exception
+   */
+  @Test
+  public void testClosestFloor_unsorted() throws Exception {
+    setCoords(0, 0.1, 0.3, 0.2, 0.7, 0.9);
+    STmap.FloorIndex index = new STmap.FloorIndex(verts[0], 'c');
+    assertThat(index.closestFloor(0.25), is(verts[1]));
+    assertThat(index.closestFloor(0.3), is(verts[2]));
+    assertThat(index.closestFloor(0.5), is(verts[3]));
+  }
+
+  /**
+   * Test method for {@link STmap#generate(boolean)}.
+   *
+   * <p>Pre: ECMM outlines of cells from QCONF
+   *
+   * <p>Post: all maps are the same if nodes are found by {@link STmap.FloorIndex} or by walking
+   * outline from head
+   *
+   * @throws Exception Exception
+   */
+  @Test
+  public void testGenerate() throws Exception {
+    QconfLoader qcl = new QconfLoader(
+            Paths.get("src/test/Resources-static/FormatConverter/QCONF/test.QCONF").toFile());
+    QParamsQconf qp = (QParamsQconf) qcl.getQp();
+    List<OutlineHandler> ohs = qp.getLoadedDataContainer().getEcmmState().oHs;
+    for (int i = 0; i < ohs.size(); i++) {
+      qp.setActiveHandler(i);
+      Qp opts = new Qp();
+      opts.setup(qp);
+      STmap map = new STmap(ohs.get(i), 400, opts, false);
+      List<double[][]> indexed = copyMaps(map);
+      map.generate(false);
+      List<double[][]> walked = copyMaps(map);
+      for (int m = 0; m < indexed.size(); m++) {
+        assertThat(walked.get(m), is(indexed.get(m)));
+      }
+    }
+  }
+
+  private List<double[][]> copyMaps(STmap map) {
+    List<double[][]> ret = new ArrayList<>();
+    ret.add(map.getCoordMap());
+    ret.add(map.getOriginMap());
+    ret.add(map.getxMap());
+    ret.add(map.getyMap());
+    ret.add(map.getMotMap());
+    ret.add(map.getConvMap());
+    for (FluoMap f : map.getFluMaps()) {
+      if (f.isEnabled()) {
+        ret.add(f.getMap());
+      }
+    }
+    for (int m = 0; m < ret.size(); m++) {
+      double[][] copy = new double[ret.get(m).length][];
+      for (int r = 0; r < copy.length; r++) {
+        copy[r] = ret.get(m)[r].clone();
+      }
+      ret.set(m, copy);
+    }
+    return ret;
+  }
+}
@@ -0,0 +1,179 @@
+package com.github.celldynamics.quimp.plugin.randomwalk;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.closeTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.celldynamics.quimp.plugin.randomwalk.RandomWalkSegmentation.StoppedBy;
+
+/**
+ * Test of {@link DiffusionKernel}.
+ *
+ * @author p.baniukiewicz
+ *
+ */
+public class DiffusionKernelTest {
+
+  private double[][] wr;
+  private double[][] wl;
+  private double[][] wt;
+  private double[][] wb;
+  private double[][] fg;
+  private RandomWalkSegmentation rw;
+
+  /**
+   * Prepare random weights and solution.
+   *
+   * @throws Exception on error
+   */
+  @Before
+  public void setUp() throws Exception {
+    int rows = 67; // more than MIN_ROWS_PER_TASK to split bands
+    int cols = 45;
+    Random rnd = new Random(0);
+    wr = new double[rows][cols];
+    wl = new double[rows][cols];
+    wt = new double[rows][cols];
+    wb = new double[rows][cols];
+    fg = new double[rows][cols];
+    for (int r = 0; r < rows; r++) {
+      for (int c = 0; c < cols; c++) {
+        wr[r][c] = 1 + rnd.nextDouble();
+        wl[r][c] = 1 + rnd.nextDouble();
+        wt[r][c] = 1 + rnd.nextDouble();
+        wb[r][c] = 1 + rnd.nextDouble();
+      }
+    }
+    rw = new RandomWalkSegmentation(new Array2DRowRealMatrix(rows, cols),
+            new RandomWalkOptions());
+  }
+
+  /**
+   * Reference implementation of one Euler step based on circshift.
+   *
+   * @param dt time step
+   * @param diffusion diffusion constant
+   */
+  private void referenceStep(double dt, double diffusion) {
+    RealMatrix fgm = new Array2DRowRealMatrix(fg, false);
+    double[][] right = rw.circshift(fgm, RandomWalkSegmentation.RIGHT).getData();
+    double[][] left = rw.circshift(fgm, RandomWalkSegmentation.LEFT).getData();
+    double[][] top = rw.circshift(fgm, RandomWalkSegmentation.TOP).getData();
+    double[][] bottom = rw.circshift(fgm, RandomWalkSegmentation.BOTTOM).getData();
+    for (int r = 0; r < fg.length; r++) {
+      for (int c = 0; c < fg[0].length; c++) {
+        fg[r][c] += dt * (diffusion * (((right[r][c] - fg[r][c]) / wr[r][c]
+                - (fg[r][c] - left[r][c]) / wl[r][c])
+                + ((top[r][c] - fg[r][c]) / wt[r][c] - (fg[r][c] - bottom[r][c]) / wb[r][c])));
+      }
+    }
+  }
+
+  /**
+   * Compare many iterations of kernel with circshift based approach.
+   *
+   * <p>Pre: seed in the middle and close to edges
+   *
+   * <p>Post: the same results
+   *
+   * @throws Exception on error
+   */
+  @Test
+  public void testStep() throws Exception {
+    DiffusionKernel kernel = new DiffusionKernel(wr, wl, wt, wb, null);
+    Point p1 = new Point(20, 30);
+    Point p2 = new Point(0, 66);
+    Point p3 = new Point(44, 0);
+    double dt = 0.1;
+    double diffusion = 0.25;
+    for (int i = 0; i < 100; i++) {
+      kernel.setValues(Arrays.asList(p1, p2), 1.0);
+      kernel.setValues(Arrays.asList(p3), 0.0);
+      fg[p1.row][p1.col] = 1.0;
+      fg[p2.row][p2.col] = 1.0;
+      fg[p3.row][p3.col] = 0.0;
+      assertThat(kernel.step(dt, diffusion), is(StoppedBy.ITERATIONS));
+      referenceStep(dt, diffusion);
+    }
+    double[][] ret = kernel.getSolution();
+    for (int r = 0; r < fg.length; r++) {
+      for (int c = 0; c < fg[0].length; c++) {
+        assertThat(ret[r][c], closeTo(fg[r][c], 1e-12));
+      }
+    }
+  }
+
+  /**
+   * Test of NaN detection.
+   *
+   * @throws Exception on error
+   */
+  @Test
+  public void testStep_nan() throws Exception {
+    wr[5][5] = 0;
+    DiffusionKernel kernel = new DiffusionKernel(wr, wl, wt, wb, null);
+    assertThat(kernel.step(0.1, 0.25), is(StoppedBy.NANS));
+  }
+
+  /**
+   * Test of relative error against {@link RandomWalkSegmentation#computeRelErr}.
+   *
+   * @throws Exception on error
+   */
+  @Test
+  public void testComputeRelErr() throws Exception {
+    DiffusionKernel kernel = new DiffusionKernel(wr, wl, wt, wb, null);
+    kernel.setValues(Arrays.asList(new Point(10, 10), new Point(11, 12)), 1.0);
+    double[] last = new double[kernel.size()];
+    kernel.copyCurrent(last);
+    kernel.step(0.1, 0.25);
+    double[][] last2d = new double[fg.length][fg[0].length];
+    for (int r = 0; r < fg.length; r++) {
+      System.arraycopy(last, r * fg[0].length, last2d[r], 0, fg[0].length);
+    }
+    assertThat(kernel.computeRelErr(last),
+            closeTo(rw.computeRelErr(last2d, kernel.getSolution()), 1e-12));
+  }
+
+  /**
+   * Compare single precision kernel with double precision one.
+   *
+   * <p>Post: the same results up to float precision
+   *
+   * @throws Exception on error
+   */
+  @Test
+  public void testStep_float() throws Exception {
+    DiffusionKernel kernel = new DiffusionKernel(wr, wl, wt, wb, null);
+    FloatDiffusionKernel kernelf = new FloatDiffusionKernel(wr, wl, wt, wb, null);
+    Point p1 = new Point(20, 30);
+    Point p2 = new Point(44, 0);
+    for (int i = 0; i < 100; i++) {
+      kernel.setValues(Arrays.asList(p1), 1.0);
+      kernel.setValues(Arrays.asList(p2), 0.0);
+      kernelf.setValues(Arrays.asList(p1), 1.0);
+      kernelf.setValues(Arrays.asList(p2), 0.0);
+      kernel.storeCurrent();
+      kernelf.storeCurrent();
+      assertThat(kernelf.step(0.1, 0.25), is(StoppedBy.ITERATIONS));
+      kernel.step(0.1, 0.25);
+    }
+    assertThat(kernelf.computeRelErr(), closeTo(kernel.computeRelErr(), 1e-5));
+    double[][] ret = kernel.getSolution();
+    double[][] retf = kernelf.getSolution();
+    for (int r = 0; r < ret.length; r++) {
+      for (int c = 0; c < ret[0].length; c++) {
+        assertThat(retf[r][c], closeTo(ret[r][c], 1e-5));
+      }
+    }
+  }
+
+}
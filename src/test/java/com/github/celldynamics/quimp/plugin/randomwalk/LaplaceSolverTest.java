@@ -0,0 +1,118 @@
+package com.github.celldynamics.quimp.plugin.randomwalk;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Test of {@link LaplaceSolver}.
+ *
+ * @author p.baniukiewicz
+ *
+ */
+public class LaplaceSolverTest {
+
+  /**
+   * Compare steady state with Euler solution after many iterations.
+   *
+   * <p>Pre: random weights, FG and BG seeds
+   *
+   * <p>Post: solution equal to Euler solution and much less iterations
+   *
+   * @throws Exception on error
+   */
+  @Test
+  public void testSolve() throws Exception {
+    double[][][] w = randomWeights(30, 20);
+    List<Point> fg = Arrays.asList(new Point(3, 4), new Point(4, 4));
+    List<Point> bg = Arrays.asList(new Point(15, 25), new Point(10, 20));
+    DiffusionKernel kernel = new DiffusionKernel(w[0], w[1], w[2], w[3], null);
+    for (int i = 0; i < 300000; i++) {
+      kernel.setValues(bg, 0);
+      kernel.setValues(fg, 1);
+      kernel.step(0.1, 0.25);
+    }
+    kernel.setValues(bg, 0);
+    kernel.setValues(fg, 1);
+
+    LaplaceSolver solver = new LaplaceSolver(w[0], w[1], w[2], w[3]);
+    solver.setValues(bg, 0);
+    solver.setValues(fg, 1);
+    int it = solver.solve(1e-10, 1000);
+    assertThat(it, lessThan(1000));
+
+    double[][] expected = kernel.getSolution();
+    double[][] ret = solver.getSolution();
+    for (int r = 0; r < ret.length; r++) {
+      for (int c = 0; c < ret[r].length; c++) {
+        assertThat(ret[r][c], closeTo(expected[r][c], 1e-6));
+      }
+    }
+  }
+
+  /**
+   * Solver runs on given pool.
+   *
+   * <p>Pre: pool counting its threads
+   *
+   * <p>Post: threads of pool used, the same solution as on common pool
+   *
+   * @throws Exception on error
+   */
+  @Test
+  public void testSolve_pool() throws Exception {
+    double[][][] w = randomWeights(100, 40);
+    List<Point> fg = Arrays.asList(new Point(3, 4), new Point(4, 4));
+    List<Point> bg = Arrays.asList(new Point(35, 85), new Point(10, 60));
+    LaplaceSolver solver = new LaplaceSolver(w[0], w[1], w[2], w[3]);
+    solver.setValues(bg, 0);
+    solver.setValues(fg, 1);
+    solver.solve(1e-10, 1000);
+
+    AtomicInteger threads = new AtomicInteger();
+    ForkJoinPool pool = new ForkJoinPool(3, p -> {
+      threads.incrementAndGet();
+      return ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+    }, null, false);
+    try {
+      LaplaceSolver solverp = new LaplaceSolver(w[0], w[1], w[2], w[3], pool);
+      solverp.setValues(bg, 0);
+      solverp.setValues(fg, 1);
+      solverp.solve(1e-10, 1000);
+      assertThat(threads.get(), is(greaterThan(0)));
+      assertThat(solverp.getSolution(), is(solver.getSolution()));
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * Random weights in range 1-4.
+   *
+   * @param rows number of rows
+   * @param cols number of columns
+   * @return weights in four directions [4][rows][cols]
+   */
+  private double[][][] randomWeights(int rows, int cols) {
+    Random rnd = new Random(1);
+    double[][][] w = new double[4][rows][cols];
+    for (double[][] d : w) {
+      for (double[] row : d) {
+        for (int c = 0; c < cols; c++) {
+          row[c] = 1 + 3 * rnd.nextDouble();
+        }
+      }
+    }
+    return w;
+  }
+}
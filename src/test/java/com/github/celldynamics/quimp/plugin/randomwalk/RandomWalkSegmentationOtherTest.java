@@ -2,9 +2,11 @@ package com.github.celldynamics.quimp.plugin.randomwalk;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.lessThan;
 import static org.junit.Assert.assertThat;
 
 import java.awt.Color;
+import java.awt.Rectangle;
 import java.io.File;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
@@ -22,6 +24,7 @@ import com.github.celldynamics.quimp.utils.QuimPArrayUtils;
 
 import ij.IJ;
 import ij.ImagePlus;
+import ij.process.ByteProcessor;
 import ij.process.ImageProcessor;
 
 /**
@@ -290,6 +293,162 @@ public class RandomWalkSegmentationOtherTest {
     assertThat(ratio1, is(closeTo(ratio, 1e-5)));
   }
 
+  /**
+   * Main runner, multiple seeds solved concurrently.
+   *
+   * <p>post: the same probability maps as for sequential solver
+   *
+   * @throws Exception on error
+   */
+  @Test
+  public void testRun_5_parallel() throws Exception {
+    params.gamma[1] = 0;
+    params.iter = 1000;
+    ImageProcessor ip = IJ.openImage("src/test/Resources-static/284/2uniform.tif").getProcessor();
+    ImageProcessor seedsIp =
+            IJ.openImage("src/test/Resources-static/284/CompositeRGB.tif").getProcessor();
+    Seeds seeds = SeedProcessor.decodeSeedsfromRgb(seedsIp,
+            Arrays.asList(new Color(244, 0, 0), new Color(0, 0, 244)), new Color(0, 244, 0));
+    RandomWalkSegmentation obj = new RandomWalkSegmentation(ip, params);
+    ImageProcessor ret = obj.run(seeds);
+    ProbabilityMaps pm = obj.getProbabilityMaps();
+
+    params.parallelism = 3;
+    RandomWalkSegmentation objp = new RandomWalkSegmentation(ip, params);
+    ImageProcessor retp = objp.run(seeds);
+    ProbabilityMaps pmp = objp.getProbabilityMaps();
+
+    assertThat(retp.getPixels(), is(ret.getPixels()));
+    for (SeedTypes key : new SeedTypes[] { SeedTypes.FOREGROUNDS, SeedTypes.BACKGROUND }) {
+      assertThat(pmp.get(key).size(), is(pm.get(key).size()));
+      for (int i = 0; i < pm.get(key).size(); i++) {
+        assertThat(pmp.get(key).get(i), is(pm.get(key).get(i)));
+      }
+    }
+  }
+
+  /**
+   * Main runner, diffusion limited to region of image not covered by background seeds.
+   *
+   * <p>pre: two objects, background seeded everywhere except rectangle around them
+   *
+   * <p>post: region smaller than image, exactly the same probability maps and segmentation as for
+   * whole image in double and in single precision
+   *
+   * @throws Exception on error
+   */
+  @Test
+  public void testRun_cropped() throws Exception {
+    params.gamma[1] = 0;
+    params.iter = 300;
+    ByteProcessor ip = new ByteProcessor(120, 100);
+    ip.setColor(60);
+    ip.fillOval(30, 30, 20, 24);
+    ip.setColor(140);
+    ip.fillOval(62, 40, 18, 18);
+    ip.noise(5);
+    Seeds seeds = new Seeds();
+    ByteProcessor fg1 = new ByteProcessor(ip.getWidth(), ip.getHeight());
+    fg1.setColor(255);
+    fg1.fillOval(37, 39, 6, 6);
+    seeds.put(SeedTypes.FOREGROUNDS, fg1);
+    ByteProcessor fg2 = new ByteProcessor(ip.getWidth(), ip.getHeight());
+    fg2.setColor(255);
+    fg2.fillOval(68, 46, 6, 6);
+    seeds.put(SeedTypes.FOREGROUNDS, fg2);
+    ByteProcessor bg = new ByteProcessor(ip.getWidth(), ip.getHeight());
+    bg.setColor(255);
+    bg.fill();
+    bg.setColor(0);
+    bg.setRoi(new Rectangle(20, 22, 72, 48));
+    bg.fill();
+    bg.resetRoi();
+    seeds.put(SeedTypes.BACKGROUND, bg);
+
+    for (boolean single : new boolean[] { false, true }) {
+      WeightCache.getInstance().clear();
+      params.singlePrecision = single;
+      params.cropToSeeds = false;
+      RandomWalkSegmentation obj = new RandomWalkSegmentation(ip, params);
+      ImageProcessor ret = obj.run(seeds);
+      ProbabilityMaps pm = obj.getProbabilityMaps();
+
+      params.cropToSeeds = true;
+      params.cropMargin = 2;
+      RandomWalkSegmentation objc = new RandomWalkSegmentation(ip, params);
+      Rectangle region = objc.getCropRegion(seeds.convertToList(SeedTypes.FOREGROUNDS),
+              seeds.convertToList(SeedTypes.BACKGROUND), params.cropMargin);
+      assertThat(region, is(new Rectangle(18, 20, 76, 52)));
+      ImageProcessor retc = objc.run(seeds);
+      ProbabilityMaps pmc = objc.getProbabilityMaps();
+
+      assertThat(retc.getPixels(), is(ret.getPixels()));
+      for (SeedTypes key : new SeedTypes[] { SeedTypes.FOREGROUNDS, SeedTypes.BACKGROUND }) {
+        assertThat(pmc.get(key).size(), is(pm.get(key).size()));
+        for (int i = 0; i < pm.get(key).size(); i++) {
+          assertThat(pmc.get(key).get(i), is(pm.get(key).get(i)));
+        }
+      }
+    }
+  }
+
+  /**
+   * Main runner, objects solved by {@link RandomWalkOptions.SolverBackend#BICGSTAB}.
+   *
+   * <p>pre: two objects and background around them, no object stopped by relative error in Euler
+   * mode
+   *
+   * <p>post: the same background maps as for Euler mode, as background is always diffused by Euler
+   * method, and almost the same segmentation
+   *
+   * @throws Exception on error
+   */
+  @Test
+  public void testRun_bicgstab() throws Exception {
+    params.gamma[1] = 0;
+    params.relim = new double[] { 0, 0 };
+    ByteProcessor ip = new ByteProcessor(80, 60);
+    ip.setColor(20);
+    ip.fill();
+    ip.setColor(200);
+    ip.fillOval(10, 12, 22, 26);
+    ip.fillOval(44, 20, 20, 20);
+    Seeds seeds = new Seeds();
+    ByteProcessor fg1 = new ByteProcessor(ip.getWidth(), ip.getHeight());
+    fg1.setColor(255);
+    fg1.fillOval(17, 21, 8, 8);
+    seeds.put(SeedTypes.FOREGROUNDS, fg1);
+    ByteProcessor fg2 = new ByteProcessor(ip.getWidth(), ip.getHeight());
+    fg2.setColor(255);
+    fg2.fillOval(50, 26, 8, 8);
+    seeds.put(SeedTypes.FOREGROUNDS, fg2);
+    ByteProcessor bg = new ByteProcessor(ip.getWidth(), ip.getHeight());
+    bg.setColor(255);
+    bg.fill();
+    bg.setColor(0); // unknown ring around objects
+    bg.fillOval(6, 8, 30, 34);
+    bg.fillOval(40, 16, 28, 28);
+    seeds.put(SeedTypes.BACKGROUND, bg);
+
+    RandomWalkSegmentation obj = new RandomWalkSegmentation(ip, params);
+    ImageProcessor ret = obj.run(seeds);
+    ProbabilityMaps pm = obj.getProbabilityMaps();
+
+    params.solverBackend = RandomWalkOptions.SolverBackend.BICGSTAB;
+    RandomWalkSegmentation objb = new RandomWalkSegmentation(ip, params);
+    ImageProcessor retb = objb.run(seeds);
+    ProbabilityMaps pmb = objb.getProbabilityMaps();
+
+    assertThat(pmb.get(SeedTypes.BACKGROUND), is(pm.get(SeedTypes.BACKGROUND)));
+    int diff = 0;
+    for (int i = 0; i < ip.getPixelCount(); i++) {
+      if (ret.get(i) != retb.get(i)) {
+        diff++;
+      }
+    }
+    assertThat((double) diff / ip.getPixelCount(), is(lessThan(0.05)));
+  }
+
   /**
    * Test of main runner.
    * 
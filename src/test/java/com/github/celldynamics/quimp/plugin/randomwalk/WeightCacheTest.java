@@ -0,0 +1,141 @@
+package com.github.celldynamics.quimp.plugin.randomwalk;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.junit.Test;
+
+import ij.process.ByteProcessor;
+
+/**
+ * Test of {@link WeightCache}.
+ *
+ * @author p.baniukiewicz
+ *
+ */
+public class WeightCacheTest {
+
+  /**
+   * Keys of images with the same content are equal.
+   *
+   * <p>Pre: two images with the same content, one different
+   *
+   * <p>Post: keys equal only for the same content
+   *
+   * @throws Exception on error
+   */
+  @Test
+  public void testImageKey() throws Exception {
+    double[][] data = { { 1, 2, 3 }, { 4, 5, 6 } };
+    WeightCache.ImageKey k1 = new WeightCache.ImageKey(new Array2DRowRealMatrix(data), 255);
+    WeightCache.ImageKey k2 = new WeightCache.ImageKey(new Array2DRowRealMatrix(data), 255);
+    data[1][1] = 0;
+    WeightCache.ImageKey k3 = new WeightCache.ImageKey(new Array2DRowRealMatrix(data), 255);
+    WeightCache.ImageKey k4 = new WeightCache.ImageKey(new Array2DRowRealMatrix(data), 65535);
+
+    assertThat(k1, is(k2));
+    assertThat(k1.hashCode(), is(k2.hashCode()));
+    assertThat(k1, is(not(k3)));
+    assertThat(k3, is(not(k4)));
+  }
+
+  /**
+   * Keys of weights depend on parameters, mean intensity and rough mask.
+   *
+   * <p>Pre: different parameters and masks
+   *
+   * <p>Post: keys are equal only for the same input
+   *
+   * @throws Exception on error
+   */
+  @Test
+  public void testWeightsKey() throws Exception {
+    WeightCache.ImageKey ik =
+            new WeightCache.ImageKey(new Array2DRowRealMatrix(new double[3][3]), 255);
+    RandomWalkOptions p = new RandomWalkOptions();
+    ByteProcessor mask = new ByteProcessor(3, 3);
+    WeightCache.WeightsKey k1 = new WeightCache.WeightsKey(ik, p, 10, null, true, false);
+    assertThat(new WeightCache.WeightsKey(ik, p, 10, null, true, false), is(k1));
+    assertThat(new WeightCache.WeightsKey(ik, p, 11, null, true, false), is(not(k1)));
+    assertThat(new WeightCache.WeightsKey(ik, p, 10, null, false, false), is(not(k1)));
+    assertThat(new WeightCache.WeightsKey(ik, p, 10, null, true, true), is(not(k1)));
+    // mean ignored for local mean
+    WeightCache.WeightsKey k2 = new WeightCache.WeightsKey(ik, p, 10, mask, true, false);
+    assertThat(new WeightCache.WeightsKey(ik, p, 11, mask, true, false), is(k2));
+    assertThat(k2, is(not(k1)));
+    mask.set(1, 1, 255);
+    // key holds copy of mask
+    assertThat(new WeightCache.WeightsKey(ik, p, 10, mask, true, false), is(not(k2)));
+    RandomWalkOptions p1 = new RandomWalkOptions();
+    p1.alpha = p.alpha + 1;
+    assertThat(new WeightCache.WeightsKey(ik, p1, 10, null, true, false), is(not(k1)));
+  }
+
+  /**
+   * Least recently used entries are removed if memory limit is exceeded.
+   *
+   * <p>Pre: cache for two entries, three entries added, first one used in between
+   *
+   * <p>Post: second entry removed
+   *
+   * @throws Exception on error
+   */
+  @Test
+  public void testLimit() throws Exception {
+    RealMatrix[] g = new RealMatrix[] { new Array2DRowRealMatrix(new double[2][2]) };
+    WeightCache.ImageKey k1 = new WeightCache.ImageKey(new Array2DRowRealMatrix(2, 2), 1);
+    WeightCache.ImageKey k2 = new WeightCache.ImageKey(new Array2DRowRealMatrix(2, 2), 2);
+    WeightCache.ImageKey k3 = new WeightCache.ImageKey(new Array2DRowRealMatrix(2, 2), 3);
+    // two entries, each of one 2x2 matrix and copy of 2x2 image in key
+    WeightCache cache = new WeightCache(2 * 2 * 8 * 4);
+    cache.putGradients(k1, g);
+    cache.putGradients(k2, g);
+    assertThat(cache.getGradients(k1), is(sameInstance(g)));
+    cache.putGradients(k3, g);
+
+    assertThat(cache.size(), is(2));
+    assertThat(cache.getGradients(k1), is(sameInstance(g)));
+    assertThat(cache.getGradients(k2), is(nullValue()));
+    assertThat(cache.getGradients(k3), is(sameInstance(g)));
+
+    cache.clear();
+    assertThat(cache.size(), is(0));
+    cache.setMaxBytes(0);
+    cache.putGradients(k1, g);
+    assertThat(cache.getGradients(k1), is(nullValue()));
+  }
+
+  /**
+   * Hits and misses are counted.
+   *
+   * <p>Pre: lookups of stored and missing keys, then clear
+   *
+   * <p>Post: hit and miss counters follow lookups and are reset by clear
+   *
+   * @throws Exception on error
+   */
+  @Test
+  public void testStatistics() throws Exception {
+    RealMatrix[] g = new RealMatrix[] { new Array2DRowRealMatrix(new double[2][2]) };
+    WeightCache.ImageKey k1 = new WeightCache.ImageKey(new Array2DRowRealMatrix(2, 2), 1);
+    WeightCache.ImageKey k2 = new WeightCache.ImageKey(new Array2DRowRealMatrix(2, 2), 2);
+    WeightCache cache = new WeightCache(1024);
+    assertThat(cache.getGradients(k1), is(nullValue()));
+    cache.putGradients(k1, g);
+    assertThat(cache.getGradients(k1), is(sameInstance(g)));
+    assertThat(cache.getGradients(new WeightCache.ImageKey(new Array2DRowRealMatrix(2, 2), 1)),
+            is(sameInstance(g)));
+    assertThat(cache.getGradients(k2), is(nullValue()));
+    assertThat(cache.getHits(), is(2L));
+    assertThat(cache.getMisses(), is(2L));
+
+    cache.clear();
+    assertThat(cache.getHits(), is(0L));
+    assertThat(cache.getMisses(), is(0L));
+  }
+}
@@ -0,0 +1,89 @@
+package com.github.celldynamics.quimp.utils;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.Test;
+
+/**
+ * Test of {@link ParallelTools}.
+ *
+ * @author p.baniukiewicz
+ *
+ */
+public class ParallelToolsTest {
+
+  /**
+   * Test method for {@link ParallelTools#forBlocks(int, int, ParallelTools.RangeTask)}.
+   *
+   * <p>Pre: number of threads smaller, equal and larger than number of indexes
+   *
+   * <p>Post: every index processed exactly once
+   *
+   * @throws Exception Exception
+   */
+  @Test
+  public void testForBlocks() throws Exception {
+    for (int threads : new int[] { 1, 3, 7, 20 }) {
+      AtomicIntegerArray visited = new AtomicIntegerArray(7);
+      ParallelTools.forBlocks(visited.length(), threads, (from, to) -> {
+        for (int i = from; i < to; i++) {
+          visited.incrementAndGet(i);
+        }
+      });
+      for (int i = 0; i < visited.length(); i++) {
+        assertThat(visited.get(i), is(1));
+      }
+    }
+  }
+
+  /**
+   * Test method for {@link ParallelTools#map(int, int, ParallelTools.IndexTask)}.
+   *
+   * <p>Pre: tasks finishing in reversed order
+   *
+   * <p>Post: results in order of indexes
+   *
+   * @throws Exception Exception
+   */
+  @Test
+  public void testMap() throws Exception {
+    List<Integer> ret = ParallelTools.map(5, 5, i -> {
+      Thread.sleep(10 * (5 - i));
+      return i * i;
+    });
+    for (int i = 0; i < 5; i++) {
+      assertThat(ret.get(i), is(i * i));
+    }
+  }
+
+  /**
+   * Test method for {@link ParallelTools#map(int, int, ParallelTools.IndexTask)}.
+   *
+   * <p>Pre: one task throws
+   *
+   * <p>Post: exception of task is cause of ExecutionException
+   *
+   * @throws Exception Exception
+   */
+  @Test
+  public void testMap_exception() throws Exception {
+    try {
+      ParallelTools.map(3, 2, i -> {
+        if (i == 1) {
+          throw new IllegalArgumentException("task " + i);
+        }
+        return i;
+      });
+      fail("Exception expected");
+    } catch (ExecutionException e) {
+      assertThat(e.getCause(), instanceOf(IllegalArgumentException.class));
+    }
+  }
+}